@@ -29,6 +29,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // MqttHandler logs through android.util.Log, which is a stub in local unit tests
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -0,0 +1,466 @@
+package com.example.printerstatus_glass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Evaluates {@link AlertRules} incrementally over the stream of printer updates.
+ * Each update is compared field by field with the printer's previous values, and only
+ * the rules reading a changed field are evaluated, plus the rules that are pending (their
+ * condition holds but its duration has not passed yet) or active. The cost per message
+ * therefore depends on the fields that changed, not on the number of rules.
+ * Per-printer rule state (since when a condition holds, active flags, the samples of
+ * rate rules) lives in primitive arrays allocated once per printer.
+ * Alerts are raised and cleared on transitions only. Thread-safe; updates come from
+ * the ingest worker and {@link #tick(long)} from a timer.
+ */
+public class AlertEngine {
+    // Samples kept per rate rule and printer; older samples fall out of the window
+    static final int RATE_SAMPLES = 16;
+    private static final long NOT_HOLDING = Long.MIN_VALUE;
+
+    /**
+     * Receives raised and cleared alerts.
+     */
+    public interface Listener {
+        /**
+         * Called on the thread that delivered the update or the tick, must not block.
+         * @param alert The alert
+         */
+        void onAlert(Alert alert);
+    }
+
+    /**
+     * A rule of one printer that became active or inactive.
+     */
+    public static final class Alert {
+        private final String topic;
+        private final String ruleId;
+        private final String definition;
+        private final boolean raised;
+        private final double value;
+        private final long timeMillis;
+
+        Alert(String topic, String ruleId, String definition, boolean raised, double value, long timeMillis) {
+            this.topic = topic;
+            this.ruleId = ruleId;
+            this.definition = definition;
+            this.raised = raised;
+            this.value = value;
+            this.timeMillis = timeMillis;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getRuleId() {
+            return ruleId;
+        }
+
+        /**
+         * @return The rule's config line
+         */
+        public String getDefinition() {
+            return definition;
+        }
+
+        /**
+         * @return True if the alert became active, false if it cleared
+         */
+        public boolean isRaised() {
+            return raised;
+        }
+
+        /**
+         * @return The compared value (field, deviation or rate), NaN for text rules
+         */
+        public double getValue() {
+            return value;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %s on %s%s", ruleId, raised ? "raised" : "cleared", topic,
+                    Double.isNaN(value) ? "" : String.format(Locale.US, " (%.1f)", value));
+        }
+    }
+
+    /**
+     * Field values and rule state of one printer.
+     */
+    private static final class PrinterRules {
+        final String topic;
+        final double[] numbers = new double[PrinterStatus.FIELD_COUNT];
+        final String[] texts = new String[PrinterStatus.FIELD_COUNT];
+
+        // Rule state by rule index
+        final long[] holdingSince;
+        final boolean[] active;
+        final int[] evaluatedIn;
+        int generation;
+
+        // Pending and active rules, re-evaluated on every update and tick
+        final int[] live;
+        final int[] livePosition;
+        int liveCount;
+
+        // Rings of (time, value) change points of the rate rules, RATE_SAMPLES per rule
+        final long[] sampleTimes;
+        final double[] sampleValues;
+        final int[] sampleHead;
+        final int[] sampleCount;
+
+        PrinterRules(String topic, AlertRules rules) {
+            this.topic = topic;
+            int count = rules.size();
+            Arrays.fill(numbers, Double.NaN);
+            holdingSince = new long[count];
+            Arrays.fill(holdingSince, NOT_HOLDING);
+            active = new boolean[count];
+            evaluatedIn = new int[count];
+            live = new int[count];
+            livePosition = new int[count];
+            Arrays.fill(livePosition, -1);
+            sampleTimes = new long[rules.rateRules * RATE_SAMPLES];
+            sampleValues = new double[rules.rateRules * RATE_SAMPLES];
+            sampleHead = new int[rules.rateRules];
+            sampleCount = new int[rules.rateRules];
+        }
+    }
+
+    private final Listener listener;
+    private AlertRules rules = AlertRules.EMPTY;
+    private final Map<String, PrinterRules> printers = new HashMap<>();
+
+    // Instrumentation
+    private long updates;
+    private long evaluations;
+    private long raised;
+
+    /**
+     * @param listener Receives raised and cleared alerts
+     */
+    public AlertEngine(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the rules; all rule state is reset.
+     * @param rules The compiled rules
+     */
+    public synchronized void setRules(AlertRules rules) {
+        this.rules = rules;
+        printers.clear();
+    }
+
+    /**
+     * @return The rules in use
+     */
+    public synchronized AlertRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Evaluates the rules affected by a printer update.
+     * @param topic The printer topic
+     * @param status The printer's status after the update
+     * @param timeMillis Time of the update
+     */
+    public void onPrinterUpdate(String topic, PrinterStatus status, long timeMillis) {
+        List<Alert> alerts = null;
+        synchronized (this) {
+            updates++;
+            if (rules.size() == 0) {
+                return;
+            }
+            PrinterRules printer = printers.get(topic);
+            if (printer == null) {
+                printer = new PrinterRules(topic, rules);
+                printers.put(topic, printer);
+            }
+            int generation = ++printer.generation;
+
+            // Store the new values first, so rules over two fields see both of this message
+            long changed = 0;
+            for (int field = 0; field < PrinterStatus.FIELD_COUNT; field++) {
+                if (rules.rulesByField[field].length > 0 && store(printer, field, status, timeMillis)) {
+                    changed |= 1L << field;
+                }
+            }
+
+            // Only changed fields wake their rules
+            for (int field = 0; changed != 0; field++, changed >>>= 1) {
+                if ((changed & 1) == 0) {
+                    continue;
+                }
+                for (int rule : rules.rulesByField[field]) {
+                    if (printer.evaluatedIn[rule] != generation) {
+                        alerts = evaluate(printer, rule, generation, timeMillis, alerts);
+                    }
+                }
+            }
+            alerts = evaluateLive(printer, generation, timeMillis, alerts);
+        }
+        notify(alerts);
+    }
+
+    /**
+     * Re-evaluates pending and active rules, so duration rules fire even if a printer goes quiet.
+     * @param timeMillis Current time
+     */
+    public void tick(long timeMillis) {
+        List<Alert> alerts = null;
+        synchronized (this) {
+            for (PrinterRules printer : printers.values()) {
+                if (printer.liveCount > 0) {
+                    alerts = evaluateLive(printer, ++printer.generation, timeMillis, alerts);
+                }
+            }
+        }
+        notify(alerts);
+    }
+
+    /**
+     * @param topic A printer topic
+     * @return Ids of the printer's active alerts, in rule order
+     */
+    public synchronized List<String> getActiveAlerts(String topic) {
+        List<String> active = new ArrayList<>();
+        PrinterRules printer = printers.get(topic);
+        if (printer != null) {
+            for (int rule = 0; rule < printer.active.length; rule++) {
+                if (printer.active[rule]) {
+                    active.add(rules.ids[rule]);
+                }
+            }
+        }
+        return active;
+    }
+
+    public synchronized long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return Rule evaluations since start, to compare against updates times rules
+     */
+    public synchronized long getEvaluations() {
+        return evaluations;
+    }
+
+    public synchronized long getRaised() {
+        return raised;
+    }
+
+    /**
+     * Copies one field of the status into the printer's values, and samples it for rate rules.
+     * @return True if the value changed
+     */
+    private boolean store(PrinterRules printer, int field, PrinterStatus status, long timeMillis) {
+        if (PrinterStatus.isTextField(field)) {
+            String text = status.getText(field);
+            if (equal(text, printer.texts[field])) {
+                return false;
+            }
+            printer.texts[field] = text;
+            return true;
+        }
+        double number = status.getNumber(field);
+        if (Double.compare(number, printer.numbers[field]) == 0) {
+            return false;
+        }
+        printer.numbers[field] = number;
+        for (int rule : rules.rulesByField[field]) {
+            if (rules.kinds[rule] == AlertRules.RATE && rules.fields[rule] == field) {
+                addSample(printer, rules.rateSlots[rule], number, timeMillis);
+            }
+        }
+        return true;
+    }
+
+    private List<Alert> evaluateLive(PrinterRules printer, int generation, long timeMillis, List<Alert> alerts) {
+        // Backwards, since an evaluation may swap the last live rule into the current position
+        for (int i = printer.liveCount - 1; i >= 0; i--) {
+            int rule = printer.live[i];
+            if (printer.evaluatedIn[rule] != generation) {
+                alerts = evaluate(printer, rule, generation, timeMillis, alerts);
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * Evaluates one rule and records a transition.
+     * @return The alerts list, created on the first transition
+     */
+    private List<Alert> evaluate(PrinterRules printer, int rule, int generation, long timeMillis, List<Alert> alerts) {
+        printer.evaluatedIn[rule] = generation;
+        evaluations++;
+        double value = value(printer, rule, timeMillis);
+        boolean holds = rules.kinds[rule] == AlertRules.TEXT
+                ? matches(printer.texts[rules.fields[rule]], rules.operators[rule], rules.patterns[rule])
+                : compare(value, rules.operators[rule], rules.thresholds[rule]);
+        int guard = rules.guardFields[rule];
+        if (guard >= 0 && !compare(printer.numbers[guard], rules.guardOperators[rule], rules.guardThresholds[rule])) {
+            holds = false;
+        }
+
+        if (!holds) {
+            printer.holdingSince[rule] = NOT_HOLDING;
+            removeLive(printer, rule);
+            if (printer.active[rule]) {
+                printer.active[rule] = false;
+                alerts = add(alerts, new Alert(printer.topic, rules.ids[rule], rules.definitions[rule], false,
+                        value, timeMillis));
+            }
+            return alerts;
+        }
+
+        if (printer.holdingSince[rule] == NOT_HOLDING) {
+            printer.holdingSince[rule] = timeMillis;
+            addLive(printer, rule);
+        }
+        if (!printer.active[rule] && timeMillis - printer.holdingSince[rule] >= rules.durationMillis[rule]) {
+            printer.active[rule] = true;
+            raised++;
+            alerts = add(alerts, new Alert(printer.topic, rules.ids[rule], rules.definitions[rule], true,
+                    value, timeMillis));
+        }
+        return alerts;
+    }
+
+    /**
+     * @return The value the rule compares, NaN if unknown or a text rule
+     */
+    private double value(PrinterRules printer, int rule, long timeMillis) {
+        double current = printer.numbers[rules.fields[rule]];
+        switch (rules.kinds[rule]) {
+            case AlertRules.VALUE:
+                return current;
+            case AlertRules.DEVIATION:
+                return Math.abs(current - printer.numbers[rules.references[rule]]);
+            case AlertRules.RATE:
+                return rate(printer, rules.rateSlots[rule], current, timeMillis, rules.windowMillis[rule]);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Change per second over the window, from the change points of a field.
+     * The field is constant between change points, so its value at the window start
+     * is the last change point before it; without one, the oldest sample is used.
+     */
+    private static double rate(PrinterRules printer, int slot, double current, long timeMillis, long window) {
+        int count = printer.sampleCount[slot];
+        if (count == 0 || Double.isNaN(current)) {
+            return Double.NaN;
+        }
+        int base = slot * RATE_SAMPLES;
+        long windowStart = timeMillis - window;
+        // Newest to oldest
+        for (int i = 1; i <= count; i++) {
+            int index = base + (printer.sampleHead[slot] - i + RATE_SAMPLES) % RATE_SAMPLES;
+            long time = printer.sampleTimes[index];
+            if (time <= windowStart) {
+                return (current - printer.sampleValues[index]) * 1000.0 / window;
+            }
+            if (i == count) {
+                long span = timeMillis - time;
+                return span <= 0 ? 0 : (current - printer.sampleValues[index]) * 1000.0 / span;
+            }
+        }
+        return 0;
+    }
+
+    private static void addSample(PrinterRules printer, int slot, double value, long timeMillis) {
+        int index = slot * RATE_SAMPLES + printer.sampleHead[slot];
+        printer.sampleTimes[index] = timeMillis;
+        printer.sampleValues[index] = value;
+        printer.sampleHead[slot] = (printer.sampleHead[slot] + 1) % RATE_SAMPLES;
+        if (printer.sampleCount[slot] < RATE_SAMPLES) {
+            printer.sampleCount[slot]++;
+        }
+    }
+
+    private static void addLive(PrinterRules printer, int rule) {
+        if (printer.livePosition[rule] < 0) {
+            printer.livePosition[rule] = printer.liveCount;
+            printer.live[printer.liveCount++] = rule;
+        }
+    }
+
+    private static void removeLive(PrinterRules printer, int rule) {
+        int position = printer.livePosition[rule];
+        if (position < 0) {
+            return;
+        }
+        int last = printer.live[--printer.liveCount];
+        printer.live[position] = last;
+        printer.livePosition[last] = position;
+        printer.livePosition[rule] = -1;
+    }
+
+    private static boolean compare(double value, int operator, double threshold) {
+        switch (operator) {
+            case AlertRules.GREATER:
+                return value > threshold;
+            case AlertRules.GREATER_EQUAL:
+                return value >= threshold;
+            case AlertRules.LESS:
+                return value < threshold;
+            case AlertRules.LESS_EQUAL:
+                return value <= threshold;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean matches(String text, int operator, String pattern) {
+        if (text == null) {
+            return false;
+        }
+        switch (operator) {
+            case AlertRules.EQUALS:
+                return text.equalsIgnoreCase(pattern);
+            case AlertRules.NOT_EQUALS:
+                return !text.equalsIgnoreCase(pattern);
+            case AlertRules.CONTAINS:
+                for (int i = 0; i + pattern.length() <= text.length(); i++) {
+                    if (text.regionMatches(true, i, pattern, 0, pattern.length())) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private static List<Alert> add(List<Alert> alerts, Alert alert) {
+        List<Alert> list = alerts != null ? alerts : new ArrayList<Alert>();
+        list.add(alert);
+        return list;
+    }
+
+    private void notify(List<Alert> alerts) {
+        if (alerts != null) {
+            for (Alert alert : alerts) {
+                listener.onAlert(alert);
+            }
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
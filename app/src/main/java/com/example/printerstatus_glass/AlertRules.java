@@ -0,0 +1,319 @@
+package com.example.printerstatus_glass;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable, compiled set of alert rules over printer fields.
+ * Rules are parsed once into flat arrays, with an index from each field to the rules
+ * reading it, so {@link AlertEngine} only evaluates the rules of fields that changed.
+ * Instances are never modified after construction and can be shared between threads.
+ *
+ * Config format (one rule per line, '#' starts a comment):
+ * <pre>
+ * # id              kind       field(s)                                          op threshold  options
+ * tool_off_target   deviation  tool_temperature_current tool_temperature_target  >  10         for 30 if tool_temperature_target > 0
+ * job_error         text       detailed_state                                    ~  error
+ * job_finishing     value      print_time_left                                   <  60
+ * tool_heating_fast rate       tool_temperature_current                          >  5          window 10
+ * </pre>
+ * Kinds: {@code value} compares a field, {@code deviation} the distance between two fields,
+ * {@code rate} the change of a field per second over a window (default 10 s), and
+ * {@code text} a text field. Numeric operators are {@code > >= < <=}; text operators are
+ * {@code =}, {@code !=} and {@code ~} (contains), all ignoring case. The option
+ * {@code for <seconds>} raises the alert only once the condition held that long, and
+ * {@code if <field> <op> <number>} only checks the rule while a numeric guard holds.
+ */
+public final class AlertRules {
+    static final int VALUE = 0;
+    static final int DEVIATION = 1;
+    static final int RATE = 2;
+    static final int TEXT = 3;
+
+    static final int GREATER = 0;
+    static final int GREATER_EQUAL = 1;
+    static final int LESS = 2;
+    static final int LESS_EQUAL = 3;
+    static final int EQUALS = 4;
+    static final int NOT_EQUALS = 5;
+    static final int CONTAINS = 6;
+
+    private static final long DEFAULT_RATE_WINDOW_MILLIS = 10_000;
+
+    public static final AlertRules EMPTY = new AlertRules(new ArrayList<Rule>());
+
+    /**
+     * One parsed rule.
+     */
+    private static final class Rule {
+        String id;
+        String definition;
+        int kind;
+        int field;
+        int reference = -1;
+        int operator;
+        double threshold;
+        String pattern;
+        long windowMillis;
+        long durationMillis;
+        int guardField = -1;
+        int guardOperator;
+        double guardThreshold;
+    }
+
+    // Rule properties by rule index
+    final String[] ids;
+    final String[] definitions;
+    final int[] kinds;
+    final int[] fields;
+    final int[] references;
+    final int[] operators;
+    final double[] thresholds;
+    final String[] patterns;
+    final long[] windowMillis;
+    final long[] durationMillis;
+    final int[] guardFields;
+    final int[] guardOperators;
+    final double[] guardThresholds;
+    // Slot of each rate rule in the per-printer sample rings, -1 for other kinds
+    final int[] rateSlots;
+    final int rateRules;
+
+    // Rules reading each field, by field index
+    final int[][] rulesByField;
+
+    private AlertRules(List<Rule> rules) {
+        int count = rules.size();
+        ids = new String[count];
+        definitions = new String[count];
+        kinds = new int[count];
+        fields = new int[count];
+        references = new int[count];
+        operators = new int[count];
+        thresholds = new double[count];
+        patterns = new String[count];
+        windowMillis = new long[count];
+        durationMillis = new long[count];
+        guardFields = new int[count];
+        guardOperators = new int[count];
+        guardThresholds = new double[count];
+        rateSlots = new int[count];
+
+        int rates = 0;
+        int[] perField = new int[PrinterStatus.FIELD_COUNT];
+        for (int i = 0; i < count; i++) {
+            Rule rule = rules.get(i);
+            ids[i] = rule.id;
+            definitions[i] = rule.definition;
+            kinds[i] = rule.kind;
+            fields[i] = rule.field;
+            references[i] = rule.reference;
+            operators[i] = rule.operator;
+            thresholds[i] = rule.threshold;
+            patterns[i] = rule.pattern;
+            windowMillis[i] = rule.windowMillis;
+            durationMillis[i] = rule.durationMillis;
+            guardFields[i] = rule.guardField;
+            guardOperators[i] = rule.guardOperator;
+            guardThresholds[i] = rule.guardThreshold;
+            rateSlots[i] = rule.kind == RATE ? rates++ : -1;
+            perField[rule.field]++;
+            if (rule.reference >= 0) {
+                perField[rule.reference]++;
+            }
+            if (rule.guardField >= 0) {
+                perField[rule.guardField]++;
+            }
+        }
+        rateRules = rates;
+
+        // Two passes: count rules per field, then fill the lists in rule order
+        rulesByField = new int[PrinterStatus.FIELD_COUNT][];
+        for (int f = 0; f < perField.length; f++) {
+            rulesByField[f] = new int[perField[f]];
+            perField[f] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            rulesByField[fields[i]][perField[fields[i]]++] = i;
+            if (references[i] >= 0) {
+                rulesByField[references[i]][perField[references[i]]++] = i;
+            }
+            if (guardFields[i] >= 0) {
+                rulesByField[guardFields[i]][perField[guardFields[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Parses a rule config.
+     * @param reader Source of the rules
+     * @return The compiled rules
+     * @throws IOException If the config cannot be read or a rule is invalid
+     */
+    public static AlertRules parse(Reader reader) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            try {
+                Rule rule = parseRule(line.split("\\s+"));
+                rule.definition = line;
+                rules.add(rule);
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid rule on line " + lineNumber + ": " + line, e);
+            }
+        }
+        return new AlertRules(rules);
+    }
+
+    /**
+     * Parses the columns of a single config line.
+     * @param columns Whitespace separated columns
+     * @return The parsed rule
+     */
+    private static Rule parseRule(String[] columns) {
+        if (columns.length < 5) {
+            throw new IllegalArgumentException("Expected: id kind field op threshold");
+        }
+        Rule rule = new Rule();
+        rule.id = columns[0];
+        int next = 2;
+        rule.field = parseField(columns[next++]);
+        switch (columns[1]) {
+            case "value":
+                rule.kind = VALUE;
+                break;
+            case "deviation":
+                rule.kind = DEVIATION;
+                rule.reference = parseField(columns[next++]);
+                break;
+            case "rate":
+                rule.kind = RATE;
+                rule.windowMillis = DEFAULT_RATE_WINDOW_MILLIS;
+                break;
+            case "text":
+                rule.kind = TEXT;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + columns[1]);
+        }
+        if (next + 2 > columns.length) {
+            throw new IllegalArgumentException("Expected operator and threshold");
+        }
+
+        boolean textField = PrinterStatus.isTextField(rule.field);
+        if ((rule.kind == TEXT) != textField || (rule.reference >= 0 && PrinterStatus.isTextField(rule.reference))) {
+            throw new IllegalArgumentException(textField ? "Text fields need kind text" : "Kind text needs a text field");
+        }
+        rule.operator = parseOperator(columns[next++], rule.kind == TEXT);
+        if (rule.kind == TEXT) {
+            rule.pattern = columns[next++].toLowerCase(Locale.ROOT);
+        } else {
+            rule.threshold = Double.parseDouble(columns[next++]);
+        }
+
+        // Options
+        while (next < columns.length) {
+            if (next + 1 >= columns.length) {
+                throw new IllegalArgumentException("Missing value of option " + columns[next]);
+            }
+            if (columns[next].equals("if")) {
+                if (next + 4 > columns.length) {
+                    throw new IllegalArgumentException("Expected: if field op number");
+                }
+                rule.guardField = parseField(columns[next + 1]);
+                if (PrinterStatus.isTextField(rule.guardField)) {
+                    throw new IllegalArgumentException("Guards need a numeric field");
+                }
+                rule.guardOperator = parseOperator(columns[next + 2], false);
+                rule.guardThreshold = Double.parseDouble(columns[next + 3]);
+                next += 4;
+                continue;
+            }
+            long millis = Math.round(Double.parseDouble(columns[next + 1]) * 1000);
+            if (columns[next].equals("for")) {
+                rule.durationMillis = millis;
+            } else if (columns[next].equals("window") && rule.kind == RATE && millis > 0) {
+                rule.windowMillis = millis;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + columns[next]);
+            }
+            next += 2;
+        }
+        return rule;
+    }
+
+    private static int parseField(String key) {
+        int field = PrinterStatus.fieldIndex(key);
+        if (field < 0) {
+            throw new IllegalArgumentException("Unknown field: " + key);
+        }
+        return field;
+    }
+
+    private static int parseOperator(String operator, boolean text) {
+        switch (operator) {
+            case ">":
+                return require(!text, GREATER, operator);
+            case ">=":
+                return require(!text, GREATER_EQUAL, operator);
+            case "<":
+                return require(!text, LESS, operator);
+            case "<=":
+                return require(!text, LESS_EQUAL, operator);
+            case "=":
+                return require(text, EQUALS, operator);
+            case "!=":
+                return require(text, NOT_EQUALS, operator);
+            case "~":
+                return require(text, CONTAINS, operator);
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+    }
+
+    private static int require(boolean valid, int operator, String text) {
+        if (!valid) {
+            throw new IllegalArgumentException("Operator " + text + " does not fit the field");
+        }
+        return operator;
+    }
+
+    /**
+     * @return Number of rules
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @param rule A rule index
+     * @return The rule's id
+     */
+    public String getId(int rule) {
+        return ids[rule];
+    }
+
+    /**
+     * @param rule A rule index
+     * @return The rule's config line
+     */
+    public String getDefinition(int rule) {
+        return definitions[rule];
+    }
+}
@@ -0,0 +1,518 @@
+package com.example.printerstatus_glass;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of printer status and UWB position messages, an optional
+ * alternative to the text line protocol.
+ * A message starts with a marker byte (never the first byte of a text message, so both
+ * formats can share a topic) and a message type, followed by fields. Each field is a
+ * varint tag (field id shifted left by 3, or'ed with the wire type) and its value:
+ * varints for counters and flags, IEEE floats/doubles for measurements, length-prefixed
+ * UTF-8 for text. Field names never travel; unknown fields are skipped, so publishers
+ * can add fields without breaking older headsets.
+ * Decoding walks the payload once and hands typed values to a {@link Visitor} without
+ * allocating; only the Map adapter creates Strings. Floats are handed out as the double
+ * nearest to their short decimal form, matching what parsing the text would give.
+ */
+public final class BinaryCodec {
+    /** First byte of every binary message */
+    public static final byte MARKER = (byte) 0xB1;
+    public static final int TYPE_PRINTER = 1;
+    public static final int TYPE_UWB = 2;
+    // Varint ids reserved in every message type for the optional tracing fields (see MessageTrace)
+    public static final int PUBLISH_TIME_ID = 14;
+    public static final int TRACE_ID_ID = 15;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    /**
+     * Value encodings of the known fields.
+     */
+    public enum Kind {
+        STRING(WIRE_LENGTH),
+        FLOAT(WIRE_FIXED32),
+        DOUBLE(WIRE_FIXED64),
+        INTEGER(WIRE_VARINT),
+        BOOLEAN(WIRE_VARINT);
+
+        private final int wireType;
+
+        Kind(int wireType) {
+            this.wireType = wireType;
+        }
+    }
+
+    /**
+     * Known fields with their fixed ids; the names are the keys of the text protocol.
+     */
+    public enum Field {
+        PRINTER_NAME(TYPE_PRINTER, 1, "printer_name", Kind.STRING),
+        BED_TEMPERATURE_TARGET(TYPE_PRINTER, 2, "bed_temperature_target", Kind.FLOAT),
+        BED_TEMPERATURE_CURRENT(TYPE_PRINTER, 3, "bed_temperature_current", Kind.FLOAT),
+        TOOL_TEMPERATURE_TARGET(TYPE_PRINTER, 4, "tool_temperature_target", Kind.FLOAT),
+        TOOL_TEMPERATURE_CURRENT(TYPE_PRINTER, 5, "tool_temperature_current", Kind.FLOAT),
+        STATE(TYPE_PRINTER, 6, "state", Kind.STRING),
+        PRINT_TIME(TYPE_PRINTER, 7, "print_time", Kind.INTEGER),
+        PRINT_TIME_LEFT(TYPE_PRINTER, 8, "print_time_left", Kind.INTEGER),
+        JOB_NAME(TYPE_PRINTER, 9, "job_name", Kind.STRING),
+        IS_CONNECTED(TYPE_PRINTER, 10, "is_connected", Kind.BOOLEAN),
+        DETAILED_STATE(TYPE_PRINTER, 11, "detailed_state", Kind.STRING),
+        COMPLETION(TYPE_PRINTER, 12, "completion", Kind.DOUBLE),
+        TAG_NAME(TYPE_UWB, 1, "tagName", Kind.STRING),
+        POSITION_X(TYPE_UWB, 2, "positionX", Kind.FLOAT),
+        POSITION_Y(TYPE_UWB, 3, "positionY", Kind.FLOAT),
+        POSITION_Z(TYPE_UWB, 4, "positionZ", Kind.FLOAT);
+
+        private final int messageType;
+        private final int id;
+        private final String key;
+        private final Kind kind;
+
+        Field(int messageType, int id, String key, Kind kind) {
+            this.messageType = messageType;
+            this.id = id;
+            this.key = key;
+            this.kind = kind;
+        }
+
+        /**
+         * @return The field name used by the text protocol
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return How the value is encoded
+         */
+        public Kind getKind() {
+            return kind;
+        }
+    }
+
+    // Field lookup by message type and id
+    private static final int MAX_ID = 16;
+    private static final Field[][] FIELDS_BY_ID = new Field[TYPE_UWB + 1][MAX_ID];
+    private static final Map<String, Field> PRINTER_FIELDS_BY_KEY = new HashMap<>();
+    private static final Map<String, Field> UWB_FIELDS_BY_KEY = new HashMap<>();
+
+    static {
+        for (Field field : Field.values()) {
+            FIELDS_BY_ID[field.messageType][field.id] = field;
+            (field.messageType == TYPE_PRINTER ? PRINTER_FIELDS_BY_KEY : UWB_FIELDS_BY_KEY).put(field.key, field);
+        }
+    }
+
+    /**
+     * Receives the fields of a binary message while it is decoded.
+     */
+    public interface Visitor {
+        /**
+         * Called for a text field; the bytes are only valid during the call.
+         * @param field The field
+         * @param buffer The payload
+         * @param offset Start of the UTF-8 value
+         * @param length Length of the value in bytes
+         */
+        void onString(Field field, byte[] buffer, int offset, int length);
+
+        /**
+         * Called for a float or double field.
+         * @param field The field
+         * @param value The value
+         */
+        void onNumber(Field field, double value);
+
+        /**
+         * Called for an integer or boolean (0/1) field.
+         * @param field The field
+         * @param value The value
+         */
+        void onInteger(Field field, long value);
+    }
+
+    private BinaryCodec() {}
+
+    /**
+     * Checks whether a payload uses the binary encoding.
+     * @param payload The raw payload
+     * @return True if the payload starts with the binary marker
+     */
+    public static boolean isBinary(byte[] payload) {
+        return payload != null && payload.length >= 2 && payload[0] == MARKER;
+    }
+
+    /**
+     * Decodes a binary message.
+     * @param payload The raw payload
+     * @param offset Start of the message
+     * @param length Length of the message
+     * @param visitor Receives the known fields
+     * @return The message type ({@link #TYPE_PRINTER} or {@link #TYPE_UWB})
+     * @throws IllegalArgumentException If the message is malformed
+     */
+    public static int decode(byte[] payload, int offset, int length, Visitor visitor) {
+        return decode(payload, offset, length, visitor, null);
+    }
+
+    /**
+     * Decodes a binary message and takes its tracing fields out on the way.
+     * @param payload The raw payload
+     * @param offset Start of the message
+     * @param length Length of the message
+     * @param visitor Receives the known fields
+     * @param trace Reset and filled with the tracing fields, or null to skip them
+     * @return The message type ({@link #TYPE_PRINTER} or {@link #TYPE_UWB})
+     * @throws IllegalArgumentException If the message is malformed
+     */
+    public static int decode(byte[] payload, int offset, int length, Visitor visitor, MessageTrace trace) {
+        if (trace != null) {
+            trace.reset();
+        }
+        int end = offset + length;
+        if (length < 2 || payload[offset] != MARKER) {
+            throw new IllegalArgumentException("Not a binary message");
+        }
+        int type = payload[offset + 1];
+        if (type != TYPE_PRINTER && type != TYPE_UWB) {
+            throw new IllegalArgumentException("Unknown message type " + type);
+        }
+        int pos = offset + 2;
+        while (pos < end) {
+            // Varints are read inline, the position lives in a local
+            long tag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                checkAvailable(pos, 1, end);
+                b = payload[pos++];
+                tag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0 && shift < 64);
+            int id = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            // An oversized tag varint may leave a negative id
+            Field field = id >= 0 && id < MAX_ID ? FIELDS_BY_ID[type][id] : null;
+            if (field != null && field.kind.wireType != wireType) {
+                field = null; // same id with another encoding: treat as unknown
+            }
+
+            switch (wireType) {
+                case WIRE_VARINT: {
+                    long value = 0;
+                    shift = 0;
+                    do {
+                        checkAvailable(pos, 1, end);
+                        b = payload[pos++];
+                        value |= (long) (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0 && shift < 64);
+                    if (field != null) {
+                        visitor.onInteger(field, value);
+                    } else if (trace != null) {
+                        if (id == PUBLISH_TIME_ID) {
+                            trace.setPublishMicros(value);
+                        } else if (id == TRACE_ID_ID) {
+                            trace.setTraceId(value);
+                        }
+                    }
+                    break;
+                }
+                case WIRE_FIXED64:
+                    checkAvailable(pos, 8, end);
+                    if (field != null) {
+                        visitor.onNumber(field, Double.longBitsToDouble(readLong(payload, pos)));
+                    }
+                    pos += 8;
+                    break;
+                case WIRE_FIXED32:
+                    checkAvailable(pos, 4, end);
+                    if (field != null) {
+                        visitor.onNumber(field, widen(Float.intBitsToFloat(readInt(payload, pos))));
+                    }
+                    pos += 4;
+                    break;
+                case WIRE_LENGTH: {
+                    int valueLength = 0;
+                    shift = 0;
+                    do {
+                        checkAvailable(pos, 1, end);
+                        b = payload[pos++];
+                        valueLength |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0 && shift < 32);
+                    if (valueLength < 0) {
+                        throw new IllegalArgumentException("Negative length");
+                    }
+                    checkAvailable(pos, valueLength, end);
+                    if (field != null) {
+                        visitor.onString(field, payload, pos, valueLength);
+                    }
+                    pos += valueLength;
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown wire type " + wireType);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Decodes a binary message from a buffer, from its position to its limit.
+     * Heap buffers are decoded in place; direct buffers are copied once.
+     * @param buffer The message
+     * @param visitor Receives the known fields
+     * @return The message type
+     * @throws IllegalArgumentException If the message is malformed
+     */
+    public static int decode(ByteBuffer buffer, Visitor visitor) {
+        if (buffer.hasArray()) {
+            return decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), visitor);
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return decode(copy, 0, copy.length, visitor);
+    }
+
+    /**
+     * Decodes a binary message into the same key-value form the text parser produces.
+     * @param payload The raw payload
+     * @param out Receives the fields, keyed by their text protocol names
+     * @return The message type
+     * @throws IllegalArgumentException If the message is malformed
+     */
+    public static int decodeToMap(byte[] payload, Map<String, String> out) {
+        return decode(payload, 0, payload.length, new Visitor() {
+            @Override
+            public void onString(Field field, byte[] buffer, int offset, int length) {
+                out.put(field.key, new String(buffer, offset, length, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onNumber(Field field, double value) {
+                out.put(field.key, field.kind == Kind.FLOAT ? Float.toString((float) value) : Double.toString(value));
+            }
+
+            @Override
+            public void onInteger(Field field, long value) {
+                // Same spelling as the text protocol
+                out.put(field.key, field.kind == Kind.BOOLEAN ? (value != 0 ? "True" : "False") : Long.toString(value));
+            }
+        });
+    }
+
+    /**
+     * Converts a float to the double a text parser would produce for its short decimal form,
+     * so e.g. 23.12f becomes 23.12 rather than 23.1200008392334.
+     * Values with more than four decimals are widened unchanged.
+     * @param value The float value
+     * @return The double value
+     */
+    static double widen(float value) {
+        if (Math.abs(value) < 1e9f) {
+            // Both operands are exact, so the division is correctly rounded
+            double rounded = Math.round(value * 10000.0) / 10000.0;
+            if ((float) rounded == value) {
+                return rounded;
+            }
+        }
+        return value;
+    }
+
+    private static void checkAvailable(int pos, int count, int end) {
+        // Compared without adding, so a huge length cannot overflow past the check
+        if (count > end - pos) {
+            throw new IllegalArgumentException("Truncated message");
+        }
+    }
+
+    private static long readLong(byte[] buffer, int pos) {
+        return ((long) readInt(buffer, pos) << 32) | (readInt(buffer, pos + 4) & 0xFFFFFFFFL);
+    }
+
+    private static int readInt(byte[] buffer, int pos) {
+        return ((buffer[pos] & 0xFF) << 24) | ((buffer[pos + 1] & 0xFF) << 16)
+                | ((buffer[pos + 2] & 0xFF) << 8) | (buffer[pos + 3] & 0xFF);
+    }
+
+    /**
+     * Reference encoder, e.g. for a bench publisher converting line protocol messages.
+     * Reuses its buffer between messages; not thread-safe.
+     */
+    public static final class Encoder {
+        private byte[] buffer = new byte[256];
+        private int length;
+
+        /**
+         * Starts a new message.
+         * @param messageType {@link #TYPE_PRINTER} or {@link #TYPE_UWB}
+         * @return This encoder
+         */
+        public Encoder begin(int messageType) {
+            length = 0;
+            writeByte(MARKER);
+            writeByte(messageType);
+            return this;
+        }
+
+        /**
+         * Adds a text field.
+         * @param field The field, must be of kind STRING
+         * @param value The value
+         * @return This encoder
+         */
+        public Encoder putString(Field field, String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeTag(field, Kind.STRING);
+            writeVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buffer, length, utf8.length);
+            length += utf8.length;
+            return this;
+        }
+
+        /**
+         * Adds a float or double field.
+         * @param field The field, must be of kind FLOAT or DOUBLE
+         * @param value The value
+         * @return This encoder
+         */
+        public Encoder putNumber(Field field, double value) {
+            if (field.kind == Kind.FLOAT) {
+                writeTag(field, Kind.FLOAT);
+                writeInt(Float.floatToIntBits((float) value));
+            } else {
+                writeTag(field, Kind.DOUBLE);
+                long bits = Double.doubleToLongBits(value);
+                writeInt((int) (bits >>> 32));
+                writeInt((int) bits);
+            }
+            return this;
+        }
+
+        /**
+         * Adds an integer or boolean field.
+         * @param field The field, must be of kind INTEGER or BOOLEAN
+         * @param value The value (0/1 for booleans)
+         * @return This encoder
+         */
+        public Encoder putInteger(Field field, long value) {
+            if (field.kind != Kind.INTEGER && field.kind != Kind.BOOLEAN) {
+                throw new IllegalArgumentException(field + " is not an integer field");
+            }
+            writeVarint(((long) field.id << 3) | WIRE_VARINT);
+            writeVarint(value);
+            return this;
+        }
+
+        /**
+         * Adds the tracing fields; headsets that do not trace skip them like any unknown field.
+         * @param traceId The trace id
+         * @param publishMicros Send time in microseconds since the epoch on the publisher's clock
+         * @return This encoder
+         */
+        public Encoder putTrace(long traceId, long publishMicros) {
+            writeVarint(((long) TRACE_ID_ID << 3) | WIRE_VARINT);
+            writeVarint(traceId);
+            writeVarint(((long) PUBLISH_TIME_ID << 3) | WIRE_VARINT);
+            writeVarint(publishMicros);
+            return this;
+        }
+
+        /**
+         * Adds every known field of a parsed text message; unknown keys and unparsable numbers are skipped.
+         * @param messageType {@link #TYPE_PRINTER} or {@link #TYPE_UWB}
+         * @param fields The fields as produced by {@link DataParser}
+         * @return This encoder
+         */
+        public Encoder putAll(int messageType, Map<String, String> fields) {
+            Map<String, Field> known = messageType == TYPE_PRINTER ? PRINTER_FIELDS_BY_KEY : UWB_FIELDS_BY_KEY;
+            for (Map.Entry<String, String> entry : fields.entrySet()) {
+                Field field = known.get(entry.getKey());
+                if (field == null) {
+                    continue;
+                }
+                String value = entry.getValue();
+                try {
+                    switch (field.kind) {
+                        case STRING:
+                            putString(field, value);
+                            break;
+                        case FLOAT:
+                        case DOUBLE:
+                            putNumber(field, Double.parseDouble(value));
+                            break;
+                        case INTEGER:
+                            putInteger(field, (long) Double.parseDouble(value));
+                            break;
+                        case BOOLEAN:
+                            putInteger(field, "true".equalsIgnoreCase(value) ? 1 : 0);
+                            break;
+                    }
+                } catch (NumberFormatException e) {
+                    // Not a number: leave the field out rather than send garbage
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return A copy of the encoded message
+         */
+        public byte[] toByteArray() {
+            byte[] message = new byte[length];
+            System.arraycopy(buffer, 0, message, 0, length);
+            return message;
+        }
+
+        /**
+         * @return Length of the encoded message
+         */
+        public int length() {
+            return length;
+        }
+
+        private void writeTag(Field field, Kind expected) {
+            if (field.kind != expected) {
+                throw new IllegalArgumentException(field + " is not of kind " + expected);
+            }
+            writeVarint(((long) field.id << 3) | expected.wireType);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private void writeInt(int value) {
+            writeByte(value >>> 24);
+            writeByte(value >>> 16);
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[length++] = (byte) value;
+        }
+
+        private void ensure(int count) {
+            if (length + count > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, length + count)];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+        }
+    }
+}
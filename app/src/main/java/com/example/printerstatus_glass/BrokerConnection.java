@@ -0,0 +1,508 @@
+package com.example.printerstatus_glass;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One broker of the {@link MqttHandler} pool with the topics routed to it.
+ * A {@link ConnectionSupervisor} keeps the connection up. Once the current broker has been
+ * unreachable for the failover time, or has not delivered a health probe in time, the next
+ * attempt goes to the next of its URLs, and since every connection starts a clean session
+ * the broker's subscriptions are replayed there.
+ * Health probes are published to a topic of this client on the broker itself, so their
+ * round trip is the broker's delivery latency: a broker that still answers keep-alives but
+ * is too overloaded to deliver counts as down.
+ */
+public class BrokerConnection {
+    public static final long DEFAULT_FAILOVER_MILLIS = 5000;
+    public static final long DEFAULT_HEALTH_INTERVAL_MILLIS = 2000;
+    public static final long DEFAULT_HEALTH_TIMEOUT_MILLIS = 5000;
+    public static final String HEALTH_TOPIC_PREFIX = "sf/health/";
+    private static final int QOS = 1; // Same as the blocking client's default
+
+    /**
+     * Receives the messages of every broker of the pool, on Paho's callback threads.
+     */
+    interface Sink {
+        /**
+         * Must only hand the payload over; Paho acks once this returns.
+         * @param topic The MQTT topic
+         * @param payload The raw payload
+         * @param arrivalNanos Arrival time in System.nanoTime() base
+         */
+        void onMessage(String topic, byte[] payload, long arrivalNanos);
+    }
+
+    // Logs failures of asynchronous requests
+    private static final IMqttActionListener LOG_FAILURE = new IMqttActionListener() {
+        @Override
+        public void onSuccess(IMqttToken asyncActionToken) {
+        }
+
+        @Override
+        public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+            Log.e("MQTT", "Request failed for " + Arrays.toString(asyncActionToken.getTopics()), exception);
+        }
+    };
+
+    private final String name;
+    private final String[] urls;
+    private final String clientId;
+    private final String healthTopic;
+    private final ScheduledExecutorService scheduler;
+    private final Sink sink;
+    private final long failoverNanos;
+    private final long healthIntervalMillis;
+    private final long healthTimeoutNanos;
+    private final ConnectionSupervisor supervisor;
+    private final MqttConnectOptions connectOptions = new MqttConnectOptions();
+
+    // Client of the current broker, replaced on failover; guarded by this
+    private MqttAsyncClient client;
+    private int urlIndex;
+    private boolean switchBroker;
+    private long downSinceNanos;
+
+    // Topics routed to this broker; guarded by itself together with connected
+    private final Set<String> subscriptions = new LinkedHashSet<>();
+    private boolean connected;
+    private volatile ConnectionSupervisor.State state = ConnectionSupervisor.State.DISCONNECTED;
+
+    private volatile ScheduledFuture<?> healthCheck;
+    // Send time of the probe waiting for its echo, 0 if none
+    private volatile long probeSentNanos;
+
+    // Instrumentation
+    private volatile long messages;
+    private volatile long failovers;
+    private volatile long healthFailures;
+    private final LatencyHistogram probeLatency = new LatencyHistogram();
+    private long lastSampleNanos;
+    private long lastSampleMessages;
+
+    /**
+     * Creates the connection; nothing happens before {@link #start}.
+     * @param name Name of the broker in the routes
+     * @param urls Primary URL followed by the standby URLs
+     * @param clientId Client identifier, unique per broker
+     * @param scheduler Runs reconnect attempts and health checks
+     * @param sink Receives every message
+     * @param initialBackoffMillis Upper bound of the delay before the first reconnect attempt
+     * @param maxBackoffMillis Upper bound of the delay between reconnect attempts
+     * @param failoverMillis Time a broker may be unreachable before the next URL is tried
+     * @param healthIntervalMillis Time between health probes, 0 for none
+     * @param healthTimeoutMillis Time after which an undelivered probe fails the broker over
+     */
+    BrokerConnection(String name, String[] urls, String clientId, ScheduledExecutorService scheduler, Sink sink,
+                     long initialBackoffMillis, long maxBackoffMillis,
+                     long failoverMillis, long healthIntervalMillis, long healthTimeoutMillis) {
+        this.name = name;
+        this.urls = urls;
+        this.clientId = clientId;
+        this.healthTopic = HEALTH_TOPIC_PREFIX + clientId;
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.failoverNanos = TimeUnit.MILLISECONDS.toNanos(failoverMillis);
+        this.healthIntervalMillis = healthIntervalMillis;
+        this.healthTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(healthTimeoutMillis);
+        // Reconnecting is up to the supervisor; start with a clean session
+        connectOptions.setCleanSession(true);
+        connectOptions.setAutomaticReconnect(false);
+        supervisor = new ConnectionSupervisor(this::attemptConnect, scheduler,
+                initialBackoffMillis, maxBackoffMillis, new Random());
+        supervisor.addListener(state -> {
+            this.state = state;
+            if (state == ConnectionSupervisor.State.CONNECTED) {
+                Log.d("MQTT", "Connected to " + name + " at " + getUrl());
+                onConnected();
+            }
+        });
+    }
+
+    /**
+     * Starts connecting in the background, and the health checks.
+     */
+    void start() {
+        synchronized (this) {
+            downSinceNanos = System.nanoTime();
+        }
+        supervisor.start();
+        if (healthIntervalMillis > 0) {
+            healthCheck = scheduler.scheduleAtFixedRate(this::checkHealth,
+                    healthIntervalMillis, healthIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts one connection attempt on behalf of the supervisor, on the next URL if the
+     * current broker has been down for the failover time or failed its health check.
+     * @param callback Receives the outcome
+     */
+    private void attemptConnect(ConnectionSupervisor.ConnectCallback callback) {
+        MqttAsyncClient stale = null;
+        MqttAsyncClient current;
+        try {
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (client != null && (switchBroker || urls.length > 1 && now - downSinceNanos >= failoverNanos)) {
+                    if (urls.length > 1) {
+                        urlIndex = (urlIndex + 1) % urls.length;
+                        failovers++;
+                        Log.w("MQTT", "Failing over " + name + " to " + urls[urlIndex]);
+                    }
+                    switchBroker = false;
+                    downSinceNanos = now;
+                    stale = client;
+                    client = null;
+                }
+                if (client == null) {
+                    client = createClient(urls[urlIndex]);
+                }
+                current = client;
+            }
+        } catch (MqttException e) {
+            callback.onFailed(e);
+            return;
+        } finally {
+            if (stale != null) {
+                close(stale);
+            }
+        }
+        try {
+            current.connect(connectOptions, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    callback.onConnected();
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    Log.e("MQTT", "Connect to " + name + " failed", exception);
+                    callback.onFailed(exception);
+                }
+            });
+        } catch (MqttException e) {
+            callback.onFailed(e);
+        }
+    }
+
+    /**
+     * Creates a client for one broker URL; events of clients replaced since are ignored.
+     */
+    private MqttAsyncClient createClient(String url) throws MqttException {
+        // Use memory persistence for temporary storage of messages
+        MqttAsyncClient created = new MqttAsyncClient(url, clientId, new MemoryPersistence());
+        created.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+                synchronized (BrokerConnection.this) {
+                    if (created != client) {
+                        return;
+                    }
+                    downSinceNanos = System.nanoTime();
+                }
+                Log.e("MQTT", "Connection to " + name + " lost", cause);
+                synchronized (subscriptions) {
+                    connected = false;
+                }
+                supervisor.connectionLost(cause);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                long arrival = System.nanoTime();
+                if (topic.equals(healthTopic)) {
+                    onProbe(message.getPayload(), arrival);
+                    return;
+                }
+                messages++;
+                sink.onMessage(topic, message.getPayload(), arrival);
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                // Only QoS 0 publishes: clock pings and health probes
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Drops a replaced client without waiting for the broker.
+     */
+    private void close(MqttAsyncClient stale) {
+        try {
+            if (stale.isConnected()) {
+                stale.disconnectForcibly(0, 100);
+            }
+            stale.close();
+        } catch (MqttException e) {
+            Log.e("MQTT", "Replaced client of " + name + " not closed", e);
+        }
+    }
+
+    /**
+     * Replays every subscription, and the health topic, on the fresh session.
+     */
+    private void onConnected() {
+        synchronized (this) {
+            downSinceNanos = 0;
+        }
+        probeSentNanos = 0;
+        String[] topics;
+        synchronized (subscriptions) {
+            connected = true;
+            topics = new String[subscriptions.size() + 1];
+            topics[0] = healthTopic;
+            int i = 1;
+            for (String topic : subscriptions) {
+                topics[i++] = topic;
+            }
+        }
+        sendSubscribe(topics);
+    }
+
+    /**
+     * Sends a probe, or fails the broker over if the previous one was not delivered in time.
+     */
+    private void checkHealth() {
+        if (!isConnected()) {
+            return;
+        }
+        long sent = probeSentNanos;
+        long now = System.nanoTime();
+        if (sent == 0) {
+            probeSentNanos = now;
+            publish(healthTopic, ByteBuffer.allocate(Long.BYTES).putLong(now).array());
+        } else if (now - sent >= healthTimeoutNanos) {
+            onHealthCheckFailed();
+        }
+    }
+
+    /**
+     * Records the round trip of a returning probe.
+     */
+    private void onProbe(byte[] payload, long arrivalNanos) {
+        if (payload.length != Long.BYTES) {
+            return;
+        }
+        long sent = ByteBuffer.wrap(payload).getLong();
+        if (sent == probeSentNanos) {
+            probeLatency.record(arrivalNanos - sent, arrivalNanos);
+            probeSentNanos = 0;
+        }
+    }
+
+    /**
+     * Treats the broker as lost; the supervisor's next attempt goes to the next URL.
+     */
+    private void onHealthCheckFailed() {
+        synchronized (subscriptions) {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+        }
+        healthFailures++;
+        synchronized (this) {
+            switchBroker = true;
+            downSinceNanos = System.nanoTime();
+        }
+        probeSentNanos = 0;
+        Log.e("MQTT", "Health probe of " + name + " not delivered");
+        supervisor.connectionLost(new IOException("Health probe not delivered"));
+    }
+
+    /**
+     * Stops reconnecting and the health checks, and disconnects from the broker.
+     */
+    void stop() {
+        supervisor.stop();
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+        synchronized (subscriptions) {
+            connected = false;
+        }
+        MqttAsyncClient current;
+        synchronized (this) {
+            current = client;
+        }
+        try {
+            if (current != null && current.isConnected()) {
+                current.disconnect();
+            }
+        } catch (MqttException e) {
+            Log.e("MQTT", "Disconnect from " + name + " failed", e);
+        }
+    }
+
+    /**
+     * Subscribes to topics, as soon as the connection is up if it is not.
+     * @param topics The topics to subscribe to
+     */
+    void subscribe(String[] topics) {
+        synchronized (subscriptions) {
+            subscriptions.addAll(Arrays.asList(topics));
+            if (!connected) {
+                return;
+            }
+        }
+        sendSubscribe(topics);
+    }
+
+    private void sendSubscribe(String[] topics) {
+        int[] qos = new int[topics.length];
+        Arrays.fill(qos, QOS);
+        try {
+            currentClient().subscribe(topics, qos, null, LOG_FAILURE);
+        } catch (MqttException e) {
+            Log.e("MQTT", "Subscribe on " + name + " failed", e);
+        }
+    }
+
+    /**
+     * Unsubscribes from topics.
+     * @param topics The topics to unsubscribe from
+     */
+    void unsubscribe(String[] topics) {
+        synchronized (subscriptions) {
+            subscriptions.removeAll(Arrays.asList(topics));
+            if (!connected) {
+                return;
+            }
+        }
+        try {
+            currentClient().unsubscribe(topics, null, LOG_FAILURE);
+        } catch (MqttException e) {
+            Log.e("MQTT", "Unsubscribe on " + name + " failed", e);
+        }
+    }
+
+    /**
+     * Publishes at QoS 0; dropped while disconnected.
+     * @param topic The topic
+     * @param payload The payload
+     */
+    void publish(String topic, byte[] payload) {
+        synchronized (subscriptions) {
+            if (!connected) {
+                return;
+            }
+        }
+        try {
+            currentClient().publish(topic, payload, 0, false, null, LOG_FAILURE);
+        } catch (MqttException e) {
+            Log.e("MQTT", "Publish on " + name + " failed", e);
+        }
+    }
+
+    private synchronized MqttAsyncClient currentClient() {
+        return client;
+    }
+
+    /**
+     * @return True while the connection to the current broker is up
+     */
+    public boolean isConnected() {
+        synchronized (subscriptions) {
+            return connected;
+        }
+    }
+
+    /**
+     * @return The last state of the connection, readable without the supervisor's lock
+     */
+    ConnectionSupervisor.State getState() {
+        return state;
+    }
+
+    /**
+     * @return Name of the broker in the routes
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return URL of the broker currently used, primary or standby
+     */
+    public synchronized String getUrl() {
+        return urls[urlIndex];
+    }
+
+    /**
+     * @return The supervisor of the connection
+     */
+    public ConnectionSupervisor getSupervisor() {
+        return supervisor;
+    }
+
+    /**
+     * @return Topics routed to this broker
+     */
+    public String[] getSubscriptions() {
+        synchronized (subscriptions) {
+            return subscriptions.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * @return Messages received from this broker, health probes excluded
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * Computes the message rate since the previous call.
+     * @return Messages per second received from this broker, 0 on the first call
+     */
+    public synchronized double sampleThroughput() {
+        long now = System.nanoTime();
+        long count = messages;
+        double rate = lastSampleNanos == 0 ? 0 : (count - lastSampleMessages) * 1e9 / (now - lastSampleNanos);
+        lastSampleNanos = now;
+        lastSampleMessages = count;
+        return rate;
+    }
+
+    /**
+     * @return Round trips of the health probes through the broker, in nanoseconds
+     */
+    public LatencyHistogram getProbeLatency() {
+        return probeLatency;
+    }
+
+    /**
+     * @return Times the connection moved on to the next URL
+     */
+    public long getFailovers() {
+        return failovers;
+    }
+
+    /**
+     * @return Health probes the broker did not deliver in time
+     */
+    public long getHealthFailures() {
+        return healthFailures;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.printerstatus_glass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which broker serves which topics, for the connection pool of {@link MqttHandler}.
+ * Every broker has a name and one or more URLs: the first is the primary, the others are
+ * standbys taken in turn when the current one fails. A topic goes to the broker of its zone
+ * if it is a printer topic routed by zone (zones are keyed by the printer topics that
+ * {@link PrinterTopicSelector} resolves), else to the broker of the longest matching prefix,
+ * else to the first broker. Topic filters with wildcards are routed by their literal prefix.
+ * Routes are set up before connecting and not changed afterwards.
+ */
+public class BrokerRoutes {
+    private final List<String> names = new ArrayList<>();
+    private final List<String[]> urls = new ArrayList<>();
+    // Prefix routes, longest prefix first
+    private final List<String> prefixes = new ArrayList<>();
+    private final List<Integer> prefixBrokers = new ArrayList<>();
+    private final Map<String, Integer> zones = new HashMap<>();
+
+    /**
+     * @param url The broker URL
+     * @return Routes sending every topic to one broker without standby
+     */
+    public static BrokerRoutes single(String url) {
+        return new BrokerRoutes().addBroker("default", url);
+    }
+
+    /**
+     * Adds a broker; the first one added also takes every topic no route matches.
+     * @param name Unique name of the broker, e.g. the hall it serves
+     * @param urls The primary URL followed by the standby URLs
+     * @return These routes
+     */
+    public BrokerRoutes addBroker(String name, String... urls) {
+        if (urls.length == 0 || names.contains(name)) {
+            throw new IllegalArgumentException("Broker " + name + " needs a unique name and a URL");
+        }
+        names.add(name);
+        this.urls.add(urls.clone());
+        return this;
+    }
+
+    /**
+     * Routes every topic starting with a prefix, e.g. {@code sf/UWB/}, to a broker.
+     * @param prefix The topic prefix
+     * @param broker Name of an added broker
+     * @return These routes
+     */
+    public BrokerRoutes routePrefix(String prefix, String broker) {
+        int index = indexOf(broker);
+        int position = 0;
+        while (position < prefixes.size() && prefixes.get(position).length() >= prefix.length()) {
+            position++;
+        }
+        prefixes.add(position, prefix);
+        prefixBrokers.add(position, index);
+        return this;
+    }
+
+    /**
+     * Routes the printer topic of a zone to a broker.
+     * @param zoneTopic Printer topic of the zone, as returned by {@link PrinterTopicSelector}
+     * @param broker Name of an added broker
+     * @return These routes
+     */
+    public BrokerRoutes routeZone(String zoneTopic, String broker) {
+        zones.put(zoneTopic, indexOf(broker));
+        return this;
+    }
+
+    /**
+     * @param topic A topic or topic filter
+     * @return Index of the broker that serves it
+     */
+    public int route(String topic) {
+        Integer zone = zones.get(topic);
+        if (zone != null) {
+            return zone;
+        }
+        for (int i = 0; i < prefixes.size(); i++) {
+            if (topic.startsWith(prefixes.get(i))) {
+                return prefixBrokers.get(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return Number of brokers
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @param index Index of a broker
+     * @return Its name
+     */
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * @param index Index of a broker
+     * @return Its primary URL followed by the standby URLs
+     */
+    public String[] getUrls(int index) {
+        return urls.get(index).clone();
+    }
+
+    private int indexOf(String broker) {
+        int index = names.indexOf(broker);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown broker " + broker);
+        }
+        return index;
+    }
+}
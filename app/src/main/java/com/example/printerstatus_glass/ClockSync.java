@@ -0,0 +1,205 @@
+package com.example.printerstatus_glass;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates the offset between the headset's clock and the publishers' clock with
+ * NTP-style pings over the broker, so publish timestamps can be compared with local
+ * arrival and render times.
+ * The headset publishes a ping with its send time t0 on {@link #getPingTopic()}; an echo
+ * responder on the publisher side (see {@link #answer}) stamps its receive time t1 and
+ * send time t2 and publishes the pong on {@link #getPongTopic()}, where it arrives at t3:
+ * <pre>
+ * offset = ((t1 - t0) + (t2 - t3)) / 2    publisher clock minus headset clock
+ * delay  = (t3 - t0) - (t2 - t1)          round trip without the responder's turnaround
+ * </pre>
+ * Queueing makes paths asymmetric and inflates the delay, so like NTP the estimate is the
+ * offset of the sample with the smallest delay among the last {@link #SAMPLES} pongs.
+ * Pings and pongs are handled on different threads; all state is guarded by this.
+ */
+public class ClockSync {
+    public static final String PING_TOPIC_PREFIX = "sf/clock/ping/";
+    public static final String PONG_TOPIC_PREFIX = "sf/clock/pong/";
+    // Responders subscribe to the pings of every headset
+    public static final String PING_WILDCARD = PING_TOPIC_PREFIX + "+";
+    static final int SAMPLES = 8;
+    private static final int PING_LENGTH = 16;
+    private static final int PONG_LENGTH = 32;
+
+    // Microsecond wall clock that cannot jump: wall time at class load, advanced by nanoTime
+    private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private final String pingTopic;
+    private final String pongTopic;
+    private long sequence;
+    private final long[] offsets = new long[SAMPLES];
+    private final long[] delays = new long[SAMPLES];
+    private int samples;
+    private int next;
+    private long offsetMicros;
+    private long delayMicros;
+
+    /**
+     * @param clientId Id of this headset; its pings and pongs use their own topics
+     */
+    public ClockSync(String clientId) {
+        pingTopic = PING_TOPIC_PREFIX + clientId;
+        pongTopic = PONG_TOPIC_PREFIX + clientId;
+    }
+
+    /**
+     * @return Current time in microseconds since the epoch on this clock
+     */
+    public static long nowMicros() {
+        return toMicros(System.nanoTime());
+    }
+
+    /**
+     * @param nanos A time in System.nanoTime() base
+     * @return The same time in microseconds since the epoch
+     */
+    public static long toMicros(long nanos) {
+        return BASE_MICROS + (nanos - BASE_NANOS) / 1000;
+    }
+
+    /**
+     * @param micros A time in microseconds since the epoch on this clock
+     * @return The same time in System.nanoTime() base
+     */
+    public static long toNanos(long micros) {
+        return BASE_NANOS + (micros - BASE_MICROS) * 1000;
+    }
+
+    /**
+     * @param topic The MQTT topic of a message
+     * @return True if the message is a pong to some headset
+     */
+    public static boolean isPongTopic(String topic) {
+        return topic.startsWith(PONG_TOPIC_PREFIX);
+    }
+
+    /**
+     * @return The topic this headset's pings are published on
+     */
+    public String getPingTopic() {
+        return pingTopic;
+    }
+
+    /**
+     * @return The topic the answers to this headset's pings arrive on
+     */
+    public String getPongTopic() {
+        return pongTopic;
+    }
+
+    /**
+     * Builds the next ping: sequence number and send time t0.
+     * @param sendMicros Send time on this clock
+     * @return The ping payload
+     */
+    public synchronized byte[] createPing(long sendMicros) {
+        return ByteBuffer.allocate(PING_LENGTH).putLong(++sequence).putLong(sendMicros).array();
+    }
+
+    /**
+     * Answers a ping on the responder's side.
+     * @param ping The ping payload
+     * @param receiveMicros When the ping arrived (t1), on the responder's clock
+     * @param sendMicros When the pong is sent (t2), on the responder's clock
+     * @return The pong payload, or null if the ping is malformed
+     */
+    public static byte[] answer(byte[] ping, long receiveMicros, long sendMicros) {
+        if (ping == null || ping.length != PING_LENGTH) {
+            return null;
+        }
+        return ByteBuffer.allocate(PONG_LENGTH).put(ping).putLong(receiveMicros).putLong(sendMicros).array();
+    }
+
+    /**
+     * @param pingTopic A topic pings are published on
+     * @return The topic the pong to it goes to, or null if it is no ping topic
+     */
+    public static String pongTopicFor(String pingTopic) {
+        if (!pingTopic.startsWith(PING_TOPIC_PREFIX)) {
+            return null;
+        }
+        return PONG_TOPIC_PREFIX + pingTopic.substring(PING_TOPIC_PREFIX.length());
+    }
+
+    /**
+     * Takes one offset sample from a pong.
+     * Pongs to pings older than the sample window, and impossible ones, are ignored.
+     * @param pong The pong payload
+     * @param arrivalMicros When the pong arrived (t3), on this clock
+     * @return True if the pong was used
+     */
+    public synchronized boolean onPong(byte[] pong, long arrivalMicros) {
+        if (pong == null || pong.length != PONG_LENGTH) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pong);
+        long pingSequence = buffer.getLong();
+        long t0 = buffer.getLong();
+        long t1 = buffer.getLong();
+        long t2 = buffer.getLong();
+        long t3 = arrivalMicros;
+        long delay = (t3 - t0) - (t2 - t1);
+        if (pingSequence > sequence || pingSequence <= sequence - SAMPLES || delay < 0 || t2 < t1) {
+            return false;
+        }
+
+        offsets[next] = ((t1 - t0) + (t2 - t3)) / 2;
+        delays[next] = delay;
+        next = (next + 1) % SAMPLES;
+        samples = Math.min(samples + 1, SAMPLES);
+
+        // Least queued sample of the window; the window also lets the estimate follow drift
+        int best = 0;
+        for (int i = 1; i < samples; i++) {
+            if (delays[i] < delays[best]) {
+                best = i;
+            }
+        }
+        offsetMicros = offsets[best];
+        delayMicros = delays[best];
+        return true;
+    }
+
+    /**
+     * @return True once at least one pong was received
+     */
+    public synchronized boolean hasEstimate() {
+        return samples > 0;
+    }
+
+    /**
+     * @return Estimated publisher clock minus headset clock in microseconds
+     */
+    public synchronized long getOffsetMicros() {
+        return offsetMicros;
+    }
+
+    /**
+     * @return Round trip of the sample the offset comes from, in microseconds; half of it bounds the error
+     */
+    public synchronized long getDelayMicros() {
+        return delayMicros;
+    }
+
+    /**
+     * @return Number of samples in the window
+     */
+    public synchronized int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Converts a publisher timestamp to this clock.
+     * @param remoteMicros Time on the publisher's clock
+     * @return The same time on this clock
+     */
+    public synchronized long toLocalMicros(long remoteMicros) {
+        return remoteMicros - offsetMicros;
+    }
+}
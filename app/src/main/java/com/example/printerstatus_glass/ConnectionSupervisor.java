@@ -0,0 +1,274 @@
+package com.example.printerstatus_glass;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a broker connection up: failed attempts and lost connections are retried with
+ * exponential backoff and jitter, so a hall full of headsets does not hammer a broker
+ * that just came back. The current state is observable for the HUD, and the time from
+ * losing a connection to having it back is recorded.
+ * Listeners are called on the thread that caused the state change and must not block.
+ */
+public class ConnectionSupervisor {
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30_000;
+
+    /**
+     * Connection state as shown to the wearer.
+     */
+    public enum State {
+        /** Not started yet */
+        DISCONNECTED,
+        /** First connection attempt(s) in progress */
+        CONNECTING,
+        /** Connected to the broker */
+        CONNECTED,
+        /** Connection was lost, retrying */
+        RECONNECTING,
+        /** Stopped on purpose, no more attempts */
+        STOPPED
+    }
+
+    /**
+     * Starts one asynchronous connection attempt.
+     */
+    public interface Connector {
+        /**
+         * Starts connecting; exactly one of the callback methods must be called eventually.
+         * @param callback Receives the outcome of the attempt
+         */
+        void connect(ConnectCallback callback);
+    }
+
+    /**
+     * Outcome of a connection attempt.
+     */
+    public interface ConnectCallback {
+        /**
+         * Called when the attempt succeeded.
+         */
+        void onConnected();
+
+        /**
+         * Called when the attempt failed.
+         * @param cause The reason of the failure
+         */
+        void onFailed(Throwable cause);
+    }
+
+    /**
+     * Observes state changes.
+     */
+    public interface Listener {
+        /**
+         * Called after the state changed.
+         * @param state The new state
+         */
+        void onStateChanged(State state);
+    }
+
+    private final Connector connector;
+    private final ScheduledExecutorService scheduler;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Random random;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.DISCONNECTED;
+    private int failures;
+    private ScheduledFuture<?> retry;
+    // Identifies the current attempt, so outcomes of abandoned attempts are ignored
+    private long attempt;
+    private long lostAtNanos;
+
+    // Instrumentation
+    private long attempts;
+    private long connectionsLost;
+    private long lastRecoveryMillis = -1;
+    private final LatencyHistogram recoveryTimes = new LatencyHistogram();
+
+    /**
+     * Creates a supervisor with the default backoff.
+     * @param connector Starts connection attempts
+     * @param scheduler Runs delayed retries
+     */
+    public ConnectionSupervisor(Connector connector, ScheduledExecutorService scheduler) {
+        this(connector, scheduler, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, new Random());
+    }
+
+    /**
+     * Creates a supervisor.
+     * @param connector Starts connection attempts
+     * @param scheduler Runs delayed retries
+     * @param initialBackoffMillis Upper bound of the delay before the first retry
+     * @param maxBackoffMillis Upper bound of the delay between retries
+     * @param random Source of the jitter
+     */
+    public ConnectionSupervisor(Connector connector, ScheduledExecutorService scheduler,
+                                long initialBackoffMillis, long maxBackoffMillis, Random random) {
+        this.connector = connector;
+        this.scheduler = scheduler;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.random = random;
+    }
+
+    /**
+     * @param listener Notified about every state change
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts the first connection attempt. Does nothing if already started.
+     */
+    public void start() {
+        synchronized (this) {
+            if (state != State.DISCONNECTED) {
+                return;
+            }
+            setState(State.CONNECTING);
+        }
+        attemptConnect();
+    }
+
+    /**
+     * Reports that an established connection was lost; reconnecting starts after a short backoff.
+     * @param cause The reason of the loss, may be null
+     */
+    public synchronized void connectionLost(Throwable cause) {
+        if (state != State.CONNECTED) {
+            return;
+        }
+        connectionsLost++;
+        lostAtNanos = System.nanoTime();
+        failures = 0;
+        setState(State.RECONNECTING);
+        scheduleRetry();
+    }
+
+    /**
+     * Stops all attempts; the supervisor cannot be restarted.
+     */
+    public synchronized void stop() {
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
+        attempt++;
+        setState(State.STOPPED);
+    }
+
+    private void attemptConnect() {
+        final long current;
+        synchronized (this) {
+            if (state == State.STOPPED || state == State.CONNECTED) {
+                return;
+            }
+            retry = null;
+            attempts++;
+            current = ++attempt;
+        }
+        connector.connect(new ConnectCallback() {
+            @Override
+            public void onConnected() {
+                onAttemptSucceeded(current);
+            }
+
+            @Override
+            public void onFailed(Throwable cause) {
+                onAttemptFailed(current);
+            }
+        });
+    }
+
+    private synchronized void onAttemptSucceeded(long current) {
+        if (current != attempt || state == State.STOPPED) {
+            return;
+        }
+        failures = 0;
+        if (lostAtNanos != 0) {
+            long recoveryNanos = System.nanoTime() - lostAtNanos;
+            recoveryTimes.record(recoveryNanos);
+            lastRecoveryMillis = TimeUnit.NANOSECONDS.toMillis(recoveryNanos);
+            lostAtNanos = 0;
+        }
+        setState(State.CONNECTED);
+    }
+
+    private synchronized void onAttemptFailed(long current) {
+        if (current != attempt || state == State.STOPPED) {
+            return;
+        }
+        failures++;
+        scheduleRetry();
+    }
+
+    private void scheduleRetry() {
+        retry = scheduler.schedule(this::attemptConnect, nextBackoffMillis(failures), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the delay before the next attempt: the bound doubles with every failure up
+     * to the maximum, the delay is drawn uniformly from the upper half of the bound.
+     * @param failures Consecutive failed attempts so far
+     * @return Delay in milliseconds
+     */
+    long nextBackoffMillis(int failures) {
+        long bound = initialBackoffMillis << Math.min(failures, 20);
+        bound = Math.min(bound, maxBackoffMillis);
+        long half = bound / 2;
+        return half + (long) (random.nextDouble() * (bound - half));
+    }
+
+    private void setState(State newState) {
+        if (state == newState) {
+            return;
+        }
+        state = newState;
+        for (Listener listener : listeners) {
+            listener.onStateChanged(newState);
+        }
+    }
+
+    /**
+     * @return The current connection state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Number of connection attempts made
+     */
+    public synchronized long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return Number of established connections that were lost
+     */
+    public synchronized long getConnectionsLost() {
+        return connectionsLost;
+    }
+
+    /**
+     * @return Time from the last connection loss until it was back, -1 if it never recovered
+     */
+    public synchronized long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    /**
+     * @return Distribution of the times to recover, in nanoseconds
+     */
+    public LatencyHistogram getRecoveryTimes() {
+        return recoveryTimes;
+    }
+}
@@ -1,21 +1,151 @@
 package com.example.printerstatus_glass;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Singleton class that holds and manages printer and UWB data.
- * Provides thread-safe operations for data storage and retrieval.
+ * State is published as immutable, versioned snapshots: readers never lock and share
+ * the typed records, writers merge their update into a new snapshot and swap it in atomically.
+ * The last known state of every recently seen printer is kept in a bounded
+ * {@link PrinterStateStore}; snapshots expose the state of the active printer.
+ * State saved by a previous session can be restored at launch; it is flagged as
+ * restored until live data replaces it, so the HUD can mark it as stale.
+ * Values are stored as typed {@link PrinterStatus} and {@link Position} records; the
+ * Map-based methods remain for callers that still work with field names, such as
+ * {@link StateSnapshotFile}, and build a new map of formatted values on every call.
  */
 public class DataHolder {
-    // Singleton instance
-    private static DataHolder instance;
 
-    // Thread-safe storage for printer status data (key-value pairs)
-    private final Map<String, String> printerData = new HashMap<>();
+    /**
+     * Immutable view of all data at one point in time.
+     */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, null,
+                PrinterStatus.EMPTY, 0, false, Position.EMPTY, 0, false);
+
+        private final long version;
+        private final String activePrinterTopic;
+        private final PrinterStatus printerStatus;
+        private final long printerUpdateTime;
+        private final boolean printerRestored;
+        private final Position position;
+        private final long uwbUpdateTime;
+        private final boolean uwbRestored;
+
+        private Snapshot(long version, String activePrinterTopic, PrinterStatus printerStatus,
+                         long printerUpdateTime, boolean printerRestored,
+                         Position position, long uwbUpdateTime, boolean uwbRestored) {
+            this.version = version;
+            this.activePrinterTopic = activePrinterTopic;
+            this.printerStatus = printerStatus;
+            this.printerUpdateTime = printerUpdateTime;
+            this.printerRestored = printerRestored;
+            this.position = position;
+            this.uwbUpdateTime = uwbUpdateTime;
+            this.uwbRestored = uwbRestored;
+        }
+
+        /**
+         * Creates the successor of this snapshot with a different printer status.
+         */
+        private Snapshot withPrinter(String topic, PrinterStatus status, long updateTime, boolean restored) {
+            return new Snapshot(version + 1, topic, status, updateTime, restored, position, uwbUpdateTime, uwbRestored);
+        }
+
+        /**
+         * Creates the successor of this snapshot with a different position.
+         */
+        private Snapshot withUwb(Position position, long updateTime, boolean restored) {
+            return new Snapshot(version + 1, activePrinterTopic, printerStatus, printerUpdateTime, printerRestored,
+                    position, updateTime, restored);
+        }
 
-    // Thread-safe storage for UWB position data (key-value pairs)
-    private final Map<String, String> uwbData = new HashMap<>();
+        /**
+         * @return Monotonically increasing version, bumped by every update
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return Topic of the printer shown on the HUD, or null if none was selected
+         */
+        public String getActivePrinterTopic() {
+            return activePrinterTopic;
+        }
+
+        /**
+         * @return Status of the active printer; shared until the printer is updated
+         */
+        public PrinterStatus getPrinterStatus() {
+            return printerStatus;
+        }
+
+        /**
+         * Creates a map of the active printer's status, for code that still works with maps.
+         * @return Unmodifiable status data of the active printer
+         */
+        public Map<String, String> getPrinterData() {
+            return printerStatus.toMap();
+        }
+
+        /**
+         * @return Wall clock time of the active printer's last update, or 0 if it has no data
+         */
+        public long getPrinterUpdateTime() {
+            return printerUpdateTime;
+        }
+
+        /**
+         * @return True if the printer data comes from a previous session and is not live yet
+         */
+        public boolean isPrinterRestored() {
+            return printerRestored;
+        }
+
+        /**
+         * @return Last known position; shared until the position is updated
+         */
+        public Position getPosition() {
+            return position;
+        }
+
+        /**
+         * Creates a map of the position, for code that still works with maps.
+         * @return Unmodifiable UWB position data
+         */
+        public Map<String, String> getUwbData() {
+            return position.toMap();
+        }
+
+        /**
+         * @return Wall clock time of the last UWB update, or 0 if there is no position
+         */
+        public long getUwbUpdateTime() {
+            return uwbUpdateTime;
+        }
+
+        /**
+         * @return True if the position comes from a previous session and is not live yet
+         */
+        public boolean isUwbRestored() {
+            return uwbRestored;
+        }
+    }
+
+    // Lazily created on first access by the JVM class loader, no locking needed
+    private static final class InstanceHolder {
+        private static final DataHolder INSTANCE = new DataHolder();
+    }
+
+    // Currently published snapshot
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    // Last known state per printer; also serializes printer writers
+    private final PrinterStateStore printerStates = new PrinterStateStore();
 
     /**
      * Private constructor to enforce singleton pattern
@@ -23,65 +153,216 @@ public class DataHolder {
     private DataHolder() {}
 
     /**
-     * Returns the singleton instance of DataHolder (thread-safe)
+     * Returns the singleton instance of DataHolder (thread-safe, lock-free)
      * @return The single instance of DataHolder
      */
-    public static synchronized DataHolder getInstance() {
-        if (instance == null) {
-            instance = new DataHolder();
-        }
-        return instance;
+    public static DataHolder getInstance() {
+        return InstanceHolder.INSTANCE;
     }
 
     /**
-     * Updates printer data with new values (thread-safe)
+     * Merges new values into the active printer's state (thread-safe)
      * @param newData Map containing new printer status values
      */
     public void updatePrinterData(Map<String, String> newData) {
-        synchronized (printerData) {
-            printerData.putAll(newData);
+        synchronized (printerStates) {
+            updatePrinterData(current.get().activePrinterTopic, newData);
+        }
+    }
+
+    /**
+     * Merges new values into the state of a printer (thread-safe).
+     * A new snapshot is only published if the printer is the active one.
+     * @param topic The printer topic the values were received on
+     * @param newData Map containing new printer status values
+     */
+    public void updatePrinterData(String topic, Map<String, String> newData) {
+        updatePrinterStatus(topic, new PrinterStatus.Builder().putAll(newData));
+    }
+
+    /**
+     * Merges the fields of a message into the state of a printer (thread-safe).
+     * A new snapshot is only published if the printer is the active one.
+     * @param topic The printer topic the message was received on
+     * @param update The parsed fields; may be reset once this returns
+     * @return The printer's status after merging the message
+     */
+    public PrinterStatus updatePrinterStatus(String topic, PrinterStatus.Builder update) {
+        synchronized (printerStates) {
+            PrinterStateStore.PrinterState state = printerStates.update(topic, update, System.currentTimeMillis());
+            Snapshot previous;
+            do {
+                previous = current.get();
+                if (!Objects.equals(previous.activePrinterTopic, topic)) {
+                    return state.getStatus();
+                }
+            } while (!current.compareAndSet(previous,
+                    previous.withPrinter(topic, state.getStatus(), state.getLastUpdateTime(), false)));
+            return state.getStatus();
+        }
+    }
+
+    /**
+     * Restores a printer state saved by a previous session (thread-safe).
+     * Ignored if live data for the printer already arrived.
+     * @param topic The printer topic
+     * @param data The saved printer values
+     * @param updateTime Wall clock time of the saved update
+     */
+    public void restorePrinterState(String topic, Map<String, String> data, long updateTime) {
+        synchronized (printerStates) {
+            PrinterStateStore.PrinterState state = printerStates.restore(topic, PrinterStatus.fromMap(data), updateTime);
+            if (state == null) {
+                return;
+            }
+            Snapshot previous;
+            do {
+                previous = current.get();
+                if (!Objects.equals(previous.activePrinterTopic, topic)) {
+                    return;
+                }
+            } while (!current.compareAndSet(previous,
+                    previous.withPrinter(topic, state.getStatus(), updateTime, true)));
         }
     }
 
     /**
-     * Updates UWB data with new values (thread-safe)
+     * Returns the state of every stored printer, e.g. to save it for the next session (thread-safe)
+     * @return Printer states from least to most recently used
+     */
+    public List<PrinterStateStore.PrinterState> getAllPrinterStates() {
+        return printerStates.getAll();
+    }
+
+    /**
+     * Switches the HUD to another printer and immediately publishes its last known state (thread-safe)
+     * @param topic The printer topic to show
+     */
+    public void setActivePrinter(String topic) {
+        synchronized (printerStates) {
+            PrinterStateStore.PrinterState state = printerStates.get(topic);
+            PrinterStatus status = state != null ? state.getStatus() : PrinterStatus.EMPTY;
+            long updateTime = state != null ? state.getLastUpdateTime() : 0;
+            boolean restored = state != null && state.isRestored();
+            Snapshot previous;
+            do {
+                previous = current.get();
+            } while (!current.compareAndSet(previous, previous.withPrinter(topic, status, updateTime, restored)));
+        }
+    }
+
+    /**
+     * Returns the last known state of any recently seen printer (thread-safe)
+     * @param topic The printer topic
+     * @return The printer state, or null if the printer is unknown or was evicted
+     */
+    public PrinterStateStore.PrinterState getPrinterState(String topic) {
+        return printerStates.get(topic);
+    }
+
+    /**
+     * Sets how many printers are remembered before the least recently used is evicted
+     * @param capacity Maximum number of printers kept
+     */
+    public void setPrinterCapacity(int capacity) {
+        printerStates.setCapacity(capacity);
+    }
+
+    /**
+     * Merges new UWB values into a new snapshot (thread-safe)
      * @param newData Map containing new UWB position values
      */
     public void updateUwbData(Map<String, String> newData) {
-        synchronized (uwbData) {
-            uwbData.putAll(newData);
-        }
+        updatePosition(new Position.Builder().putAll(newData));
     }
 
     /**
-     * Retrieves a copy of current printer data (thread-safe)
-     * @return New Map containing all printer data
+     * Merges the fields of a UWB message into a new snapshot (thread-safe).
+     * A restored position is replaced rather than merged into.
+     * @param update The parsed fields; may be reset once this returns
+     * @return The merged position
+     */
+    public Position updatePosition(Position.Builder update) {
+        long now = System.currentTimeMillis();
+        Snapshot previous;
+        Snapshot next;
+        do {
+            previous = current.get();
+            Position base = previous.uwbRestored ? Position.EMPTY : previous.position;
+            next = previous.withUwb(update.mergeInto(base), now, false);
+        } while (!current.compareAndSet(previous, next));
+        return next.position;
+    }
+
+    /**
+     * Restores a position saved by a previous session (thread-safe).
+     * Ignored if a live position already arrived.
+     * @param data The saved UWB values
+     * @param updateTime Wall clock time of the saved update
+     */
+    public void restoreUwbData(Map<String, String> data, long updateTime) {
+        Position restored = Position.fromMap(data);
+        Snapshot previous;
+        do {
+            previous = current.get();
+            if (previous.uwbUpdateTime != 0) {
+                return;
+            }
+        } while (!current.compareAndSet(previous, previous.withUwb(restored, updateTime, true)));
+    }
+
+    /**
+     * Returns a map of the active printer's data (thread-safe)
+     * @return Unmodifiable Map containing all data of the active printer
      */
     public Map<String, String> getPrinterData() {
-        synchronized (printerData) {
-            return new HashMap<>(printerData);
-        }
+        return current.get().getPrinterData();
     }
 
     /**
-     * Retrieves a copy of current UWB data (thread-safe)
-     * @return New Map containing all UWB data
+     * Returns a map of the current UWB data (thread-safe)
+     * @return Unmodifiable Map containing all UWB data
      */
     public Map<String, String> getUwbData() {
-        synchronized (uwbData) {
-            return new HashMap<>(uwbData);
-        }
+        return current.get().getUwbData();
+    }
+
+    /**
+     * Returns the current snapshot, so printer and UWB data can be read consistently
+     * @return The latest published snapshot
+     */
+    public Snapshot getSnapshot() {
+        return current.get();
+    }
+
+    /**
+     * @return Version of the latest published snapshot
+     */
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * Checks whether any data was updated after the given version
+     * @param version A version previously obtained from this holder
+     * @return True if a newer snapshot has been published
+     */
+    public boolean hasChangedSince(long version) {
+        return current.get().version != version;
     }
 
     /**
      * Clears all stored data (thread-safe)
      */
     public void clearAll() {
-        synchronized (printerData) {
-            printerData.clear();
-        }
-        synchronized (uwbData) {
-            uwbData.clear();
+        synchronized (printerStates) {
+            printerStates.clear();
+            Snapshot previous;
+            do {
+                previous = current.get();
+            } while (!current.compareAndSet(previous, new Snapshot(previous.version + 1,
+                    previous.activePrinterTopic, PrinterStatus.EMPTY, 0, false,
+                    Position.EMPTY, 0, false)));
         }
     }
 }
\ No newline at end of file
@@ -8,6 +8,220 @@ import java.util.Map;
  * Handles both printer status and UWB position data formats.
  */
 public class DataParser {
+    // Measurement prefixes of the supported message formats
+    public static final String PRINTER_PREFIX = "printer_status,";
+    public static final String UWB_PREFIX = "position,";
+
+    /**
+     * Receives the fields of a message while it is being tokenized.
+     */
+    public interface FieldSink {
+        /**
+         * Called once per key-value pair, in message order.
+         * Both slices are reused for the next field; call toString() to keep a copy.
+         * @param key The field name
+         * @param value The field value with surrounding quotes removed
+         */
+        void onField(FieldSlice key, FieldSlice value);
+
+        /**
+         * Checked after every field; the rest of the message is skipped once it returns true.
+         * @return True if the sink has every field it needs
+         */
+        default boolean isComplete() {
+            return false;
+        }
+    }
+
+    /**
+     * Single-pass tokenizer for the line protocol used by printers and UWB tags.
+     * Reuses its slices between messages, so tokenizing does not allocate.
+     * Instances are not thread-safe; use one per ingest thread.
+     */
+    public static final class Tokenizer {
+        private final FieldSlice line = new FieldSlice();
+        private final FieldSlice key = new FieldSlice();
+        private final FieldSlice value = new FieldSlice();
+        private MessageTrace trace;
+
+        /**
+         * Takes the tracing fields out of every message instead of forwarding them.
+         * The trace is reset at the start of each message.
+         * @param trace Receives the tracing fields, or null to forward them like any field
+         */
+        public void setTrace(MessageTrace trace) {
+            this.trace = trace;
+        }
+
+        /**
+         * Tokenizes a message held in a CharSequence.
+         * @param input The raw message text
+         * @param prefix The expected message prefix to skip
+         * @param sink Receiver for the parsed fields
+         */
+        public void tokenize(CharSequence input, String prefix, FieldSink sink) {
+            if (trace != null) {
+                trace.reset();
+            }
+            if (input == null || input.length() == 0) {
+                return;
+            }
+            line.set(input, 0, input.length());
+            scan(prefix, sink);
+        }
+
+        /**
+         * Tokenizes a message straight from the MQTT payload bytes.
+         * @param payload The raw payload (ASCII/UTF-8)
+         * @param offset Start of the message in the payload
+         * @param length Number of bytes in the message
+         * @param prefix The expected message prefix to skip
+         * @param sink Receiver for the parsed fields
+         */
+        public void tokenize(byte[] payload, int offset, int length, String prefix, FieldSink sink) {
+            if (trace != null) {
+                trace.reset();
+            }
+            if (payload == null || length == 0) {
+                return;
+            }
+            line.set(payload, offset, offset + length);
+            scan(prefix, sink);
+        }
+
+        /**
+         * Walks the current line once and emits every key=value token.
+         * Tokens are separated by commas and by the first unquoted space, which
+         * splits the tag section from the field section. Values starting with a
+         * quote run until the matching quote, so they may contain spaces and commas.
+         * @param prefix The message prefix to skip if present
+         * @param sink Receiver for the parsed fields
+         */
+        private void scan(String prefix, FieldSink sink) {
+            int end = line.length();
+            int pos = startsWith(prefix) ? prefix.length() : 0;
+            boolean sectionSplit = false;
+
+            while (pos < end) {
+                int tokenStart = pos;
+                int equals = -1;
+                boolean valueStarted = false;
+                char quote = 0;
+
+                int i = pos;
+                for (; i < end; i++) {
+                    char c = line.charAt(i);
+                    if (quote != 0) {
+                        if (c == quote) {
+                            quote = 0;
+                        }
+                    } else if (equals < 0) {
+                        if (c == '=') {
+                            equals = i;
+                        } else if (c == ',' || (c == ' ' && !sectionSplit)) {
+                            break;
+                        }
+                    } else if (!valueStarted && (c == '"' || c == '\'')) {
+                        // Quote opening the value: read through to its partner
+                        quote = c;
+                        valueStarted = true;
+                    } else if (c == ',' || (c == ' ' && !sectionSplit && valueStarted)) {
+                        break;
+                    } else if (c > ' ') {
+                        valueStarted = true;
+                    }
+                }
+
+                if (i < end && line.charAt(i) == ' ') {
+                    sectionSplit = true;
+                }
+                if (equals >= 0) {
+                    emit(tokenStart, equals, i, sink);
+                    if (sink.isComplete()) {
+                        return;
+                    }
+                }
+                pos = i + 1;
+            }
+        }
+
+        /**
+         * Trims a single token, strips quotes from its value and forwards it.
+         * @param tokenStart Start index of the token
+         * @param equals Index of the key/value separator
+         * @param tokenEnd End index of the token (exclusive)
+         * @param sink Receiver for the parsed field
+         */
+        private void emit(int tokenStart, int equals, int tokenEnd, FieldSink sink) {
+            int keyStart = skipSpace(tokenStart, equals);
+            int keyEnd = trimSpace(keyStart, equals);
+            int valueStart = skipSpace(equals + 1, tokenEnd);
+            int valueEnd = trimSpace(valueStart, tokenEnd);
+
+            // Clean value by removing surrounding quotes if present
+            if (valueStart < valueEnd && line.charAt(valueStart) == '"') {
+                valueStart++;
+            }
+            if (valueStart < valueEnd && line.charAt(valueEnd - 1) == '"') {
+                valueEnd--;
+            }
+            if (valueStart < valueEnd && line.charAt(valueStart) == '\'') {
+                valueStart++;
+            }
+            if (valueStart < valueEnd && line.charAt(valueEnd - 1) == '\'') {
+                valueEnd--;
+            }
+
+            // Only forward non-empty key-value pairs
+            if (keyStart < keyEnd && valueStart < valueEnd) {
+                key.set(line, keyStart, keyEnd);
+                value.set(line, valueStart, valueEnd);
+                if (trace != null && trace.accept(key, value)) {
+                    return;
+                }
+                sink.onField(key, value);
+            }
+        }
+
+        private boolean startsWith(String prefix) {
+            int length = prefix.length();
+            if (line.length() < length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (line.charAt(i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int skipSpace(int from, int to) {
+            while (from < to && line.charAt(from) <= ' ') {
+                from++;
+            }
+            return from;
+        }
+
+        private int trimSpace(int from, int to) {
+            while (to > from && line.charAt(to - 1) <= ' ') {
+                to--;
+            }
+            return to;
+        }
+    }
+
+    /**
+     * Collects tokenized fields into a HashMap for the Map-based API.
+     */
+    private static final class MapSink implements FieldSink {
+        private final Map<String, String> dataMap = new HashMap<>();
+
+        @Override
+        public void onField(FieldSlice key, FieldSlice value) {
+            dataMap.put(key.toString(), value.toString());
+        }
+    }
 
     /**
      * Parses printer status data from MQTT message string.
@@ -15,7 +229,7 @@ public class DataParser {
      * @return Map of parsed key-value pairs
      */
     public static Map<String, String> parsePrinterData(String input) {
-        return parseInputString(input, "printer_status,");
+        return parseInputString(input, PRINTER_PREFIX);
     }
 
     /**
@@ -24,51 +238,19 @@ public class DataParser {
      * @return Map of parsed key-value pairs
      */
     public static Map<String, String> parseUwbData(String input) {
-        return parseInputString(input, "position,");
+        return parseInputString(input, UWB_PREFIX);
     }
 
     /**
-     * Core parsing method that handles string normalization and key-value extraction.
+     * Compatibility wrapper that tokenizes a message into a new Map.
+     * Hot paths should use a {@link Tokenizer} with their own {@link FieldSink} instead.
      * @param input The raw input string to parse
      * @param prefix The expected message prefix to remove
      * @return Map containing all valid key-value pairs
      */
     private static Map<String, String> parseInputString(String input, String prefix) {
-        Map<String, String> dataMap = new HashMap<>();
-
-        // Return empty map for null or empty input
-        if (input == null || input.isEmpty()) {
-            return dataMap;
-        }
-
-        // Normalize the input string:
-        // 1. Remove message prefix if present
-        // 2. Replace first space with comma for consistent splitting
-        String standardized = input.startsWith(prefix) ?
-                input.substring(prefix.length()) : input;
-        standardized = standardized.replaceFirst(" ", ","); // 
-
-        // Process each comma-separated key-value pair
-        String[] parts = standardized.split(",");
-        for (String part : parts) {
-            // Split on first equals sign only
-            String[] keyValue = part.split("=", 2);
-
-            // Only process if we have both key and value
-            if (keyValue.length == 2) {
-                String key = keyValue[0].trim();
-
-                // Clean value by removing surrounding quotes if present
-                String value = keyValue[1].trim()
-                        .replaceAll("^\"|\"$", "")
-                        .replaceAll("^'|'$", "");
-
-                // Store non-empty key-value pairs
-                if (!key.isEmpty() && !value.isEmpty()) {
-                    dataMap.put(key, value);
-                }
-            }
-        }
-        return dataMap;
+        MapSink sink = new MapSink();
+        new Tokenizer().tokenize(input, prefix, sink);
+        return sink.dataMap;
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.example.printerstatus_glass;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable read-only view onto a range of a message payload.
+ * Backed either by the raw MQTT payload bytes or by a CharSequence, so the
+ * parser can hand out keys and values without copying them into new Strings.
+ * A slice is only valid until the parser moves on to the next field.
+ */
+public final class FieldSlice implements CharSequence {
+    // Powers of ten that are exactly representable as doubles (fast path for parseDouble)
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // Exactly one of the two backing sources is set
+    private byte[] bytes;
+    private CharSequence chars;
+    private int start;
+    private int end;
+
+    /**
+     * Points this slice at a range of a byte payload.
+     * @param source The payload bytes (ASCII/UTF-8)
+     * @param start Inclusive start index
+     * @param end Exclusive end index
+     */
+    void set(byte[] source, int start, int end) {
+        this.bytes = source;
+        this.chars = null;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Points this slice at a range of a character sequence.
+     * @param source The message text
+     * @param start Inclusive start index
+     * @param end Exclusive end index
+     */
+    void set(CharSequence source, int start, int end) {
+        this.bytes = null;
+        this.chars = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Points this slice at a sub-range of another slice, sharing its backing source.
+     * @param parent The slice whose source is shared
+     * @param start Inclusive start index relative to the parent
+     * @param end Exclusive end index relative to the parent
+     */
+    void set(FieldSlice parent, int start, int end) {
+        this.bytes = parent.bytes;
+        this.chars = parent.chars;
+        this.start = parent.start + start;
+        this.end = parent.start + end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        int i = start + index;
+        return bytes != null ? (char) (bytes[i] & 0xFF) : chars.charAt(i);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return toString().substring(from, to);
+    }
+
+    /**
+     * Checks whether this slice holds exactly the given text, without allocating.
+     * @param text The text to compare against (ASCII)
+     * @return True if the contents match
+     */
+    public boolean contentEquals(String text) {
+        int length = length();
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the slice as a decimal number.
+     * Plain decimals with up to 15 significant digits are parsed without allocating;
+     * longer values and exponents fall back to Double.parseDouble.
+     * @param defaultValue Value returned if the slice is not a valid number
+     * @return Parsed value or the default value
+     */
+    public double parseDouble(double defaultValue) {
+        int length = length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (charAt(0) == '-' || charAt(0) == '+')) {
+            negative = charAt(0) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean seenDot = false;
+        for (; i < length; i++) {
+            char c = charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenDot) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return parseDoubleSlow(defaultValue);
+                }
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                // Exponents, NaN/Infinity and malformed input take the slow path
+                return parseDoubleSlow(defaultValue);
+            }
+        }
+        if (digits == 0) {
+            return defaultValue;
+        }
+        if (fractionDigits >= POW10.length) {
+            return parseDoubleSlow(defaultValue);
+        }
+
+        // Both operands are exact, so a single division is correctly rounded
+        double value = (double) mantissa / POW10[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the slice as a whole number without allocating.
+     * @param defaultValue Value returned if the slice is not a valid integer
+     * @return Parsed value or the default value
+     */
+    public long parseLong(long defaultValue) {
+        int length = length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (charAt(0) == '-' || charAt(0) == '+')) {
+            negative = charAt(0) == '-';
+            i++;
+        }
+        if (i == length || length - i > 18) {
+            return defaultValue;
+        }
+
+        long value = 0;
+        for (; i < length; i++) {
+            char c = charAt(i);
+            if (c < '0' || c > '9') {
+                return defaultValue;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses values that cannot be handled exactly by the fast path.
+     * @param defaultValue Value returned if parsing fails
+     * @return Parsed value or the default value
+     */
+    private double parseDoubleSlow(double defaultValue) {
+        try {
+            return Double.parseDouble(toString());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Copies the slice into a new String (decoding UTF-8 for byte payloads).
+     * @return String copy of the slice contents
+     */
+    @Override
+    public String toString() {
+        if (bytes != null) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+        return chars.subSequence(start, end).toString();
+    }
+}
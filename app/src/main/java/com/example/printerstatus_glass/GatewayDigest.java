@@ -0,0 +1,281 @@
+package com.example.printerstatus_glass;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Condensed per-wearer update published by the gateway, so a headset needs a single
+ * subscription instead of the raw printer topics and the UWB stream.
+ * A digest carries only what changed since the previous digest to the same wearer:
+ * <pre>
+ * byte    {@link BinaryCodec#MARKER}, then {@link #TYPE_DIGEST}
+ * byte    flags: 1 printer topic, 2 printer fields, 4 position
+ * [varint length, UTF-8 printer topic]            the wearer entered another printer zone
+ * [varint length, BinaryCodec printer message]    only the printer fields that changed
+ * [varint length, BinaryCodec UWB message]        the wearer's smoothed position
+ * </pre>
+ * The embedded messages are regular {@link BinaryCodec} messages, so headsets decode them
+ * with the same code and records as direct traffic.
+ */
+public final class GatewayDigest {
+    public static final int TYPE_DIGEST = 3;
+    // Digests of a wearer are published on the prefix plus the wearer's tag name
+    public static final String TOPIC_PREFIX = "sf/glass/";
+
+    static final int HAS_PRINTER_TOPIC = 1;
+    static final int HAS_PRINTER = 2;
+    static final int HAS_POSITION = 4;
+
+    // BinaryCodec field of each PrinterStatus field index
+    private static final BinaryCodec.Field[] PRINTER_FIELDS = new BinaryCodec.Field[PrinterStatus.FIELD_COUNT];
+
+    static {
+        for (BinaryCodec.Field field : BinaryCodec.Field.values()) {
+            int index = PrinterStatus.fieldIndex(field.getKey());
+            if (index >= 0) {
+                PRINTER_FIELDS[index] = field;
+            }
+        }
+    }
+
+    private GatewayDigest() {}
+
+    /**
+     * @param tagName The wearer's UWB tag
+     * @return The topic the wearer's digests are published on
+     */
+    public static String topicFor(String tagName) {
+        return TOPIC_PREFIX + tagName;
+    }
+
+    /**
+     * @param topic The MQTT topic of a message
+     * @return True if the message is a digest
+     */
+    public static boolean isDigestTopic(String topic) {
+        return topic.startsWith(TOPIC_PREFIX);
+    }
+
+    /**
+     * Builds digests. Reuses its buffers between digests; not thread-safe.
+     */
+    public static final class Encoder {
+        private final BinaryCodec.Encoder printer = new BinaryCodec.Encoder();
+        private final BinaryCodec.Encoder position = new BinaryCodec.Encoder();
+        private byte[] printerTopic;
+        private boolean hasPrinter;
+        private boolean hasPosition;
+
+        /**
+         * Starts a new, empty digest.
+         * @return This encoder
+         */
+        public Encoder begin() {
+            printerTopic = null;
+            hasPrinter = false;
+            hasPosition = false;
+            return this;
+        }
+
+        /**
+         * Tells the wearer which printer it is at.
+         * @param topic The printer topic
+         * @return This encoder
+         */
+        public Encoder putPrinterTopic(String topic) {
+            printerTopic = topic.getBytes(StandardCharsets.UTF_8);
+            return this;
+        }
+
+        /**
+         * Adds the printer fields that differ from what the wearer already has.
+         * Fields that became unknown are not sent; printers never clear fields.
+         * @param current The printer's current status
+         * @param previous The status sent before, or null to send every known field
+         * @return This encoder
+         */
+        public Encoder putPrinterDelta(PrinterStatus current, PrinterStatus previous) {
+            if (current == previous) {
+                return this;
+            }
+            for (int field = 0; field < PrinterStatus.FIELD_COUNT; field++) {
+                BinaryCodec.Field binaryField = PRINTER_FIELDS[field];
+                if (PrinterStatus.isTextField(field)) {
+                    String text = current.getText(field);
+                    if (text != null && (previous == null || !text.equals(previous.getText(field)))) {
+                        beginPrinter().putString(binaryField, text);
+                    }
+                    continue;
+                }
+                double number = current.getNumber(field);
+                if (Double.isNaN(number) || (previous != null && Double.compare(number, previous.getNumber(field)) == 0)) {
+                    continue;
+                }
+                if (binaryField.getKind() == BinaryCodec.Kind.INTEGER || binaryField.getKind() == BinaryCodec.Kind.BOOLEAN) {
+                    beginPrinter().putInteger(binaryField, (long) number);
+                } else {
+                    beginPrinter().putNumber(binaryField, number);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds the wearer's position.
+         * @param x X coordinate in metres
+         * @param y Y coordinate in metres
+         * @param z Z coordinate in metres
+         * @return This encoder
+         */
+        public Encoder putPosition(double x, double y, double z) {
+            position.begin(BinaryCodec.TYPE_UWB)
+                    .putNumber(BinaryCodec.Field.POSITION_X, x)
+                    .putNumber(BinaryCodec.Field.POSITION_Y, y)
+                    .putNumber(BinaryCodec.Field.POSITION_Z, z);
+            hasPosition = true;
+            return this;
+        }
+
+        /**
+         * @return True if nothing was added since {@link #begin()}
+         */
+        public boolean isEmpty() {
+            return printerTopic == null && !hasPrinter && !hasPosition;
+        }
+
+        /**
+         * @return The encoded digest
+         */
+        public byte[] toByteArray() {
+            int flags = (printerTopic != null ? HAS_PRINTER_TOPIC : 0)
+                    | (hasPrinter ? HAS_PRINTER : 0)
+                    | (hasPosition ? HAS_POSITION : 0);
+            byte[] printerBytes = hasPrinter ? printer.toByteArray() : null;
+            byte[] positionBytes = hasPosition ? position.toByteArray() : null;
+            int length = 3 + sectionSize(printerTopic) + sectionSize(printerBytes) + sectionSize(positionBytes);
+
+            byte[] digest = new byte[length];
+            digest[0] = BinaryCodec.MARKER;
+            digest[1] = TYPE_DIGEST;
+            digest[2] = (byte) flags;
+            int pos = writeSection(digest, 3, printerTopic);
+            pos = writeSection(digest, pos, printerBytes);
+            writeSection(digest, pos, positionBytes);
+            return digest;
+        }
+
+        private BinaryCodec.Encoder beginPrinter() {
+            if (!hasPrinter) {
+                printer.begin(BinaryCodec.TYPE_PRINTER);
+                hasPrinter = true;
+            }
+            return printer;
+        }
+
+        private static int sectionSize(byte[] section) {
+            if (section == null) {
+                return 0;
+            }
+            int size = 1;
+            for (int length = section.length; length >= 0x80; length >>>= 7) {
+                size++;
+            }
+            return size + section.length;
+        }
+
+        private static int writeSection(byte[] digest, int pos, byte[] section) {
+            if (section == null) {
+                return pos;
+            }
+            int length = section.length;
+            while (length >= 0x80) {
+                digest[pos++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            digest[pos++] = (byte) length;
+            System.arraycopy(section, 0, digest, pos, section.length);
+            return pos + section.length;
+        }
+    }
+
+    /**
+     * Decodes digests into the records of the ingest path. Not thread-safe.
+     */
+    public static final class Reader {
+        private String printerTopic;
+        private boolean hasPrinter;
+        private boolean hasPosition;
+        private int pos;
+
+        /**
+         * Decodes a digest; the printer fields and the position are handed to the records.
+         * @param payload The raw payload
+         * @param printer Receives the changed printer fields, reset by the caller
+         * @param position Receives the position, reset by the caller
+         * @throws IllegalArgumentException If the digest is malformed
+         */
+        public void read(byte[] payload, BinaryCodec.Visitor printer, BinaryCodec.Visitor position) {
+            if (payload.length < 3 || payload[0] != BinaryCodec.MARKER || payload[1] != TYPE_DIGEST) {
+                throw new IllegalArgumentException("Not a digest");
+            }
+            int flags = payload[2];
+            pos = 3;
+            printerTopic = null;
+            if ((flags & HAS_PRINTER_TOPIC) != 0) {
+                int length = readLength(payload);
+                printerTopic = new String(payload, pos, length, StandardCharsets.UTF_8);
+                pos += length;
+            }
+            hasPrinter = (flags & HAS_PRINTER) != 0;
+            if (hasPrinter) {
+                int length = readLength(payload);
+                BinaryCodec.decode(payload, pos, length, printer);
+                pos += length;
+            }
+            hasPosition = (flags & HAS_POSITION) != 0;
+            if (hasPosition) {
+                int length = readLength(payload);
+                BinaryCodec.decode(payload, pos, length, position);
+                pos += length;
+            }
+        }
+
+        /**
+         * @return The printer the wearer entered, or null if it did not change
+         */
+        public String getPrinterTopic() {
+            return printerTopic;
+        }
+
+        /**
+         * @return True if the digest had printer fields
+         */
+        public boolean hasPrinter() {
+            return hasPrinter;
+        }
+
+        /**
+         * @return True if the digest had a position
+         */
+        public boolean hasPosition() {
+            return hasPosition;
+        }
+
+        private int readLength(byte[] payload) {
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos >= payload.length || shift > 28) {
+                    throw new IllegalArgumentException("Truncated digest");
+                }
+                b = payload[pos++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (length > payload.length - pos) {
+                throw new IllegalArgumentException("Truncated digest");
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.example.printerstatus_glass;
+
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.widget.TextView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Renders DataHolder snapshots onto the HUD views, touching only what changed.
+ * View references, the time formatter and the text buffers are created once.
+ * Each panel remembers the inputs it last rendered: snapshots share unchanged records,
+ * so a UWB-only update skips the printer panel with a reference check and never
+ * re-lays-out the large status TextView. Values restored from a previous session
+ * are marked as stale until live data replaces them. Must be used on the UI thread.
+ */
+public class HudRenderer {
+    private static final float STATUS_TEXT_SIZE_SP = 30;
+    private static final String STALE_MARKER = " (last session)";
+    private static final String NO_VALUE = "--";
+    private static final long TREND_WINDOW_MILLIS = 10 * 60 * 1000;
+    private static final char[] SPARK_LEVELS = {'▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+
+    private final TextView statusView;
+    private final TextView footerView;
+    private final TextView timestampView;
+
+    // Reused formatters and buffers
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+    private final Date date = new Date();
+    private final StringBuilder buffer = new StringBuilder(256);
+    private final StringBuilder renderedPanel = new StringBuilder(256);
+    private final double[] trend = new double[20];
+    private TelemetryStore telemetry;
+    private TagTracker tagTracker;
+
+    // Inputs of the last render per panel
+    private PrinterStatus renderedPrinterStatus;
+    private String renderedTopic;
+    private Position renderedPosition;
+    private double renderedX = Double.NaN;
+    private double renderedY = Double.NaN;
+    private boolean renderedUwbRestored;
+    private int renderedTagsInZone;
+    private long renderedUpdateSecond = -1;
+    private boolean renderedPrinterRestored;
+    private long renderedUpdateTime;
+    private ConnectionSupervisor.State connectionState = ConnectionSupervisor.State.CONNECTED;
+
+    // Disables diffing, to measure against the previous render-everything behaviour
+    private boolean forceFullRender;
+
+    // Instrumentation
+    private long renders;
+    private long panelUpdates;
+    private long footerUpdates;
+    private long timestampUpdates;
+
+    /**
+     * Binds the renderer to the HUD views and applies their static styling once.
+     * @param statusView The large printer status text
+     * @param footerView The position footer
+     * @param timestampView The last-update time
+     */
+    public HudRenderer(TextView statusView, TextView footerView, TextView timestampView) {
+        this.statusView = statusView;
+        this.footerView = footerView;
+        this.timestampView = timestampView;
+        applyStatusStyle();
+    }
+
+    /**
+     * Renders a snapshot, updating only views whose content changed.
+     * @param snapshot The state to show
+     */
+    public void render(DataHolder.Snapshot snapshot) {
+        renders++;
+        if (forceFullRender) {
+            applyStatusStyle();
+            renderedPrinterStatus = null;
+            renderedPosition = null;
+            renderedX = Double.NaN;
+            renderedUpdateSecond = -1;
+            renderedPanel.setLength(0);
+        }
+        renderPrinterPanel(snapshot.getActivePrinterTopic(), snapshot.getPrinterStatus());
+        TagTracker tags = tagTracker;
+        renderFooter(snapshot.getPosition(), snapshot.isUwbRestored(),
+                tags != null ? tags.countInZone(snapshot.getActivePrinterTopic()) : 0);
+        renderTimestamp(snapshot.getPrinterUpdateTime(), snapshot.isPrinterRestored());
+    }
+
+    /**
+     * Rebuilds the printer status text if the printer status changed.
+     * @param topic The active printer topic
+     * @param status The active printer's status
+     */
+    private void renderPrinterPanel(String topic, PrinterStatus status) {
+        // Snapshots reuse the status instance until the printer is updated
+        if (status == renderedPrinterStatus && topic == renderedTopic) {
+            return;
+        }
+        renderedPrinterStatus = status;
+        renderedTopic = topic;
+
+        // Create status header (falls back to the topic until the printer has reported)
+        String printerName = status.getPrinterName();
+        buffer.setLength(0);
+        buffer.append("====== Printer ")
+                .append((printerName != null ? printerName : String.valueOf(topic)).toUpperCase(Locale.ROOT))
+                .append(" Status ======\n");
+
+        // Append printer status information; values were parsed when the message arrived
+        buffer.append("Bed Temperature: ");
+        appendValue(buffer, status.getBedTemperatureCurrent());
+        buffer.append("°C / ");
+        appendValue(buffer, status.getBedTemperatureTarget());
+        buffer.append("°C\n");
+        buffer.append("Tool Temperature: ");
+        appendValue(buffer, status.getToolTemperatureCurrent());
+        buffer.append("°C / ");
+        appendValue(buffer, status.getToolTemperatureTarget());
+        buffer.append("°C\n");
+        appendIfExists(buffer, "Printer State", status.getState());
+        buffer.append("Completion: ");
+        appendOneDecimal(buffer, Double.isNaN(status.getCompletion()) ? 0 : status.getCompletion());
+        buffer.append("%   Time Left: ");
+        if (status.getPrintTimeLeft() != PrinterStatus.NO_VALUE) {
+            buffer.append(status.getPrintTimeLeft());
+        } else {
+            buffer.append(NO_VALUE);
+        }
+        buffer.append("s\n");
+        appendIfExists(buffer, "Job Name", status.getJobName());
+        appendTrends(topic);
+
+        // Same text (e.g. only an unrelated field changed): leave the view alone
+        if (contentEquals(buffer, renderedPanel)) {
+            return;
+        }
+        renderedPanel.setLength(0);
+        renderedPanel.append(buffer);
+        statusView.setText(buffer);
+        panelUpdates++;
+    }
+
+    /**
+     * Updates the position footer if the position changed.
+     * @param position The UWB position
+     * @param restored True if the position comes from the previous session
+     * @param tagsInZone Number of UWB tags in the active printer's zone
+     */
+    private void renderFooter(Position position, boolean restored, int tagsInZone) {
+        if (position == renderedPosition && tagsInZone == renderedTagsInZone) {
+            return;
+        }
+        renderedPosition = position;
+
+        // Unknown coordinates are shown as 0
+        double positionX = Double.isNaN(position.getX()) ? 0 : position.getX();
+        double positionY = Double.isNaN(position.getY()) ? 0 : position.getY();
+        if (positionX == renderedX && positionY == renderedY && restored == renderedUwbRestored
+                && tagsInZone == renderedTagsInZone) {
+            return;
+        }
+        renderedX = positionX;
+        renderedY = positionY;
+        renderedUwbRestored = restored;
+        renderedTagsInZone = tagsInZone;
+
+        buffer.setLength(0);
+        buffer.append("Current Position: ").append(positionX).append(", ").append(positionY);
+        if (restored) {
+            buffer.append(STALE_MARKER);
+        }
+        if (tagsInZone > 0) {
+            buffer.append(" | Tags at printer: ").append(tagsInZone);
+        }
+        footerView.setText(buffer);
+        footerUpdates++;
+    }
+
+    /**
+     * Updates the update-time label when it changes by at least one second.
+     * @param updateTime Wall clock time of the last printer update, 0 if none
+     * @param restored True if the printer data comes from the previous session
+     */
+    private void renderTimestamp(long updateTime, boolean restored) {
+        long second = updateTime > 0 ? updateTime / 1000 : 0;
+        if (second == renderedUpdateSecond && restored == renderedPrinterRestored) {
+            return;
+        }
+        renderedUpdateSecond = second;
+        renderedPrinterRestored = restored;
+        renderedUpdateTime = updateTime;
+        writeTimestamp();
+    }
+
+    /**
+     * Shows the broker connection state next to the update time, unless connected.
+     * @param state The current connection state
+     */
+    public void setConnectionState(ConnectionSupervisor.State state) {
+        if (state == connectionState) {
+            return;
+        }
+        connectionState = state;
+        writeTimestamp();
+    }
+
+    private void writeTimestamp() {
+        buffer.setLength(0);
+        buffer.append("Update Time: ");
+        if (renderedUpdateTime > 0) {
+            date.setTime(renderedUpdateTime);
+            buffer.append(timeFormat.format(date));
+            if (renderedPrinterRestored) {
+                buffer.append(STALE_MARKER);
+            }
+        } else {
+            buffer.append("No Data");
+        }
+        if (connectionState != ConnectionSupervisor.State.CONNECTED) {
+            buffer.append(" | MQTT ").append(connectionState.name().toLowerCase(Locale.ROOT));
+        }
+        timestampView.setText(buffer);
+        timestampUpdates++;
+    }
+
+    /**
+     * Appends sparklines of the temperatures over the last minutes, if history is available.
+     * @param topic The active printer topic
+     */
+    private void appendTrends(String topic) {
+        if (telemetry == null || topic == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (telemetry.query(topic, TelemetryStore.Field.TOOL_TEMPERATURE, now - TREND_WINDOW_MILLIS, now, trend) > 1) {
+            buffer.append("Tool Trend: ");
+            appendSparkline(buffer, trend);
+            buffer.append('\n');
+        }
+        if (telemetry.query(topic, TelemetryStore.Field.BED_TEMPERATURE, now - TREND_WINDOW_MILLIS, now, trend) > 1) {
+            buffer.append("Bed Trend: ");
+            appendSparkline(buffer, trend);
+            buffer.append('\n');
+        }
+    }
+
+    /**
+     * Appends a sparkline with one block character per value, scaled between the minimum
+     * and maximum; NaN values (no samples) become spaces.
+     * @param builder The StringBuilder to append to
+     * @param values The values to draw
+     */
+    static void appendSparkline(StringBuilder builder, double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        double range = max - min;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                builder.append(' ');
+            } else {
+                int level = range > 0 ? (int) ((value - min) / range * (SPARK_LEVELS.length - 1) + 0.5) : 0;
+                builder.append(SPARK_LEVELS[level]);
+            }
+        }
+    }
+
+    /**
+     * Enables the temperature trend lines in the printer panel.
+     * @param telemetry The telemetry history, or null to hide the trends
+     */
+    public void setTelemetry(TelemetryStore telemetry) {
+        this.telemetry = telemetry;
+        renderedPrinterStatus = null; // redraw the panel with the trends
+    }
+
+    /**
+     * Shows how many UWB tags are in the active printer's zone next to the position.
+     * @param tagTracker The tracker of all tags, or null to hide the count
+     */
+    public void setTagTracker(TagTracker tagTracker) {
+        this.tagTracker = tagTracker;
+    }
+
+    private void applyStatusStyle() {
+        statusView.setTextSize(TypedValue.COMPLEX_UNIT_SP, STATUS_TEXT_SIZE_SP);
+        statusView.setGravity(Gravity.END);
+    }
+
+    /**
+     * Appends a value rounded to one decimal place without String.format.
+     * @param builder The StringBuilder to append to
+     * @param value The value to append
+     */
+    static void appendOneDecimal(StringBuilder builder, double value) {
+        long tenths = Math.round(Math.abs(value) * 10);
+        if (value < 0 && tenths != 0) {
+            builder.append('-');
+        }
+        builder.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    /**
+     * Appends a labeled value to the string builder if the value exists
+     * @param builder The StringBuilder to append to
+     * @param label The label for the value
+     * @param value The value to append
+     */
+    private static void appendIfExists(StringBuilder builder, String label, String value) {
+        if (value != null && !value.isEmpty()) {
+            builder.append(label).append(": ").append(value).append("\n");
+        }
+    }
+
+    /**
+     * Appends a number as reported, or a placeholder if it is unknown.
+     * @param builder The StringBuilder to append to
+     * @param value The value, NaN if unknown
+     */
+    private static void appendValue(StringBuilder builder, double value) {
+        if (Double.isNaN(value)) {
+            builder.append(NO_VALUE);
+        } else {
+            builder.append(value);
+        }
+    }
+
+    private static boolean contentEquals(CharSequence a, CharSequence b) {
+        int length = a.length();
+        if (length != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Switches between incremental rendering and re-rendering every view on every update.
+     * @param forceFullRender True to disable diffing (for before/after measurements)
+     */
+    public void setForceFullRender(boolean forceFullRender) {
+        this.forceFullRender = forceFullRender;
+    }
+
+    public boolean isForceFullRender() {
+        return forceFullRender;
+    }
+
+    public long getRenders() {
+        return renders;
+    }
+
+    public long getPanelUpdates() {
+        return panelUpdates;
+    }
+
+    public long getFooterUpdates() {
+        return footerUpdates;
+    }
+
+    public long getTimestampUpdates() {
+        return timestampUpdates;
+    }
+}
@@ -0,0 +1,437 @@
+package com.example.printerstatus_glass;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The app's message path behind {@link MqttHandler}: parses every payload straight into
+ * reusable typed records, drops traffic of printers the wearer already left, and updates
+ * the printer states, the telemetry history, the alert rules and the UWB tag tracker (which
+ * resolves zones through {@link PrinterTopicSelector}). A render is requested only when something on
+ * screen may have changed. With a {@link MotionGate}, fixes of tags that stand still only
+ * have their coordinates read until the tag moves. Free of Android UI classes, so recorded traffic can be
+ * replayed through exactly this path on a plain JVM.
+ * Runs on the ingest worker thread only.
+ */
+public class IngestPipeline implements MqttHandler.MessageCallback {
+    // Every UWB tag publishes on its own topic below the prefix; the wearer's tag drives the HUD
+    public static final String UWB_TOPIC_PREFIX = "sf/UWB/";
+    public static final String UWB_WILDCARD = UWB_TOPIC_PREFIX + "+";
+    public static final String OWN_TAG = "uwb-a";
+
+    /**
+     * Receives the outcome of messages, on the ingest worker thread.
+     */
+    public interface Listener {
+        /**
+         * Called after a message changed state that is shown on the HUD.
+         */
+        void onRenderNeeded();
+
+        /**
+         * Called once, for the first accepted message.
+         */
+        default void onFirstMessage() {
+        }
+
+        /**
+         * Called when a gateway digest moves the wearer to another printer.
+         * @param topic The printer topic
+         */
+        default void onPrinterAssigned(String topic) {
+        }
+
+        /**
+         * Called when a message could not be processed.
+         * @param topic The MQTT topic of the message
+         * @param e The cause
+         */
+        default void onMessageError(String topic, Exception e) {
+            Log.e("Ingest", "Message on " + topic + " not processed", e);
+        }
+    }
+
+    private final DataHolder dataHolder;
+    private final TagTracker tagTracker;
+    private final SubscriptionManager subscriptionManager;
+    private final Listener listener;
+    private final LatencyMetrics metrics = LatencyMetrics.getInstance();
+
+    // Numeric history per printer, opened in the background; null until then
+    private volatile TelemetryStore telemetry;
+    // Alert rules checked against every printer update; null when not loaded
+    private volatile AlertEngine alertEngine;
+    // Publish-to-render tracing of messages that carry a publish time; null when off
+    private volatile TraceRecorder traceRecorder;
+    // Lightweight handling of UWB tags that stand still; null processes every fix in full
+    private volatile MotionGate motionGate;
+
+    // Parser state reused for every message
+    private final DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+    private final PrinterStatus.Builder printerUpdate = new PrinterStatus.Builder();
+    private final Position.Builder positionUpdate = new Position.Builder();
+    private final Position.Coordinates coordinates = new Position.Coordinates();
+    private final GatewayDigest.Reader digestReader = new GatewayDigest.Reader();
+    private final MessageTrace trace = new MessageTrace();
+    // Paho arrival of the message being processed, 0 if it did not come through onMessageArrived
+    private long arrivalNanos;
+    // Printer the gateway last assigned to the wearer
+    private String digestPrinterTopic;
+    // Tag of each UWB topic, so the name is not cut out of the topic and looked up per message
+    private final Map<String, UwbTag> uwbTags = new HashMap<>();
+
+    // Written by the ingest worker only
+    private volatile long acceptedMessages;
+    private volatile long failedMessages;
+
+    /**
+     * A UWB topic's tag, resolved once.
+     */
+    private static final class UwbTag {
+        final String name;
+        final int id;
+        final boolean own;
+
+        UwbTag(String name, int id) {
+            this.name = name;
+            this.id = id;
+            this.own = name.equals(OWN_TAG);
+        }
+    }
+
+    /**
+     * Creates the pipeline.
+     * @param dataHolder Store of the printer states and the wearer's position
+     * @param tagTracker Tracker of all UWB tags
+     * @param subscriptionManager Decides which printer topics are still wanted; null accepts every topic
+     * @param listener Receives render requests and errors
+     */
+    public IngestPipeline(DataHolder dataHolder, TagTracker tagTracker,
+                          SubscriptionManager subscriptionManager, Listener listener) {
+        this.dataHolder = dataHolder;
+        this.tagTracker = tagTracker;
+        this.subscriptionManager = subscriptionManager;
+        this.listener = listener;
+        tokenizer.setTrace(trace);
+    }
+
+    /**
+     * Starts appending printer values to a telemetry history.
+     * @param telemetry The history, or null to stop appending
+     */
+    public void setTelemetry(TelemetryStore telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Starts checking printer updates against alert rules.
+     * @param alertEngine The engine, or null to stop checking
+     */
+    public void setAlertEngine(AlertEngine alertEngine) {
+        this.alertEngine = alertEngine;
+    }
+
+    /**
+     * Starts tracing messages that carry a publish time, and feeding clock pongs to the recorder's estimator.
+     * @param traceRecorder The recorder, or null to stop tracing
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+        // The tracing fields may follow the coordinates
+        coordinates.setReadAll(traceRecorder != null);
+    }
+
+    /**
+     * Starts handling fixes of tags that stand still with a coordinates-only parse, skipping
+     * smoothing, zone resolution, the store and rendering until they move.
+     * @param motionGate The gate, or null to process every fix in full
+     */
+    public void setMotionGate(MotionGate motionGate) {
+        this.motionGate = motionGate;
+    }
+
+    /**
+     * @param topic The MQTT topic of a message
+     * @return True if the message is a position of a UWB tag
+     */
+    public static boolean isUwbTopic(String topic) {
+        return topic.startsWith(UWB_TOPIC_PREFIX);
+    }
+
+    /**
+     * @param topic The MQTT topic of a message
+     * @return True if the message is a printer status, false for UWB positions and gateway digests
+     */
+    private static boolean isPrinterTopic(String topic) {
+        return !isUwbTopic(topic) && !GatewayDigest.isDigestTopic(topic);
+    }
+
+    /**
+     * Keeps the arrival time for tracing and takes clock pongs out before the topic check.
+     * @param topic The MQTT topic on which the message was received
+     * @param payload The raw payload
+     * @param arrivalNanos Arrival time in System.nanoTime() base
+     */
+    @Override
+    public void onMessageArrived(String topic, byte[] payload, long arrivalNanos) {
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null && ClockSync.isPongTopic(topic)) {
+            recorder.getClock().onPong(payload, ClockSync.toMicros(arrivalNanos));
+            return;
+        }
+        this.arrivalNanos = arrivalNanos;
+        try {
+            if (isUwbTopic(topic) && !BinaryCodec.isBinary(payload)) {
+                // Positions are tokenized straight from the payload, a stationary fix never becomes a String
+                onUwbText(topic, payload, null);
+            } else {
+                MqttHandler.MessageCallback.super.onMessageArrived(topic, payload, arrivalNanos);
+            }
+        } finally {
+            this.arrivalNanos = 0;
+        }
+    }
+
+    /**
+     * Parses and stores a text message; the HUD renders the latest state at most once per frame.
+     * @param topic The MQTT topic on which the message was received
+     * @param message The content of the received message
+     */
+    @Override
+    public void onMessageReceived(String topic, String message) {
+        if (isUwbTopic(topic)) {
+            onUwbText(topic, null, message);
+            return;
+        }
+        if (!acceptMessage(topic)) {
+            return;
+        }
+        try {
+            long stageStart = System.nanoTime();
+            // Fields are parsed straight into the reusable record, once per message
+            tokenizer.tokenize(message, DataParser.PRINTER_PREFIX, printerUpdate.reset());
+            traceMessage(applyMessage(topic, metrics.recordSince(LatencyMetrics.Stage.PARSE, stageStart)));
+        } catch (Exception e) {
+            failedMessages++;
+            listener.onMessageError(topic, e);
+        }
+    }
+
+    /**
+     * Parses and stores a UWB position in the text format. Fixes of tags that stand still are
+     * only tokenized up to their coordinates, which usually settles them.
+     * @param topic The UWB topic on which the message was received
+     * @param payload The raw payload, or null if the message is given as text
+     * @param message The message text, used if there is no payload
+     */
+    private void onUwbText(String topic, byte[] payload, String message) {
+        if (!acceptMessage(topic)) {
+            return;
+        }
+        try {
+            long stageStart = System.nanoTime();
+            MotionGate gate = motionGate;
+            if (gate != null && gate.isStationary(uwbTag(topic).id)) {
+                tokenizeUwb(payload, message, coordinates.reset());
+                if (skipStationaryFix(gate, topic, stageStart)) {
+                    return;
+                }
+            }
+            tokenizeUwb(payload, message, positionUpdate.reset());
+            traceMessage(applyMessage(topic, metrics.recordSince(LatencyMetrics.Stage.PARSE, stageStart)));
+        } catch (Exception e) {
+            failedMessages++;
+            listener.onMessageError(topic, e);
+        }
+    }
+
+    private void tokenizeUwb(byte[] payload, String message, DataParser.FieldSink sink) {
+        if (payload != null) {
+            tokenizer.tokenize(payload, 0, payload.length, DataParser.UWB_PREFIX, sink);
+        } else {
+            tokenizer.tokenize(message, DataParser.UWB_PREFIX, sink);
+        }
+    }
+
+    /**
+     * Decodes and stores a message in the compact binary format, straight from the payload bytes.
+     * @param topic The MQTT topic on which the message was received
+     * @param payload The raw payload
+     */
+    @Override
+    public void onBinaryMessageReceived(String topic, byte[] payload) {
+        if (!acceptMessage(topic)) {
+            return;
+        }
+        try {
+            long stageStart = System.nanoTime();
+            if (GatewayDigest.isDigestTopic(topic)) {
+                digestReader.read(payload, printerUpdate.reset(), positionUpdate.reset());
+                applyDigest(metrics.recordSince(LatencyMetrics.Stage.PARSE, stageStart));
+                return;
+            }
+            boolean uwb = isUwbTopic(topic);
+            MotionGate gate = motionGate;
+            if (uwb && gate != null && gate.isStationary(uwbTag(topic).id)) {
+                BinaryCodec.decode(payload, 0, payload.length, coordinates.reset(), trace);
+                if (skipStationaryFix(gate, topic, stageStart)) {
+                    return;
+                }
+            }
+            BinaryCodec.Visitor update = uwb ? positionUpdate.reset() : printerUpdate.reset();
+            BinaryCodec.decode(payload, 0, payload.length, update, trace);
+            traceMessage(applyMessage(topic, metrics.recordSince(LatencyMetrics.Stage.PARSE, stageStart)));
+        } catch (Exception e) {
+            failedMessages++;
+            listener.onMessageError(topic, e);
+        }
+    }
+
+    /**
+     * Checks the coordinates of a stationary tag's fix against the spot it rests at.
+     * @param gate The motion gate
+     * @param topic The UWB topic of the message
+     * @param stageStart Time parsing started, in System.nanoTime()
+     * @return True if the fix is done with, false if it needs the full parse
+     */
+    private boolean skipStationaryFix(MotionGate gate, String topic, long stageStart) {
+        if (!gate.onLightFix(uwbTag(topic).id, coordinates.getX(), coordinates.getY(), System.currentTimeMillis())) {
+            return false;
+        }
+        metrics.recordSince(LatencyMetrics.Stage.PARSE, stageStart);
+        traceMessage(false);
+        return true;
+    }
+
+    /**
+     * @param topic A UWB topic
+     * @return The topic's tag, registered with the tracker on first sight
+     */
+    private UwbTag uwbTag(String topic) {
+        UwbTag tag = uwbTags.get(topic);
+        if (tag == null) {
+            String name = topic.substring(UWB_TOPIC_PREFIX.length());
+            tag = new UwbTag(name, tagTracker.register(name));
+            uwbTags.put(topic, tag);
+        }
+        return tag;
+    }
+
+    /**
+     * Counts a delivered message and decides whether it is still wanted.
+     * @param topic The MQTT topic of the message
+     * @return False if the message belongs to a printer we already walked away from
+     */
+    private boolean acceptMessage(String topic) {
+        if (subscriptionManager != null) {
+            // Drop traffic of printers we already walked away from before it reaches the UI thread
+            if (isPrinterTopic(topic) && !subscriptionManager.isActive(topic)) {
+                subscriptionManager.recordDiscarded();
+                return false;
+            }
+            subscriptionManager.recordDelivered();
+        }
+        if (acceptedMessages++ == 0) {
+            listener.onFirstMessage();
+        }
+        return true;
+    }
+
+    /**
+     * Stores the fields of the parsed message; the tag tracker follows the wearer to the nearest printer.
+     * @param topic The MQTT topic of the message
+     * @param stageStart Time parsing finished, in System.nanoTime()
+     * @return True if a render was requested
+     */
+    private boolean applyMessage(String topic, long stageStart) {
+        if (!isUwbTopic(topic)) {
+            // Handle printer status updates; lingering and prefetched printers only refresh their cached state
+            PrinterStatus status = dataHolder.updatePrinterStatus(topic, printerUpdate);
+            long now = System.currentTimeMillis();
+            TelemetryStore store = telemetry;
+            if (store != null) {
+                store.append(topic, now, printerUpdate);
+            }
+            AlertEngine engine = alertEngine;
+            if (engine != null) {
+                engine.onPrinterUpdate(topic, status, now);
+            }
+            MotionGate gate = motionGate;
+            if (gate != null) {
+                gate.onPrinterState(topic, status.getState(), now);
+            }
+            metrics.recordSince(LatencyMetrics.Stage.STORE_UPDATE, stageStart);
+            // Only the active printer is on screen
+            boolean visible = topic.equals(dataHolder.getSnapshot().getActivePrinterTopic());
+            if (visible) {
+                listener.onRenderNeeded();
+            }
+            return visible;
+        } else {
+            // Handle UWB position updates; each tag's zone is resolved by the tracker
+            UwbTag tag = uwbTag(topic);
+            boolean ownTag = tag.own;
+            if (ownTag) {
+                dataHolder.updatePosition(positionUpdate);
+            }
+            long now = System.currentTimeMillis();
+            tagTracker.update(tag.name, positionUpdate.getX(), positionUpdate.getY(), positionUpdate.getZ(), now);
+            MotionGate gate = motionGate;
+            if (gate != null) {
+                gate.onFullFix(tag.id, tagTracker.getX(tag.id), tagTracker.getY(tag.id), tagTracker.getZone(tag.id), now);
+            }
+            metrics.recordSince(LatencyMetrics.Stage.STORE_UPDATE, stageStart);
+            if (ownTag) {
+                listener.onRenderNeeded();
+            }
+            return ownTag;
+        }
+    }
+
+    /**
+     * Hands the tracing fields of the message just applied to the recorder.
+     * @param visible True if the message requested a render
+     */
+    private void traceMessage(boolean visible) {
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null && trace.hasPublishTime()) {
+            recorder.onMessage(trace, arrivalNanos != 0 ? arrivalNanos : System.nanoTime(), visible);
+        }
+    }
+
+    /**
+     * Applies a gateway digest: the wearer's printer, its changed fields and the wearer's position.
+     * @param stageStart Time decoding finished, in System.nanoTime()
+     */
+    private void applyDigest(long stageStart) {
+        String assigned = digestReader.getPrinterTopic();
+        if (assigned != null && !assigned.equals(digestPrinterTopic)) {
+            digestPrinterTopic = assigned;
+            listener.onPrinterAssigned(assigned);
+        }
+        if (digestReader.hasPrinter() && digestPrinterTopic != null) {
+            dataHolder.updatePrinterStatus(digestPrinterTopic, printerUpdate);
+        }
+        if (digestReader.hasPosition()) {
+            dataHolder.updatePosition(positionUpdate);
+        }
+        metrics.recordSince(LatencyMetrics.Stage.STORE_UPDATE, stageStart);
+        listener.onRenderNeeded();
+    }
+
+    /**
+     * @return Messages that passed the topic check
+     */
+    public long getAcceptedMessages() {
+        return acceptedMessages;
+    }
+
+    /**
+     * @return Messages that could not be parsed or stored
+     */
+    public long getFailedMessages() {
+        return failedMessages;
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.printerstatus_glass;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, conflating hand-off between the MQTT callback thread and a parse worker.
+ * Each topic holds at most one pending payload: a newer message replaces the queued one
+ * but keeps its place in line, so a flood on one topic cannot push out or delay the
+ * others beyond one turn. When more topics are waiting than the capacity, the oldest
+ * waiting topic is dropped. Offering never blocks, so Paho acknowledges immediately.
+ */
+public class IngestQueue {
+    // Room for a few hundred UWB tag topics next to the printers
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Processes dequeued messages on the worker thread.
+     */
+    public interface Consumer {
+        /**
+         * Called on the worker thread for the latest payload of a topic.
+         * @param topic The MQTT topic
+         * @param payload The raw payload
+         * @param arrivalNanos System.nanoTime() at which the payload was offered
+         */
+        void accept(String topic, byte[] payload, long arrivalNanos);
+    }
+
+    // Latest payload of a waiting topic, reused when a newer one replaces it
+    private static final class Pending {
+        byte[] payload;
+        long arrivalNanos;
+    }
+
+    private final int capacity;
+    private final Consumer consumer;
+    // Insertion-ordered: the first entry is the topic that has waited longest
+    private final LinkedHashMap<String, Pending> waiting = new LinkedHashMap<>();
+    private Thread worker;
+    private volatile boolean running;
+
+    // Instrumentation
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private int maxDepth;
+    private long lastSampleNanos;
+    private long lastSampleProcessed;
+
+    /**
+     * Creates a queue.
+     * @param capacity Maximum number of topics waiting at the same time
+     * @param consumer Processes the messages on the worker thread
+     */
+    public IngestQueue(int capacity, Consumer consumer) {
+        this.capacity = capacity;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Queues a payload, replacing a payload of the same topic that is still waiting.
+     * @param topic The MQTT topic
+     * @param payload The raw payload
+     */
+    public void offer(String topic, byte[] payload) {
+        long now = System.nanoTime();
+        offered.incrementAndGet();
+        synchronized (waiting) {
+            Pending pending = waiting.get(topic);
+            if (pending != null) {
+                conflated.incrementAndGet();
+            } else {
+                if (waiting.size() >= capacity) {
+                    // Drop the oldest waiting topic
+                    Iterator<Pending> oldest = waiting.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    dropped.incrementAndGet();
+                }
+                pending = new Pending();
+                waiting.put(topic, pending);
+                maxDepth = Math.max(maxDepth, waiting.size());
+            }
+            pending.payload = payload;
+            pending.arrivalNanos = now;
+            waiting.notify();
+        }
+    }
+
+    /**
+     * Processes the longest waiting topic, if any, on the calling thread.
+     * @return True if a message was processed
+     */
+    public boolean drainOne() {
+        String topic;
+        Pending pending;
+        synchronized (waiting) {
+            if (waiting.isEmpty()) {
+                return false;
+            }
+            Iterator<Map.Entry<String, Pending>> first = waiting.entrySet().iterator();
+            Map.Entry<String, Pending> entry = first.next();
+            first.remove();
+            topic = entry.getKey();
+            pending = entry.getValue();
+        }
+        try {
+            consumer.accept(topic, pending.payload, pending.arrivalNanos);
+        } catch (RuntimeException e) {
+            // A bad message must not kill the worker
+            e.printStackTrace();
+        }
+        processed.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Starts the worker thread. Does nothing if already started.
+     * @param name Name of the worker thread
+     */
+    public synchronized void start(String name) {
+        if (worker != null) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runWorker, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the worker thread; messages still waiting are discarded.
+     */
+    public synchronized void stop() {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+        synchronized (waiting) {
+            waiting.clear();
+        }
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                synchronized (waiting) {
+                    while (waiting.isEmpty() && running) {
+                        waiting.wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            drainOne();
+        }
+    }
+
+    /**
+     * @return Number of topics currently waiting
+     */
+    public int getDepth() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * @return Highest number of topics waiting at the same time
+     */
+    public int getMaxDepth() {
+        synchronized (waiting) {
+            return maxDepth;
+        }
+    }
+
+    public long getOffered() {
+        return offered.get();
+    }
+
+    /**
+     * @return Number of payloads replaced by a newer payload of the same topic
+     */
+    public long getConflated() {
+        return conflated.get();
+    }
+
+    /**
+     * @return Number of payloads dropped because too many topics were waiting
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Returns the processing rate since the previous call.
+     * @return Processed messages per second, 0 on the first call
+     */
+    public synchronized double sampleThroughput() {
+        long now = System.nanoTime();
+        long count = processed.get();
+        double rate = lastSampleNanos == 0 ? 0 : (count - lastSampleProcessed) * 1e9 / (now - lastSampleNanos);
+        lastSampleNanos = now;
+        lastSampleProcessed = count;
+        return rate;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.printerstatus_glass;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, allocation-free latency histogram over a sliding time window.
+ * Values (nanoseconds) go into log-linear buckets: 8 sub-buckets per power of two,
+ * so any reported percentile is within 12.5% of the true value, from 1 ns to hours.
+ * The window is split into slots that are recycled as time moves on; a few samples
+ * recorded exactly while a slot is being recycled may be dropped.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    public static final int DEFAULT_SLOTS = 6;
+    public static final long DEFAULT_SLOT_NANOS = 10_000_000_000L; // 6 x 10 s = one minute window
+
+    private final int slots;
+    private final long slotNanos;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray maxima;
+    private final AtomicLongArray slotEpochs;
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * Immutable percentile summary of the current window.
+     */
+    public static final class Snapshot {
+        private final long[] bucketCounts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] bucketCounts, long count, long max) {
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.max = max;
+        }
+
+        /**
+         * @return Number of samples in the window
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Largest sample in the window in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the value below which the given share of samples falls.
+         * @param percentile Percentile between 0 and 100
+         * @return Upper bound of the bucket holding the percentile, in nanoseconds (0 if empty)
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Creates a histogram with a one minute window.
+     */
+    public LatencyHistogram() {
+        this(DEFAULT_SLOTS, DEFAULT_SLOT_NANOS);
+    }
+
+    /**
+     * Creates a histogram.
+     * @param slots Number of slots in the window
+     * @param slotNanos Time covered by one slot
+     */
+    public LatencyHistogram(int slots, long slotNanos) {
+        this.slots = slots;
+        this.slotNanos = slotNanos;
+        counts = new AtomicLongArray(slots * BUCKETS);
+        maxima = new AtomicLongArray(slots);
+        slotEpochs = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            slotEpochs.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Records a latency sample.
+     * @param valueNanos The latency in nanoseconds
+     */
+    public void record(long valueNanos) {
+        record(valueNanos, System.nanoTime());
+    }
+
+    /**
+     * Records a latency sample at a given time.
+     * @param valueNanos The latency in nanoseconds
+     * @param nowNanos Current time in System.nanoTime() base
+     */
+    public void record(long valueNanos, long nowNanos) {
+        if (valueNanos < 0) {
+            valueNanos = 0;
+        }
+        long epoch = Math.floorDiv(nowNanos, slotNanos);
+        int slot = (int) Math.floorMod(epoch, (long) slots);
+
+        // First writer of a new epoch recycles the slot
+        long slotEpoch = slotEpochs.get(slot);
+        if (slotEpoch < epoch && slotEpochs.compareAndSet(slot, slotEpoch, epoch)) {
+            int base = slot * BUCKETS;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(base + i, 0);
+            }
+            maxima.set(slot, 0);
+        }
+
+        counts.incrementAndGet(slot * BUCKETS + bucketIndex(valueNanos));
+        long max;
+        do {
+            max = maxima.get(slot);
+        } while (valueNanos > max && !maxima.compareAndSet(slot, max, valueNanos));
+        totalCount.incrementAndGet();
+    }
+
+    /**
+     * Summarizes the samples of the current window.
+     * @return Snapshot with percentiles of the window
+     */
+    public Snapshot snapshot() {
+        return snapshot(System.nanoTime());
+    }
+
+    /**
+     * Summarizes the samples of the window ending at a given time.
+     * @param nowNanos Current time in System.nanoTime() base
+     * @return Snapshot with percentiles of the window
+     */
+    public Snapshot snapshot(long nowNanos) {
+        long epoch = Math.floorDiv(nowNanos, slotNanos);
+        long[] merged = new long[BUCKETS];
+        long count = 0;
+        long max = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            long slotEpoch = slotEpochs.get(slot);
+            if (slotEpoch > epoch - slots && slotEpoch <= epoch) {
+                int base = slot * BUCKETS;
+                for (int i = 0; i < BUCKETS; i++) {
+                    long c = counts.get(base + i);
+                    merged[i] += c;
+                    count += c;
+                }
+                max = Math.max(max, maxima.get(slot));
+            }
+        }
+        return new Snapshot(merged, count, max);
+    }
+
+    /**
+     * @return Number of samples recorded since creation
+     */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Maps a value to its bucket: values below 8 are exact, larger ones keep their
+     * top four significant bits.
+     * @param value Non-negative value
+     * @return Bucket index
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index Bucket index
+     * @return Largest value that maps to the bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
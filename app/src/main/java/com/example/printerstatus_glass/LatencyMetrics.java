@@ -0,0 +1,143 @@
+package com.example.printerstatus_glass;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Per-stage latency histograms of the message pipeline.
+ * Recording is lock-free and allocation-free and may happen on any thread;
+ * reports are built on demand for logcat or appended as CSV to a file for offline analysis.
+ */
+public class LatencyMetrics {
+
+    /**
+     * Stages of the pipeline from MQTT arrival to pixels on the HUD.
+     */
+    public enum Stage {
+        /** Inside Paho's messageArrived until the payload is queued for the ingest worker */
+        PAHO_ARRIVAL,
+        /** Waiting in the ingest queue for the parse worker */
+        INGEST_QUEUE,
+        /** Whole app callback on the ingest worker, including payload decoding */
+        CALLBACK_DISPATCH,
+        /** Parsing the payload into fields */
+        PARSE,
+        /** Merging the fields into DataHolder */
+        STORE_UPDATE,
+        /** Waiting from the render request until the UI frame picks it up */
+        UI_DEQUEUE,
+        /** Rendering the snapshot onto the HUD views */
+        RENDER,
+        /** Traced messages: from the publisher's send time to Paho arrival, corrected for clock skew */
+        PUBLISH_TO_ARRIVAL,
+        /** Traced messages: from Paho arrival until a frame showing them was rendered */
+        ARRIVAL_TO_RENDER,
+        /** Traced messages: from the publisher's send time until a frame showing them was rendered */
+        PUBLISH_TO_RENDER
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    // Lazily created on first access by the JVM class loader, no locking needed
+    private static final class InstanceHolder {
+        private static final LatencyMetrics INSTANCE = new LatencyMetrics();
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+    /**
+     * Creates an independent set of histograms (tests and tools); the app uses {@link #getInstance()}.
+     */
+    public LatencyMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Returns the app-wide metrics instance
+     * @return The shared LatencyMetrics
+     */
+    public static LatencyMetrics getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Records the duration of one stage.
+     * @param stage The pipeline stage
+     * @param nanos Duration in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records the time elapsed since a start timestamp and returns the current time,
+     * so consecutive stages can be chained: {@code t = record(PARSE, t);}
+     * @param stage The pipeline stage
+     * @param startNanos Start of the stage in System.nanoTime() base
+     * @return The current System.nanoTime()
+     */
+    public long recordSince(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - startNanos, now);
+        return now;
+    }
+
+    /**
+     * @param stage The pipeline stage
+     * @return The histogram of that stage
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Builds a human readable report of all stages for logcat.
+     * @return Multi-line report with count and p50/p95/p99/max in milliseconds
+     */
+    public String report() {
+        StringBuilder builder = new StringBuilder("Stage latency (last minute, ms):\n");
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot snapshot = histograms[stage.ordinal()].snapshot();
+            builder.append(String.format(Locale.US, "%-18s n=%-6d p50=%.3f p95=%.3f p99=%.3f max=%.3f%n",
+                    stage, snapshot.getCount(),
+                    snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(95) / 1e6,
+                    snapshot.getPercentile(99) / 1e6, snapshot.getMax() / 1e6));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes one CSV row per stage: wall time, stage, count, p50, p95, p99, max (nanoseconds).
+     * @param writer Destination of the rows
+     * @param wallTimeMillis Timestamp written into every row
+     * @throws IOException If writing fails
+     */
+    public void writeCsv(Writer writer, long wallTimeMillis) throws IOException {
+        for (Stage stage : STAGES) {
+            LatencyHistogram.Snapshot snapshot = histograms[stage.ordinal()].snapshot();
+            writer.write(wallTimeMillis + "," + stage + "," + snapshot.getCount() + ","
+                    + snapshot.getPercentile(50) + "," + snapshot.getPercentile(95) + ","
+                    + snapshot.getPercentile(99) + "," + snapshot.getMax() + "\n");
+        }
+    }
+
+    /**
+     * Appends the current window to a CSV file, writing a header if the file is new.
+     * @param file The CSV file
+     * @throws IOException If writing fails
+     */
+    public void appendToFile(File file) throws IOException {
+        boolean isNew = !file.exists() || file.length() == 0;
+        try (Writer writer = new FileWriter(file, true)) {
+            if (isNew) {
+                writer.write("time_ms,stage,count,p50_ns,p95_ns,p99_ns,max_ns\n");
+            }
+            writeCsv(writer, System.currentTimeMillis());
+        }
+    }
+}
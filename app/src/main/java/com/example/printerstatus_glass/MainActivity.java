@@ -1,9 +1,10 @@
 package com.example.printerstatus_glass;
 
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
-import android.util.TypedValue;
-import android.view.Gravity;
+import android.view.Choreographer;
 import android.widget.FrameLayout;
 import android.widget.ScrollView;
 import android.widget.TextView;
@@ -11,38 +12,98 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main activity class that handles printer status monitoring and display.
  * Implements MQTT callback for real-time data updates.
  */
-public class MainActivity extends AppCompatActivity implements MqttHandler.MessageCallback {
+public class MainActivity extends AppCompatActivity {
     // MQTT connection configuration
     private static final String BROKER_URL = "tcp://control.server.de:1883";
+    // One broker per hall: add each with its standby URLs and route the hall's zones to it
+    private static final BrokerRoutes BROKER_ROUTES = new BrokerRoutes()
+            .addBroker("control", BROKER_URL);
     private static final String CLIENT_ID = "ID";
     private static final String PRINTER_TOPIC = "sf/printer/a";
-    private static final String UWB_TOPIC = "sf/UWB/uwb-a";
+    private static final String ZONE_CONFIG = "zones.conf";
+    private static final String ALERT_CONFIG = "alerts.conf";
+    private static final long ALERT_TICK_MILLIS = 1000;
+    private static final String METRICS_FILE = "latency.csv";
+    private static final long METRICS_DUMP_SECONDS = 30;
+    // Per-message publish-to-render latencies of traced messages, and how often the clock offset is sampled
+    private static final String TRACES_FILE = "traces.csv";
+    private static final long CLOCK_PING_SECONDS = 5;
+    private static final String SNAPSHOT_FILE = "state.snapshot";
+    private static final long SNAPSHOT_SECONDS = 5;
+    // How long onDestroy waits for the final snapshot save and trace flush queued by onPause
+    private static final long SHUTDOWN_MILLIS = 500;
+    private static final String TELEMETRY_FILE = "telemetry.bin";
+    // Set to true to record all MQTT traffic for offline replay (see ReplayHarness in the unit tests)
+    private static final boolean RECORD_TRACE = false;
+    private static final String TRACE_FILE = "trace.bin";
+    // Take one condensed digest from the gateway instead of the raw printer and UWB topics
+    private static final boolean USE_GATEWAY = false;
+    // Upper bound for HUD redraws; bursts of messages are coalesced into one render per frame
+    private static final double HUD_MAX_RATE_HZ = 30;
+    // Set to false to re-render every view on every update (before/after render time comparison)
+    private static final boolean INCREMENTAL_HUD = true;
+    // Only read the coordinates of UWB tags that stand still, until they move or a printer changes state
+    private static final boolean ADAPTIVE_UWB = true;
 
     // UI components and data handlers
     private MqttHandler mqttHandler;
+    private SubscriptionManager subscriptionManager;
+    private TopicPrefetcher topicPrefetcher;
+    private ScheduledExecutorService mqttScheduler;
+    private UiUpdateScheduler uiScheduler;
     private TextView tvStatus;
+    private HudRenderer hudRenderer;
     private DataHolder dataHolder;
+    private final TagTracker tagTracker = new TagTracker();
+    private final LatencyMetrics metrics = LatencyMetrics.getInstance();
+    // Skew between the publishers' clock and ours, for the publish timestamps of traced messages
+    private final ClockSync clockSync = new ClockSync(CLIENT_ID);
+    private final TraceRecorder traceRecorder = new TraceRecorder(clockSync, metrics);
+    private final MotionGate motionGate = new MotionGate();
 
-    // Current printer topic and last update timestamp
-    private String currentPrinterTopic = PRINTER_TOPIC; // default topic
-    private long lastPrinterUpdateTime = 0;
+    // Parses and stores messages on the MQTT ingest worker
+    private IngestPipeline ingestPipeline;
+    // Alert rules over the updates of all subscribed printers
+    private final AlertEngine alertEngine = new AlertEngine(this::showAlert);
 
-    // latency measuring variables (test)
-    private long mqttReceiveTime = 0;
-    private long uiUpdateStartTime = 0;
-    private int messageCount = 0;
-    private long totalProcessingLatency = 0;
-    private long totalUiUpdateLatency = 0;
+    // Current printer topic (written on the ingest worker, read by the renderer)
+    private volatile String currentPrinterTopic = PRINTER_TOPIC; // default topic
+
+    // DataHolder version shown on screen, used to skip redundant redraws
+    private long lastRenderedVersion = -1;
+    private long lastRenderedZoneChanges = -1;
+
+    // Renders since start, UI thread only
+    private int renderCount = 0;
+
+    // Startup timing: uptime at the end of onCreate
+    private volatile long onCreateDoneUptime;
+
+    // Persisted state for the next launch; savedVersion is only used on the MQTT scheduler
+    private File snapshotFile;
+    private long savedVersion = -1;
+
+    // Numeric history per printer, opened in the background; null until then
+    private volatile TelemetryStore telemetryStore;
+
+    // Recording of the MQTT traffic, if enabled
+    private TraceFile.Writer traceWriter;
 
     /**
      * Called when the activity is first created.
@@ -52,11 +113,14 @@ public class MainActivity extends AppCompatActivity implements MqttHandler.Messa
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long onCreateStart = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Initialize data holder singleton
+        // Initialize data holder singleton with the last known state, so the first frame has data
         dataHolder = DataHolder.getInstance();
+        snapshotFile = new File(getFilesDir(), SNAPSHOT_FILE);
+        restoreSnapshot();
 
         // Set up main content view with scrolling
         FrameLayout bodyLayout = findViewById(R.id.body_layout);
@@ -71,148 +135,362 @@ public class MainActivity extends AppCompatActivity implements MqttHandler.Messa
         scrollView.addView(tvStatus);
         bodyLayout.addView(scrollView);
 
-        // Initialize MQTT client and connect
-        mqttHandler = new MqttHandler();
-        mqttHandler.setMessageCallback(this);
-        mqttHandler.connect(BROKER_URL, CLIENT_ID);
+        // View references and formatters are resolved once
+        hudRenderer = new HudRenderer(tvStatus, findViewById(R.id.footer), findViewById(R.id.timestamp));
+        hudRenderer.setForceFullRender(!INCREMENTAL_HUD);
+        hudRenderer.setTagTracker(tagTracker);
+
+        // Renders run on display frames; Choreographer accepts callbacks from any thread
+        Choreographer choreographer = Choreographer.getInstance();
+        uiScheduler = new UiUpdateScheduler(
+                listener -> choreographer.postFrameCallback(listener::doFrame),
+                this::renderFrame, HUD_MAX_RATE_HZ);
+
+        // Initialize MQTT client; it connects once the message path is set up
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        // Delayed subscription changes are dropped on shutdown; queued saves still run
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        mqttScheduler = scheduler;
+        mqttHandler = new MqttHandler(mqttScheduler);
+        mqttHandler.addConnectionListener(state -> runOnUiThread(() -> hudRenderer.setConnectionState(state)));
+
+        // Subscribe to default topics; the UWB tags are held for the whole session
+        subscriptionManager = new SubscriptionManager(mqttHandler, mqttScheduler);
+        if (USE_GATEWAY) {
+            subscriptionManager.acquire(GatewayDigest.topicFor(IngestPipeline.OWN_TAG));
+        } else {
+            subscriptionManager.acquire(currentPrinterTopic);
+            subscriptionManager.acquire(IngestPipeline.UWB_WILDCARD);
+        }
+        subscriptionManager.acquire(clockSync.getPongTopic());
+
+        // Subscribe ahead to zones on the wearer's predicted path
+        topicPrefetcher = new TopicPrefetcher(subscriptionManager);
+
+        // Only the wearer's tag moves the HUD; other tags only count towards the tags per zone
+        tagTracker.addZoneListener(IngestPipeline.OWN_TAG, (tracker, tag, previousTopic, topic) -> followWearer(topic));
+        tagTracker.addListener(IngestPipeline.OWN_TAG, (tracker, tag) -> {
+            double x = tracker.getX(tag);
+            double y = tracker.getY(tag);
+            if (!Double.isNaN(x) && !Double.isNaN(y)) {
+                topicPrefetcher.onPosition(tracker.getUpdateTime(tag), x, y, currentPrinterTopic);
+            }
+        });
+        tagTracker.addZoneListener((tracker, tag, previousTopic, topic) -> {
+            String active = currentPrinterTopic;
+            if (active.equals(previousTopic) || active.equals(topic)) {
+                uiScheduler.requestRender();
+            }
+        });
+
+        // Messages are parsed and stored on the ingest worker, the HUD is marked dirty and
+        // the UI thread renders the latest state at most once per frame
+        ingestPipeline = new IngestPipeline(dataHolder, tagTracker, subscriptionManager, new IngestPipeline.Listener() {
+            @Override
+            public void onRenderNeeded() {
+                uiScheduler.requestRender();
+            }
+
+            @Override
+            public void onFirstMessage() {
+                Log.d("Startup", "First live message " + (SystemClock.uptimeMillis() - onCreateDoneUptime)
+                        + " ms after onCreate");
+            }
+
+            @Override
+            public void onPrinterAssigned(String topic) {
+                followWearer(topic);
+            }
+
+            @Override
+            public void onMessageError(String topic, Exception e) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, "Message Processing Error: " + e.getMessage(),
+                        Toast.LENGTH_SHORT).show());
+            }
+        });
+        ingestPipeline.setAlertEngine(alertEngine);
+        ingestPipeline.setTraceRecorder(traceRecorder);
+        if (ADAPTIVE_UWB) {
+            ingestPipeline.setMotionGate(motionGate);
+        }
+        mqttHandler.setMessageCallback(ingestPipeline);
+        if (RECORD_TRACE) {
+            startTraceRecording();
+        }
+
+        // Connect off the main thread; subscriptions are sent once connected
+        mqttScheduler.execute(() -> mqttHandler.connect(BROKER_ROUTES, CLIENT_ID));
+
+        // Keep a CSV trail of the stage latencies for offline analysis of field trials
+        File metricsFile = new File(getExternalFilesDir(null), METRICS_FILE);
+        File tracesFile = new File(getExternalFilesDir(null), TRACES_FILE);
+        mqttScheduler.scheduleAtFixedRate(() -> {
+            try {
+                metrics.appendToFile(metricsFile);
+                traceRecorder.appendToFile(tracesFile);
+            } catch (IOException e) {
+                Log.e("LatencyMetrics", "Metrics not written", e);
+            }
+        }, METRICS_DUMP_SECONDS, METRICS_DUMP_SECONDS, TimeUnit.SECONDS);
+
+        // Keep the clock offset current; pongs come back through the ingest pipeline
+        mqttScheduler.scheduleAtFixedRate(() -> mqttHandler.publish(clockSync.getPingTopic(),
+                clockSync.createPing(ClockSync.nowMicros())), 1, CLOCK_PING_SECONDS, TimeUnit.SECONDS);
 
-        // Subscribe to default topics
-        mqttHandler.subscribe(PRINTER_TOPIC);
-        mqttHandler.subscribe(UWB_TOPIC);
+        // Persist the state for the next launch whenever it changed
+        mqttScheduler.scheduleAtFixedRate(this::saveSnapshot, SNAPSHOT_SECONDS, SNAPSHOT_SECONDS, TimeUnit.SECONDS);
+        mqttScheduler.execute(this::openTelemetry);
+
+        // Duration rules fire even when a printer stops reporting
+        mqttScheduler.scheduleAtFixedRate(() -> alertEngine.tick(System.currentTimeMillis()),
+                ALERT_TICK_MILLIS, ALERT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Draw the restored state in the first frame
+        uiScheduler.requestRender();
+        onCreateDoneUptime = SystemClock.uptimeMillis();
+        Log.d("Startup", "onCreate took " + (onCreateDoneUptime - onCreateStart) + " ms");
     }
 
     /**
-     * Callback method invoked when an MQTT message is received.
-     * Processes the message based on its topic and updates the UI accordingly.
-     * @param topic The MQTT topic on which the message was received
-     * @param message The content of the received message
+     * Restores the state saved by the previous session and continues on its printer.
+     * Restored values are marked as stale on the HUD until live data arrives.
      */
-    @Override
-    public void onMessageReceived(String topic, String message) {
-        mqttReceiveTime = System.currentTimeMillis(); // record the message arriving time (test)
-        runOnUiThread(() -> {
-            uiUpdateStartTime = System.currentTimeMillis(); // record the UI thread starting time (test)
-            long messageProcessingLatency = uiUpdateStartTime - mqttReceiveTime;
-
-            try {
-                if (topic.equals(currentPrinterTopic)) {
-                    // Handle printer status updates
-                    Map<String, String> newData = DataParser.parsePrinterData(message);
-                    dataHolder.updatePrinterData(newData);
-                    lastPrinterUpdateTime = System.currentTimeMillis();
-                    updateDisplay();
-                } else if (topic.equals(UWB_TOPIC)) {
-                    // Handle UWB position updates
-                    Map<String, String> newData = DataParser.parseUwbData(message);
-                    dataHolder.updateUwbData(newData);
-
-                    // Update printer topic based on UWB coordinates
-                    double x = safeParseDouble(newData.get("positionX"));
-                    double y = safeParseDouble(newData.get("positionY"));
-                    String newTopic = PrinterTopicSelector.selectPrinterTopic(x, y);
-
-                    if (newTopic != null && !newTopic.equals(currentPrinterTopic)) {
-                        currentPrinterTopic = newTopic;
-                        mqttHandler.subscribe(currentPrinterTopic);
-                        Toast.makeText(this, "Change Topic: " + newTopic, Toast.LENGTH_SHORT).show();
-                    }
-
-                    updateDisplay();
+    private void restoreSnapshot() {
+        try {
+            if (StateSnapshotFile.load(snapshotFile, dataHolder)) {
+                String restoredTopic = dataHolder.getSnapshot().getActivePrinterTopic();
+                if (restoredTopic != null) {
+                    currentPrinterTopic = restoredTopic;
                 }
+                Log.d("Startup", "Restored state of " + dataHolder.getAllPrinterStates().size() + " printers");
+            }
+        } catch (IOException e) {
+            Log.e("Startup", "Snapshot not restored", e);
+        }
+        dataHolder.setActivePrinter(currentPrinterTopic);
+    }
 
-                messageCount++;
-                totalProcessingLatency += messageProcessingLatency;
-                long uiUpdateLatency = System.currentTimeMillis() - uiUpdateStartTime;
-                totalUiUpdateLatency += uiUpdateLatency;
+    /**
+     * Records the MQTT traffic of this session to the app's external files directory.
+     */
+    private void startTraceRecording() {
+        try {
+            traceWriter = new TraceFile.Writer(new File(getExternalFilesDir(null), TRACE_FILE));
+            mqttHandler.setTraceWriter(traceWriter);
+        } catch (IOException e) {
+            Log.e("Trace", "Trace not recorded", e);
+        }
+    }
 
-                // Output statistics every 10 messages
-                if (messageCount % 10 == 0) {
-                    logLatencyStats();
-                }
+    /**
+     * Maps the telemetry history file and shows its trends on the HUD. Runs on the MQTT scheduler.
+     */
+    private void openTelemetry() {
+        try {
+            TelemetryStore store = new TelemetryStore(new File(getFilesDir(), TELEMETRY_FILE));
+            telemetryStore = store;
+            ingestPipeline.setTelemetry(store);
+            runOnUiThread(() -> hudRenderer.setTelemetry(store));
+        } catch (IOException e) {
+            Log.e("Telemetry", "Telemetry history not available", e);
+        }
+    }
 
+    /**
+     * Writes the current state to the snapshot file if it changed since the last save.
+     * Runs on the MQTT scheduler.
+     */
+    private void saveSnapshot() {
+        long version = dataHolder.getVersion();
+        if (version == savedVersion) {
+            return;
+        }
+        try {
+            StateSnapshotFile.save(snapshotFile, dataHolder);
+            savedVersion = version;
+        } catch (IOException e) {
+            Log.e("Startup", "Snapshot not saved", e);
+        }
+    }
 
-            } catch (Exception e) {
-                Toast.makeText(this, "Message Processing Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-            }
-        });
+    /**
+     * Called when the activity goes to the background.
+     * Saves the latest state, as the process may be killed from here on.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mqttScheduler.execute(this::saveSnapshot);
+        TraceFile.Writer trace = traceWriter;
+        if (trace != null) {
+            // The process may be killed while in the background
+            mqttScheduler.execute(() -> {
+                try {
+                    trace.flush();
+                } catch (IOException e) {
+                    Log.e("Trace", "Trace not flushed", e);
+                }
+            });
+        }
     }
 
     /**
-     * Updates the UI with current printer and position data.
-     * Formats and displays all available information in a structured way.
+     * Called when the activity is destroyed.
+     * Stops pending subscription changes and the MQTT ingest worker, after the last
+     * snapshot save queued by onPause has finished.
      */
-    private void updateDisplay() {
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mqttScheduler.shutdown();
         try {
-            Map<String, String> printerData = dataHolder.getPrinterData();
-            Map<String, String> uwbData = dataHolder.getUwbData();
-
-            // Parse UWB position data with default value 0
-            double positionX = safeParseDouble(uwbData.get("positionX"));
-            double positionY = safeParseDouble(uwbData.get("positionY"));
-
-            // Build status display text
-            StringBuilder statusText = new StringBuilder();
-
-            // Configure text view appearance
-            tvStatus.setTextSize(TypedValue.COMPLEX_UNIT_SP, 30);
-            tvStatus.setGravity(Gravity.END);
-
-            // Create status header
-            String title = "====== Printer " + printerData.get("printer_name").toUpperCase() + " Status ======\n";
-            statusText.append(title);
-
-            // Append printer status information
-            appendIfExists(statusText, "Bed Temperature",printerData.get("bed_temperature_current") + "°C / " + printerData.get("bed_temperature_target") + "°C");
-            appendIfExists(statusText, "Tool Temperature",printerData.get("tool_temperature_current") + "°C / " + printerData.get("tool_temperature_target") + "°C");
-            appendIfExists(statusText, "Printer State", printerData.get("state"));
-            appendIfExists(statusText,"Completion",String.format(Locale.US, "%.1f", safeParseDouble(printerData.get("completion"))) + "%" + "   Time Left: " + printerData.get("print_time_left")+ "s");
-            appendIfExists(statusText, "Job Name", printerData.get("job_name"));
-
-            // Update main status display
-            tvStatus.setText(statusText.toString());
-
-            // Update footer with position information
-            TextView footerTextView = findViewById(R.id.footer);
-            String currentPosition = "Current Position: " + positionX + ", " + positionY ;
-            footerTextView.setText(currentPosition);
-
-            // Update timestamp if data is available
-            TextView timestampTextView = findViewById(R.id.timestamp);
-            if (lastPrinterUpdateTime > 0) {
-                String updateTime = new SimpleDateFormat("HH:mm:ss", Locale.getDefault())
-                        .format(new Date(lastPrinterUpdateTime));
-                timestampTextView.setText("Update Time: " + updateTime);
-            } else {
-                statusText.append("Printer Update Time: No Data\n");
+            if (!mqttScheduler.awaitTermination(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS)) {
+                Log.w("Startup", "Final snapshot not saved in time");
+                mqttScheduler.shutdownNow();
             }
+        } catch (InterruptedException e) {
+            mqttScheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        mqttHandler.disconnect();
+        if (traceWriter != null) {
+            try {
+                traceWriter.close();
+                Log.d("Trace", "Recorded " + traceWriter.getRecords() + " messages");
+            } catch (IOException e) {
+                Log.e("Trace", "Trace not closed", e);
+            }
+        }
+        TelemetryStore telemetry = telemetryStore;
+        if (telemetry != null) {
+            try {
+                telemetry.close();
+            } catch (IOException e) {
+                Log.e("Telemetry", "Telemetry history not closed", e);
+            }
+        }
+    }
 
-        } catch (Exception e) {
-            Toast.makeText(this, "View Update Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+    /**
+     * Switches the HUD to the printer whose zone the wearer entered. Runs on the ingest worker.
+     * @param newTopic Printer topic of the zone, or null when the wearer left all zones
+     */
+    private void followWearer(String newTopic) {
+        if (newTopic == null || newTopic.equals(currentPrinterTopic)) {
+            return; // Keep showing the last printer until another zone is entered
         }
+        if (USE_GATEWAY) {
+            // The gateway's digest already carries the new printer's state
+            currentPrinterTopic = newTopic;
+        } else {
+            PrinterStateStore.PrinterState cached = dataHolder.getPrinterState(newTopic);
+            topicPrefetcher.onZoneEntered(newTopic, cached != null ? cached.getLastUpdateTime() : 0);
+            // Old topic lingers for a grace period, then is unsubscribed
+            subscriptionManager.release(currentPrinterTopic);
+            currentPrinterTopic = newTopic;
+            subscriptionManager.acquire(currentPrinterTopic);
+        }
+        // Show the new printer's last known state right away
+        dataHolder.setActivePrinter(currentPrinterTopic);
+        runOnUiThread(() -> Toast.makeText(this, "Change Topic: " + newTopic, Toast.LENGTH_SHORT).show());
     }
 
     /**
-     * Safely parses a string to double with default value 0
-     * @param value The string to parse
-     * @return Parsed double value or 0 if parsing fails
+     * Frame callback of the UI update scheduler: renders the latest state and records latency.
      */
-    private double safeParseDouble(String value) {
-        try {
-            return Double.parseDouble(Objects.requireNonNullElse(value, "0"));
-        } catch (NumberFormatException e) {
-            return 0;
+    private void renderFrame() {
+        if (renderCount == 0) {
+            Log.d("Startup", "Cold start to first render: "
+                    + (SystemClock.uptimeMillis() - Process.getStartUptimeMillis()) + " ms, restored state: "
+                    + dataHolder.getSnapshot().isPrinterRestored());
+        }
+        long renderStart = System.nanoTime();
+        metrics.record(LatencyMetrics.Stage.UI_DEQUEUE, uiScheduler.getLastQueueDelayNanos());
+        updateDisplay();
+        traceRecorder.onRendered(metrics.recordSince(LatencyMetrics.Stage.RENDER, renderStart));
+
+        // Output statistics every 100 renders
+        if (++renderCount % 100 == 0) {
+            logLatencyStats();
+        }
+    }
+
+    /**
+     * Called when the activity comes to the foreground.
+     * Reloads the zone layout and the alert rules in the background so config changes apply
+     * without a restart; the previous layout keeps serving lookups until the new one is swapped in.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        new Thread(() -> {
+            loadZoneConfig();
+            loadAlertConfig();
+        }, "config-loader").start();
+    }
+
+    /**
+     * Loads the printer zone layout and swaps it into PrinterTopicSelector.
+     * A zones.conf in the app's external files directory overrides the bundled asset.
+     */
+    private void loadZoneConfig() {
+        File override = new File(getExternalFilesDir(null), ZONE_CONFIG);
+        try (InputStream in = override.isFile() ? new FileInputStream(override) : getAssets().open(ZONE_CONFIG);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            PrinterTopicSelector.loadZones(reader);
+            Log.d("Zones", "Loaded " + PrinterTopicSelector.getZoneIndex().size() + " zones");
+        } catch (IOException e) {
+            Log.e("Zones", "Zone config not loaded, keeping current layout", e);
         }
     }
 
     /**
-     * Appends a labeled value to the string builder if the value exists
-     * @param builder The StringBuilder to append to
-     * @param label The label for the value
-     * @param value The value to append
+     * Loads the alert rules and hands them to the alert engine.
+     * An alerts.conf in the app's external files directory overrides the bundled asset.
      */
-    private void appendIfExists(StringBuilder builder, String label, String value) {
-        if (value != null && !value.isEmpty()) {
-            builder.append(label).append(": ").append(value).append("\n");
+    private void loadAlertConfig() {
+        File override = new File(getExternalFilesDir(null), ALERT_CONFIG);
+        try (InputStream in = override.isFile() ? new FileInputStream(override) : getAssets().open(ALERT_CONFIG);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            AlertRules rules = AlertRules.parse(reader);
+            alertEngine.setRules(rules);
+            Log.d("Alerts", "Loaded " + rules.size() + " alert rules");
+        } catch (IOException e) {
+            Log.e("Alerts", "Alert config not loaded, keeping current rules", e);
+        }
+    }
+
+    /**
+     * Shows raised alerts as a toast; cleared alerts are only logged.
+     * @param alert The raised or cleared alert
+     */
+    private void showAlert(AlertEngine.Alert alert) {
+        Log.d("Alerts", alert.toString());
+        if (alert.isRaised()) {
+            String printer = alert.getTopic().substring(alert.getTopic().lastIndexOf('/') + 1);
+            runOnUiThread(() -> Toast.makeText(this, "Alert " + printer + ": " + alert.getRuleId(),
+                    Toast.LENGTH_LONG).show());
+        }
+    }
+
+    /**
+     * Updates the UI with current printer and position data.
+     * Only views whose content changed are touched.
+     */
+    private void updateDisplay() {
+        try {
+            // Read printer and UWB data from one consistent snapshot
+            DataHolder.Snapshot snapshot = dataHolder.getSnapshot();
+            long zoneChanges = tagTracker.getZoneChanges();
+            if (snapshot.getVersion() == lastRenderedVersion && zoneChanges == lastRenderedZoneChanges) {
+                return; // Nothing changed since the last render
+            }
+            hudRenderer.render(snapshot);
+            lastRenderedVersion = snapshot.getVersion();
+            lastRenderedZoneChanges = zoneChanges;
+
+        } catch (Exception e) {
+            Toast.makeText(this, "View Update Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
         }
     }
 
@@ -227,19 +505,58 @@ public class MainActivity extends AppCompatActivity implements MqttHandler.Messa
 
     /**
      * Logs latency statistics for performance monitoring.
-     * Calculates and displays average processing times.
+     * Shows per-stage percentiles and the pipeline counters.
      */
     private void logLatencyStats() {
-        double avgProcessing = (double)totalProcessingLatency / messageCount;
-        double avgUiUpdate = (double)totalUiUpdateLatency / messageCount;
-
-        String stats = String.format(Locale.US,
-                "Latency Stats (last %d msgs):\n" +
-                        "MQTT->UI Thread: %.1fms\n" +
-                        "UI Update: %.1fms",
-                messageCount, avgProcessing, avgUiUpdate);
+        IngestQueue ingestQueue = mqttHandler.getIngestQueue();
+        BrokerConnection[] connections = mqttHandler.getConnections();
+        if (connections.length == 0) {
+            return; // Still starting up
+        }
+        String stats = metrics.report() + String.format(Locale.US,
+                "Render requests: %d, coalesced: %d\n" +
+                        "HUD %s: views updated panel/footer/time: %d/%d/%d of %d renders\n" +
+                        "Ingest: %.0f msg/s, depth %d (max %d), conflated %d, dropped %d\n" +
+                        "Discarded msgs: %d, subscribe/unsubscribe calls: %d/%d\n" +
+                        "Prefetch hit rate: %.0f%% of %d zone entries, prefetched/wasted: %d/%d\n" +
+                        "UWB tags: %d, updates: %d, zone changes: %d, suppressed flaps: %d\n" +
+                        "UWB fixes full/light: %d/%d, settled: %d, woken by printers: %d\n" +
+                        "Alert rules: %d, updates: %d, evaluations: %d, raised: %d\n" +
+                        "Traced msgs: %d (%d before clock sync), clock offset %.1f ms +/- %.1f ms from %d pongs",
+                uiScheduler.getRequests(), uiScheduler.getCoalesced(),
+                hudRenderer.isForceFullRender() ? "full" : "incremental",
+                hudRenderer.getPanelUpdates(), hudRenderer.getFooterUpdates(),
+                hudRenderer.getTimestampUpdates(), hudRenderer.getRenders(),
+                ingestQueue.sampleThroughput(), ingestQueue.getDepth(), ingestQueue.getMaxDepth(),
+                ingestQueue.getConflated(), ingestQueue.getDropped(),
+                subscriptionManager.getDiscardedMessages(),
+                subscriptionManager.getSubscribeCalls(), subscriptionManager.getUnsubscribeCalls(),
+                topicPrefetcher.getHitRate() * 100, topicPrefetcher.getZoneEntries(),
+                topicPrefetcher.getPrefetches(), topicPrefetcher.getWastedPrefetches(),
+                tagTracker.size(), tagTracker.getUpdates(), tagTracker.getZoneChanges(),
+                tagTracker.getSuppressedZoneChanges(),
+                motionGate.getFullFixes(), motionGate.getLightFixes(), motionGate.getSettled(),
+                motionGate.getWoken(),
+                alertEngine.getRules().size(), alertEngine.getUpdates(), alertEngine.getEvaluations(),
+                alertEngine.getRaised(),
+                traceRecorder.getTraced(), traceRecorder.getUntimed(), clockSync.getOffsetMicros() / 1000.0,
+                clockSync.getDelayMicros() / 2000.0, clockSync.getSamples());
+
+        // Connection health per broker
+        StringBuilder brokers = new StringBuilder();
+        for (BrokerConnection broker : connections) {
+            ConnectionSupervisor supervisor = broker.getSupervisor();
+            LatencyHistogram.Snapshot probes = broker.getProbeLatency().snapshot();
+            brokers.append(String.format(Locale.US,
+                    "\nBroker %s at %s: %s, %.0f msg/s, probe p50/p99 %.1f/%.1f ms, failovers %d, failed probes %d, " +
+                            "lost %d times, last recovery %d ms, p95 recovery %.1f s",
+                    broker.getName(), broker.getUrl(), supervisor.getState(), broker.sampleThroughput(),
+                    probes.getPercentile(50) / 1e6, probes.getPercentile(99) / 1e6,
+                    broker.getFailovers(), broker.getHealthFailures(), supervisor.getConnectionsLost(),
+                    supervisor.getLastRecoveryMillis(), supervisor.getRecoveryTimes().snapshot().getPercentile(95) / 1e9));
+        }
 
-        Log.d("LatencyMetrics", stats);
+        Log.d("LatencyMetrics", stats + brokers);
     }
 
 }
\ No newline at end of file
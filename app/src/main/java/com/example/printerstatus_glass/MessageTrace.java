@@ -0,0 +1,79 @@
+package com.example.printerstatus_glass;
+
+/**
+ * Optional tracing fields a publisher may add to a message: a trace id and the time the
+ * publisher sent it, in microseconds since the epoch on the publisher's clock.
+ * Text messages carry them as {@code trace_id=<long>} and {@code publish_us=<long>} fields,
+ * binary messages as the varint fields {@link BinaryCodec#TRACE_ID_ID} and
+ * {@link BinaryCodec#PUBLISH_TIME_ID}. The parsers fill a reused instance while they walk
+ * the payload, so tracing adds no pass and no allocation; the fields never reach the records.
+ * Not thread-safe; each ingest thread owns its instance.
+ */
+public final class MessageTrace {
+    public static final String TRACE_ID_KEY = "trace_id";
+    public static final String PUBLISH_TIME_KEY = "publish_us";
+    /** Value of fields the message did not carry */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private long traceId = NONE;
+    private long publishMicros = NONE;
+
+    /**
+     * Forgets the fields of the previous message.
+     * @return This trace
+     */
+    public MessageTrace reset() {
+        traceId = NONE;
+        publishMicros = NONE;
+        return this;
+    }
+
+    /**
+     * Takes a text field if it is one of the tracing fields.
+     * The first character rules out almost every other key before any comparison.
+     * @param key The field name
+     * @param value The field value
+     * @return True if the field was a tracing field and must not be forwarded
+     */
+    boolean accept(FieldSlice key, FieldSlice value) {
+        int length = key.length();
+        if (length == TRACE_ID_KEY.length() && key.charAt(0) == 't' && key.contentEquals(TRACE_ID_KEY)) {
+            traceId = value.parseLong(NONE);
+            return true;
+        }
+        if (length == PUBLISH_TIME_KEY.length() && key.charAt(0) == 'p' && key.contentEquals(PUBLISH_TIME_KEY)) {
+            publishMicros = value.parseLong(NONE);
+            return true;
+        }
+        return false;
+    }
+
+    void setTraceId(long traceId) {
+        this.traceId = traceId;
+    }
+
+    void setPublishMicros(long publishMicros) {
+        this.publishMicros = publishMicros;
+    }
+
+    /**
+     * @return The trace id, or {@link #NONE}
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * @return The publisher's send time in microseconds on its own clock, or {@link #NONE}
+     */
+    public long getPublishMicros() {
+        return publishMicros;
+    }
+
+    /**
+     * @return True if the message carried a publish time
+     */
+    public boolean hasPublishTime() {
+        return publishMicros != NONE;
+    }
+}
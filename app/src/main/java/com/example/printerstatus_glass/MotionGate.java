@@ -0,0 +1,236 @@
+package com.example.printerstatus_glass;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides per UWB fix whether a tag needs the full ingest path (parse, smoothing, zone
+ * resolution, store, render) or only a cheap look at its coordinates.
+ * A tag whose filtered position stayed within {@link #DEFAULT_MOVE_METRES} of one spot
+ * for a settle time, well away from every zone border, becomes stationary; its fixes are
+ * then only compared with that spot. It returns to full processing when two fixes in a
+ * row lie further away (a single outlier does not count), every refresh interval for one
+ * fix, and for every tag when a printer changes state, since wearers tend to walk off then.
+ * As the border margin is larger than the move threshold, a stationary tag is back on the
+ * full path before it can reach another zone.
+ * Slots are the tag ids of the {@link TagTracker}. Used on the ingest worker thread only;
+ * the counters may be read from any thread.
+ */
+public class MotionGate {
+    public static final double DEFAULT_MOVE_METRES = 0.3;
+    public static final long DEFAULT_SETTLE_MILLIS = 3000;
+    public static final double DEFAULT_BORDER_METRES = 0.6;
+    public static final long DEFAULT_REFRESH_MILLIS = 10_000;
+    // Fixes beyond the threshold in a row that count as motion
+    private static final int MOTION_FIXES = 2;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final double moveMetres;
+    private final long settleMillis;
+    private final double borderMetres;
+    private final long refreshMillis;
+
+    // State by tag id: the spot the tag rests at, since when, and whether it is stationary
+    private double[] anchorX = new double[0];
+    private double[] anchorY = new double[0];
+    private long[] stillSince = new long[0];
+    private long[] lastFull = new long[0];
+    private boolean[] stationary = new boolean[0];
+    private int[] movedFixes = new int[0];
+    // Last reported state of each printer
+    private final Map<String, String> printerStates = new HashMap<>();
+
+    private volatile long fullFixes;
+    private volatile long lightFixes;
+    private volatile long settled;
+    private volatile long woken;
+
+    /**
+     * Creates a gate with the default thresholds.
+     */
+    public MotionGate() {
+        this(DEFAULT_MOVE_METRES, DEFAULT_SETTLE_MILLIS, DEFAULT_BORDER_METRES, DEFAULT_REFRESH_MILLIS);
+    }
+
+    /**
+     * @param moveMetres Distance from the resting spot that counts as motion
+     * @param settleMillis How long a tag must rest before it becomes stationary
+     * @param borderMetres Minimum distance of the resting spot to other zones; not below moveMetres
+     * @param refreshMillis Longest time without a full fix while stationary
+     */
+    public MotionGate(double moveMetres, long settleMillis, double borderMetres, long refreshMillis) {
+        if (moveMetres <= 0 || borderMetres < moveMetres || settleMillis < 0 || refreshMillis <= 0) {
+            throw new IllegalArgumentException("Invalid gate settings");
+        }
+        this.moveMetres = moveMetres;
+        this.settleMillis = settleMillis;
+        this.borderMetres = borderMetres;
+        this.refreshMillis = refreshMillis;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param tag The tag id
+     * @return True if the tag's next fix may take the lightweight path
+     */
+    public boolean isStationary(int tag) {
+        return tag < stationary.length && stationary[tag];
+    }
+
+    /**
+     * Checks a fix of a stationary tag, of which only the coordinates were parsed.
+     * @param tag The tag id
+     * @param x The X coordinate, NaN if not reported
+     * @param y The Y coordinate, NaN if not reported
+     * @param timeMillis Time of the fix
+     * @return True if nothing else needs to be done, false if the fix needs full processing
+     */
+    public boolean onLightFix(int tag, double x, double y, long timeMillis) {
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            lightFixes++;
+            return true;
+        }
+        double dx = x - anchorX[tag];
+        double dy = y - anchorY[tag];
+        if (dx * dx + dy * dy > moveMetres * moveMetres) {
+            if (++movedFixes[tag] >= MOTION_FIXES) {
+                // Walking off: rest again only after a full settle time
+                stationary[tag] = false;
+                stillSince[tag] = Long.MAX_VALUE;
+                return false;
+            }
+        } else {
+            movedFixes[tag] = 0;
+        }
+        if (timeMillis - lastFull[tag] >= refreshMillis) {
+            // Keep the tracker's time and the smoothing current; rests again right after
+            stationary[tag] = false;
+            return false;
+        }
+        lightFixes++;
+        return true;
+    }
+
+    /**
+     * Follows a fully processed fix and decides whether the tag now rests.
+     * @param tag The tag id
+     * @param x The filtered X coordinate
+     * @param y The filtered Y coordinate
+     * @param zone The tag's current zone, or null
+     * @param timeMillis Time of the fix
+     */
+    public void onFullFix(int tag, double x, double y, String zone, long timeMillis) {
+        ensureCapacity(tag + 1);
+        fullFixes++;
+        lastFull[tag] = timeMillis;
+        movedFixes[tag] = 0;
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return;
+        }
+        double dx = x - anchorX[tag];
+        double dy = y - anchorY[tag];
+        if (Double.isNaN(anchorX[tag]) || dx * dx + dy * dy > moveMetres * moveMetres
+                || stillSince[tag] == Long.MAX_VALUE) {
+            anchorX[tag] = x;
+            anchorY[tag] = y;
+            stillSince[tag] = timeMillis;
+            return;
+        }
+        if (timeMillis - stillSince[tag] < settleMillis) {
+            return;
+        }
+        if (!isWellInside(zone, anchorX[tag], anchorY[tag])) {
+            // Resting near a border: keep full processing, check again after another settle time
+            stillSince[tag] = timeMillis;
+            return;
+        }
+        stationary[tag] = true;
+        settled++;
+    }
+
+    /**
+     * Returns every tag to full processing when a printer's state changes.
+     * @param topic The printer topic
+     * @param state The printer's state after the update, or null if unknown
+     * @param timeMillis Time of the update
+     */
+    public void onPrinterState(String topic, String state, long timeMillis) {
+        if (state == null) {
+            return;
+        }
+        String previous = printerStates.put(topic, state);
+        if (previous == null || previous.equals(state)) {
+            return;
+        }
+        for (int tag = 0; tag < stationary.length; tag++) {
+            if (stationary[tag]) {
+                stationary[tag] = false;
+                stillSince[tag] = timeMillis;
+            }
+        }
+        woken++;
+    }
+
+    /**
+     * @return Fixes that took the full path
+     */
+    public long getFullFixes() {
+        return fullFixes;
+    }
+
+    /**
+     * @return Fixes of stationary tags that only had their coordinates checked
+     */
+    public long getLightFixes() {
+        return lightFixes;
+    }
+
+    /**
+     * @return Times a tag became stationary
+     */
+    public long getSettled() {
+        return settled;
+    }
+
+    /**
+     * @return Printer state changes that returned the tags to full processing
+     */
+    public long getWoken() {
+        return woken;
+    }
+
+    /**
+     * @return True if the zone also covers the spot the border margin away on both axes
+     */
+    private boolean isWellInside(String zone, double x, double y) {
+        double margin = borderMetres;
+        return equal(zone, PrinterTopicSelector.selectPrinterTopic(x, y))
+                && equal(zone, PrinterTopicSelector.selectPrinterTopic(x - margin, y))
+                && equal(zone, PrinterTopicSelector.selectPrinterTopic(x + margin, y))
+                && equal(zone, PrinterTopicSelector.selectPrinterTopic(x, y - margin))
+                && equal(zone, PrinterTopicSelector.selectPrinterTopic(x, y + margin));
+    }
+
+    private void ensureCapacity(int tags) {
+        if (tags > stationary.length) {
+            allocate(Math.max(tags, stationary.length * 2));
+        }
+    }
+
+    private void allocate(int capacity) {
+        int old = stationary.length;
+        anchorX = Arrays.copyOf(anchorX, capacity);
+        anchorY = Arrays.copyOf(anchorY, capacity);
+        Arrays.fill(anchorX, old, capacity, Double.NaN);
+        Arrays.fill(anchorY, old, capacity, Double.NaN);
+        stillSince = Arrays.copyOf(stillSince, capacity);
+        lastFull = Arrays.copyOf(lastFull, capacity);
+        stationary = Arrays.copyOf(stationary, capacity);
+        movedFixes = Arrays.copyOf(movedFixes, capacity);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -1,21 +1,49 @@
 package com.example.printerstatus_glass;
 
-import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.MqttCallback;
-import org.eclipse.paho.client.mqttv3.MqttClient;
-import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
-import org.eclipse.paho.client.mqttv3.MqttException;
-import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import android.util.Log;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+
 /**
  * Handles MQTT client operations including connection, subscription, and message handling.
  * Provides a callback interface for received messages.
+ * Paho's callback threads only queue the raw payload; decoding and the message callback
+ * run on a dedicated ingest worker behind a conflating {@link IngestQueue}, so slow
+ * processing never delays the acknowledgement of the next message.
+ * Topics may be spread over a pool of brokers, e.g. one per hall ({@link BrokerRoutes}), with
+ * one {@link BrokerConnection} each; messages of all brokers meet in the same queue.
+ * Connecting never blocks the caller. A {@link ConnectionSupervisor} per broker retries failed
+ * and lost connections with backoff, fails over to a standby broker, and since every
+ * connection starts a clean session, the broker's subscribed topics are replayed each time
+ * the connection comes up.
  */
-public class MqttHandler {
-    private MqttClient client;
+public class MqttHandler implements SubscriptionManager.Transport {
+    private final ScheduledExecutorService scheduler;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private long failoverMillis = BrokerConnection.DEFAULT_FAILOVER_MILLIS;
+    private long healthIntervalMillis = BrokerConnection.DEFAULT_HEALTH_INTERVAL_MILLIS;
+    private long healthTimeoutMillis = BrokerConnection.DEFAULT_HEALTH_TIMEOUT_MILLIS;
     private MessageCallback messageCallback;
+    private final List<ConnectionSupervisor.Listener> connectionListeners = new CopyOnWriteArrayList<>();
+    private final IngestQueue ingestQueue = new IngestQueue(IngestQueue.DEFAULT_CAPACITY, this::dispatch);
+    // Records every arriving message for offline replay; null while not recording
+    private volatile TraceFile.Writer traceWriter;
+
+    // Topics the brokers should deliver, and the pool once connecting; guarded by subscriptions
+    private final Set<String> subscriptions = new LinkedHashSet<>();
+    private BrokerRoutes routes;
+    private BrokerConnection[] connections;
+    // State of the pool as a whole, as last reported to the listeners; guarded by this
+    private ConnectionSupervisor.State state = ConnectionSupervisor.State.DISCONNECTED;
 
     /**
      * Callback interface for handling incoming MQTT messages.
@@ -23,10 +51,71 @@ public class MqttHandler {
     public interface MessageCallback {
         /**
          * Called when a new message is received from subscribed topic.
+         * Runs on the ingest worker thread.
          * @param topic The topic on which the message was received
          * @param message The message payload as a String
          */
         void onMessageReceived(String topic, String message);
+
+        /**
+         * Called instead of {@link #onMessageReceived} for payloads in the {@link BinaryCodec} format.
+         * Runs on the ingest worker thread. Ignores the message unless overridden.
+         * @param topic The topic on which the message was received
+         * @param payload The raw payload, starting with {@link BinaryCodec#MARKER}
+         */
+        default void onBinaryMessageReceived(String topic, byte[] payload) {
+            Log.w("MQTT", "Binary message on " + topic + " ignored");
+        }
+
+        /**
+         * Called for every message with the time Paho handed it over; picks the text or
+         * binary callback unless overridden, e.g. to keep the arrival time.
+         * Runs on the ingest worker thread.
+         * @param topic The topic on which the message was received
+         * @param payload The raw payload
+         * @param arrivalNanos Arrival time in System.nanoTime() base
+         */
+        default void onMessageArrived(String topic, byte[] payload, long arrivalNanos) {
+            // Publishers pick the format per topic; the marker byte tells them apart
+            if (BinaryCodec.isBinary(payload)) {
+                onBinaryMessageReceived(topic, payload);
+            } else {
+                onMessageReceived(topic, new String(payload, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Creates a handler with the default reconnect backoff.
+     * @param scheduler Runs delayed reconnect attempts and health checks
+     */
+    public MqttHandler(ScheduledExecutorService scheduler) {
+        this(scheduler, ConnectionSupervisor.DEFAULT_INITIAL_BACKOFF_MILLIS,
+                ConnectionSupervisor.DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Creates a handler.
+     * @param scheduler Runs delayed reconnect attempts and health checks
+     * @param initialBackoffMillis Upper bound of the delay before the first reconnect attempt
+     * @param maxBackoffMillis Upper bound of the delay between reconnect attempts
+     */
+    public MqttHandler(ScheduledExecutorService scheduler, long initialBackoffMillis, long maxBackoffMillis) {
+        this.scheduler = scheduler;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Sets when a broker counts as failed; call before {@link #connect}.
+     * @param failoverMillis Time a broker may be unreachable before its standby is tried
+     * @param healthIntervalMillis Time between health probes through each broker, 0 for none
+     * @param healthTimeoutMillis Time after which an undelivered probe fails the broker over
+     */
+    public void setFailover(long failoverMillis, long healthIntervalMillis, long healthTimeoutMillis) {
+        this.failoverMillis = failoverMillis;
+        this.healthIntervalMillis = healthIntervalMillis;
+        this.healthTimeoutMillis = healthTimeoutMillis;
     }
 
     /**
@@ -38,51 +127,188 @@ public class MqttHandler {
     }
 
     /**
-     * Establishes connection to MQTT broker.
+     * Records every arriving message, before conflation, for replay with the trace harness.
+     * @param writer The trace to append to, or null to stop recording; closing it is up to the caller
+     */
+    public void setTraceWriter(TraceFile.Writer writer) {
+        this.traceWriter = writer;
+    }
+
+    /**
+     * Appends a message to the trace; recording stops at the first write error.
+     */
+    private void record(TraceFile.Writer trace, String topic, byte[] payload, long arrivalNanos) {
+        try {
+            trace.record(topic, payload, arrivalNanos);
+        } catch (IOException e) {
+            Log.e("MQTT", "Trace recording stopped", e);
+            traceWriter = null;
+        }
+    }
+
+    /**
+     * Registers a listener for state changes of the pool as a whole: connected once every
+     * broker is, reconnecting while any of them is. Register before {@link #connect} to see
+     * the first connection.
+     * @param listener Called on MQTT or scheduler threads, must not block
+     */
+    public void addConnectionListener(ConnectionSupervisor.Listener listener) {
+        connectionListeners.add(listener);
+    }
+
+    /**
+     * Starts connecting to a single MQTT broker and starts the ingest worker.
+     * Returns immediately; the connection is established and kept up in the background.
      * @param brokerUrl The URL of the MQTT broker
      * @param clientId Unique identifier for this client
+     * @return The supervisor of the connection, for its state and recovery metrics
      */
-    public void connect(String brokerUrl, String clientId) {
-        try {
-            // Use memory persistence for temporary storage of messages
-            MemoryPersistence persistence = new MemoryPersistence();
-            // Create new MQTT client instance
-            client = new MqttClient(brokerUrl, clientId, persistence);
-
-            // Configure connection options
-            MqttConnectOptions connectOptions = new MqttConnectOptions();
-            connectOptions.setCleanSession(true); // Start with clean session
-
-            // Set callback handlers for MQTT events
-            client.setCallback(new MqttCallback() {
-                @Override
-                public void connectionLost(Throwable cause) {
-                    Log.e("MQTT", "Connection lost", cause);
-                    // Try reconnection
-                    try {
-                        client.reconnect();
-                    } catch (MqttException e) {
-                        Log.e("MQTT", "Reconnect failed", e);
-                    }
-                }
-
-                @Override
-                public void messageArrived(String topic, MqttMessage message) {
-                    // Forward message to registered callback
-                    if (messageCallback != null) {
-                        messageCallback.onMessageReceived(topic, new String(message.getPayload()));
-                    }
-                }
-
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken token) {
-                    Log.d("MQTT", "Message delivered");
-                }
-            });
-
-            client.connect(connectOptions);
-        } catch (MqttException e) {
-            e.printStackTrace();
+    public ConnectionSupervisor connect(String brokerUrl, String clientId) {
+        return connect(BrokerRoutes.single(brokerUrl), clientId);
+    }
+
+    /**
+     * Starts connecting to every broker of the routes and starts the ingest worker.
+     * Returns immediately; the connections are established and kept up in the background.
+     * @param brokerRoutes The brokers and the topics each of them serves
+     * @param clientId Unique identifier for this client; suffixed with the broker name if there are several
+     * @return The supervisor of the first broker's connection
+     */
+    public ConnectionSupervisor connect(BrokerRoutes brokerRoutes, String clientId) {
+        BrokerConnection[] pool = new BrokerConnection[brokerRoutes.size()];
+        for (int i = 0; i < pool.length; i++) {
+            String name = brokerRoutes.getName(i);
+            pool[i] = new BrokerConnection(name, brokerRoutes.getUrls(i),
+                    pool.length == 1 ? clientId : clientId + "-" + name, scheduler, this::onMessage,
+                    initialBackoffMillis, maxBackoffMillis, failoverMillis, healthIntervalMillis, healthTimeoutMillis);
+            pool[i].getSupervisor().addListener(brokerState -> updateState());
+        }
+        synchronized (subscriptions) {
+            routes = brokerRoutes;
+            connections = pool;
+            // Hand the topics subscribed so far to their brokers; they are sent once connected
+            subscribeRouted(pool, subscriptions.toArray(new String[0]));
+        }
+        ingestQueue.start("mqtt-ingest");
+        for (BrokerConnection connection : pool) {
+            connection.start();
+        }
+        return pool[0].getSupervisor();
+    }
+
+    /**
+     * Only queues the payload of a message of any broker, on Paho's callback thread.
+     */
+    private void onMessage(String topic, byte[] payload, long arrivalNanos) {
+        ingestQueue.offer(topic, payload);
+        TraceFile.Writer trace = traceWriter;
+        if (trace != null) {
+            record(trace, topic, payload, arrivalNanos);
+        }
+        LatencyMetrics.getInstance().recordSince(LatencyMetrics.Stage.PAHO_ARRIVAL, arrivalNanos);
+    }
+
+    /**
+     * Reports a change of the pool's state to the listeners.
+     */
+    private void updateState() {
+        BrokerConnection[] pool = getConnections();
+        ConnectionSupervisor.State combined = ConnectionSupervisor.State.CONNECTED;
+        int stopped = 0;
+        for (BrokerConnection connection : pool) {
+            ConnectionSupervisor.State brokerState = connection.getState();
+            if (brokerState == ConnectionSupervisor.State.RECONNECTING) {
+                combined = brokerState;
+            } else if (brokerState == ConnectionSupervisor.State.STOPPED) {
+                stopped++;
+            } else if (brokerState != ConnectionSupervisor.State.CONNECTED
+                    && combined != ConnectionSupervisor.State.RECONNECTING) {
+                combined = ConnectionSupervisor.State.CONNECTING;
+            }
+        }
+        if (stopped > 0 && combined == ConnectionSupervisor.State.CONNECTED) {
+            combined = ConnectionSupervisor.State.STOPPED;
+        }
+        synchronized (this) {
+            if (combined == state) {
+                return;
+            }
+            state = combined;
+        }
+        // Outside the lock: listeners may ask the supervisors, which call this under their own lock
+        for (ConnectionSupervisor.Listener listener : connectionListeners) {
+            listener.onStateChanged(combined);
+        }
+    }
+
+    /**
+     * @return True while the connection to every broker is up
+     */
+    public boolean isConnected() {
+        BrokerConnection[] pool = getConnections();
+        for (BrokerConnection connection : pool) {
+            if (!connection.isConnected()) {
+                return false;
+            }
+        }
+        return pool.length > 0;
+    }
+
+    /**
+     * @return The supervisor of the first broker's connection, or null before {@link #connect}
+     */
+    public ConnectionSupervisor getSupervisor() {
+        BrokerConnection[] pool = getConnections();
+        return pool.length > 0 ? pool[0].getSupervisor() : null;
+    }
+
+    /**
+     * @return The connection of every broker, for per-broker state, throughput and latency; empty before {@link #connect}
+     */
+    public BrokerConnection[] getConnections() {
+        synchronized (subscriptions) {
+            return connections != null ? connections : new BrokerConnection[0];
+        }
+    }
+
+    /**
+     * Stops reconnecting and the ingest worker, and disconnects from every broker.
+     */
+    public void disconnect() {
+        for (BrokerConnection connection : getConnections()) {
+            connection.stop();
+        }
+        ingestQueue.stop();
+    }
+
+    /**
+     * Decodes a queued payload and forwards it to the registered callback, on the ingest worker.
+     * @param topic The MQTT topic
+     * @param payload The raw payload
+     * @param arrivalNanos Time the payload was queued
+     */
+    private void dispatch(String topic, byte[] payload, long arrivalNanos) {
+        LatencyMetrics metrics = LatencyMetrics.getInstance();
+        long start = metrics.recordSince(LatencyMetrics.Stage.INGEST_QUEUE, arrivalNanos);
+        if (messageCallback != null) {
+            messageCallback.onMessageArrived(topic, payload, arrivalNanos);
+            metrics.recordSince(LatencyMetrics.Stage.CALLBACK_DISPATCH, start);
+        }
+    }
+
+    /**
+     * @return The queue between Paho and the ingest worker, for depth, drop and throughput stats
+     */
+    public IngestQueue getIngestQueue() {
+        return ingestQueue;
+    }
+
+    /**
+     * @return Topics currently subscribed, or to be subscribed once connected
+     */
+    public String[] getSubscriptions() {
+        synchronized (subscriptions) {
+            return subscriptions.toArray(new String[0]);
         }
     }
 
@@ -91,10 +317,99 @@ public class MqttHandler {
      * @param topic The topic to subscribe to
      */
     public void subscribe(String topic) {
-        try {
-            client.subscribe(topic);
-        } catch (MqttException e) {
-            e.printStackTrace();
+        subscribe(new String[]{topic});
+    }
+
+    /**
+     * Subscribes to several MQTT topics, in a single request per broker.
+     * While disconnected, the topics are subscribed as soon as the connection is up.
+     * @param topics The topics to subscribe to
+     */
+    @Override
+    public void subscribe(String[] topics) {
+        BrokerConnection[] pool;
+        synchronized (subscriptions) {
+            subscriptions.addAll(Arrays.asList(topics));
+            pool = connections;
+            if (pool == null) {
+                return;
+            }
+        }
+        subscribeRouted(pool, topics);
+    }
+
+    private void subscribeRouted(BrokerConnection[] pool, String[] topics) {
+        if (pool.length == 1) {
+            pool[0].subscribe(topics);
+            return;
+        }
+        List<List<String>> byBroker = routeTopics(pool.length, topics);
+        for (int i = 0; i < pool.length; i++) {
+            if (!byBroker.get(i).isEmpty()) {
+                pool[i].subscribe(byBroker.get(i).toArray(new String[0]));
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes from specified MQTT topic.
+     * @param topic The topic to unsubscribe from
+     */
+    public void unsubscribe(String topic) {
+        unsubscribe(new String[]{topic});
+    }
+
+    /**
+     * Unsubscribes from several MQTT topics, in a single request per broker.
+     * @param topics The topics to unsubscribe from
+     */
+    @Override
+    public void unsubscribe(String[] topics) {
+        BrokerConnection[] pool;
+        synchronized (subscriptions) {
+            subscriptions.removeAll(Arrays.asList(topics));
+            pool = connections;
+            if (pool == null) {
+                return;
+            }
+        }
+        if (pool.length == 1) {
+            pool[0].unsubscribe(topics);
+            return;
+        }
+        List<List<String>> byBroker = routeTopics(pool.length, topics);
+        for (int i = 0; i < pool.length; i++) {
+            if (!byBroker.get(i).isEmpty()) {
+                pool[i].unsubscribe(byBroker.get(i).toArray(new String[0]));
+            }
+        }
+    }
+
+    /**
+     * Groups topics by the broker that serves them.
+     * @return One list of topics per broker
+     */
+    private List<List<String>> routeTopics(int brokers, String[] topics) {
+        List<List<String>> byBroker = new ArrayList<>(brokers);
+        for (int i = 0; i < brokers; i++) {
+            byBroker.add(new ArrayList<>());
+        }
+        for (String topic : topics) {
+            byBroker.get(routes.route(topic)).add(topic);
+        }
+        return byBroker;
+    }
+
+    /**
+     * Publishes a small message at QoS 0 to the broker serving the topic, e.g. a clock ping;
+     * dropped while that broker is disconnected.
+     * @param topic The topic
+     * @param payload The payload
+     */
+    public void publish(String topic, byte[] payload) {
+        BrokerConnection[] pool = getConnections();
+        if (pool.length > 0) {
+            pool[pool.length == 1 ? 0 : routes.route(topic)].publish(topic, payload);
         }
     }
 }
\ No newline at end of file
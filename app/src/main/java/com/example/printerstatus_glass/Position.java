@@ -0,0 +1,369 @@
+package com.example.printerstatus_glass;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, typed UWB position of the wearer.
+ * Coordinates are parsed once when the message arrives; unknown coordinates are NaN.
+ * Fields the app does not know, and values that are not valid numbers, are kept
+ * as text in a small overflow map, so no data of a message is lost.
+ */
+public final class Position {
+    public static final Position EMPTY = new Position(new Builder());
+
+    // Field names of the line protocol
+    static final String TAG_NAME = "tagName";
+    static final String POSITION_X = "positionX";
+    static final String POSITION_Y = "positionY";
+    static final String POSITION_Z = "positionZ";
+
+    private final String tagName;
+    private final double x;
+    private final double y;
+    private final double z;
+    private final Map<String, String> extras;
+
+    private Position(Builder update) {
+        this(update, null);
+    }
+
+    /**
+     * Creates the position after a message: reported fields from the update, all others from the base.
+     */
+    private Position(Builder update, Position base) {
+        boolean merge = base != null;
+        tagName = update.tagName != null || !merge ? update.tagName : base.tagName;
+        x = !Double.isNaN(update.x) || !merge ? update.x : base.x;
+        y = !Double.isNaN(update.y) || !merge ? update.y : base.y;
+        z = !Double.isNaN(update.z) || !merge ? update.z : base.z;
+
+        if (update.extras.isEmpty()) {
+            extras = merge ? base.extras : Collections.<String, String>emptyMap();
+        } else {
+            Map<String, String> merged = merge ? new HashMap<>(base.extras) : new HashMap<String, String>();
+            merged.putAll(update.extras);
+            extras = Collections.unmodifiableMap(merged);
+        }
+    }
+
+    /**
+     * Creates a position from key-value pairs, e.g. restored from a file.
+     * @param data Field values in their text form
+     * @return The parsed position
+     */
+    public static Position fromMap(Map<String, String> data) {
+        Builder builder = new Builder();
+        builder.putAll(data);
+        return builder.build();
+    }
+
+    public String getTagName() {
+        return tagName;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * @return True if both horizontal coordinates are known
+     */
+    public boolean hasXY() {
+        return !Double.isNaN(x) && !Double.isNaN(y);
+    }
+
+    /**
+     * @return Unmodifiable map of unknown fields and values that could not be parsed
+     */
+    public Map<String, String> getExtras() {
+        return extras;
+    }
+
+    /**
+     * Returns a field in its text form, for code that still works with field names.
+     * Values that could not be parsed are returned as received.
+     * @param key The field name of the line protocol
+     * @return The value, or null if not reported
+     */
+    public String get(String key) {
+        String value = getKnown(key);
+        return value != null ? value : extras.get(key);
+    }
+
+    private String getKnown(String key) {
+        switch (key) {
+            case TAG_NAME:
+                return tagName;
+            case POSITION_X:
+                return format(x);
+            case POSITION_Y:
+                return format(y);
+            case POSITION_Z:
+                return format(z);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Creates a map of all reported fields in their text form, for code that still works with maps.
+     * @return New unmodifiable map
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new HashMap<>(extras);
+        for (String key : new String[]{TAG_NAME, POSITION_X, POSITION_Y, POSITION_Z}) {
+            String value = get(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? null : Double.toString(value);
+    }
+
+    /**
+     * Collects the fields of one message, straight from the tokenizer or the binary decoder.
+     * Reusable: call {@link #reset()} before each message. Not thread-safe.
+     */
+    public static final class Builder implements DataParser.FieldSink, BinaryCodec.Visitor {
+        private final StringPool pool = new StringPool(8);
+        private final Map<String, String> extras = new HashMap<>();
+        private String tagName;
+        private double x;
+        private double y;
+        private double z;
+
+        public Builder() {
+            reset();
+        }
+
+        /**
+         * Forgets all fields of the previous message.
+         * @return This builder
+         */
+        public Builder reset() {
+            tagName = null;
+            x = Double.NaN;
+            y = Double.NaN;
+            z = Double.NaN;
+            if (!extras.isEmpty()) {
+                extras.clear();
+            }
+            return this;
+        }
+
+        /**
+         * @return A position holding only the fields of this message
+         */
+        public Position build() {
+            return new Position(this);
+        }
+
+        /**
+         * @param base The previous position
+         * @return A position with the fields of this message replacing those of the base
+         */
+        public Position mergeInto(Position base) {
+            return new Position(this, base);
+        }
+
+        @Override
+        public void onField(FieldSlice key, FieldSlice value) {
+            if (key.contentEquals(TAG_NAME)) {
+                tagName = pool.intern(value);
+                return;
+            }
+            String coordinate = key.contentEquals(POSITION_X) ? POSITION_X
+                    : key.contentEquals(POSITION_Y) ? POSITION_Y
+                    : key.contentEquals(POSITION_Z) ? POSITION_Z
+                    : null;
+            double number = coordinate != null ? value.parseDouble(Double.NaN) : Double.NaN;
+            if (Double.isNaN(number)) {
+                extras.put(coordinate != null ? coordinate : key.toString(), value.toString());
+            } else {
+                setCoordinate(coordinate, number);
+            }
+        }
+
+        /**
+         * Sets a field from its text form, e.g. from a map.
+         * @param key The field name of the line protocol
+         * @param value The value
+         * @return This builder
+         */
+        public Builder put(String key, String value) {
+            if (key.equals(TAG_NAME)) {
+                tagName = pool.intern(value);
+                return this;
+            }
+            double number;
+            try {
+                number = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                number = Double.NaN;
+            }
+            if (Double.isNaN(number) || !setCoordinate(key, number)) {
+                extras.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Sets every field of a map.
+         * @param data Field values in their text form
+         * @return This builder
+         */
+        public Builder putAll(Map<String, String> data) {
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        private boolean setCoordinate(String key, double value) {
+            switch (key) {
+                case POSITION_X:
+                    x = value;
+                    return true;
+                case POSITION_Y:
+                    y = value;
+                    return true;
+                case POSITION_Z:
+                    z = value;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void onString(BinaryCodec.Field field, byte[] buffer, int offset, int length) {
+            String value = pool.intern(buffer, offset, length);
+            if (field == BinaryCodec.Field.TAG_NAME) {
+                tagName = value;
+            } else {
+                extras.put(field.getKey(), value);
+            }
+        }
+
+        @Override
+        public void onNumber(BinaryCodec.Field field, double value) {
+            if (!setCoordinate(field.getKey(), value)) {
+                extras.put(field.getKey(), Double.toString(value));
+            }
+        }
+
+        @Override
+        public void onInteger(BinaryCodec.Field field, long value) {
+            extras.put(field.getKey(), Long.toString(value));
+        }
+
+        /**
+         * @return Tag name of this message, or null if not reported
+         */
+        public String getTagName() {
+            return tagName;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public double getZ() {
+            return z;
+        }
+    }
+
+    /**
+     * Reads only the X and Y coordinates of a UWB message and ignores every other field,
+     * for tags that stand still (see {@link MotionGate}). Reused between messages.
+     */
+    public static final class Coordinates implements DataParser.FieldSink, BinaryCodec.Visitor {
+        private double x;
+        private double y;
+        private boolean readAll;
+
+        public Coordinates() {
+            reset();
+        }
+
+        /**
+         * Forgets the coordinates of the previous message.
+         * @return This reader
+         */
+        public Coordinates reset() {
+            x = Double.NaN;
+            y = Double.NaN;
+            return this;
+        }
+
+        @Override
+        public void onField(FieldSlice key, FieldSlice value) {
+            // positionX and positionY differ in the last character only
+            if (key.length() != POSITION_X.length() || key.charAt(0) != 'p') {
+                return;
+            }
+            if (key.contentEquals(POSITION_X)) {
+                x = value.parseDouble(Double.NaN);
+            } else if (key.contentEquals(POSITION_Y)) {
+                y = value.parseDouble(Double.NaN);
+            }
+        }
+
+        /**
+         * Text messages are only tokenized up to their X and Y coordinates, unless the
+         * fields after them are needed too, e.g. the tracing fields.
+         * @param readAll True to tokenize every message to its end
+         */
+        public void setReadAll(boolean readAll) {
+            this.readAll = readAll;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return !readAll && !Double.isNaN(x) && !Double.isNaN(y);
+        }
+
+        @Override
+        public void onString(BinaryCodec.Field field, byte[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void onNumber(BinaryCodec.Field field, double value) {
+            if (field == BinaryCodec.Field.POSITION_X) {
+                x = value;
+            } else if (field == BinaryCodec.Field.POSITION_Y) {
+                y = value;
+            }
+        }
+
+        @Override
+        public void onInteger(BinaryCodec.Field field, long value) {
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+    }
+}
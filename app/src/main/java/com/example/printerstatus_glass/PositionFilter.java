@@ -0,0 +1,186 @@
+package com.example.printerstatus_glass;
+
+import java.util.Arrays;
+
+/**
+ * Streaming smoother for UWB fixes, one slot per tag.
+ * Each fix first goes through a running median over the last few raw fixes, which
+ * removes single outliers, and then through a constant-velocity alpha-beta filter.
+ * All state lives in flat primitive arrays (the raw fixes in one ring per slot), so
+ * the footprint is fixed per tag and an update does not allocate.
+ * Not thread-safe; {@link TagTracker} calls it under its lock.
+ */
+public class PositionFilter {
+    public static final int DEFAULT_WINDOW = 3;
+    public static final double DEFAULT_ALPHA = 0.3;
+    public static final double DEFAULT_BETA = 0.02;
+    // Fixes further apart than this restart the filter at the new fix
+    public static final long RESET_GAP_MILLIS = 2000;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int window;
+    private final double alpha;
+    private final double beta;
+
+    // Rings of raw fixes: slot s uses [s * window, (s + 1) * window)
+    private double[] rawX = new double[0];
+    private double[] rawY = new double[0];
+    private int[] ringHead = new int[0];
+    private int[] ringFilled = new int[0];
+
+    // Filter state by slot
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] velocityX = new double[0];
+    private double[] velocityY = new double[0];
+    private long[] time = new long[0];
+
+    // Scratch for the median, reused for every fix
+    private final double[] sorted;
+
+    /**
+     * Creates a filter with the default window and gains.
+     */
+    public PositionFilter() {
+        this(DEFAULT_WINDOW, DEFAULT_ALPHA, DEFAULT_BETA);
+    }
+
+    /**
+     * Creates a filter. A window of 1 with alpha 1 and beta 0 passes fixes through unchanged.
+     * @param window Number of raw fixes the median is taken over
+     * @param alpha Position gain in (0, 1]; lower is smoother but lags more
+     * @param beta Velocity gain in [0, 1)
+     */
+    public PositionFilter(int window, double alpha, double beta) {
+        if (window < 1 || alpha <= 0 || alpha > 1 || beta < 0 || beta >= 1) {
+            throw new IllegalArgumentException("Invalid filter settings");
+        }
+        this.window = window;
+        this.alpha = alpha;
+        this.beta = beta;
+        sorted = new double[window];
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Makes room for slots 0 to slots - 1.
+     * @param slots Number of slots needed
+     */
+    public void ensureCapacity(int slots) {
+        if (slots > x.length) {
+            allocate(Math.max(slots, x.length * 2));
+        }
+    }
+
+    /**
+     * Adds a fix to a slot and updates its estimate.
+     * @param slot The slot, e.g. a tag id
+     * @param fixX The measured X coordinate
+     * @param fixY The measured Y coordinate
+     * @param timeMillis Time of the fix
+     */
+    public void update(int slot, double fixX, double fixY, long timeMillis) {
+        ensureCapacity(slot + 1);
+        long elapsed = timeMillis - time[slot];
+        boolean restart = ringFilled[slot] == 0 || elapsed > RESET_GAP_MILLIS;
+        if (restart) {
+            // Until the ring is full, its valid entries are the first ringFilled ones
+            ringHead[slot] = 0;
+            ringFilled[slot] = 0;
+        }
+
+        // Add the fix to the ring and take the median of what it holds
+        int base = slot * window;
+        rawX[base + ringHead[slot]] = fixX;
+        rawY[base + ringHead[slot]] = fixY;
+        ringHead[slot] = (ringHead[slot] + 1) % window;
+        if (ringFilled[slot] < window) {
+            ringFilled[slot]++;
+        }
+        double medianX = median(rawX, base, ringFilled[slot]);
+        double medianY = median(rawY, base, ringFilled[slot]);
+        time[slot] = timeMillis;
+
+        if (restart) {
+            x[slot] = medianX;
+            y[slot] = medianY;
+            velocityX[slot] = 0;
+            velocityY[slot] = 0;
+            return;
+        }
+
+        // Predict with constant velocity, then correct towards the measurement
+        double dt = Math.max(0, elapsed) / 1000.0;
+        double predictedX = x[slot] + velocityX[slot] * dt;
+        double predictedY = y[slot] + velocityY[slot] * dt;
+        double residualX = medianX - predictedX;
+        double residualY = medianY - predictedY;
+        x[slot] = predictedX + alpha * residualX;
+        y[slot] = predictedY + alpha * residualY;
+        if (dt > 0) {
+            velocityX[slot] += beta * residualX / dt;
+            velocityY[slot] += beta * residualY / dt;
+        }
+    }
+
+    /**
+     * @param slot The slot
+     * @return Estimated X coordinate, NaN before the first fix
+     */
+    public double getX(int slot) {
+        return slot < x.length ? x[slot] : Double.NaN;
+    }
+
+    /**
+     * @param slot The slot
+     * @return Estimated Y coordinate, NaN before the first fix
+     */
+    public double getY(int slot) {
+        return slot < y.length ? y[slot] : Double.NaN;
+    }
+
+    /**
+     * @param slot The slot
+     * @return Estimated velocity along X in units per second
+     */
+    public double getVelocityX(int slot) {
+        return slot < velocityX.length ? velocityX[slot] : 0;
+    }
+
+    /**
+     * @param slot The slot
+     * @return Estimated velocity along Y in units per second
+     */
+    public double getVelocityY(int slot) {
+        return slot < velocityY.length ? velocityY[slot] : 0;
+    }
+
+    private double median(double[] ring, int base, int count) {
+        // Insertion sort of at most a few values, into the reused scratch array
+        for (int i = 0; i < count; i++) {
+            double value = ring[base + i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j] > value) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = value;
+        }
+        return count % 2 == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+    }
+
+    private void allocate(int capacity) {
+        int previous = x.length;
+        rawX = Arrays.copyOf(rawX, capacity * window);
+        rawY = Arrays.copyOf(rawY, capacity * window);
+        ringHead = Arrays.copyOf(ringHead, capacity);
+        ringFilled = Arrays.copyOf(ringFilled, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        time = Arrays.copyOf(time, capacity);
+        Arrays.fill(x, previous, capacity, Double.NaN);
+        Arrays.fill(y, previous, capacity, Double.NaN);
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.printerstatus_glass;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded store of the last known state per printer, keyed by printer topic.
+ * When the capacity is exceeded, the least recently used printer is evicted,
+ * so memory stays bounded no matter how many machines the wearer walks past.
+ */
+public class PrinterStateStore {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * Immutable state of one printer.
+     */
+    public static final class PrinterState {
+        private final String topic;
+        private final PrinterStatus status;
+        private final long lastUpdateTime;
+        private final boolean restored;
+
+        PrinterState(String topic, PrinterStatus status, long lastUpdateTime, boolean restored) {
+            this.topic = topic;
+            this.status = status;
+            this.lastUpdateTime = lastUpdateTime;
+            this.restored = restored;
+        }
+
+        /**
+         * @return The printer topic this state belongs to
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * @return Typed printer status
+         */
+        public PrinterStatus getStatus() {
+            return status;
+        }
+
+        /**
+         * Creates a map of the printer status, for code that still works with maps.
+         * @return Unmodifiable printer status data
+         */
+        public Map<String, String> getData() {
+            return status.toMap();
+        }
+
+        /**
+         * @return Wall clock time of the last update in milliseconds
+         */
+        public long getLastUpdateTime() {
+            return lastUpdateTime;
+        }
+
+        /**
+         * @return True if the state was restored from a previous session and not updated live since
+         */
+        public boolean isRestored() {
+            return restored;
+        }
+    }
+
+    private int capacity;
+
+    // Access-ordered, so iteration starts at the least recently used printer
+    private final LinkedHashMap<String, PrinterState> states = new LinkedHashMap<String, PrinterState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PrinterState> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    /**
+     * Creates a store holding at most {@link #DEFAULT_CAPACITY} printers.
+     */
+    public PrinterStateStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a store with the given capacity.
+     * @param capacity Maximum number of printers kept
+     */
+    public PrinterStateStore(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Changes the capacity, evicting least recently used printers if necessary (thread-safe)
+     * @param capacity Maximum number of printers kept, at least 1
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        Iterator<String> eldest = states.keySet().iterator();
+        while (states.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Merges new values into the state of a printer (thread-safe)
+     * @param topic The printer topic
+     * @param newData The values to add or overwrite
+     * @param timestamp Time of the update in milliseconds
+     * @return The new state of the printer
+     */
+    public PrinterState update(String topic, Map<String, String> newData, long timestamp) {
+        return update(topic, new PrinterStatus.Builder().putAll(newData), timestamp);
+    }
+
+    /**
+     * Merges the fields of a message into the state of a printer (thread-safe).
+     * A restored state is replaced rather than merged into, so fields the first live
+     * message omits are not shown as live.
+     * @param topic The printer topic
+     * @param update The fields of the message
+     * @param timestamp Time of the update in milliseconds
+     * @return The new state of the printer
+     */
+    public synchronized PrinterState update(String topic, PrinterStatus.Builder update, long timestamp) {
+        PrinterState previous = states.get(topic);
+        boolean live = previous != null && !previous.restored;
+        PrinterStatus status = update.mergeInto(live ? previous.status : PrinterStatus.EMPTY);
+        PrinterState state = new PrinterState(topic, status, timestamp, false);
+        states.put(topic, state);
+        return state;
+    }
+
+    /**
+     * Puts a state saved in a previous session, unless live data for the printer already arrived (thread-safe)
+     * @param topic The printer topic
+     * @param status The saved status
+     * @param timestamp Time of the saved update in milliseconds
+     * @return The restored state, or null if the printer already has a state
+     */
+    public synchronized PrinterState restore(String topic, PrinterStatus status, long timestamp) {
+        if (states.containsKey(topic)) {
+            return null;
+        }
+        PrinterState state = new PrinterState(topic, status, timestamp, true);
+        states.put(topic, state);
+        return state;
+    }
+
+    /**
+     * Returns all stored states without changing their recency (thread-safe)
+     * @return States from least to most recently used
+     */
+    public synchronized List<PrinterState> getAll() {
+        return new ArrayList<>(states.values());
+    }
+
+    /**
+     * Returns the last known state of a printer and marks it as recently used (thread-safe)
+     * @param topic The printer topic
+     * @return The printer state, or null if unknown or evicted
+     */
+    public synchronized PrinterState get(String topic) {
+        return states.get(topic);
+    }
+
+    /**
+     * @return Number of printers currently stored
+     */
+    public synchronized int size() {
+        return states.size();
+    }
+
+    /**
+     * @return Maximum number of printers kept
+     */
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Removes all printer states (thread-safe)
+     */
+    public synchronized void clear() {
+        states.clear();
+    }
+}
@@ -0,0 +1,665 @@
+package com.example.printerstatus_glass;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, typed status of one printer.
+ * Numbers are parsed once when the message arrives and kept as primitives; unknown
+ * values are NaN (temperatures, completion), {@link #NO_VALUE} (times) or null.
+ * Fields the app does not know, and values that are not valid numbers, are kept
+ * as text in a small overflow map, so no data of a message is lost. Times that are not
+ * whole seconds are stored rounded and also kept as text there.
+ * New states are created by merging a {@link Builder} holding one message into the
+ * previous state.
+ */
+public final class PrinterStatus {
+    /** Value of time fields that were never reported */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    public static final PrinterStatus EMPTY = new PrinterStatus(new Builder());
+
+    // Field names of the line protocol
+    static final String PRINTER_NAME = "printer_name";
+    static final String BED_TEMPERATURE_TARGET = "bed_temperature_target";
+    static final String BED_TEMPERATURE_CURRENT = "bed_temperature_current";
+    static final String TOOL_TEMPERATURE_TARGET = "tool_temperature_target";
+    static final String TOOL_TEMPERATURE_CURRENT = "tool_temperature_current";
+    static final String STATE = "state";
+    static final String PRINT_TIME = "print_time";
+    static final String PRINT_TIME_LEFT = "print_time_left";
+    static final String JOB_NAME = "job_name";
+    static final String IS_CONNECTED = "is_connected";
+    static final String DETAILED_STATE = "detailed_state";
+    static final String COMPLETION = "completion";
+
+    // Field indices for getNumber(int) and getText(int)
+    static final int FIELD_PRINTER_NAME = 0;
+    static final int FIELD_BED_TEMPERATURE_TARGET = 1;
+    static final int FIELD_BED_TEMPERATURE_CURRENT = 2;
+    static final int FIELD_TOOL_TEMPERATURE_TARGET = 3;
+    static final int FIELD_TOOL_TEMPERATURE_CURRENT = 4;
+    static final int FIELD_STATE = 5;
+    static final int FIELD_PRINT_TIME = 6;
+    static final int FIELD_PRINT_TIME_LEFT = 7;
+    static final int FIELD_JOB_NAME = 8;
+    static final int FIELD_IS_CONNECTED = 9;
+    static final int FIELD_DETAILED_STATE = 10;
+    static final int FIELD_COMPLETION = 11;
+    static final int FIELD_COUNT = 12;
+
+    // Field name per index
+    private static final String[] KEYS = new String[FIELD_COUNT];
+
+    static {
+        KEYS[FIELD_PRINTER_NAME] = PRINTER_NAME;
+        KEYS[FIELD_BED_TEMPERATURE_TARGET] = BED_TEMPERATURE_TARGET;
+        KEYS[FIELD_BED_TEMPERATURE_CURRENT] = BED_TEMPERATURE_CURRENT;
+        KEYS[FIELD_TOOL_TEMPERATURE_TARGET] = TOOL_TEMPERATURE_TARGET;
+        KEYS[FIELD_TOOL_TEMPERATURE_CURRENT] = TOOL_TEMPERATURE_CURRENT;
+        KEYS[FIELD_STATE] = STATE;
+        KEYS[FIELD_PRINT_TIME] = PRINT_TIME;
+        KEYS[FIELD_PRINT_TIME_LEFT] = PRINT_TIME_LEFT;
+        KEYS[FIELD_JOB_NAME] = JOB_NAME;
+        KEYS[FIELD_IS_CONNECTED] = IS_CONNECTED;
+        KEYS[FIELD_DETAILED_STATE] = DETAILED_STATE;
+        KEYS[FIELD_COMPLETION] = COMPLETION;
+    }
+
+    private final String printerName;
+    private final double bedTemperatureTarget;
+    private final double bedTemperatureCurrent;
+    private final double toolTemperatureTarget;
+    private final double toolTemperatureCurrent;
+    private final String state;
+    private final long printTime;
+    private final long printTimeLeft;
+    private final String jobName;
+    private final Boolean connected;
+    private final String detailedState;
+    private final double completion;
+    private final Map<String, String> extras;
+
+    private PrinterStatus(Builder update) {
+        this(update, null);
+    }
+
+    /**
+     * Creates the state after a message: reported fields from the update, all others from the base.
+     */
+    private PrinterStatus(Builder update, PrinterStatus base) {
+        boolean merge = base != null;
+        printerName = update.printerName != null || !merge ? update.printerName : base.printerName;
+        bedTemperatureTarget = pick(update.bedTemperatureTarget, merge, merge ? base.bedTemperatureTarget : 0);
+        bedTemperatureCurrent = pick(update.bedTemperatureCurrent, merge, merge ? base.bedTemperatureCurrent : 0);
+        toolTemperatureTarget = pick(update.toolTemperatureTarget, merge, merge ? base.toolTemperatureTarget : 0);
+        toolTemperatureCurrent = pick(update.toolTemperatureCurrent, merge, merge ? base.toolTemperatureCurrent : 0);
+        state = update.state != null || !merge ? update.state : base.state;
+        printTime = update.printTime != NO_VALUE || !merge ? update.printTime : base.printTime;
+        printTimeLeft = update.printTimeLeft != NO_VALUE || !merge ? update.printTimeLeft : base.printTimeLeft;
+        jobName = update.jobName != null || !merge ? update.jobName : base.jobName;
+        connected = update.connected != null || !merge ? update.connected : base.connected;
+        detailedState = update.detailedState != null || !merge ? update.detailedState : base.detailedState;
+        completion = pick(update.completion, merge, merge ? base.completion : 0);
+
+        if (update.extras.isEmpty() && (!merge || !update.replacesAny(base.extras))) {
+            extras = merge ? base.extras : Collections.<String, String>emptyMap();
+        } else {
+            Map<String, String> merged = new HashMap<>();
+            if (merge) {
+                // Text of a field the update reports as a value is out of date
+                for (Map.Entry<String, String> entry : base.extras.entrySet()) {
+                    if (!update.reports(entry.getKey())) {
+                        merged.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            merged.putAll(update.extras);
+            extras = Collections.unmodifiableMap(merged);
+        }
+    }
+
+    private static double pick(double update, boolean merge, double base) {
+        return Double.isNaN(update) && merge ? base : update;
+    }
+
+    /**
+     * Creates a state from key-value pairs, e.g. restored from a file.
+     * @param data Field values in their text form
+     * @return The parsed state
+     */
+    public static PrinterStatus fromMap(Map<String, String> data) {
+        Builder builder = new Builder();
+        builder.putAll(data);
+        return builder.build();
+    }
+
+    public String getPrinterName() {
+        return printerName;
+    }
+
+    public double getBedTemperatureTarget() {
+        return bedTemperatureTarget;
+    }
+
+    public double getBedTemperatureCurrent() {
+        return bedTemperatureCurrent;
+    }
+
+    public double getToolTemperatureTarget() {
+        return toolTemperatureTarget;
+    }
+
+    public double getToolTemperatureCurrent() {
+        return toolTemperatureCurrent;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * @return Elapsed print time in seconds, or {@link #NO_VALUE}
+     */
+    public long getPrintTime() {
+        return printTime;
+    }
+
+    /**
+     * @return Remaining print time in seconds, or {@link #NO_VALUE}
+     */
+    public long getPrintTimeLeft() {
+        return printTimeLeft;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    /**
+     * @return Whether the printer is connected to its host, or null if not reported
+     */
+    public Boolean getConnected() {
+        return connected;
+    }
+
+    public String getDetailedState() {
+        return detailedState;
+    }
+
+    /**
+     * @return Completion in percent, or NaN
+     */
+    public double getCompletion() {
+        return completion;
+    }
+
+    /**
+     * @return Unmodifiable map of unknown fields and values that could not be parsed
+     */
+    public Map<String, String> getExtras() {
+        return extras;
+    }
+
+    /**
+     * Returns a field in its text form, for code that still works with field names.
+     * Values that could not be parsed or were rounded are returned as received.
+     * @param key The field name of the line protocol
+     * @return The value, or null if not reported
+     */
+    public String get(String key) {
+        String value = extras.get(key);
+        return value != null ? value : getKnown(key);
+    }
+
+    /**
+     * @param key The field name of the line protocol
+     * @return Index of a known field for {@link #getNumber(int)} and {@link #getText(int)}, or -1
+     */
+    static int fieldIndex(String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param field A field index
+     * @return True if the field holds text rather than a number
+     */
+    static boolean isTextField(int field) {
+        return field == FIELD_PRINTER_NAME || field == FIELD_STATE || field == FIELD_JOB_NAME
+                || field == FIELD_DETAILED_STATE;
+    }
+
+    /**
+     * Returns a numeric field by index, without boxing or formatting.
+     * @param field A field index
+     * @return The value; is_connected as 1 or 0; NaN if unknown or a text field
+     */
+    double getNumber(int field) {
+        switch (field) {
+            case FIELD_BED_TEMPERATURE_TARGET:
+                return bedTemperatureTarget;
+            case FIELD_BED_TEMPERATURE_CURRENT:
+                return bedTemperatureCurrent;
+            case FIELD_TOOL_TEMPERATURE_TARGET:
+                return toolTemperatureTarget;
+            case FIELD_TOOL_TEMPERATURE_CURRENT:
+                return toolTemperatureCurrent;
+            case FIELD_PRINT_TIME:
+                return printTime == NO_VALUE ? Double.NaN : printTime;
+            case FIELD_PRINT_TIME_LEFT:
+                return printTimeLeft == NO_VALUE ? Double.NaN : printTimeLeft;
+            case FIELD_IS_CONNECTED:
+                return connected == null ? Double.NaN : connected ? 1 : 0;
+            case FIELD_COMPLETION:
+                return completion;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Returns a text field by index.
+     * @param field A field index
+     * @return The value, or null if unknown or a numeric field
+     */
+    String getText(int field) {
+        switch (field) {
+            case FIELD_PRINTER_NAME:
+                return printerName;
+            case FIELD_STATE:
+                return state;
+            case FIELD_JOB_NAME:
+                return jobName;
+            case FIELD_DETAILED_STATE:
+                return detailedState;
+            default:
+                return null;
+        }
+    }
+
+    private String getKnown(String key) {
+        switch (key) {
+            case PRINTER_NAME:
+                return printerName;
+            case BED_TEMPERATURE_TARGET:
+                return format(bedTemperatureTarget);
+            case BED_TEMPERATURE_CURRENT:
+                return format(bedTemperatureCurrent);
+            case TOOL_TEMPERATURE_TARGET:
+                return format(toolTemperatureTarget);
+            case TOOL_TEMPERATURE_CURRENT:
+                return format(toolTemperatureCurrent);
+            case STATE:
+                return state;
+            case PRINT_TIME:
+                return format(printTime);
+            case PRINT_TIME_LEFT:
+                return format(printTimeLeft);
+            case JOB_NAME:
+                return jobName;
+            case IS_CONNECTED:
+                return connected == null ? null : connected ? "True" : "False";
+            case DETAILED_STATE:
+                return detailedState;
+            case COMPLETION:
+                return format(completion);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Creates a map of all reported fields in their text form, for code that still works with maps.
+     * @return New unmodifiable map
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new HashMap<>(extras);
+        for (String key : KEYS) {
+            String value = get(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? null : Double.toString(value);
+    }
+
+    private static String format(long value) {
+        return value == NO_VALUE ? null : Long.toString(value);
+    }
+
+    /**
+     * Collects the fields of one message, straight from the tokenizer or the binary decoder.
+     * Reusable: call {@link #reset()} before each message. Not thread-safe.
+     */
+    public static final class Builder implements DataParser.FieldSink, BinaryCodec.Visitor {
+        private final StringPool pool = new StringPool(32);
+        private final Map<String, String> extras = new HashMap<>();
+        private String printerName;
+        private double bedTemperatureTarget;
+        private double bedTemperatureCurrent;
+        private double toolTemperatureTarget;
+        private double toolTemperatureCurrent;
+        private String state;
+        private long printTime;
+        private long printTimeLeft;
+        private String jobName;
+        private Boolean connected;
+        private String detailedState;
+        private double completion;
+
+        public Builder() {
+            reset();
+        }
+
+        /**
+         * Forgets all fields of the previous message.
+         * @return This builder
+         */
+        public Builder reset() {
+            printerName = null;
+            bedTemperatureTarget = Double.NaN;
+            bedTemperatureCurrent = Double.NaN;
+            toolTemperatureTarget = Double.NaN;
+            toolTemperatureCurrent = Double.NaN;
+            state = null;
+            printTime = NO_VALUE;
+            printTimeLeft = NO_VALUE;
+            jobName = null;
+            connected = null;
+            detailedState = null;
+            completion = Double.NaN;
+            if (!extras.isEmpty()) {
+                extras.clear();
+            }
+            return this;
+        }
+
+        /**
+         * @return A state holding only the fields of this message
+         */
+        public PrinterStatus build() {
+            return new PrinterStatus(this);
+        }
+
+        /**
+         * @param base The previous state
+         * @return A state with the fields of this message replacing those of the base
+         */
+        public PrinterStatus mergeInto(PrinterStatus base) {
+            return new PrinterStatus(this, base);
+        }
+
+        @Override
+        public void onField(FieldSlice key, FieldSlice value) {
+            for (String known : KEYS) {
+                if (key.contentEquals(known)) {
+                    setParsed(known, value);
+                    return;
+                }
+            }
+            extras.put(key.toString(), value.toString());
+        }
+
+        private void setParsed(String key, FieldSlice value) {
+            switch (key) {
+                case PRINTER_NAME:
+                    printerName = pool.intern(value);
+                    return;
+                case STATE:
+                    state = pool.intern(value);
+                    return;
+                case JOB_NAME:
+                    jobName = pool.intern(value);
+                    return;
+                case DETAILED_STATE:
+                    detailedState = pool.intern(value);
+                    return;
+                case PRINT_TIME:
+                case PRINT_TIME_LEFT: {
+                    long number = value.parseLong(NO_VALUE);
+                    if (number != NO_VALUE) {
+                        setTime(key, number);
+                        return;
+                    }
+                    // Not whole seconds: the field holds the rounded value, the text keeps it exactly
+                    double fraction = value.parseDouble(Double.NaN);
+                    if (!Double.isNaN(fraction)) {
+                        setTime(key, Math.round(fraction));
+                    }
+                    extras.put(key, value.toString());
+                    return;
+                }
+                case IS_CONNECTED:
+                    if (value.contentEquals("True") || value.contentEquals("true")) {
+                        connected = Boolean.TRUE;
+                    } else if (value.contentEquals("False") || value.contentEquals("false")) {
+                        connected = Boolean.FALSE;
+                    } else {
+                        extras.put(key, value.toString());
+                    }
+                    return;
+                default:
+                    double number = value.parseDouble(Double.NaN);
+                    if (Double.isNaN(number) || !setNumber(key, number)) {
+                        extras.put(key, value.toString());
+                    }
+            }
+        }
+
+        /**
+         * Sets a field from its text form, e.g. from a map.
+         * @param key The field name of the line protocol
+         * @param value The value
+         * @return This builder
+         */
+        public Builder put(String key, String value) {
+            switch (key) {
+                case PRINTER_NAME:
+                    printerName = pool.intern(value);
+                    break;
+                case STATE:
+                    state = pool.intern(value);
+                    break;
+                case JOB_NAME:
+                    jobName = pool.intern(value);
+                    break;
+                case DETAILED_STATE:
+                    detailedState = pool.intern(value);
+                    break;
+                case IS_CONNECTED:
+                    if ("true".equalsIgnoreCase(value)) {
+                        connected = Boolean.TRUE;
+                    } else if ("false".equalsIgnoreCase(value)) {
+                        connected = Boolean.FALSE;
+                    } else {
+                        extras.put(key, value);
+                    }
+                    break;
+                case PRINT_TIME:
+                case PRINT_TIME_LEFT: {
+                    double number = parse(value);
+                    if (!Double.isNaN(number)) {
+                        setTime(key, Math.round(number));
+                    }
+                    if (number != Math.rint(number)) {
+                        extras.put(key, value);
+                    }
+                    break;
+                }
+                default:
+                    double number = parse(value);
+                    if (Double.isNaN(number) || !setNumber(key, number)) {
+                        extras.put(key, value);
+                    }
+            }
+            return this;
+        }
+
+        /**
+         * Sets every field of a map.
+         * @param data Field values in their text form
+         * @return This builder
+         */
+        public Builder putAll(Map<String, String> data) {
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        private boolean setNumber(String key, double number) {
+            switch (key) {
+                case BED_TEMPERATURE_TARGET:
+                    bedTemperatureTarget = number;
+                    return true;
+                case BED_TEMPERATURE_CURRENT:
+                    bedTemperatureCurrent = number;
+                    return true;
+                case TOOL_TEMPERATURE_TARGET:
+                    toolTemperatureTarget = number;
+                    return true;
+                case TOOL_TEMPERATURE_CURRENT:
+                    toolTemperatureCurrent = number;
+                    return true;
+                case COMPLETION:
+                    completion = number;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * @param key The field name of the line protocol
+         * @return True if the message reported the field as a value rather than as text
+         */
+        private boolean reports(String key) {
+            switch (key) {
+                case PRINTER_NAME:
+                    return printerName != null;
+                case BED_TEMPERATURE_TARGET:
+                    return !Double.isNaN(bedTemperatureTarget);
+                case BED_TEMPERATURE_CURRENT:
+                    return !Double.isNaN(bedTemperatureCurrent);
+                case TOOL_TEMPERATURE_TARGET:
+                    return !Double.isNaN(toolTemperatureTarget);
+                case TOOL_TEMPERATURE_CURRENT:
+                    return !Double.isNaN(toolTemperatureCurrent);
+                case STATE:
+                    return state != null;
+                case PRINT_TIME:
+                    return printTime != NO_VALUE;
+                case PRINT_TIME_LEFT:
+                    return printTimeLeft != NO_VALUE;
+                case JOB_NAME:
+                    return jobName != null;
+                case IS_CONNECTED:
+                    return connected != null;
+                case DETAILED_STATE:
+                    return detailedState != null;
+                case COMPLETION:
+                    return !Double.isNaN(completion);
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * @param extras Overflow fields of the previous state
+         * @return True if this message reports any of them as a value
+         */
+        private boolean replacesAny(Map<String, String> extras) {
+            if (extras.isEmpty()) {
+                return false;
+            }
+            for (String key : extras.keySet()) {
+                if (reports(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean setTime(String key, long seconds) {
+            if (key.equals(PRINT_TIME)) {
+                printTime = seconds;
+                return true;
+            } else if (key.equals(PRINT_TIME_LEFT)) {
+                printTimeLeft = seconds;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onString(BinaryCodec.Field field, byte[] buffer, int offset, int length) {
+            String value = pool.intern(buffer, offset, length);
+            switch (field) {
+                case PRINTER_NAME:
+                    printerName = value;
+                    break;
+                case STATE:
+                    state = value;
+                    break;
+                case JOB_NAME:
+                    jobName = value;
+                    break;
+                case DETAILED_STATE:
+                    detailedState = value;
+                    break;
+                default:
+                    extras.put(field.getKey(), value);
+            }
+        }
+
+        @Override
+        public void onNumber(BinaryCodec.Field field, double value) {
+            if (!setNumber(field.getKey(), value)) {
+                extras.put(field.getKey(), Double.toString(value));
+            }
+        }
+
+        @Override
+        public void onInteger(BinaryCodec.Field field, long value) {
+            if (field == BinaryCodec.Field.IS_CONNECTED) {
+                connected = value != 0;
+            } else if (!setTime(field.getKey(), value)) {
+                extras.put(field.getKey(), Long.toString(value));
+            }
+        }
+
+        public double getBedTemperatureCurrent() {
+            return bedTemperatureCurrent;
+        }
+
+        public double getToolTemperatureCurrent() {
+            return toolTemperatureCurrent;
+        }
+
+        public double getCompletion() {
+            return completion;
+        }
+
+        public long getPrintTimeLeft() {
+            return printTimeLeft;
+        }
+
+        private static double parse(String value) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+}
@@ -1,18 +1,32 @@
 package com.example.printerstatus_glass;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
 /**
  * Determines the appropriate printer MQTT topic based on physical coordinates.
  * Maps X,Y position values to specific printer zones in a facility.
+ * The zone layout is data-driven and can be hot-reloaded from a config file.
  */
 public class PrinterTopicSelector {
     private static final String TOPIC_A = "sf/printer/a";
     private static final String TOPIC_B = "sf/printer/b";
     private static final String TOPIC_C = "sf/printer/c";
 
+    // Built-in layout, used until a zone config has been loaded
+    private static final ZoneIndex DEFAULT_ZONES = new ZoneIndex(Arrays.asList(
+            Zone.rectangle(TOPIC_A, 0, -1, false, 1.5, false, 2.6, true, 4.2, false),
+            Zone.rectangle(TOPIC_B, 0, -1, false, 1.5, false, 1, false, 2.6, false),
+            Zone.rectangle(TOPIC_C, 0, 5.8, false, 7.3, false, 2.6, true, 4.2, false)));
+
+    // Swapped atomically on reload; lookups never block
+    private static volatile ZoneIndex zoneIndex = DEFAULT_ZONES;
+
     /**
      * Selects the appropriate printer topic based on X,Y coordinates.
      *
-     * Zone Map:
+     * Default Zone Map:
      * - Zone A: X ∈ [-1,1.5], Y ∈ (2.6,4.2]
      * - Zone B: X ∈ [-1,1.5], Y ∈ [1,2.6]
      * - Zone C: X ∈ [5.8,7.3], Y ∈ (2.6,4.2]
@@ -22,17 +36,39 @@ public class PrinterTopicSelector {
      * @return Corresponding MQTT topic string, or null if position doesn't match any zone
      */
     public static String selectPrinterTopic(double x, double y) {
-        if (x >= -1 && x <= 1.5) {
-            if (y >= 1 && y <= 2.6) {
-                return TOPIC_B;
-            } else if (y > 2.6 && y <= 4.2) {
-                return TOPIC_A;
-            }
-        } else if (x >= 5.8 && x <= 7.3 && y > 2.6 && y <= 4.2) {
-            return TOPIC_C;
-        }
-
-        // Position doesn't match any defined zone
-        return null;
+        return zoneIndex.findTopic(x, y);
+    }
+
+    /**
+     * Parses a zone config and atomically replaces the active layout.
+     * Parsing happens on the calling thread, so call this off the UI/MQTT path.
+     * The current layout stays active if the config is invalid.
+     * @param reader Source of the zone config
+     * @throws IOException If the config cannot be read or parsed
+     */
+    public static void loadZones(Reader reader) throws IOException {
+        setZoneIndex(ZoneIndex.parse(reader));
+    }
+
+    /**
+     * Atomically replaces the active zone layout.
+     * @param index The new layout
+     */
+    public static void setZoneIndex(ZoneIndex index) {
+        zoneIndex = index;
+    }
+
+    /**
+     * @return The zone layout currently used for lookups
+     */
+    public static ZoneIndex getZoneIndex() {
+        return zoneIndex;
+    }
+
+    /**
+     * Restores the built-in three-printer layout.
+     */
+    public static void resetZones() {
+        zoneIndex = DEFAULT_ZONES;
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.example.printerstatus_glass;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the DataHolder state in a compact binary file, so the next launch can show
+ * the last known printer status and position in its first frame.
+ * The file is written to a temporary file and renamed, so a crash never leaves a torn
+ * snapshot behind; it is read back through a read-only memory mapping.
+ * <p>
+ * Layout (big-endian): magic, format version, save time, active topic, UWB update time,
+ * UWB fields, printer count and per printer its topic, update time and fields.
+ * Strings are a signed short byte length (-1 for null) followed by UTF-8 bytes;
+ * field maps are a short count followed by key/value strings.
+ */
+public final class StateSnapshotFile {
+    private static final int MAGIC = 0x50534753; // "PSGS"
+    private static final short FORMAT_VERSION = 1;
+
+    private StateSnapshotFile() {}
+
+    /**
+     * Writes the current state of the holder to a file.
+     * @param file The snapshot file
+     * @param holder The holder to save
+     * @throws IOException If writing fails
+     */
+    public static void save(File file, DataHolder holder) throws IOException {
+        DataHolder.Snapshot snapshot = holder.getSnapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        writeString(out, snapshot.getActivePrinterTopic());
+        out.writeLong(snapshot.getUwbUpdateTime());
+        writeFields(out, snapshot.getUwbData());
+
+        List<PrinterStateStore.PrinterState> states = holder.getAllPrinterStates();
+        out.writeInt(states.size());
+        for (PrinterStateStore.PrinterState state : states) {
+            writeString(out, state.getTopic());
+            out.writeLong(state.getLastUpdateTime());
+            writeFields(out, state.getData());
+        }
+        out.flush();
+
+        // Write aside and swap in, so readers only ever see a complete file
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            bytes.writeTo(stream);
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Restores the state saved in a file into the holder, including the active printer.
+     * Printers and the position that already received live data are left alone.
+     * @param file The snapshot file
+     * @param holder The holder to restore into
+     * @return True if a valid snapshot was restored, false if the file is missing or invalid
+     * @throws IOException If the file exists but cannot be read
+     */
+    public static boolean load(File file, DataHolder holder) throws IOException {
+        if (!file.isFile() || file.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getShort() != FORMAT_VERSION) {
+                return false;
+            }
+            buffer.getLong(); // save time
+            String activeTopic = readString(buffer);
+            long uwbUpdateTime = buffer.getLong();
+            Map<String, String> uwbData = readFields(buffer);
+
+            // Decode everything before touching the holder, so a corrupt file restores nothing
+            int printerCount = buffer.getInt();
+            if (printerCount < 0 || printerCount > buffer.remaining()) {
+                return false;
+            }
+            String[] topics = new String[printerCount];
+            long[] updateTimes = new long[printerCount];
+            List<Map<String, String>> data = new ArrayList<>(printerCount);
+            for (int i = 0; i < printerCount; i++) {
+                topics[i] = readString(buffer);
+                updateTimes[i] = buffer.getLong();
+                data.add(readFields(buffer));
+            }
+
+            if (activeTopic != null) {
+                holder.setActivePrinter(activeTopic);
+            }
+            // Least recently used first, so the store ends up with the same recency order
+            for (int i = 0; i < printerCount; i++) {
+                holder.restorePrinterState(topics[i], data.get(i), updateTimes[i]);
+            }
+            if (uwbUpdateTime != 0) {
+                holder.restoreUwbData(uwbData, uwbUpdateTime);
+            }
+            return true;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // Truncated or corrupt snapshot: start empty
+            return false;
+        }
+    }
+
+    private static void writeFields(DataOutputStream out, Map<String, String> fields) throws IOException {
+        out.writeShort(fields.size());
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length > Short.MAX_VALUE) {
+            throw new IOException("String too long for snapshot: " + utf8.length + " bytes");
+        }
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static Map<String, String> readFields(ByteBuffer buffer) {
+        int count = buffer.getShort();
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative field count");
+        }
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            fields.put(readString(buffer), readString(buffer));
+        }
+        return fields;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
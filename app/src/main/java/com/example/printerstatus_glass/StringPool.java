@@ -0,0 +1,84 @@
+package com.example.printerstatus_glass;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Small pool of recently seen field values, so repeated text such as printer
+ * states and job names is stored as one shared String instead of a copy per message.
+ * Lookups compare against the raw payload, so a hit does not allocate.
+ * When full, the oldest entry is replaced. Not thread-safe; use one per ingest thread.
+ */
+final class StringPool {
+    private final String[] entries;
+    private int next;
+
+    /**
+     * @param size Number of distinct values kept
+     */
+    StringPool(int size) {
+        entries = new String[size];
+    }
+
+    /**
+     * Returns the pooled copy of a slice's text, adding it if not present.
+     * @param slice The text
+     * @return A String with the same contents
+     */
+    String intern(FieldSlice slice) {
+        for (String entry : entries) {
+            if (entry != null && slice.contentEquals(entry)) {
+                return entry;
+            }
+        }
+        return add(slice.toString());
+    }
+
+    /**
+     * Returns the pooled copy of UTF-8 text, adding it if not present.
+     * @param bytes The buffer holding the text
+     * @param offset Start of the text
+     * @param length Length of the text in bytes
+     * @return A String with the same contents
+     */
+    String intern(byte[] bytes, int offset, int length) {
+        for (String entry : entries) {
+            if (entry != null && asciiEquals(bytes, offset, length, entry)) {
+                return entry;
+            }
+        }
+        return add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the pooled copy of a String, adding it if not present.
+     * @param value The text
+     * @return A String with the same contents
+     */
+    String intern(String value) {
+        for (String entry : entries) {
+            if (value.equals(entry)) {
+                return entry;
+            }
+        }
+        return add(value);
+    }
+
+    private String add(String value) {
+        entries[next] = value;
+        next = (next + 1) % entries.length;
+        return value;
+    }
+
+    // Non-ASCII text never matches and is simply decoded again
+    private static boolean asciiEquals(byte[] bytes, int offset, int length, String text) {
+        if (text.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
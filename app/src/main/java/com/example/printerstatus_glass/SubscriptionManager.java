@@ -0,0 +1,231 @@
+package com.example.printerstatus_glass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reference-counted MQTT subscriptions with a bounded active set.
+ * Topics are subscribed while at least one user holds them; released topics linger
+ * for a grace period (so walking back and forth across a zone border does not
+ * resubscribe) and are then unsubscribed. Changes are batched into one
+ * subscribe and one unsubscribe call per flush.
+ */
+public class SubscriptionManager {
+    public static final int DEFAULT_MAX_ACTIVE = 8;
+    public static final long DEFAULT_GRACE_MILLIS = 10_000;
+    public static final long BATCH_DELAY_MILLIS = 50;
+
+    /**
+     * Broker operations the manager delegates to, implemented by {@link MqttHandler}.
+     */
+    public interface Transport {
+        /**
+         * Subscribes to all given topics in one request.
+         * @param topics The topics to subscribe to
+         */
+        void subscribe(String[] topics);
+
+        /**
+         * Unsubscribes from all given topics in one request.
+         * @param topics The topics to unsubscribe from
+         */
+        void unsubscribe(String[] topics);
+    }
+
+    private final Transport transport;
+    private final ScheduledExecutorService scheduler;
+    private final int maxActive;
+    private final long graceMillis;
+
+    // Holders per subscribed or lingering topic
+    private final Map<String, Integer> refCounts = new HashMap<>();
+    // Released topics in release order, with the time they became idle
+    private final LinkedHashMap<String, Long> idleSince = new LinkedHashMap<>();
+    // Topics the broker currently knows about, and changes not sent yet
+    private final List<String> subscribed = new ArrayList<>();
+    private final List<String> pendingSubscribe = new ArrayList<>();
+    // Time of the earliest scheduled flush, 0 if none
+    private long nextFlushAt;
+
+    // Counters
+    private final AtomicLong deliveredMessages = new AtomicLong();
+    private final AtomicLong discardedMessages = new AtomicLong();
+    private final AtomicLong subscribeCalls = new AtomicLong();
+    private final AtomicLong unsubscribeCalls = new AtomicLong();
+
+    /**
+     * Creates a manager with default limits.
+     * @param transport The broker connection
+     * @param scheduler Runs batched flushes; null means {@link #flush(long)} is called manually
+     */
+    public SubscriptionManager(Transport transport, ScheduledExecutorService scheduler) {
+        this(transport, scheduler, DEFAULT_MAX_ACTIVE, DEFAULT_GRACE_MILLIS);
+    }
+
+    /**
+     * Creates a manager.
+     * @param transport The broker connection
+     * @param scheduler Runs batched flushes; null means {@link #flush(long)} is called manually
+     * @param maxActive Maximum number of subscribed topics, lingering topics are dropped first
+     * @param graceMillis How long a released topic stays subscribed
+     */
+    public SubscriptionManager(Transport transport, ScheduledExecutorService scheduler,
+                               int maxActive, long graceMillis) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.maxActive = maxActive;
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * Takes a reference on a topic, subscribing to it if it is not subscribed yet.
+     * @param topic The topic to hold
+     */
+    public synchronized void acquire(String topic) {
+        Integer count = refCounts.get(topic);
+        refCounts.put(topic, count == null ? 1 : count + 1);
+        idleSince.remove(topic);
+        if (!subscribed.contains(topic) && !pendingSubscribe.contains(topic)) {
+            pendingSubscribe.add(topic);
+            scheduleFlush(BATCH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Drops a reference on a topic. The last release starts the grace period.
+     * @param topic The topic to release
+     */
+    public synchronized void release(String topic) {
+        Integer count = refCounts.get(topic);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            refCounts.put(topic, count - 1);
+            return;
+        }
+        refCounts.remove(topic);
+        if (pendingSubscribe.remove(topic)) {
+            return; // Never reached the broker
+        }
+        idleSince.put(topic, System.currentTimeMillis());
+        // Over the limit: the flush evicts right away, otherwise after the grace period
+        scheduleFlush(subscribed.size() + pendingSubscribe.size() > maxActive ? BATCH_DELAY_MILLIS : graceMillis);
+    }
+
+    /**
+     * Sends all pending changes to the broker: new subscriptions, topics whose grace
+     * period expired, and the oldest lingering topics while over the active limit.
+     * @param now Current time in milliseconds
+     */
+    public void flush(long now) {
+        String[] toSubscribe;
+        String[] toUnsubscribe;
+        long nextDeadline = -1;
+        synchronized (this) {
+            nextFlushAt = 0;
+
+            List<String> expired = new ArrayList<>();
+            int active = subscribed.size() + pendingSubscribe.size();
+            Iterator<Map.Entry<String, Long>> idle = idleSince.entrySet().iterator();
+            while (idle.hasNext()) {
+                Map.Entry<String, Long> entry = idle.next();
+                if (active > maxActive || now - entry.getValue() >= graceMillis) {
+                    expired.add(entry.getKey());
+                    idle.remove();
+                    active--;
+                } else if (nextDeadline < 0) {
+                    nextDeadline = entry.getValue() + graceMillis - now;
+                }
+            }
+
+            subscribed.removeAll(expired);
+            subscribed.addAll(pendingSubscribe);
+            toSubscribe = pendingSubscribe.toArray(new String[0]);
+            toUnsubscribe = expired.toArray(new String[0]);
+            pendingSubscribe.clear();
+            if (nextDeadline >= 0) {
+                scheduleFlush(nextDeadline);
+            }
+        }
+
+        // Broker calls may block, so they run outside the lock
+        if (toUnsubscribe.length > 0) {
+            unsubscribeCalls.incrementAndGet();
+            transport.unsubscribe(toUnsubscribe);
+        }
+        if (toSubscribe.length > 0) {
+            subscribeCalls.incrementAndGet();
+            transport.subscribe(toSubscribe);
+        }
+    }
+
+    /**
+     * Schedules a flush unless one is already pending at or before the requested time.
+     * @param delayMillis Delay before the flush runs
+     */
+    private void scheduleFlush(long delayMillis) {
+        if (scheduler == null) {
+            return;
+        }
+        long at = System.currentTimeMillis() + delayMillis;
+        if (nextFlushAt != 0 && nextFlushAt <= at) {
+            return;
+        }
+        nextFlushAt = at;
+        scheduler.schedule(() -> flush(System.currentTimeMillis()), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks whether a topic is held or still lingering.
+     * @param topic The topic to check
+     * @return True if messages on this topic are expected
+     */
+    public synchronized boolean isActive(String topic) {
+        return refCounts.containsKey(topic) || idleSince.containsKey(topic);
+    }
+
+    /**
+     * @return Topics currently subscribed at the broker
+     */
+    public synchronized List<String> getSubscribedTopics() {
+        return new ArrayList<>(subscribed);
+    }
+
+    /**
+     * Counts a message that was handled by the app.
+     */
+    public void recordDelivered() {
+        deliveredMessages.incrementAndGet();
+    }
+
+    /**
+     * Counts a message that was received and decoded but not used.
+     */
+    public void recordDiscarded() {
+        discardedMessages.incrementAndGet();
+    }
+
+    public long getDeliveredMessages() {
+        return deliveredMessages.get();
+    }
+
+    public long getDiscardedMessages() {
+        return discardedMessages.get();
+    }
+
+    public long getSubscribeCalls() {
+        return subscribeCalls.get();
+    }
+
+    public long getUnsubscribeCalls() {
+        return unsubscribeCalls.get();
+    }
+}
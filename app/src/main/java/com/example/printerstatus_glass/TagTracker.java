@@ -0,0 +1,452 @@
+package com.example.printerstatus_glass;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Latest position and printer zone of every UWB tag seen on the wildcard UWB topic.
+ * Tags get a dense int id on first sight; their state lives in primitive arrays indexed
+ * by that id, so an update neither boxes nor allocates once a tag is known.
+ * Fixes are smoothed by a {@link PositionFilter}, and each tag's zone is resolved through
+ * {@link PrinterTopicSelector} from the smoothed position with hysteresis: a tag only
+ * changes zone once the new zone was seen for a dwell time, or once it is well inside it.
+ * This keeps a wearer standing on a zone border from flapping between printers.
+ * Listeners register for one tag or for zone changes, so an update only reaches the
+ * consumers interested in that tag; the HUD reads the aggregate (tags per zone) once
+ * per frame instead of being notified per update.
+ * Updates come from one thread (the ingest worker); reads are thread-safe.
+ */
+public class TagTracker {
+    private static final int INITIAL_CAPACITY = 64;
+    public static final long DEFAULT_DWELL_MILLIS = 2000;
+    public static final double DEFAULT_HYSTERESIS_METRES = 0.3;
+    private static final long NO_CANDIDATE = Long.MIN_VALUE;
+
+    /**
+     * Receives position updates of one tag.
+     */
+    public interface Listener {
+        /**
+         * Called on the updating thread after the tag's state changed.
+         * @param tracker This tracker, for the tag's state
+         * @param tag Id of the tag
+         */
+        void onTagUpdated(TagTracker tracker, int tag);
+    }
+
+    /**
+     * Receives zone changes of tags.
+     */
+    public interface ZoneListener {
+        /**
+         * Called on the updating thread when a tag moves into another zone or out of all zones.
+         * @param tracker This tracker
+         * @param tag Id of the tag
+         * @param previousTopic Printer topic of the zone left, or null
+         * @param topic Printer topic of the zone entered, or null
+         */
+        void onZoneChanged(TagTracker tracker, int tag, String previousTopic, String topic);
+    }
+
+    // Open-addressing index from tag name to id; capacity is a power of two
+    private String[] slotNames = new String[INITIAL_CAPACITY * 2];
+    private int[] slotIds = new int[INITIAL_CAPACITY * 2];
+
+    private final PositionFilter filter;
+    private final long dwellMillis;
+    private final double hysteresisMetres;
+
+    // Tag state by id; coordinates as reported, the smoothed ones are in the filter
+    private String[] names = new String[INITIAL_CAPACITY];
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    private double[] zs = new double[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private String[] zones = new String[INITIAL_CAPACITY];
+    // Zone the tag seems to be moving into, and since when
+    private String[] candidateZones = new String[INITIAL_CAPACITY];
+    private long[] candidateSince = new long[INITIAL_CAPACITY];
+    private Listener[][] listeners = new Listener[INITIAL_CAPACITY][];
+    private ZoneListener[][] zoneListeners = new ZoneListener[INITIAL_CAPACITY][];
+    private int size;
+
+    // Listeners for zone changes of every tag, copied on registration
+    private ZoneListener[] allZoneListeners;
+    // Number of tags per printer zone
+    private final Map<String, int[]> occupancy = new HashMap<>();
+    private long version;
+
+    // Instrumentation
+    private long updates;
+    private long zoneChanges;
+    private long suppressedZoneChanges;
+
+    /**
+     * Creates a tracker with the default filter and hysteresis.
+     */
+    public TagTracker() {
+        this(new PositionFilter(), DEFAULT_DWELL_MILLIS, DEFAULT_HYSTERESIS_METRES);
+    }
+
+    /**
+     * Creates a tracker. Without filtering and hysteresis, every fix is mapped to its zone directly:
+     * {@code new TagTracker(new PositionFilter(1, 1, 0), 0, 0)}.
+     * @param filter Smoother for the fixes, owned by the tracker from now on
+     * @param dwellMillis How long a new zone must be seen before the tag changes zone
+     * @param hysteresisMetres How far inside a new zone a tag changes zone without waiting
+     */
+    public TagTracker(PositionFilter filter, long dwellMillis, double hysteresisMetres) {
+        this.filter = filter;
+        this.dwellMillis = dwellMillis;
+        this.hysteresisMetres = hysteresisMetres;
+    }
+
+    /**
+     * Returns the id of a tag, registering it with an unknown position if it is new.
+     * @param name The tag name
+     * @return The tag id, stable for the lifetime of the tracker
+     */
+    public synchronized int register(String name) {
+        int mask = slotNames.length - 1;
+        int slot = name.hashCode() & mask;
+        while (slotNames[slot] != null) {
+            if (slotNames[slot].equals(name)) {
+                return slotIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int tag = size++;
+        if (tag == names.length) {
+            grow();
+        }
+        names[tag] = name;
+        xs[tag] = Double.NaN;
+        ys[tag] = Double.NaN;
+        zs[tag] = Double.NaN;
+        candidateSince[tag] = NO_CANDIDATE;
+        if (size * 2 > slotNames.length) {
+            rehash(slotNames.length * 2);
+        } else {
+            slotNames[slot] = name;
+            slotIds[slot] = tag;
+        }
+        return tag;
+    }
+
+    /**
+     * @param name The tag name
+     * @return The tag id, or -1 if the tag was never seen
+     */
+    public synchronized int indexOf(String name) {
+        int mask = slotNames.length - 1;
+        for (int slot = name.hashCode() & mask; slotNames[slot] != null; slot = (slot + 1) & mask) {
+            if (slotNames[slot].equals(name)) {
+                return slotIds[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records a position fix, smooths it, resolves the tag's zone and notifies the tag's listeners.
+     * @param name The tag name
+     * @param x The X coordinate, NaN to keep the previous one
+     * @param y The Y coordinate, NaN to keep the previous one
+     * @param z The Z coordinate, NaN to keep the previous one
+     * @param timeMillis Time of the fix
+     * @return The tag id
+     */
+    public int update(String name, double x, double y, double z, long timeMillis) {
+        int tag = register(name);
+        String previousZone;
+        String zone;
+        Listener[] tagListeners;
+        ZoneListener[] tagZoneListeners;
+        ZoneListener[] everyZoneListener;
+        synchronized (this) {
+            if (!Double.isNaN(x)) {
+                xs[tag] = x;
+            }
+            if (!Double.isNaN(y)) {
+                ys[tag] = y;
+            }
+            if (!Double.isNaN(z)) {
+                zs[tag] = z;
+            }
+            times[tag] = timeMillis;
+            updates++;
+            version++;
+
+            previousZone = zones[tag];
+            zone = previousZone;
+            if (!Double.isNaN(xs[tag]) && !Double.isNaN(ys[tag])) {
+                filter.update(tag, xs[tag], ys[tag], timeMillis);
+                zone = resolveZone(tag, filter.getX(tag), filter.getY(tag), timeMillis);
+            }
+            tagListeners = listeners[tag];
+            if (equal(zone, previousZone)) {
+                tagZoneListeners = null;
+                everyZoneListener = null;
+            } else {
+                zones[tag] = zone;
+                zoneChanges++;
+                adjustOccupancy(previousZone, -1);
+                adjustOccupancy(zone, 1);
+                tagZoneListeners = zoneListeners[tag];
+                everyZoneListener = allZoneListeners;
+            }
+        }
+
+        // Notify outside the lock, so listeners may read the tracker; zone changes first
+        if (tagZoneListeners != null) {
+            for (ZoneListener listener : tagZoneListeners) {
+                listener.onZoneChanged(this, tag, previousZone, zone);
+            }
+        }
+        if (everyZoneListener != null) {
+            for (ZoneListener listener : everyZoneListener) {
+                listener.onZoneChanged(this, tag, previousZone, zone);
+            }
+        }
+        if (tagListeners != null) {
+            for (Listener listener : tagListeners) {
+                listener.onTagUpdated(this, tag);
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Registers a listener for position updates of one tag.
+     * @param name The tag name
+     * @param listener Called on the updating thread, must not block
+     */
+    public synchronized void addListener(String name, Listener listener) {
+        int tag = register(name);
+        listeners[tag] = append(listeners[tag], listener);
+    }
+
+    /**
+     * Registers a listener for zone changes of one tag.
+     * @param name The tag name
+     * @param listener Called on the updating thread, must not block
+     */
+    public synchronized void addZoneListener(String name, ZoneListener listener) {
+        int tag = register(name);
+        zoneListeners[tag] = append(zoneListeners[tag], listener);
+    }
+
+    /**
+     * Registers a listener for zone changes of every tag.
+     * @param listener Called on the updating thread, must not block
+     */
+    public synchronized void addZoneListener(ZoneListener listener) {
+        allZoneListeners = append(allZoneListeners, listener);
+    }
+
+    /**
+     * @param topic A printer topic
+     * @return Number of tags currently in the printer's zone
+     */
+    public synchronized int countInZone(String topic) {
+        int[] count = topic != null ? occupancy.get(topic) : null;
+        return count != null ? count[0] : 0;
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Name the tag reports under
+     */
+    public synchronized String getName(int tag) {
+        return names[tag];
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Smoothed X coordinate, NaN until both coordinates were reported
+     */
+    public synchronized double getX(int tag) {
+        return filter.getX(tag);
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Smoothed Y coordinate, NaN until both coordinates were reported
+     */
+    public synchronized double getY(int tag) {
+        return filter.getY(tag);
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Last reported X coordinate
+     */
+    public synchronized double getReportedX(int tag) {
+        return xs[tag];
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Last reported Y coordinate
+     */
+    public synchronized double getReportedY(int tag) {
+        return ys[tag];
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Last reported Z coordinate, NaN if never reported
+     */
+    public synchronized double getZ(int tag) {
+        return zs[tag];
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Time of the tag's last fix, 0 if it never reported
+     */
+    public synchronized long getUpdateTime(int tag) {
+        return times[tag];
+    }
+
+    /**
+     * @param tag The tag id
+     * @return Printer topic of the zone the tag is in, or null
+     */
+    public synchronized String getZone(int tag) {
+        return zones[tag];
+    }
+
+    /**
+     * @return Number of known tags
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return Counter bumped by every update, to skip redundant redraws
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Number of fixes of all tags
+     */
+    public synchronized long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return Number of times a tag entered or left a zone
+     */
+    public synchronized long getZoneChanges() {
+        return zoneChanges;
+    }
+
+    /**
+     * @return Number of times a tag went back to its zone before a zone change was accepted
+     */
+    public synchronized long getSuppressedZoneChanges() {
+        return suppressedZoneChanges;
+    }
+
+    /**
+     * Applies the hysteresis to the zone of a smoothed position.
+     * @return The zone the tag is in after this fix
+     */
+    private String resolveZone(int tag, double x, double y, long timeMillis) {
+        String current = zones[tag];
+        String observed = PrinterTopicSelector.selectPrinterTopic(x, y);
+        if (equal(observed, current)) {
+            if (candidateSince[tag] != NO_CANDIDATE) {
+                // Back before the change was accepted: a flap avoided
+                candidateZones[tag] = null;
+                candidateSince[tag] = NO_CANDIDATE;
+                suppressedZoneChanges++;
+            }
+            return current;
+        }
+
+        if (candidateSince[tag] == NO_CANDIDATE || !equal(observed, candidateZones[tag])) {
+            candidateZones[tag] = observed;
+            candidateSince[tag] = timeMillis;
+        }
+        if (timeMillis - candidateSince[tag] >= dwellMillis || isWellInside(observed, x, y)) {
+            candidateZones[tag] = null;
+            candidateSince[tag] = NO_CANDIDATE;
+            return observed;
+        }
+        return current;
+    }
+
+    /**
+     * @return True if the zone extends at least the hysteresis distance around the position on both axes
+     */
+    private boolean isWellInside(String topic, double x, double y) {
+        double margin = hysteresisMetres;
+        return equal(topic, PrinterTopicSelector.selectPrinterTopic(x - margin, y))
+                && equal(topic, PrinterTopicSelector.selectPrinterTopic(x + margin, y))
+                && equal(topic, PrinterTopicSelector.selectPrinterTopic(x, y - margin))
+                && equal(topic, PrinterTopicSelector.selectPrinterTopic(x, y + margin));
+    }
+
+    private void adjustOccupancy(String topic, int delta) {
+        if (topic == null) {
+            return;
+        }
+        int[] count = occupancy.get(topic);
+        if (count == null) {
+            count = new int[1];
+            occupancy.put(topic, count);
+        }
+        count[0] += delta;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        times = Arrays.copyOf(times, capacity);
+        zones = Arrays.copyOf(zones, capacity);
+        candidateZones = Arrays.copyOf(candidateZones, capacity);
+        candidateSince = Arrays.copyOf(candidateSince, capacity);
+        listeners = Arrays.copyOf(listeners, capacity);
+        zoneListeners = Arrays.copyOf(zoneListeners, capacity);
+    }
+
+    private void rehash(int capacity) {
+        slotNames = new String[capacity];
+        slotIds = new int[capacity];
+        int mask = capacity - 1;
+        for (int tag = 0; tag < size; tag++) {
+            int slot = names[tag].hashCode() & mask;
+            while (slotNames[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slotNames[slot] = names[tag];
+            slotIds[slot] = tag;
+        }
+    }
+
+    private static Listener[] append(Listener[] array, Listener listener) {
+        Listener[] grown = array == null ? new Listener[1] : Arrays.copyOf(array, array.length + 1);
+        grown[grown.length - 1] = listener;
+        return grown;
+    }
+
+    private static ZoneListener[] append(ZoneListener[] array, ZoneListener listener) {
+        ZoneListener[] grown = array == null ? new ZoneListener[1] : Arrays.copyOf(array, array.length + 1);
+        grown[grown.length - 1] = listener;
+        return grown;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
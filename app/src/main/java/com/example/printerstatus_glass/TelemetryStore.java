@@ -0,0 +1,358 @@
+package com.example.printerstatus_glass;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed-size, memory-mapped history of numeric printer telemetry.
+ * Every printer gets a slot holding a ring of samples (timestamp plus one double per
+ * {@link Field}); the oldest samples are overwritten, and when all slots are taken the
+ * printer that reported least recently gives up its slot. The file size is fixed at
+ * creation, so storage stays bounded no matter how long the app runs, and the history
+ * survives restarts because the OS writes the mapped pages back.
+ * Appending and querying do not allocate. Thread-safe.
+ * <p>
+ * Layout: file header (magic, version, slots, capacity), then per slot a header
+ * (topic, total samples appended, last sample time) followed by the sample ring.
+ */
+public class TelemetryStore {
+    public static final int DEFAULT_SLOTS = 16;
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Numeric fields kept in the history.
+     */
+    public enum Field {
+        BED_TEMPERATURE("bed_temperature_current"),
+        TOOL_TEMPERATURE("tool_temperature_current"),
+        COMPLETION("completion"),
+        PRINT_TIME_LEFT("print_time_left");
+
+        private final String key;
+
+        Field(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return The key of the field in printer messages
+         */
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final int MAGIC = 0x50535453; // "PSTS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 64;
+    private static final int SLOT_HEADER_BYTES = 128;
+    private static final int MAX_TOPIC_BYTES = SLOT_HEADER_BYTES - 2 - 8 - 8;
+    private static final int SAMPLE_BYTES = 8 + 8 * FIELDS.length;
+    // Offsets within a slot header
+    private static final int TOPIC_LENGTH = 0;
+    private static final int TOPIC_BYTES = 2;
+    private static final int APPENDED = SLOT_HEADER_BYTES - 16;
+    private static final int LAST_TIME = SLOT_HEADER_BYTES - 8;
+
+    private final int slots;
+    private final int capacity;
+    private final long slotBytes;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> slotsByTopic = new HashMap<>();
+    private final String[] topics;
+    // Reused per-bucket sample counts of query(), guarded by this
+    private int[] bucketCounts = new int[0];
+
+    /**
+     * Opens or creates a store with the default size.
+     * @param path The backing file
+     * @throws IOException If the file cannot be mapped
+     */
+    public TelemetryStore(File path) throws IOException {
+        this(path, DEFAULT_SLOTS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Opens a store, keeping its history if the file has the same geometry, otherwise starting empty.
+     * @param path The backing file
+     * @param slots Maximum number of printers
+     * @param capacity Samples kept per printer
+     * @throws IOException If the file cannot be mapped
+     */
+    public TelemetryStore(File path, int slots, int capacity) throws IOException {
+        this.slots = slots;
+        this.capacity = capacity;
+        this.slotBytes = SLOT_HEADER_BYTES + (long) capacity * SAMPLE_BYTES;
+        this.topics = new String[slots];
+        long size = FILE_HEADER_BYTES + slots * slotBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Telemetry store too large: " + size + " bytes");
+        }
+
+        file = new RandomAccessFile(path, "rw");
+        boolean reuse = file.length() == size;
+        file.setLength(size);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        reuse = reuse && buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT_VERSION
+                && buffer.getInt(8) == slots && buffer.getInt(12) == capacity;
+        if (reuse) {
+            loadTopics();
+        } else {
+            format();
+        }
+    }
+
+    private void format() {
+        for (int i = 0; i < FILE_HEADER_BYTES; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            resetSlot(slot, null);
+        }
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, slots);
+        buffer.putInt(12, capacity);
+        buffer.putInt(0, MAGIC); // written last, marks the file as valid
+    }
+
+    private void loadTopics() {
+        byte[] bytes = new byte[MAX_TOPIC_BYTES];
+        for (int slot = 0; slot < slots; slot++) {
+            int base = slotBase(slot);
+            int length = buffer.getShort(base + TOPIC_LENGTH);
+            if (length <= 0 || length > MAX_TOPIC_BYTES) {
+                continue;
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(base + TOPIC_BYTES + i);
+            }
+            String topic = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            topics[slot] = topic;
+            slotsByTopic.put(topic, slot);
+        }
+    }
+
+    /**
+     * Appends the numeric fields of a printer message; fields missing from the message are stored as NaN.
+     * Messages without any of the fields are ignored.
+     * @param topic The printer topic
+     * @param timeMillis Time of the message
+     * @param data The parsed message fields
+     */
+    public void append(String topic, long timeMillis, Map<String, String> data) {
+        double bed = parse(data.get(Field.BED_TEMPERATURE.key));
+        double tool = parse(data.get(Field.TOOL_TEMPERATURE.key));
+        double completion = parse(data.get(Field.COMPLETION.key));
+        double timeLeft = parse(data.get(Field.PRINT_TIME_LEFT.key));
+        appendIfAny(topic, timeMillis, bed, tool, completion, timeLeft);
+    }
+
+    /**
+     * Appends the numeric fields of a parsed printer message; fields missing from the message are stored as NaN.
+     * Messages without any of the fields are ignored.
+     * @param topic The printer topic
+     * @param timeMillis Time of the message
+     * @param update The fields of the message
+     */
+    public void append(String topic, long timeMillis, PrinterStatus.Builder update) {
+        long timeLeft = update.getPrintTimeLeft();
+        appendIfAny(topic, timeMillis, update.getBedTemperatureCurrent(), update.getToolTemperatureCurrent(),
+                update.getCompletion(), timeLeft == PrinterStatus.NO_VALUE ? Double.NaN : timeLeft);
+    }
+
+    private void appendIfAny(String topic, long timeMillis, double bed, double tool, double completion,
+                             double timeLeft) {
+        if (Double.isNaN(bed) && Double.isNaN(tool) && Double.isNaN(completion) && Double.isNaN(timeLeft)) {
+            return;
+        }
+        append(topic, timeMillis, bed, tool, completion, timeLeft);
+    }
+
+    /**
+     * Appends one sample for a printer.
+     * @param topic The printer topic
+     * @param timeMillis Time of the sample
+     * @param bedTemperature Current bed temperature, NaN if unknown
+     * @param toolTemperature Current tool temperature, NaN if unknown
+     * @param completion Completion in percent, NaN if unknown
+     * @param printTimeLeft Remaining print time in seconds, NaN if unknown
+     */
+    public synchronized void append(String topic, long timeMillis, double bedTemperature, double toolTemperature,
+                                    double completion, double printTimeLeft) {
+        int slot = slotFor(topic);
+        int base = slotBase(slot);
+        long appended = buffer.getLong(base + APPENDED);
+        int sample = sampleBase(slot, (int) (appended % capacity));
+        buffer.putLong(sample, timeMillis);
+        buffer.putDouble(sample + 8, bedTemperature);
+        buffer.putDouble(sample + 16, toolTemperature);
+        buffer.putDouble(sample + 24, completion);
+        buffer.putDouble(sample + 32, printTimeLeft);
+        // Count last, so a crash mid-append never exposes a half-written sample
+        buffer.putLong(base + LAST_TIME, timeMillis);
+        buffer.putLong(base + APPENDED, appended + 1);
+    }
+
+    /**
+     * Downsamples one field of a printer over a time range into equally wide buckets,
+     * e.g. for a sparkline. Buckets without samples are set to NaN.
+     * @param topic The printer topic
+     * @param field The field to read
+     * @param fromMillis Start of the range (inclusive)
+     * @param toMillis End of the range (exclusive)
+     * @param out Receives the mean of each bucket; its length is the number of buckets
+     * @return Number of samples that fell into the range
+     */
+    public synchronized int query(String topic, Field field, long fromMillis, long toMillis, double[] out) {
+        int buckets = out.length;
+        for (int i = 0; i < buckets; i++) {
+            out[i] = 0;
+        }
+        // Sum per bucket first, then divide by the number of samples in it
+        int[] counts = bucketCounts(buckets);
+        Integer slot = slotsByTopic.get(topic);
+        int samples = 0;
+        if (slot != null && toMillis > fromMillis) {
+            int base = slotBase(slot);
+            long appended = buffer.getLong(base + APPENDED);
+            long first = Math.max(0, appended - capacity);
+            int offset = 8 + 8 * field.ordinal();
+            double width = (double) (toMillis - fromMillis) / buckets;
+            for (long n = first; n < appended; n++) {
+                int sample = sampleBase(slot, (int) (n % capacity));
+                long time = buffer.getLong(sample);
+                if (time < fromMillis || time >= toMillis) {
+                    continue;
+                }
+                double value = buffer.getDouble(sample + offset);
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                int bucket = Math.min(buckets - 1, (int) ((time - fromMillis) / width));
+                out[bucket] += value;
+                counts[bucket]++;
+                samples++;
+            }
+        }
+        for (int i = 0; i < buckets; i++) {
+            out[i] = counts[i] == 0 ? Double.NaN : out[i] / counts[i];
+        }
+        return samples;
+    }
+
+    private int[] bucketCounts(int buckets) {
+        if (bucketCounts.length < buckets) {
+            bucketCounts = new int[buckets];
+        }
+        for (int i = 0; i < buckets; i++) {
+            bucketCounts[i] = 0;
+        }
+        return bucketCounts;
+    }
+
+    /**
+     * @param topic The printer topic
+     * @return Number of samples currently kept for the printer
+     */
+    public synchronized int size(String topic) {
+        Integer slot = slotsByTopic.get(topic);
+        if (slot == null) {
+            return 0;
+        }
+        return (int) Math.min(capacity, buffer.getLong(slotBase(slot) + APPENDED));
+    }
+
+    /**
+     * Writes the mapped pages to disk now instead of whenever the OS decides.
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Flushes and closes the backing file; the store must not be used afterwards.
+     * @throws IOException If closing fails
+     */
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * Returns the slot of a printer, taking a free slot or the least recently updated one for new printers.
+     */
+    private int slotFor(String topic) {
+        Integer slot = slotsByTopic.get(topic);
+        if (slot != null) {
+            return slot;
+        }
+        int victim = 0;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < slots; i++) {
+            if (topics[i] == null) {
+                victim = i;
+                break;
+            }
+            long lastTime = buffer.getLong(slotBase(i) + LAST_TIME);
+            if (lastTime < oldest) {
+                oldest = lastTime;
+                victim = i;
+            }
+        }
+        if (topics[victim] != null) {
+            slotsByTopic.remove(topics[victim]);
+        }
+        resetSlot(victim, topic);
+        topics[victim] = topic;
+        slotsByTopic.put(topic, victim);
+        return victim;
+    }
+
+    private void resetSlot(int slot, String topic) {
+        int base = slotBase(slot);
+        buffer.putLong(base + APPENDED, 0);
+        buffer.putLong(base + LAST_TIME, 0);
+        if (topic == null) {
+            buffer.putShort(base + TOPIC_LENGTH, (short) 0);
+            return;
+        }
+        byte[] bytes = topic.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_TOPIC_BYTES);
+        for (int i = 0; i < length; i++) {
+            buffer.put(base + TOPIC_BYTES + i, bytes[i]);
+        }
+        buffer.putShort(base + TOPIC_LENGTH, (short) length);
+    }
+
+    private int slotBase(int slot) {
+        return (int) (FILE_HEADER_BYTES + slot * slotBytes);
+    }
+
+    private int sampleBase(int slot, int index) {
+        return slotBase(slot) + SLOT_HEADER_BYTES + index * SAMPLE_BYTES;
+    }
+
+    /**
+     * Parses a numeric field value.
+     * @param value The value text, may be null
+     * @return The value, or NaN if missing or not a number
+     */
+    private static double parse(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.printerstatus_glass;
+
+/**
+ * Predicts which printer zone the wearer walks into next and subscribes to it ahead of time.
+ * Heading and speed are estimated by a least-squares fit over the recent UWB positions;
+ * the extrapolated path is resolved through {@link PrinterTopicSelector} and the
+ * zones found on it are held in the {@link SubscriptionManager} until the prediction
+ * goes stale. Their messages land in the DataHolder printer store, so on zone entry
+ * the HUD can show the printer's state without waiting for its next publish.
+ * Not thread-safe; call from the thread that processes UWB updates.
+ */
+public class TopicPrefetcher {
+    public static final int HISTORY_SIZE = 8;
+    public static final int MAX_PREFETCHED = 4;
+    public static final long LOOKAHEAD_MILLIS = 3000;
+    public static final long STEP_MILLIS = 500;
+    public static final long PREFETCH_TTL_MILLIS = 5000;
+    // Below this speed (m/s) the wearer is considered standing, nothing is predicted
+    public static final double MIN_SPEED = 0.2;
+
+    private final SubscriptionManager subscriptionManager;
+
+    // Position history ring buffer
+    private final long[] times = new long[HISTORY_SIZE];
+    private final double[] xs = new double[HISTORY_SIZE];
+    private final double[] ys = new double[HISTORY_SIZE];
+    private int head;
+    private int count;
+
+    // Currently prefetched topics, null slots are free
+    private final String[] prefetched = new String[MAX_PREFETCHED];
+    private final long[] expiresAt = new long[MAX_PREFETCHED];
+    private final long[] prefetchedAt = new long[MAX_PREFETCHED];
+    private final boolean[] entered = new boolean[MAX_PREFETCHED];
+
+    // Latest velocity estimate in m/s
+    private double velocityX;
+    private double velocityY;
+
+    // Metrics
+    private long prefetches;
+    private long wastedPrefetches;
+    private long zoneEntries;
+    private long warmEntries;
+
+    /**
+     * Creates a prefetcher that subscribes through the given manager.
+     * @param subscriptionManager Holds the prefetched topics
+     */
+    public TopicPrefetcher(SubscriptionManager subscriptionManager) {
+        this.subscriptionManager = subscriptionManager;
+    }
+
+    /**
+     * Records a UWB position, updates the velocity estimate and prefetches zones on the predicted path.
+     * @param timeMillis Time of the position fix
+     * @param x The X-coordinate position value
+     * @param y The Y-coordinate position value
+     * @param currentTopic Topic of the zone the wearer is in, or null
+     */
+    public void onPosition(long timeMillis, double x, double y, String currentTopic) {
+        times[head] = timeMillis;
+        xs[head] = x;
+        ys[head] = y;
+        head = (head + 1) % HISTORY_SIZE;
+        if (count < HISTORY_SIZE) {
+            count++;
+        }
+
+        expire(timeMillis);
+        if (!estimateVelocity() || Math.hypot(velocityX, velocityY) < MIN_SPEED) {
+            return;
+        }
+
+        // Walk the extrapolated path and hold every zone found on it
+        for (long dt = STEP_MILLIS; dt <= LOOKAHEAD_MILLIS; dt += STEP_MILLIS) {
+            double seconds = dt / 1000.0;
+            String topic = PrinterTopicSelector.selectPrinterTopic(x + velocityX * seconds, y + velocityY * seconds);
+            if (topic != null && !topic.equals(currentTopic)) {
+                prefetch(topic, timeMillis);
+            }
+        }
+    }
+
+    /**
+     * Records a zone entry for the hit-rate metric. The entry is a hit only if the zone was
+     * prefetched and the printer's state arrived after the prefetch; state cached from an
+     * earlier visit or a lingering subscription does not count.
+     * @param topic The topic of the entered zone
+     * @param stateTime Time of the printer's last update in milliseconds, 0 if none is cached
+     */
+    public void onZoneEntered(String topic, long stateTime) {
+        zoneEntries++;
+        int slot = find(topic);
+        if (slot >= 0) {
+            entered[slot] = true;
+            if (stateTime >= prefetchedAt[slot]) {
+                warmEntries++;
+            }
+        }
+    }
+
+    /**
+     * Fits x(t) and y(t) with a straight line over the history.
+     * @return True if enough samples were available
+     */
+    private boolean estimateVelocity() {
+        if (count < 3) {
+            return false;
+        }
+        // Times relative to the newest sample keep the sums small and precise
+        long newest = times[(head - 1 + HISTORY_SIZE) % HISTORY_SIZE];
+        double sumT = 0, sumX = 0, sumY = 0, sumTT = 0, sumTX = 0, sumTY = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (head - 1 - i + HISTORY_SIZE) % HISTORY_SIZE;
+            double t = (times[index] - newest) / 1000.0;
+            sumT += t;
+            sumX += xs[index];
+            sumY += ys[index];
+            sumTT += t * t;
+            sumTX += t * xs[index];
+            sumTY += t * ys[index];
+        }
+        double denominator = count * sumTT - sumT * sumT;
+        if (denominator <= 0) {
+            return false;
+        }
+        velocityX = (count * sumTX - sumT * sumX) / denominator;
+        velocityY = (count * sumTY - sumT * sumY) / denominator;
+        return true;
+    }
+
+    /**
+     * Holds a topic for {@link #PREFETCH_TTL_MILLIS}, refreshing the expiry if it is already held.
+     * @param topic The predicted topic
+     * @param now Time of the prediction
+     */
+    private void prefetch(String topic, long now) {
+        long until = now + PREFETCH_TTL_MILLIS;
+        int slot = find(topic);
+        if (slot >= 0) {
+            expiresAt[slot] = until;
+            return;
+        }
+        slot = find(null);
+        if (slot < 0) {
+            return; // All slots busy with fresher predictions
+        }
+        prefetched[slot] = topic;
+        expiresAt[slot] = until;
+        prefetchedAt[slot] = now;
+        entered[slot] = false;
+        prefetches++;
+        subscriptionManager.acquire(topic);
+    }
+
+    /**
+     * Releases predictions that went stale; those never entered count as wasted.
+     * @param now Current time in milliseconds
+     */
+    private void expire(long now) {
+        for (int i = 0; i < MAX_PREFETCHED; i++) {
+            if (prefetched[i] != null && now >= expiresAt[i]) {
+                if (!entered[i]) {
+                    wastedPrefetches++;
+                }
+                subscriptionManager.release(prefetched[i]);
+                prefetched[i] = null;
+            }
+        }
+    }
+
+    private int find(String topic) {
+        for (int i = 0; i < MAX_PREFETCHED; i++) {
+            if (topic == null ? prefetched[i] == null : topic.equals(prefetched[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Estimated speed along X in m/s
+     */
+    public double getVelocityX() {
+        return velocityX;
+    }
+
+    /**
+     * @return Estimated speed along Y in m/s
+     */
+    public double getVelocityY() {
+        return velocityY;
+    }
+
+    public long getPrefetches() {
+        return prefetches;
+    }
+
+    public long getWastedPrefetches() {
+        return wastedPrefetches;
+    }
+
+    public long getZoneEntries() {
+        return zoneEntries;
+    }
+
+    /**
+     * @return Share of zone entries where the prefetch had already brought in the printer state
+     */
+    public double getHitRate() {
+        return zoneEntries == 0 ? 0 : (double) warmEntries / zoneEntries;
+    }
+}
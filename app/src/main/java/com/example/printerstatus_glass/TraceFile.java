@@ -0,0 +1,252 @@
+package com.example.printerstatus_glass;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact recording of MQTT traffic (topic, payload, arrival time), for replaying field
+ * sessions offline.
+ *
+ * File format: the magic "PSTR" and a version byte, then one record per message:
+ * <pre>
+ * varint  microseconds since the previous record (0 for the first)
+ * varint  topic index; the next unused index introduces a new topic,
+ *         followed by varint length and the UTF-8 topic
+ * varint  payload length, then the raw payload
+ * </pre>
+ * Topics are written once, so a record of a UWB fix costs about 70 bytes as text and
+ * 30 bytes in the binary format.
+ */
+public final class TraceFile {
+    private static final byte[] MAGIC = {'P', 'S', 'T', 'R'};
+    private static final int VERSION = 1;
+
+    private TraceFile() {}
+
+    /**
+     * Appends messages to a trace. Thread-safe; writes go to a buffer and reach the
+     * file when it fills, on {@link #flush()} and on {@link #close()}.
+     */
+    public static final class Writer implements Closeable {
+        private final OutputStream out;
+        private final Map<String, Integer> topicIndex = new HashMap<>();
+        private final byte[] scratch = new byte[10];
+        private long lastNanos;
+        private long records;
+
+        /**
+         * Starts a new trace file, replacing an existing one.
+         * @param file The file
+         * @throws IOException If the file cannot be written
+         */
+        public Writer(File file) throws IOException {
+            this(new FileOutputStream(file));
+        }
+
+        /**
+         * Starts a trace on a stream.
+         * @param stream The destination; closed with this writer
+         * @throws IOException If the header cannot be written
+         */
+        public Writer(OutputStream stream) throws IOException {
+            out = new BufferedOutputStream(stream, 64 * 1024);
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+
+        /**
+         * Appends one message.
+         * @param topic The MQTT topic
+         * @param payload The raw payload
+         * @param arrivalNanos Arrival time in System.nanoTime()
+         * @throws IOException If the trace cannot be written
+         */
+        public synchronized void record(String topic, byte[] payload, long arrivalNanos) throws IOException {
+            long deltaMicros = records == 0 ? 0 : Math.max(0, (arrivalNanos - lastNanos) / 1000);
+            lastNanos = arrivalNanos;
+            records++;
+            writeVarint(deltaMicros);
+
+            Integer index = topicIndex.get(topic);
+            if (index != null) {
+                writeVarint(index);
+            } else {
+                int next = topicIndex.size();
+                topicIndex.put(topic, next);
+                byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+                writeVarint(next);
+                writeVarint(topicBytes.length);
+                out.write(topicBytes);
+            }
+
+            writeVarint(payload.length);
+            out.write(payload);
+        }
+
+        /**
+         * @return Number of messages recorded
+         */
+        public synchronized long getRecords() {
+            return records;
+        }
+
+        /**
+         * Writes buffered records to the file.
+         * @throws IOException If the trace cannot be written
+         */
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private void writeVarint(long value) throws IOException {
+            int length = 0;
+            while ((value & ~0x7FL) != 0) {
+                scratch[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            scratch[length++] = (byte) value;
+            out.write(scratch, 0, length);
+        }
+    }
+
+    /**
+     * Reads a trace message by message. Not thread-safe.
+     */
+    public static final class Reader implements Closeable {
+        private final InputStream in;
+        private final List<String> topics = new ArrayList<>();
+        private String topic;
+        private byte[] payload;
+        private long timeMicros;
+
+        /**
+         * Opens a trace file.
+         * @param file The file
+         * @throws IOException If the file cannot be read or is no trace
+         */
+        public Reader(File file) throws IOException {
+            this(new FileInputStream(file));
+        }
+
+        /**
+         * Opens a trace on a stream.
+         * @param stream The source; closed with this reader
+         * @throws IOException If the stream cannot be read or is no trace
+         */
+        public Reader(InputStream stream) throws IOException {
+            in = new BufferedInputStream(stream, 64 * 1024);
+            byte[] header = new byte[MAGIC.length + 1];
+            readFully(header);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header[i] != MAGIC[i]) {
+                    throw new IOException("Not a trace file");
+                }
+            }
+            if (header[MAGIC.length] != VERSION) {
+                throw new IOException("Unsupported trace version " + header[MAGIC.length]);
+            }
+        }
+
+        /**
+         * Moves to the next message.
+         * @return False at the end of the trace
+         * @throws IOException If the trace cannot be read or is truncated
+         */
+        public boolean next() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            timeMicros += readVarint(first);
+
+            int index = (int) readVarint(in.read());
+            if (index == topics.size()) {
+                byte[] topicBytes = new byte[(int) readVarint(in.read())];
+                readFully(topicBytes);
+                topics.add(new String(topicBytes, StandardCharsets.UTF_8));
+            } else if (index > topics.size()) {
+                throw new IOException("Unknown topic index " + index);
+            }
+            topic = topics.get(index);
+
+            payload = new byte[(int) readVarint(in.read())];
+            readFully(payload);
+            return true;
+        }
+
+        /**
+         * @return Topic of the current message
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * @return Payload of the current message, a new array per message
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * @return Arrival time of the current message, in microseconds since the first message
+         */
+        public long getTimeMicros() {
+            return timeMicros;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private long readVarint(int first) throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b = first;
+            while (true) {
+                if (b < 0) {
+                    throw new EOFException("Truncated trace");
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+                if (shift > 63) {
+                    throw new IOException("Malformed varint");
+                }
+                b = in.read();
+            }
+        }
+
+        private void readFully(byte[] buffer) throws IOException {
+            int read = 0;
+            while (read < buffer.length) {
+                int n = in.read(buffer, read, buffer.length - read);
+                if (n < 0) {
+                    throw new EOFException("Truncated trace");
+                }
+                read += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.printerstatus_glass;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Follows traced messages from the publisher to the HUD: publish to arrival when the
+ * message is applied, arrival to render once a frame showing it has been drawn.
+ * Publisher timestamps are moved onto the headset's clock with the {@link ClockSync}
+ * estimate; until the first pong only arrival to render is known and the publish stages
+ * are skipped. The stage distributions go to {@link LatencyMetrics}; the last
+ * {@link #RECENT} messages are kept per trace id and can be exported as CSV.
+ * Messages are added on the ingest thread and rendered on the UI thread; state is guarded by this.
+ */
+public class TraceRecorder {
+    static final int RECENT = 1024;
+    /** Latency of a stage that is not known */
+    public static final long UNKNOWN = -1;
+
+    private final ClockSync clock;
+    private final LatencyMetrics metrics;
+
+    // Ring of the last RECENT traced messages, by sequence number modulo RECENT
+    private final long[] traceIds = new long[RECENT];
+    private final long[] publishMicros = new long[RECENT];
+    private final long[] arrivalNanos = new long[RECENT];
+    private final long[] publishToArrivalMicros = new long[RECENT];
+    private final long[] arrivalToRenderMicros = new long[RECENT];
+    private final boolean[] waiting = new boolean[RECENT];
+    private long written;
+    // Oldest message that may still wait for a frame, and the first one not yet exported
+    private long firstWaiting;
+    private long exported;
+    private long untimed;
+
+    /**
+     * @param clock Offset between the publishers' clock and this one
+     * @param metrics Receives the stage latencies
+     */
+    public TraceRecorder(ClockSync clock, LatencyMetrics metrics) {
+        this.clock = clock;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The clock offset estimator
+     */
+    public ClockSync getClock() {
+        return clock;
+    }
+
+    /**
+     * Records a traced message once it has been applied.
+     * @param trace The message's tracing fields; ignored without a publish time
+     * @param arrivalNanos When Paho handed the message over, in System.nanoTime() base
+     * @param visible True if the message changes what the HUD shows and a frame was requested
+     */
+    public synchronized void onMessage(MessageTrace trace, long arrivalNanos, boolean visible) {
+        if (!trace.hasPublishTime()) {
+            return;
+        }
+        int slot = (int) (written % RECENT);
+        traceIds[slot] = trace.getTraceId();
+        publishMicros[slot] = trace.getPublishMicros();
+        this.arrivalNanos[slot] = arrivalNanos;
+        arrivalToRenderMicros[slot] = UNKNOWN;
+        waiting[slot] = visible;
+        if (clock.hasEstimate()) {
+            long publishLocalNanos = ClockSync.toNanos(clock.toLocalMicros(trace.getPublishMicros()));
+            publishToArrivalMicros[slot] = Math.max(0, arrivalNanos - publishLocalNanos) / 1000;
+            metrics.getHistogram(LatencyMetrics.Stage.PUBLISH_TO_ARRIVAL).record(arrivalNanos - publishLocalNanos, arrivalNanos);
+        } else {
+            publishToArrivalMicros[slot] = UNKNOWN;
+            untimed++;
+        }
+        written++;
+        if (!visible && firstWaiting == written - 1) {
+            firstWaiting = written; // nothing in front waits for a frame
+        }
+        // Messages pushed out of the ring no longer wait for a frame
+        firstWaiting = Math.max(firstWaiting, written - RECENT);
+        exported = Math.max(exported, written - RECENT);
+    }
+
+    /**
+     * Completes every message waiting for a frame; call after a frame has been drawn.
+     * @param renderedNanos When the frame was done, in System.nanoTime() base
+     */
+    public synchronized void onRendered(long renderedNanos) {
+        for (long sequence = firstWaiting; sequence < written; sequence++) {
+            int slot = (int) (sequence % RECENT);
+            if (!waiting[slot]) {
+                continue;
+            }
+            waiting[slot] = false;
+            long arrivalToRender = renderedNanos - arrivalNanos[slot];
+            arrivalToRenderMicros[slot] = Math.max(0, arrivalToRender) / 1000;
+            metrics.getHistogram(LatencyMetrics.Stage.ARRIVAL_TO_RENDER).record(arrivalToRender, renderedNanos);
+            if (publishToArrivalMicros[slot] != UNKNOWN) {
+                metrics.getHistogram(LatencyMetrics.Stage.PUBLISH_TO_RENDER).record(
+                        publishToArrivalMicros[slot] * 1000 + arrivalToRender, renderedNanos);
+            }
+        }
+        firstWaiting = written;
+    }
+
+    /**
+     * @return Traced messages recorded so far
+     */
+    public synchronized long getTraced() {
+        return written;
+    }
+
+    /**
+     * @return Traced messages that arrived before the clock offset was known
+     */
+    public synchronized long getUntimed() {
+        return untimed;
+    }
+
+    /**
+     * Writes the messages recorded since the previous export, one row per message:
+     * trace id, publish time on the publisher's clock, publish to arrival and arrival to
+     * render in microseconds ({@link #UNKNOWN} if not known). Messages still waiting for a
+     * frame stay for the next export.
+     * @param writer Destination of the rows
+     * @throws IOException If writing fails
+     */
+    public synchronized void writeCsv(Writer writer) throws IOException {
+        long end = Math.min(written, firstWaiting);
+        for (; exported < end; exported++) {
+            int slot = (int) (exported % RECENT);
+            writer.write(traceIds[slot] + "," + publishMicros[slot] + ","
+                    + publishToArrivalMicros[slot] + "," + arrivalToRenderMicros[slot] + "\n");
+        }
+    }
+
+    /**
+     * Appends the messages recorded since the previous export to a CSV file, writing a header if the file is new.
+     * @param file The CSV file
+     * @throws IOException If writing fails
+     */
+    public void appendToFile(File file) throws IOException {
+        boolean isNew = !file.exists() || file.length() == 0;
+        try (Writer writer = new FileWriter(file, true)) {
+            if (isNew) {
+                writer.write("trace_id,publish_us,publish_to_arrival_us,arrival_to_render_us\n");
+            }
+            writeCsv(writer);
+        }
+    }
+}
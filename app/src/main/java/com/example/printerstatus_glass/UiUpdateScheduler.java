@@ -0,0 +1,121 @@
+package com.example.printerstatus_glass;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces render requests into at most one render per display frame.
+ * Any thread may mark the HUD dirty; only the first request after a render posts a
+ * frame callback, later ones are folded into it. The renderer always reads the latest
+ * state when the frame runs, so no update is lost, only intermediate redraws.
+ * An optional minimum interval caps the HUD rate below the display refresh rate.
+ */
+public class UiUpdateScheduler {
+
+    /**
+     * Receives display frame callbacks, e.g. from the Choreographer.
+     */
+    public interface FrameListener {
+        /**
+         * Called on the UI thread at the start of a frame.
+         * @param frameTimeNanos Frame time in System.nanoTime() base
+         */
+        void doFrame(long frameTimeNanos);
+    }
+
+    /**
+     * Source of display frames.
+     */
+    public interface FrameSource {
+        /**
+         * Runs the listener once at the next display frame.
+         * @param listener The listener to run
+         */
+        void postFrame(FrameListener listener);
+    }
+
+    private final FrameSource frameSource;
+    private final Runnable renderer;
+    private final long minIntervalNanos;
+    private final FrameListener frameListener = this::onFrame;
+
+    // True while a frame callback is posted and not yet rendered
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile long pendingSinceNanos;
+    private long lastRenderNanos;
+    private long lastQueueDelayNanos;
+
+    // Instrumentation
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+
+    /**
+     * Creates a scheduler.
+     * @param frameSource Source of display frames
+     * @param renderer Renders the latest state, runs on the UI thread
+     * @param maxRateHz Maximum renders per second, 0 for one per display frame
+     */
+    public UiUpdateScheduler(FrameSource frameSource, Runnable renderer, double maxRateHz) {
+        this.frameSource = frameSource;
+        this.renderer = renderer;
+        this.minIntervalNanos = maxRateHz > 0 ? (long) (1_000_000_000L / maxRateHz) : 0;
+    }
+
+    /**
+     * Marks the HUD dirty. Safe to call from any thread, never blocks.
+     */
+    public void requestRender() {
+        requests.incrementAndGet();
+        if (pending.compareAndSet(false, true)) {
+            pendingSinceNanos = System.nanoTime();
+            frameSource.postFrame(frameListener);
+        }
+    }
+
+    /**
+     * Frame callback: renders once for all requests since the last frame.
+     * @param frameTimeNanos Frame time in System.nanoTime() base
+     */
+    private void onFrame(long frameTimeNanos) {
+        if (lastRenderNanos != 0 && frameTimeNanos - lastRenderNanos < minIntervalNanos) {
+            // Over the HUD rate: stay pending and try again next frame
+            frameSource.postFrame(frameListener);
+            return;
+        }
+        lastRenderNanos = frameTimeNanos;
+        lastQueueDelayNanos = System.nanoTime() - pendingSinceNanos;
+
+        // Clear before rendering, so requests arriving during the render get their own frame
+        pending.set(false);
+        renders.incrementAndGet();
+        renderer.run();
+    }
+
+    /**
+     * @return Time the last rendered update waited from first request to frame, in nanoseconds (UI thread only)
+     */
+    public long getLastQueueDelayNanos() {
+        return lastQueueDelayNanos;
+    }
+
+    /**
+     * @return Number of render requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return Number of renders actually performed
+     */
+    public long getRenders() {
+        return renders.get();
+    }
+
+    /**
+     * @return Number of requests folded into another render
+     */
+    public long getCoalesced() {
+        return requests.get() - renders.get();
+    }
+}
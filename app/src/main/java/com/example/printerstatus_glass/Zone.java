@@ -0,0 +1,142 @@
+package com.example.printerstatus_glass;
+
+/**
+ * A single printer zone on the shop floor: a rectangle or polygon mapped to an MQTT topic.
+ * Rectangle bounds can be open or closed on each side so that neighbouring zones
+ * share an edge without overlapping. When zones do overlap, the higher priority wins.
+ */
+public final class Zone {
+    private final String topic;
+    private final int priority;
+
+    // Bounding box (equals the shape itself for rectangles)
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    // Open/closed flags for rectangle bounds
+    private final boolean minXOpen;
+    private final boolean maxXOpen;
+    private final boolean minYOpen;
+    private final boolean maxYOpen;
+
+    // Polygon vertices, or null for rectangles
+    private final double[] polygonX;
+    private final double[] polygonY;
+
+    private Zone(String topic, int priority, double minX, double minY, double maxX, double maxY,
+                 boolean minXOpen, boolean maxXOpen, boolean minYOpen, boolean maxYOpen,
+                 double[] polygonX, double[] polygonY) {
+        this.topic = topic;
+        this.priority = priority;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.minXOpen = minXOpen;
+        this.maxXOpen = maxXOpen;
+        this.minYOpen = minYOpen;
+        this.maxYOpen = maxYOpen;
+        this.polygonX = polygonX;
+        this.polygonY = polygonY;
+    }
+
+    /**
+     * Creates a closed rectangle zone, X ∈ [minX,maxX], Y ∈ [minY,maxY].
+     * @param topic The printer topic of this zone
+     * @param priority Zones with higher priority win where zones overlap
+     * @return The new zone
+     */
+    public static Zone rectangle(String topic, int priority, double minX, double minY, double maxX, double maxY) {
+        return rectangle(topic, priority, minX, false, maxX, false, minY, false, maxY, false);
+    }
+
+    /**
+     * Creates a rectangle zone with individually open or closed bounds.
+     * @param topic The printer topic of this zone
+     * @param priority Zones with higher priority win where zones overlap
+     * @return The new zone
+     */
+    public static Zone rectangle(String topic, int priority,
+                                 double minX, boolean minXOpen, double maxX, boolean maxXOpen,
+                                 double minY, boolean minYOpen, double maxY, boolean maxYOpen) {
+        if (minX > maxX || minY > maxY) {
+            throw new IllegalArgumentException("Empty rectangle for zone " + topic);
+        }
+        return new Zone(topic, priority, minX, minY, maxX, maxY,
+                minXOpen, maxXOpen, minYOpen, maxYOpen, null, null);
+    }
+
+    /**
+     * Creates a polygon zone. Points exactly on an edge may fall on either side.
+     * @param topic The printer topic of this zone
+     * @param priority Zones with higher priority win where zones overlap
+     * @param xs X coordinates of the vertices
+     * @param ys Y coordinates of the vertices
+     * @return The new zone
+     */
+    public static Zone polygon(String topic, int priority, double[] xs, double[] ys) {
+        if (xs.length != ys.length || xs.length < 3) {
+            throw new IllegalArgumentException("Polygon needs at least 3 vertices for zone " + topic);
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < xs.length; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        return new Zone(topic, priority, minX, minY, maxX, maxY,
+                false, false, false, false, xs.clone(), ys.clone());
+    }
+
+    /**
+     * Checks whether a position lies inside this zone.
+     * @param x The X-coordinate position value
+     * @param y The Y-coordinate position value
+     * @return True if the position is inside
+     */
+    public boolean contains(double x, double y) {
+        boolean inBox = (minXOpen ? x > minX : x >= minX) && (maxXOpen ? x < maxX : x <= maxX)
+                && (minYOpen ? y > minY : y >= minY) && (maxYOpen ? y < maxY : y <= maxY);
+        if (!inBox || polygonX == null) {
+            return inBox;
+        }
+
+        // Even-odd ray casting along +X
+        boolean inside = false;
+        for (int i = 0, j = polygonX.length - 1; i < polygonX.length; j = i++) {
+            if ((polygonY[i] > y) != (polygonY[j] > y)
+                    && x < (polygonX[j] - polygonX[i]) * (y - polygonY[i]) / (polygonY[j] - polygonY[i]) + polygonX[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+}
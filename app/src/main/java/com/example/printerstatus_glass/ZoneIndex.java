@@ -0,0 +1,242 @@
+package com.example.printerstatus_glass;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable spatial index over printer zones.
+ * Zones are bucketed into a uniform grid covering their combined bounding box, so a
+ * lookup only tests the few zones overlapping one cell, independent of the zone count.
+ * Instances are never modified after construction and can be shared between threads.
+ *
+ * Config format (one zone per line, '#' starts a comment):
+ * <pre>
+ * rect sf/printer/a 0 [-1,1.5] (2.6,4.2]
+ * poly sf/printer/d 0 8,1 10,1 10,3 9,4
+ * </pre>
+ * Columns are shape, topic, priority, then the X and Y intervals (rect) or the
+ * vertex list (poly). Brackets mark closed bounds, parentheses open ones.
+ */
+public final class ZoneIndex {
+    // Upper bound for grid cells per axis, keeps memory bounded for very large layouts
+    private static final int MAX_CELLS_PER_AXIS = 512;
+
+    private final Zone[] zones;
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+
+    // Compressed cell lists: zones of cell i are cellZones[cellStart[i] .. cellStart[i + 1])
+    private final int[] cellStart;
+    private final int[] cellZones;
+
+    /**
+     * Compiles a list of zones into a grid index.
+     * @param zoneList The zones; on equal priority, earlier zones win
+     */
+    public ZoneIndex(List<Zone> zoneList) {
+        // Sort once by priority (stable), so the first hit in a cell is the winner
+        List<Zone> sorted = new ArrayList<>(zoneList);
+        Collections.sort(sorted, (a, b) -> Integer.compare(b.getPriority(), a.getPriority()));
+        zones = sorted.toArray(new Zone[0]);
+
+        double boundsMinX = Double.POSITIVE_INFINITY, boundsMinY = Double.POSITIVE_INFINITY;
+        double boundsMaxX = Double.NEGATIVE_INFINITY, boundsMaxY = Double.NEGATIVE_INFINITY;
+        for (Zone zone : zones) {
+            boundsMinX = Math.min(boundsMinX, zone.getMinX());
+            boundsMinY = Math.min(boundsMinY, zone.getMinY());
+            boundsMaxX = Math.max(boundsMaxX, zone.getMaxX());
+            boundsMaxY = Math.max(boundsMaxY, zone.getMaxY());
+        }
+        if (zones.length == 0) {
+            boundsMinX = boundsMinY = boundsMaxX = boundsMaxY = 0;
+        }
+
+        // Roughly one cell per zone, spread over both axes
+        int cellsPerAxis = (int) Math.ceil(Math.sqrt(Math.max(1, zones.length)));
+        cellsPerAxis = Math.min(MAX_CELLS_PER_AXIS, Math.max(1, cellsPerAxis));
+        minX = boundsMinX;
+        minY = boundsMinY;
+        columns = cellsPerAxis;
+        rows = cellsPerAxis;
+        cellWidth = Math.max(boundsMaxX - boundsMinX, Double.MIN_NORMAL) / columns;
+        cellHeight = Math.max(boundsMaxY - boundsMinY, Double.MIN_NORMAL) / rows;
+
+        // Two passes: count zones per cell, then fill the compressed lists in priority order
+        int cellCount = columns * rows;
+        cellStart = new int[cellCount + 1];
+        for (Zone zone : zones) {
+            forEachCell(zone, cell -> cellStart[cell + 1]++);
+        }
+        for (int i = 0; i < cellCount; i++) {
+            cellStart[i + 1] += cellStart[i];
+        }
+        cellZones = new int[cellStart[cellCount]];
+        int[] fill = Arrays.copyOf(cellStart, cellCount);
+        for (int z = 0; z < zones.length; z++) {
+            final int zoneId = z;
+            forEachCell(zones[z], cell -> cellZones[fill[cell]++] = zoneId);
+        }
+    }
+
+    private interface CellVisitor {
+        void visit(int cell);
+    }
+
+    /**
+     * Visits every grid cell overlapped by the bounding box of a zone.
+     * @param zone The zone to rasterize
+     * @param visitor Receives each cell index
+     */
+    private void forEachCell(Zone zone, CellVisitor visitor) {
+        int firstColumn = column(zone.getMinX());
+        int lastColumn = column(zone.getMaxX());
+        int firstRow = row(zone.getMinY());
+        int lastRow = row(zone.getMaxY());
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                visitor.visit(r * columns + c);
+            }
+        }
+    }
+
+    private int column(double x) {
+        int c = (int) Math.floor((x - minX) / cellWidth);
+        return c < 0 ? 0 : (c >= columns ? columns - 1 : c);
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - minY) / cellHeight);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    /**
+     * Finds the highest priority zone containing a position.
+     * @param x The X-coordinate position value
+     * @param y The Y-coordinate position value
+     * @return The matching zone, or null if the position is outside every zone
+     */
+    public Zone findZone(double x, double y) {
+        if (zones.length == 0 || Double.isNaN(x) || Double.isNaN(y)) {
+            return null;
+        }
+        int cell = row(y) * columns + column(x);
+        for (int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++) {
+            Zone zone = zones[cellZones[i]];
+            if (zone.contains(x, y)) {
+                return zone;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the topic of the highest priority zone containing a position.
+     * @param x The X-coordinate position value
+     * @param y The Y-coordinate position value
+     * @return The zone topic, or null if the position is outside every zone
+     */
+    public String findTopic(double x, double y) {
+        Zone zone = findZone(x, y);
+        return zone != null ? zone.getTopic() : null;
+    }
+
+    /**
+     * @return Number of zones in this index
+     */
+    public int size() {
+        return zones.length;
+    }
+
+    /**
+     * Parses a zone config and compiles it into an index.
+     * @param reader Source of the config text
+     * @return The compiled index
+     * @throws IOException If reading fails or a line is malformed
+     */
+    public static ZoneIndex parse(Reader reader) throws IOException {
+        List<Zone> zoneList = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            try {
+                zoneList.add(parseZone(line.split("\\s+")));
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid zone on line " + lineNumber + ": " + line, e);
+            }
+        }
+        return new ZoneIndex(zoneList);
+    }
+
+    /**
+     * Parses the columns of a single config line.
+     * @param columns Whitespace separated columns
+     * @return The parsed zone
+     */
+    private static Zone parseZone(String[] columns) {
+        if (columns.length < 4) {
+            throw new IllegalArgumentException("Expected: shape topic priority bounds");
+        }
+        String topic = columns[1];
+        int priority = Integer.parseInt(columns[2]);
+
+        if (columns[0].equals("rect") && columns.length == 5) {
+            double[] x = parseInterval(columns[3]);
+            double[] y = parseInterval(columns[4]);
+            return Zone.rectangle(topic, priority,
+                    x[0], columns[3].charAt(0) == '(', x[1], columns[3].endsWith(")"),
+                    y[0], columns[4].charAt(0) == '(', y[1], columns[4].endsWith(")"));
+        } else if (columns[0].equals("poly")) {
+            int vertices = columns.length - 3;
+            double[] xs = new double[vertices];
+            double[] ys = new double[vertices];
+            for (int i = 0; i < vertices; i++) {
+                String[] point = columns[i + 3].split(",");
+                if (point.length != 2) {
+                    throw new IllegalArgumentException("Expected x,y vertex: " + columns[i + 3]);
+                }
+                xs[i] = Double.parseDouble(point[0]);
+                ys[i] = Double.parseDouble(point[1]);
+            }
+            return Zone.polygon(topic, priority, xs, ys);
+        }
+        throw new IllegalArgumentException("Unknown shape: " + columns[0]);
+    }
+
+    /**
+     * Parses an interval such as "[-1,1.5]" or "(2.6,4.2]".
+     * @param token The interval token
+     * @return Lower and upper bound
+     */
+    private static double[] parseInterval(String token) {
+        char open = token.charAt(0);
+        char close = token.charAt(token.length() - 1);
+        if ((open != '[' && open != '(') || (close != ']' && close != ')')) {
+            throw new IllegalArgumentException("Expected interval: " + token);
+        }
+        String[] bounds = token.substring(1, token.length() - 1).split(",");
+        if (bounds.length != 2) {
+            throw new IllegalArgumentException("Expected two bounds: " + token);
+        }
+        return new double[] {Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1])};
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class AlertEngineTest {
+    private static final String TOPIC = "sf/printer/a";
+
+    private final List<AlertEngine.Alert> alerts = new ArrayList<>();
+    private AlertEngine engine;
+    private PrinterStatus status;
+
+    @Before
+    public void setUp() {
+        engine = new AlertEngine(alerts::add);
+        status = PrinterStatus.EMPTY;
+    }
+
+    private static AlertRules parse(String config) throws IOException {
+        return AlertRules.parse(new StringReader(config));
+    }
+
+    /**
+     * Merges the fields into the printer's status and passes it to the engine, like DataHolder does.
+     */
+    private void update(long timeMillis, String... keyValues) {
+        PrinterStatus.Builder builder = new PrinterStatus.Builder();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            builder.put(keyValues[i], keyValues[i + 1]);
+        }
+        status = builder.mergeInto(status);
+        engine.onPrinterUpdate(TOPIC, status, timeMillis);
+    }
+
+    @Test
+    public void testDurationRuleRaisesAfterHoldingAndClears() throws IOException {
+        engine.setRules(parse("tool_off_target deviation tool_temperature_current tool_temperature_target > 10 for 30"));
+
+        update(0, "tool_temperature_target", "210", "tool_temperature_current", "180");
+        update(10_000, "tool_temperature_current", "185");
+        assertTrue(alerts.isEmpty());
+
+        update(30_000, "tool_temperature_current", "190");
+        assertEquals(1, alerts.size());
+        AlertEngine.Alert raised = alerts.get(0);
+        assertTrue(raised.isRaised());
+        assertEquals("tool_off_target", raised.getRuleId());
+        assertEquals(TOPIC, raised.getTopic());
+        assertEquals(20, raised.getValue(), 1e-9);
+        assertEquals(Collections.singletonList("tool_off_target"), engine.getActiveAlerts(TOPIC));
+
+        // Still off target: no second alert
+        update(40_000, "tool_temperature_current", "195");
+        assertEquals(1, alerts.size());
+
+        update(50_000, "tool_temperature_current", "205");
+        assertEquals(2, alerts.size());
+        assertFalse(alerts.get(1).isRaised());
+        assertTrue(engine.getActiveAlerts(TOPIC).isEmpty());
+    }
+
+    @Test
+    public void testDurationResetsWhenConditionBreaks() throws IOException {
+        engine.setRules(parse("hot value bed_temperature_current > 100 for 10"));
+
+        update(0, "bed_temperature_current", "110");
+        update(8_000, "bed_temperature_current", "90");
+        update(9_000, "bed_temperature_current", "105");
+        update(18_000, "bed_temperature_current", "106");
+        assertTrue(alerts.isEmpty());
+        update(19_000, "bed_temperature_current", "107");
+        assertEquals(1, alerts.size());
+    }
+
+    @Test
+    public void testTickRaisesDurationRuleOfQuietPrinter() throws IOException {
+        engine.setRules(parse("tool_off_target deviation tool_temperature_current tool_temperature_target > 10 for 30"));
+        update(0, "tool_temperature_target", "210", "tool_temperature_current", "25");
+
+        engine.tick(29_999);
+        assertTrue(alerts.isEmpty());
+        engine.tick(30_000);
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).isRaised());
+    }
+
+    @Test
+    public void testGuardSuppressesRule() throws IOException {
+        engine.setRules(parse("tool_off_target deviation tool_temperature_current tool_temperature_target > 10 " +
+                "if tool_temperature_target > 0"));
+
+        // Heater off: a cold nozzle is expected
+        update(0, "tool_temperature_target", "0", "tool_temperature_current", "25");
+        assertTrue(alerts.isEmpty());
+
+        // Heating starts; a change of the guard field alone wakes the rule
+        update(1_000, "tool_temperature_target", "210");
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).isRaised());
+
+        update(2_000, "tool_temperature_target", "0");
+        assertEquals(2, alerts.size());
+        assertFalse(alerts.get(1).isRaised());
+    }
+
+    @Test
+    public void testTextRuleMatchesIgnoringCase() throws IOException {
+        engine.setRules(parse("job_error text detailed_state ~ error\n" +
+                "idle text state = operational\n"));
+
+        update(0, "state", "Printing", "detailed_state", "Printing layer 3");
+        assertTrue(alerts.isEmpty());
+
+        update(1_000, "detailed_state", "Thermal Runaway ERROR");
+        assertEquals(1, alerts.size());
+        assertEquals("job_error", alerts.get(0).getRuleId());
+
+        update(2_000, "state", "Operational", "detailed_state", "Ready");
+        assertEquals(3, alerts.size());
+        assertEquals(Collections.singletonList("idle"), engine.getActiveAlerts(TOPIC));
+    }
+
+    @Test
+    public void testRateRuleOverWindow() throws IOException {
+        engine.setRules(parse("tool_heating_fast rate tool_temperature_current > 5 window 10"));
+
+        // 2 °C/s: within limits
+        for (int s = 0; s <= 20; s++) {
+            update(s * 1000L, "tool_temperature_current", String.valueOf(25 + 2 * s));
+        }
+        assertTrue(alerts.isEmpty());
+
+        // 8 °C/s for a few seconds: the average over the 10 s window passes 5 °C/s
+        double temperature = 65;
+        for (int s = 21; s <= 30 && alerts.isEmpty(); s++) {
+            temperature += 8;
+            update(s * 1000L, "tool_temperature_current", String.valueOf(temperature));
+        }
+        assertEquals(1, alerts.size());
+        assertTrue(alerts.get(0).getValue() > 5);
+
+        // Temperature holds: the rate decays as the window moves on, without new messages
+        engine.tick(60_000);
+        assertEquals(2, alerts.size());
+        assertFalse(alerts.get(1).isRaised());
+    }
+
+    @Test
+    public void testUnknownValuesDoNotTrigger() throws IOException {
+        engine.setRules(parse("job_finishing value print_time_left < 60\n" +
+                "cold value bed_temperature_current < 15\n"));
+        update(0, "state", "Operational");
+        assertTrue(alerts.isEmpty());
+
+        update(1_000, "print_time_left", "45");
+        assertEquals(1, alerts.size());
+        assertEquals("job_finishing", alerts.get(0).getRuleId());
+    }
+
+    @Test
+    public void testPrintersKeepSeparateState() throws IOException {
+        engine.setRules(parse("hot value bed_temperature_current > 100"));
+        PrinterStatus hot = new PrinterStatus.Builder().put("bed_temperature_current", "110").build();
+        PrinterStatus cool = new PrinterStatus.Builder().put("bed_temperature_current", "60").build();
+
+        engine.onPrinterUpdate("sf/printer/a", hot, 0);
+        engine.onPrinterUpdate("sf/printer/b", cool, 0);
+        assertEquals(1, alerts.size());
+        assertEquals("sf/printer/a", alerts.get(0).getTopic());
+        assertEquals(Collections.singletonList("hot"), engine.getActiveAlerts("sf/printer/a"));
+        assertTrue(engine.getActiveAlerts("sf/printer/b").isEmpty());
+    }
+
+    @Test
+    public void testSetRulesResetsState() throws IOException {
+        engine.setRules(parse("hot value bed_temperature_current > 100"));
+        update(0, "bed_temperature_current", "110");
+        assertEquals(1, engine.getActiveAlerts(TOPIC).size());
+
+        engine.setRules(parse("hot value bed_temperature_current > 120"));
+        assertTrue(engine.getActiveAlerts(TOPIC).isEmpty());
+        update(1_000, "bed_temperature_current", "111");
+        assertEquals(1, alerts.size());
+    }
+
+    /**
+     * Rules over fields that do not change are not evaluated, so the work per message
+     * stays the same whether 10 or 500 rules are loaded.
+     */
+    @Test
+    public void testEvaluationsPerMessageIndependentOfRuleCount() throws IOException {
+        long[] evaluations = new long[2];
+        int[] ruleCounts = {10, 500};
+        for (int run = 0; run < 2; run++) {
+            StringBuilder config = new StringBuilder(
+                    "tool_off_target deviation tool_temperature_current tool_temperature_target > 10 for 30\n");
+            for (int i = 1; i < ruleCounts[run]; i++) {
+                String field = i % 2 == 0 ? "bed_temperature_target" : "print_time";
+                config.append(String.format(Locale.US, "r%d value %s > %d\n", i, field, 100_000 + i));
+            }
+            AlertEngine measured = new AlertEngine(alert -> { });
+            measured.setRules(parse(config.toString()));
+
+            PrinterStatus.Builder builder = new PrinterStatus.Builder();
+            PrinterStatus current = builder.put("tool_temperature_target", "210").put("bed_temperature_target", "60")
+                    .put("print_time", "100").build();
+            measured.onPrinterUpdate(TOPIC, current, 0);
+            long before = measured.getEvaluations();
+
+            // Only the tool temperature changes from message to message
+            int messages = 20_000;
+            for (int m = 1; m <= messages; m++) {
+                current = builder.reset().put("tool_temperature_current", String.valueOf(200 + m % 7))
+                        .mergeInto(current);
+                measured.onPrinterUpdate(TOPIC, current, m * 100L);
+            }
+            evaluations[run] = measured.getEvaluations() - before;
+        }
+
+        assertEquals(Arrays.toString(evaluations), evaluations[0], evaluations[1]);
+        assertEquals(20_000, evaluations[0]);
+    }
+}
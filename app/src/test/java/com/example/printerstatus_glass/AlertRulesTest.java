@@ -0,0 +1,85 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class AlertRulesTest {
+    private static AlertRules parse(String config) throws IOException {
+        return AlertRules.parse(new StringReader(config));
+    }
+
+    @Test
+    public void testParsesAllKindsAndOptions() throws IOException {
+        AlertRules rules = parse("# comment\n" +
+                "tool_off_target deviation tool_temperature_current tool_temperature_target > 10 for 30 if tool_temperature_target > 0\n" +
+                "\n" +
+                "job_error text detailed_state ~ Error   # trailing comment\n" +
+                "job_finishing value print_time_left < 60\n" +
+                "tool_heating_fast rate tool_temperature_current >= 5 window 20\n");
+
+        assertEquals(4, rules.size());
+        assertEquals("tool_off_target", rules.getId(0));
+        assertEquals("job_error text detailed_state ~ Error", rules.getDefinition(1));
+
+        assertEquals(AlertRules.DEVIATION, rules.kinds[0]);
+        assertEquals(30_000, rules.durationMillis[0]);
+        assertEquals(PrinterStatus.fieldIndex("tool_temperature_target"), rules.guardFields[0]);
+        assertEquals(AlertRules.TEXT, rules.kinds[1]);
+        assertEquals("error", rules.patterns[1]);
+        assertEquals(AlertRules.CONTAINS, rules.operators[1]);
+        assertEquals(-1, rules.guardFields[2]);
+        assertEquals(AlertRules.RATE, rules.kinds[3]);
+        assertEquals(20_000, rules.windowMillis[3]);
+        assertEquals(0, rules.rateSlots[3]);
+        assertEquals(1, rules.rateRules);
+    }
+
+    @Test
+    public void testIndexesRulesByEveryFieldTheyRead() throws IOException {
+        AlertRules rules = parse(
+                "a deviation tool_temperature_current tool_temperature_target > 10 if completion > 0\n" +
+                "b value tool_temperature_current > 250\n" +
+                "c value bed_temperature_current > 120\n");
+
+        assertArrayEquals(new int[]{0, 1},
+                rules.rulesByField[PrinterStatus.fieldIndex("tool_temperature_current")]);
+        assertArrayEquals(new int[]{0}, rules.rulesByField[PrinterStatus.fieldIndex("tool_temperature_target")]);
+        assertArrayEquals(new int[]{0}, rules.rulesByField[PrinterStatus.fieldIndex("completion")]);
+        assertArrayEquals(new int[]{2}, rules.rulesByField[PrinterStatus.fieldIndex("bed_temperature_current")]);
+        assertEquals(0, rules.rulesByField[PrinterStatus.fieldIndex("state")].length);
+    }
+
+    @Test
+    public void testRejectsInvalidRulesWithLineNumber() {
+        String[] invalid = {
+                "a value nozzle_temperature > 10",
+                "a average bed_temperature_current > 10",
+                "a value bed_temperature_current ~ 10",
+                "a text state > 10",
+                "a value state = idle",
+                "a value bed_temperature_current > hot",
+                "a value bed_temperature_current > 10 for",
+                "a value bed_temperature_current > 10 window 5",
+                "a value bed_temperature_current > 10 if state > 0",
+                "a deviation bed_temperature_current > 10",
+        };
+        for (String rule : invalid) {
+            try {
+                parse("# header\n" + rule + "\n");
+                fail("Accepted: " + rule);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid rule on line 2"));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyConfigHasNoRules() throws IOException {
+        assertEquals(0, parse("# nothing yet\n").size());
+        assertEquals(0, AlertRules.EMPTY.size());
+    }
+}
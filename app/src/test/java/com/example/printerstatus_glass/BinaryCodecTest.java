@@ -0,0 +1,181 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BinaryCodecTest {
+    private static final String PRINTER_INPUT = DataParserTest.PRINTER_INPUT;
+    private static final String UWB_INPUT = "position,tagName=uwb-a positionX=5.02,positionY=2.86,positionZ=0";
+
+    @Test
+    public void testPrinterRoundTripMatchesTextParser() {
+        Map<String, String> text = DataParser.parsePrinterData(PRINTER_INPUT);
+        byte[] binary = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+                .putAll(BinaryCodec.TYPE_PRINTER, text).toByteArray();
+
+        assertTrue(BinaryCodec.isBinary(binary));
+        Map<String, String> decoded = new HashMap<>();
+        assertEquals(BinaryCodec.TYPE_PRINTER, BinaryCodec.decodeToMap(binary, decoded));
+        assertEquals(text, decoded);
+    }
+
+    @Test
+    public void testUwbRoundTrip() {
+        byte[] binary = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_UWB)
+                .putAll(BinaryCodec.TYPE_UWB, DataParser.parseUwbData(UWB_INPUT)).toByteArray();
+
+        Map<String, String> decoded = new HashMap<>();
+        assertEquals(BinaryCodec.TYPE_UWB, BinaryCodec.decodeToMap(binary, decoded));
+        assertEquals("uwb-a", decoded.get("tagName"));
+        assertEquals(5.02, Double.parseDouble(decoded.get("positionX")), 1e-6);
+        assertEquals(2.86, Double.parseDouble(decoded.get("positionY")), 1e-6);
+        assertEquals(0, Double.parseDouble(decoded.get("positionZ")), 0);
+    }
+
+    @Test
+    public void testBinaryIsMuchSmallerThanText() {
+        int textBytes = PRINTER_INPUT.getBytes(StandardCharsets.UTF_8).length;
+        int binaryBytes = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+                .putAll(BinaryCodec.TYPE_PRINTER, DataParser.parsePrinterData(PRINTER_INPUT)).length();
+        int uwbTextBytes = UWB_INPUT.getBytes(StandardCharsets.UTF_8).length;
+        int uwbBinaryBytes = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_UWB)
+                .putAll(BinaryCodec.TYPE_UWB, DataParser.parseUwbData(UWB_INPUT)).length();
+
+        // The sizes quoted in the readme
+        assertEquals(358, textBytes);
+        assertEquals(137, binaryBytes);
+        assertEquals(64, uwbTextBytes);
+        assertEquals(24, uwbBinaryBytes);
+    }
+
+    @Test
+    public void testDecodeFromBufferWithoutCopy() {
+        byte[] binary = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_UWB)
+                .putString(BinaryCodec.Field.TAG_NAME, "uwb-b")
+                .putNumber(BinaryCodec.Field.POSITION_X, 1.5)
+                .toByteArray();
+        // Message in the middle of a larger buffer
+        byte[] framed = new byte[binary.length + 6];
+        System.arraycopy(binary, 0, framed, 3, binary.length);
+        ByteBuffer buffer = ByteBuffer.wrap(framed, 3, binary.length);
+
+        StringBuilder seen = new StringBuilder();
+        BinaryCodec.decode(buffer, new BinaryCodec.Visitor() {
+            @Override
+            public void onString(BinaryCodec.Field field, byte[] bytes, int offset, int length) {
+                assertSame(framed, bytes);
+                seen.append(field).append('=').append(new String(bytes, offset, length, StandardCharsets.UTF_8)).append(' ');
+            }
+
+            @Override
+            public void onNumber(BinaryCodec.Field field, double value) {
+                seen.append(field).append('=').append(value).append(' ');
+            }
+
+            @Override
+            public void onInteger(BinaryCodec.Field field, long value) {
+                fail("No integer fields");
+            }
+        });
+        assertEquals("TAG_NAME=uwb-b POSITION_X=1.5 ", seen.toString());
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void testUnknownFieldsAreSkipped() {
+        byte[] known = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+                .putString(BinaryCodec.Field.STATE, "Printing").toByteArray();
+        // A newer publisher appends field 15 as a string and field 14 as a varint
+        byte[] extended = Arrays.copyOf(known, known.length + 7);
+        int pos = known.length;
+        extended[pos++] = (15 << 3) | 2;
+        extended[pos++] = 2;
+        extended[pos++] = 'h';
+        extended[pos++] = 'i';
+        extended[pos++] = (14 << 3);
+        extended[pos++] = (byte) 0x96;
+        extended[pos] = 0x01;
+
+        Map<String, String> decoded = new HashMap<>();
+        BinaryCodec.decodeToMap(extended, decoded);
+        assertEquals(1, decoded.size());
+        assertEquals("Printing", decoded.get("state"));
+    }
+
+    @Test
+    public void testTraceFieldsAreDecodedOnRequest() {
+        byte[] traced = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_UWB)
+                .putNumber(BinaryCodec.Field.POSITION_X, 1.5)
+                .putTrace(99, 1700000000123456L).toByteArray();
+
+        MessageTrace trace = new MessageTrace();
+        Position.Builder position = new Position.Builder();
+        assertEquals(BinaryCodec.TYPE_UWB, BinaryCodec.decode(traced, 0, traced.length, position, trace));
+        assertEquals(1.5, position.getX(), 1e-6);
+        assertEquals(99, trace.getTraceId());
+        assertEquals(1700000000123456L, trace.getPublishMicros());
+
+        // Decoders without a trace skip the fields like any unknown field
+        Map<String, String> decoded = new HashMap<>();
+        BinaryCodec.decodeToMap(traced, decoded);
+        assertEquals(1, decoded.size());
+
+        byte[] untraced = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_UWB).toByteArray();
+        BinaryCodec.decode(untraced, 0, untraced.length, position.reset(), trace);
+        assertFalse(trace.hasPublishTime());
+    }
+
+    @Test
+    public void testBooleansUseTextSpelling() {
+        byte[] binary = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+                .putInteger(BinaryCodec.Field.IS_CONNECTED, 0)
+                .putInteger(BinaryCodec.Field.PRINT_TIME_LEFT, 300_000)
+                .toByteArray();
+
+        Map<String, String> decoded = new HashMap<>();
+        BinaryCodec.decodeToMap(binary, decoded);
+        assertEquals("False", decoded.get("is_connected"));
+        assertEquals("300000", decoded.get("print_time_left"));
+    }
+
+    @Test
+    public void testMalformedMessagesAreRejected() {
+        byte[] binary = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+                .putString(BinaryCodec.Field.JOB_NAME, "part.gcode").toByteArray();
+
+        assertFalse(BinaryCodec.isBinary("printer_status,a=1".getBytes(StandardCharsets.UTF_8)));
+        assertMalformed(Arrays.copyOf(binary, binary.length - 1)); // truncated string
+        assertMalformed(new byte[]{BinaryCodec.MARKER, 9}); // unknown message type
+        assertMalformed(new byte[]{BinaryCodec.MARKER, BinaryCodec.TYPE_UWB, (2 << 3) | 5, 0}); // truncated float
+        assertMalformed(new byte[]{BinaryCodec.MARKER, BinaryCodec.TYPE_UWB, (1 << 3) | 3}); // unknown wire type
+        // Length of 2^31 - 1 that would overflow the bounds check
+        assertMalformed(new byte[]{BinaryCodec.MARKER, BinaryCodec.TYPE_PRINTER, (1 << 3) | 2,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a'});
+    }
+
+    @Test
+    public void testOversizedFieldIdIsSkippedAsUnknown() {
+        // Tag varint of 2^34: the id does not fit an int and comes out negative
+        byte[] payload = {BinaryCodec.MARKER, BinaryCodec.TYPE_UWB,
+                (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x40, 0x00};
+        Map<String, String> decoded = new HashMap<>();
+        BinaryCodec.decodeToMap(payload, decoded);
+        assertTrue(decoded.isEmpty());
+    }
+
+    private static void assertMalformed(byte[] payload) {
+        try {
+            BinaryCodec.decodeToMap(payload, new HashMap<>());
+            fail("Expected " + Arrays.toString(payload) + " to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
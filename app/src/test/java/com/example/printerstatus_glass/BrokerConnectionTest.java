@@ -0,0 +1,203 @@
+package com.example.printerstatus_glass;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * The broker pool of MqttHandler against three local brokers: hall 1 serves the UWB tags and
+ * printer a, hall 2 serves printer c with a standby broker, and hall 2 fails mid-stream.
+ * A bridge between hall 2 and its standby is simulated by publishing printer c to both.
+ */
+public class BrokerConnectionTest {
+    private static final String UWB = "sf/UWB/uwb-a";
+    private static final String PRINTER_A = "sf/printer/a";
+    private static final String PRINTER_C = "sf/printer/c";
+    private static final long TIMEOUT = 10_000;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor();
+    // Highest sequence number received per topic
+    private final Map<String, Long> latest = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private LocalBroker hall1;
+    private LocalBroker hall2;
+    private LocalBroker standby;
+    private MqttHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        hall1 = new LocalBroker().start();
+        hall2 = new LocalBroker().start();
+        standby = new LocalBroker().start();
+        handler = new MqttHandler(scheduler, 20, 200);
+        handler.setMessageCallback((topic, message) -> latest.merge(topic, Long.parseLong(message), Math::max));
+        handler.subscribe(new String[]{UWB, PRINTER_A, PRINTER_C});
+    }
+
+    @After
+    public void tearDown() {
+        publisher.shutdownNow();
+        handler.disconnect();
+        hall1.stop();
+        hall2.stop();
+        standby.stop();
+        scheduler.shutdownNow();
+    }
+
+    private BrokerRoutes routes() {
+        return new BrokerRoutes()
+                .addBroker("hall-1", hall1.getUrl())
+                .addBroker("hall-2", hall2.getUrl(), standby.getUrl())
+                .routeZone(PRINTER_C, "hall-2");
+    }
+
+    /**
+     * Publishes a rising sequence number on every topic every 5 ms.
+     */
+    private void startStream() {
+        publisher.scheduleAtFixedRate(() -> {
+            String value = String.valueOf(sequence.incrementAndGet());
+            hall1.publish(UWB, value);
+            hall1.publish(PRINTER_A, value);
+            hall2.publish(PRINTER_C, value);
+            standby.publish(PRINTER_C, value);
+        }, 0, 5, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until a topic delivered a message published after now.
+     */
+    private void awaitFresh(String topic) throws InterruptedException {
+        long now = sequence.get();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (latest.getOrDefault(topic, 0L) <= now && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(topic + " stalled", latest.getOrDefault(topic, 0L) > now);
+    }
+
+    private void awaitConnected() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!handler.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(handler.isConnected());
+    }
+
+    @Test
+    public void testTopicsAreShardedByZone() throws Exception {
+        handler.setFailover(BrokerConnection.DEFAULT_FAILOVER_MILLIS, 50, 1000);
+        handler.connect(routes(), "glass-1");
+        awaitConnected();
+        assertTrue(hall1.awaitSubscription(UWB, TIMEOUT));
+        assertTrue(hall1.awaitSubscription(PRINTER_A, TIMEOUT));
+        assertTrue(hall2.awaitSubscription(PRINTER_C, TIMEOUT));
+        assertFalse(hall1.hasSubscription(PRINTER_C));
+        assertFalse(hall2.hasSubscription(PRINTER_A));
+        assertEquals(0, standby.getClientCount());
+
+        startStream();
+        awaitFresh(UWB);
+        awaitFresh(PRINTER_C);
+        // Moving on to printer b stays on hall 1, whose connection carries on unchanged
+        handler.unsubscribe(PRINTER_A);
+        handler.subscribe("sf/printer/b");
+        assertTrue(hall1.awaitSubscription("sf/printer/b", TIMEOUT));
+        assertFalse(hall2.hasSubscription("sf/printer/b"));
+
+        // Per-broker stats; health probes are not counted as messages
+        BrokerConnection[] brokers = handler.getConnections();
+        assertEquals(2, brokers.length);
+        Thread.sleep(200);
+        for (BrokerConnection broker : brokers) {
+            assertTrue(broker.getMessages() > 0);
+            assertTrue(broker.getProbeLatency().snapshot().getCount() > 0);
+        }
+        assertTrue(brokers[0].getMessages() > brokers[1].getMessages());
+        assertEquals(0, brokers[1].getFailovers());
+    }
+
+    @Test
+    public void testKilledBrokerFailsOverToStandby() throws Exception {
+        handler.setFailover(300, 0, 0);
+        handler.connect(routes(), "glass-1");
+        awaitConnected();
+        startStream();
+        awaitFresh(PRINTER_C);
+
+        // Kill hall 2 mid-stream: hall 1 keeps delivering while printer c moves to the standby
+        hall2.stop();
+        long killedAt = System.nanoTime();
+        awaitFresh(UWB);
+        assertTrue(standby.awaitSubscription(PRINTER_C, TIMEOUT));
+        awaitFresh(PRINTER_C);
+        long recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - killedAt);
+
+        BrokerConnection hall = handler.getConnections()[1];
+        assertEquals(standby.getUrl(), hall.getUrl());
+        assertEquals(1, hall.getFailovers());
+        assertEquals(0, handler.getConnections()[0].getSupervisor().getConnectionsLost());
+        assertEquals(1, hall.getSupervisor().getConnectionsLost());
+        // The failover delay plus a reconnect, not a long outage
+        assertTrue(recoveryMillis >= 300);
+        assertTrue(String.valueOf(recoveryMillis), recoveryMillis < 2000);
+        awaitConnected();
+    }
+
+    @Test
+    public void testStalledBrokerFailsOverOnHealthProbe() throws Exception {
+        handler.setFailover(60_000, 50, 300);
+        handler.connect(routes(), "glass-1");
+        awaitConnected();
+        startStream();
+        awaitFresh(PRINTER_C);
+
+        // Hall 2 keeps the connection up but stops delivering
+        hall2.setStalled(true);
+        awaitFresh(UWB);
+        assertTrue(standby.awaitSubscription(PRINTER_C, TIMEOUT));
+        awaitFresh(PRINTER_C);
+
+        BrokerConnection hall = handler.getConnections()[1];
+        assertEquals(standby.getUrl(), hall.getUrl());
+        assertEquals(1, hall.getHealthFailures());
+        assertEquals(1, hall.getFailovers());
+        assertEquals(0, handler.getConnections()[0].getHealthFailures());
+        // The stalled broker's client was dropped
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (hall2.getClientCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, hall2.getClientCount());
+    }
+
+    @Test
+    public void testPoolStateCombinesEveryBroker() throws Exception {
+        Map<ConnectionSupervisor.State, Long> seen = new ConcurrentHashMap<>();
+        handler.addConnectionListener(state -> seen.merge(state, 1L, Long::sum));
+        handler.setFailover(60_000, 0, 0);
+        handler.connect(routes(), "glass-1");
+        awaitConnected();
+        assertEquals(1L, (long) seen.get(ConnectionSupervisor.State.CONNECTED));
+
+        // A dropout at one hall shows as reconnecting until that broker is back
+        hall2.dropClients();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (seen.getOrDefault(ConnectionSupervisor.State.CONNECTED, 0L) < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1L, (long) seen.get(ConnectionSupervisor.State.RECONNECTING));
+        assertEquals(2L, (long) seen.get(ConnectionSupervisor.State.CONNECTED));
+        assertEquals(hall2.getUrl(), handler.getConnections()[1].getUrl());
+    }
+}
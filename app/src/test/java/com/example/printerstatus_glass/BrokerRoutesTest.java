@@ -0,0 +1,46 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BrokerRoutesTest {
+    private final BrokerRoutes routes = new BrokerRoutes()
+            .addBroker("hall-1", "tcp://hall1:1883")
+            .addBroker("hall-2", "tcp://hall2:1883", "tcp://standby:1883")
+            .addBroker("uwb", "tcp://uwb:1883")
+            .routePrefix("sf/", "hall-1")
+            .routePrefix("sf/UWB/", "uwb")
+            .routeZone("sf/printer/c", "hall-2");
+
+    @Test
+    public void testZoneBeforeLongestPrefixBeforeDefault() {
+        assertEquals(1, routes.route("sf/printer/c"));
+        assertEquals(0, routes.route("sf/printer/a"));
+        assertEquals(2, routes.route("sf/UWB/uwb-a"));
+        assertEquals(2, routes.route(IngestPipeline.UWB_WILDCARD));
+        assertEquals(0, routes.route("other/topic"));
+        assertEquals(0, routes.route("#"));
+    }
+
+    @Test
+    public void testBrokers() {
+        assertEquals(3, routes.size());
+        assertEquals("hall-2", routes.getName(1));
+        assertArrayEquals(new String[]{"tcp://hall2:1883", "tcp://standby:1883"}, routes.getUrls(1));
+
+        BrokerRoutes single = BrokerRoutes.single("tcp://control:1883");
+        assertEquals(1, single.size());
+        assertEquals(0, single.route("sf/printer/c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRouteToUnknownBroker() {
+        routes.routeZone("sf/printer/d", "hall-3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBrokerNeedsUrl() {
+        new BrokerRoutes().addBroker("hall-1");
+    }
+}
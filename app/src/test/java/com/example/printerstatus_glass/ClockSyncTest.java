@@ -0,0 +1,83 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+    private static final long SKEW = 2_500_000; // publisher clock 2.5 s ahead
+
+    /**
+     * Runs one ping through a responder whose clock is SKEW ahead.
+     * @return True if the pong was used
+     */
+    private static boolean roundTrip(ClockSync sync, long t0, long outbound, long turnaround, long inbound) {
+        byte[] ping = sync.createPing(t0);
+        long t1 = t0 + outbound + SKEW;
+        byte[] pong = ClockSync.answer(ping, t1, t1 + turnaround);
+        return sync.onPong(pong, t0 + outbound + turnaround + inbound);
+    }
+
+    @Test
+    public void testSymmetricPathGivesExactOffset() {
+        ClockSync sync = new ClockSync("glass-1");
+        assertFalse(sync.hasEstimate());
+
+        assertTrue(roundTrip(sync, 1_000_000, 1000, 200, 1000));
+        assertTrue(sync.hasEstimate());
+        assertEquals(SKEW, sync.getOffsetMicros());
+        assertEquals(2000, sync.getDelayMicros());
+        assertEquals(1_000_000, sync.toLocalMicros(1_000_000 + SKEW));
+    }
+
+    @Test
+    public void testLeastDelayedSampleWins() {
+        ClockSync sync = new ClockSync("glass-1");
+        // Queued 40 ms on the way back: the offset is off by 20 ms
+        roundTrip(sync, 1_000_000, 1000, 100, 41_000);
+        assertEquals(SKEW - 20_000, sync.getOffsetMicros());
+
+        roundTrip(sync, 2_000_000, 1500, 100, 1500);
+        roundTrip(sync, 3_000_000, 30_000, 100, 2000);
+        assertEquals(SKEW, sync.getOffsetMicros());
+        assertEquals(3000, sync.getDelayMicros());
+        assertEquals(3, sync.getSamples());
+
+        // Old samples leave the window, so the estimate follows drift
+        for (int i = 0; i < ClockSync.SAMPLES; i++) {
+            roundTrip(sync, 4_000_000 + i * 1_000_000L, 2000, 100, 2000);
+        }
+        assertEquals(ClockSync.SAMPLES, sync.getSamples());
+        assertEquals(4000, sync.getDelayMicros());
+    }
+
+    @Test
+    public void testInvalidPongsAreIgnored() {
+        ClockSync sync = new ClockSync("glass-1");
+        byte[] first = sync.createPing(1_000_000);
+        for (int i = 0; i < ClockSync.SAMPLES; i++) {
+            sync.createPing(1_000_000 + i);
+        }
+        // Answer to a ping that left the window
+        assertFalse(sync.onPong(ClockSync.answer(first, 1_001_000, 1_001_100), 1_002_000));
+        // Sent before it was received
+        byte[] ping = sync.createPing(2_000_000);
+        assertFalse(sync.onPong(ClockSync.answer(ping, 2_001_000, 2_000_000), 2_002_000));
+        assertFalse(sync.onPong(new byte[3], 2_002_000));
+        assertNull(ClockSync.answer(new byte[5], 0, 0));
+        assertFalse(sync.hasEstimate());
+    }
+
+    @Test
+    public void testTopics() {
+        ClockSync sync = new ClockSync("glass-1");
+        assertEquals("sf/clock/ping/glass-1", sync.getPingTopic());
+        assertEquals(sync.getPongTopic(), ClockSync.pongTopicFor(sync.getPingTopic()));
+        assertTrue(ClockSync.isPongTopic(sync.getPongTopic()));
+        assertNull(ClockSync.pongTopicFor("sf/printer/a"));
+
+        long now = System.nanoTime();
+        assertEquals(now / 1000, ClockSync.toNanos(ClockSync.toMicros(now)) / 1000, 1);
+        assertEquals(System.currentTimeMillis(), ClockSync.nowMicros() / 1000, 50);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.printerstatus_glass;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConnectionSupervisorTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<ConnectionSupervisor.State> states = new ArrayList<>();
+
+    // Fails the first failCount attempts, then succeeds
+    private final AtomicInteger attempts = new AtomicInteger();
+    private volatile int failCount;
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private ConnectionSupervisor createSupervisor() {
+        ConnectionSupervisor supervisor = new ConnectionSupervisor(callback -> {
+            if (attempts.incrementAndGet() <= failCount) {
+                callback.onFailed(new Exception("refused"));
+            } else {
+                callback.onConnected();
+            }
+        }, scheduler, 10, 80, new Random(42));
+        supervisor.addListener(state -> {
+            synchronized (states) {
+                states.add(state);
+            }
+        });
+        return supervisor;
+    }
+
+    private static void awaitState(ConnectionSupervisor supervisor, ConnectionSupervisor.State state)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (supervisor.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(2);
+        }
+        assertEquals(state, supervisor.getState());
+    }
+
+    @Test
+    public void testBackoffGrowsWithJitterUpToMaximum() {
+        ConnectionSupervisor supervisor = new ConnectionSupervisor(callback -> { }, scheduler, 100, 1000, new Random(1));
+        for (int failures = 0; failures < 30; failures++) {
+            long bound = Math.min(100L << Math.min(failures, 20), 1000);
+            long delay = supervisor.nextBackoffMillis(failures);
+            assertTrue("delay " + delay, delay >= bound / 2 && delay <= bound);
+        }
+    }
+
+    @Test
+    public void testRetriesUntilConnected() throws InterruptedException {
+        failCount = 4;
+        ConnectionSupervisor supervisor = createSupervisor();
+        supervisor.start();
+
+        awaitState(supervisor, ConnectionSupervisor.State.CONNECTED);
+        assertEquals(5, supervisor.getAttempts());
+        assertEquals(List.of(ConnectionSupervisor.State.CONNECTING, ConnectionSupervisor.State.CONNECTED), states);
+    }
+
+    @Test
+    public void testReconnectsAfterLossAndRecordsRecovery() throws InterruptedException {
+        ConnectionSupervisor supervisor = createSupervisor();
+        supervisor.start();
+        awaitState(supervisor, ConnectionSupervisor.State.CONNECTED);
+
+        failCount = attempts.get() + 2;
+        supervisor.connectionLost(new Exception("wifi"));
+        assertEquals(ConnectionSupervisor.State.RECONNECTING, supervisor.getState());
+
+        awaitState(supervisor, ConnectionSupervisor.State.CONNECTED);
+        assertEquals(1, supervisor.getConnectionsLost());
+        assertTrue(supervisor.getLastRecoveryMillis() >= 0);
+        assertEquals(1, supervisor.getRecoveryTimes().snapshot().getCount());
+    }
+
+    @Test
+    public void testStopEndsRetries() throws InterruptedException {
+        failCount = Integer.MAX_VALUE;
+        ConnectionSupervisor supervisor = createSupervisor();
+        supervisor.start();
+        Thread.sleep(50);
+        supervisor.stop();
+        int attemptsAtStop = attempts.get();
+
+        Thread.sleep(200);
+        assertEquals(ConnectionSupervisor.State.STOPPED, supervisor.getState());
+        assertTrue(attempts.get() <= attemptsAtStop + 1);
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.printerstatus_glass;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Many writers and readers on DataHolder and on the ingest-to-UI hand-off at once.
+ * Every message writes one id into several fields, so a snapshot that mixes two messages
+ * shows up as fields that disagree. A lock-free or striped redesign must keep these green;
+ * throughput versus writer count is measured by the writer groups of DataHolderBenchmark.
+ */
+public class DataHolderStressTest {
+    private static final String[] PRINTERS = {"sf/printer/a", "sf/printer/b", "sf/printer/c", "sf/printer/d"};
+    private static final long DURATION_MILLIS = 500;
+    private static final long TIMEOUT = 10_000;
+
+    private final DataHolder holder = DataHolder.getInstance();
+    private final ThreadLocal<PrinterStatus.Builder> printerUpdates = ThreadLocal.withInitial(PrinterStatus.Builder::new);
+    private final ThreadLocal<Position.Builder> positionUpdates = ThreadLocal.withInitial(Position.Builder::new);
+
+    @Before
+    public void setUp() {
+        holder.clearAll();
+        holder.setActivePrinter(PRINTERS[0]);
+    }
+
+    @After
+    public void tearDown() {
+        holder.clearAll();
+    }
+
+    /**
+     * @return An id unique to one operation of one thread, exact as a double
+     */
+    private static long id(int thread, long iteration) {
+        return thread * 1_000_000_000L + iteration;
+    }
+
+    private void writePrinter(int thread, long iteration) {
+        String topic = PRINTERS[(int) (iteration % PRINTERS.length)];
+        String id = String.valueOf(id(thread, iteration));
+        holder.updatePrinterStatus(topic, printerUpdates.get().reset()
+                .put(PrinterStatus.PRINTER_NAME, topic.substring(topic.length() - 1))
+                .put(PrinterStatus.PRINT_TIME, id)
+                .put(PrinterStatus.PRINT_TIME_LEFT, id)
+                .put(PrinterStatus.JOB_NAME, "job-" + id));
+    }
+
+    private void writePosition(int thread, long iteration) {
+        String id = String.valueOf(id(thread, iteration));
+        holder.updatePosition(positionUpdates.get().reset()
+                .put(Position.POSITION_X, id).put(Position.POSITION_Y, id).put(Position.POSITION_Z, id));
+    }
+
+    /**
+     * Fails if the status mixes two messages or belongs to another printer.
+     */
+    private static void assertNotTorn(String topic, PrinterStatus status) {
+        if (status == PrinterStatus.EMPTY) {
+            return;
+        }
+        assertEquals(topic.substring(topic.length() - 1), status.getPrinterName());
+        assertEquals(status.getPrintTime(), status.getPrintTimeLeft());
+        assertEquals("job-" + status.getPrintTime(), status.getJobName());
+    }
+
+    private static void assertNotTorn(DataHolder.Snapshot snapshot) {
+        if (snapshot.getActivePrinterTopic() != null) {
+            assertNotTorn(snapshot.getActivePrinterTopic(), snapshot.getPrinterStatus());
+        }
+        assertEquals(snapshot.getPrinterStatus() == PrinterStatus.EMPTY, snapshot.getPrinterUpdateTime() == 0);
+        Position position = snapshot.getPosition();
+        if (position.hasXY()) {
+            assertEquals(position.getX(), position.getY(), 0);
+            assertEquals(position.getX(), position.getZ(), 0);
+        }
+    }
+
+    @Test
+    public void testSnapshotsNeverMixTwoMessages() throws Exception {
+        long[] lastVersion = new long[16];
+        StressHarness.Result result = new StressHarness()
+                .add("printer", 4, this::writePrinter)
+                .add("uwb", 2, this::writePosition)
+                .add("switch", 1, (thread, iteration) -> {
+                    holder.setActivePrinter(PRINTERS[(int) (iteration % PRINTERS.length)]);
+                    Thread.yield();
+                })
+                .add("snapshot", 4, (thread, iteration) -> {
+                    DataHolder.Snapshot snapshot = holder.getSnapshot();
+                    assertTrue(snapshot.getVersion() >= lastVersion[thread]);
+                    lastVersion[thread] = snapshot.getVersion();
+                    assertNotTorn(snapshot);
+                })
+                .add("store", 2, (thread, iteration) -> {
+                    String topic = PRINTERS[(int) (iteration % PRINTERS.length)];
+                    PrinterStateStore.PrinterState state = holder.getPrinterState(topic);
+                    if (state != null) {
+                        assertNotTorn(topic, state.getStatus());
+                    }
+                })
+                .run(DURATION_MILLIS);
+
+        assertTrue(result.getOperations("printer") > 0);
+        assertTrue(result.getOperations("switch") > 0);
+        assertTrue(result.getOperations("snapshot") > 0);
+        for (String topic : PRINTERS) {
+            assertNotTorn(topic, holder.getPrinterState(topic).getStatus());
+        }
+    }
+
+    @Test
+    public void testNoUpdateIsLost() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long before = holder.getVersion();
+        // Readers too, so writers race against cache traffic as on the device
+        StressHarness.Result result = new StressHarness()
+                .add("uwb", 4, (thread, iteration) -> {
+                    long start = System.nanoTime();
+                    writePosition(thread, iteration);
+                    histogram.record(System.nanoTime() - start);
+                })
+                .add("snapshot", 2, (thread, iteration) -> assertNotTorn(holder.getSnapshot()))
+                .run(DURATION_MILLIS);
+
+        // Every update published exactly one snapshot and one latency sample
+        long updates = result.getOperations("uwb");
+        assertEquals(updates, holder.getVersion() - before);
+        assertEquals(updates, histogram.getTotalCount());
+        assertEquals(updates, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void testUiSeesTheLatestStateAfterEveryHandOff() throws Exception {
+        // Paho-like producers -> IngestQueue -> IngestPipeline -> UiUpdateScheduler -> UI thread
+        ExecutorService ui = Executors.newSingleThreadExecutor();
+        AtomicReference<Throwable> uiFailure = new AtomicReference<>();
+        AtomicLong renderedVersion = new AtomicLong(-1);
+        UiUpdateScheduler uiScheduler = new UiUpdateScheduler(
+                listener -> ui.execute(() -> listener.doFrame(System.nanoTime())), () -> {
+            try {
+                DataHolder.Snapshot snapshot = holder.getSnapshot();
+                assertNotTorn(snapshot);
+                renderedVersion.set(snapshot.getVersion());
+            } catch (Throwable e) {
+                uiFailure.compareAndSet(null, e);
+            }
+        }, 0);
+        IngestPipeline pipeline = new IngestPipeline(holder, new TagTracker(), null, uiScheduler::requestRender);
+        IngestQueue queue = new IngestQueue(IngestQueue.DEFAULT_CAPACITY, pipeline::onMessageArrived);
+        queue.start("stress-ingest");
+        try {
+            StressHarness.Result result = new StressHarness()
+                    .add("paho", 4, (thread, iteration) -> {
+                        long id = id(thread, iteration);
+                        String topic;
+                        String message;
+                        if (thread % 2 == 0) {
+                            topic = IngestPipeline.UWB_TOPIC_PREFIX + (iteration % 4 == 0 ? IngestPipeline.OWN_TAG : "tag-" + thread);
+                            message = String.format(Locale.US, "position,tagName=x positionX=%d,positionY=%d,positionZ=%d",
+                                    id, id, id);
+                        } else {
+                            topic = PRINTERS[0];
+                            message = String.format(Locale.US, "printer_status,printer_name=a " +
+                                    "print_time=%d,print_time_left=%d,job_name=\"job-%d\"", id, id, id);
+                        }
+                        queue.offer(topic, message.getBytes(StandardCharsets.UTF_8));
+                    })
+                    .run(DURATION_MILLIS);
+
+            // Once every message is processed or replaced, the last render must show the last update
+            long offered = result.getOperations("paho");
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while ((queue.getProcessed() + queue.getConflated() + queue.getDropped() < offered
+                    || renderedVersion.get() != holder.getVersion()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            assertNull(uiFailure.get());
+            assertEquals(0, pipeline.getFailedMessages());
+            assertEquals(holder.getVersion(), renderedVersion.get());
+            assertEquals(offered, queue.getOffered());
+            assertEquals(offered, queue.getProcessed() + queue.getConflated() + queue.getDropped());
+            assertTrue(uiScheduler.getRenders() > 0);
+            assertTrue(uiScheduler.getRenders() <= uiScheduler.getRequests());
+            assertNotTorn(holder.getSnapshot());
+        } finally {
+            queue.stop();
+            ui.shutdownNow();
+        }
+    }
+}
@@ -7,13 +7,78 @@ import java.util.Map;
 
 public class DataHolderTest {
     @Test
-    public void testThreadSafeUpdates() {
+    public void testThreadSafeUpdates() throws InterruptedException {
         DataHolder holder = DataHolder.getInstance();
-        Map<String, String> testData = Map.of("key", "value");
+        holder.clearAll();
+        holder.setActivePrinter("sf/printer/a");
+        long version = holder.getVersion();
 
-        new Thread(() -> holder.updatePrinterData(testData)).start();
-        new Thread(() -> holder.updateUwbData(testData)).start();
+        Thread printer = new Thread(() -> holder.updatePrinterData(Map.of("printer_name", "a")));
+        Thread uwb = new Thread(() -> holder.updateUwbData(Map.of("positionX", "1.0")));
+        printer.start();
+        uwb.start();
+        printer.join();
+        uwb.join();
 
-        assertNotNull(holder.getPrinterData());
+        // Both updates landed in the same snapshot chain; see DataHolderStressTest for the heavy version
+        assertEquals(version + 2, holder.getVersion());
+        assertEquals("a", holder.getPrinterData().get("printer_name"));
+        assertEquals("1.0", holder.getUwbData().get("positionX"));
+    }
+
+    @Test
+    public void testSnapshotsAreImmutableAndVersioned() {
+        DataHolder holder = DataHolder.getInstance();
+        holder.clearAll();
+        holder.updatePrinterData(Map.of("printer_name", "a", "state", "Printing"));
+        DataHolder.Snapshot before = holder.getSnapshot();
+
+        holder.updatePrinterData(Map.of("state", "Paused"));
+        DataHolder.Snapshot after = holder.getSnapshot();
+
+        // Old snapshot is untouched, new one carries the merged state
+        assertEquals("Printing", before.getPrinterData().get("state"));
+        assertEquals("Paused", after.getPrinterData().get("state"));
+        assertEquals("a", after.getPrinterData().get("printer_name"));
+        assertTrue(after.getVersion() > before.getVersion());
+    }
+
+    @Test
+    public void testHasChangedSince() {
+        DataHolder holder = DataHolder.getInstance();
+        long version = holder.getVersion();
+        assertFalse(holder.hasChangedSince(version));
+
+        holder.updateUwbData(Map.of("positionX", "1.0"));
+        assertTrue(holder.hasChangedSince(version));
+        assertEquals("1.0", holder.getUwbData().get("positionX"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadersCannotModifyState() {
+        DataHolder.getInstance().getPrinterData().put("key", "value");
+    }
+
+    @Test
+    public void testSwitchingPrinterShowsItsLastKnownState() {
+        DataHolder holder = DataHolder.getInstance();
+        holder.clearAll();
+        holder.setActivePrinter("sf/printer/a");
+        holder.updatePrinterData("sf/printer/a", Map.of("printer_name", "a", "job_name", "bracket.gcode"));
+        holder.updatePrinterData("sf/printer/b", Map.of("printer_name", "b"));
+
+        // Updates to an inactive printer are stored but not published
+        assertEquals("a", holder.getPrinterData().get("printer_name"));
+
+        holder.setActivePrinter("sf/printer/b");
+        DataHolder.Snapshot snapshot = holder.getSnapshot();
+        assertEquals("sf/printer/b", snapshot.getActivePrinterTopic());
+        assertEquals("b", snapshot.getPrinterData().get("printer_name"));
+        assertNull(snapshot.getPrinterData().get("job_name"));
+        assertTrue(snapshot.getPrinterUpdateTime() > 0);
+
+        holder.setActivePrinter("sf/printer/unknown");
+        assertTrue(holder.getPrinterData().isEmpty());
+        assertEquals(0, holder.getSnapshot().getPrinterUpdateTime());
     }
 }
@@ -1,16 +1,22 @@
 package com.example.printerstatus_glass;
 
+import org.junit.Assume;
 import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 import static org.junit.Assert.*;
 
 public class DataParserTest {
+    static final String PRINTER_INPUT = "printer_status,printer_name=a bed_temperature_target=60.0,bed_temperature_current=23.12,tool_temperature_target=170.0,tool_temperature_current=26.0,state=\"Connected and Operational\",print_time=0,print_time_left=1593,job_name=\"spachtle-printables V7_90%_0.4n_0.2mm_PLA_MK3.5_27m.gcode\",is_connected=True,detailed_state=\"Printing\",completion=27.394086629153374";
+
     @Test
     public void testParseData() {
-        String printerInput = "printer_status,printer_name=a bed_temperature_target=60.0,bed_temperature_current=23.12,tool_temperature_target=170.0,tool_temperature_current=26.0,state=\"Connected and Operational\",print_time=0,print_time_left=1593,job_name=\"spachtle-printables V7_90%_0.4n_0.2mm_PLA_MK3.5_27m.gcode\",is_connected=True,detailed_state=\"Printing\",completion=27.394086629153374";
         String uwbInput = "position,tagName=uwb-a positionX=5.02,positionY=2.86,positionZ=0";
 
-        Map<String, String> printerResult = DataParser.parsePrinterData(printerInput);
+        Map<String, String> printerResult = DataParser.parsePrinterData(PRINTER_INPUT);
         Map<String, String> uwbResult = DataParser.parseUwbData(uwbInput);
 
         assertEquals("a", printerResult.get("printer_name"));
@@ -35,4 +41,109 @@ public class DataParserTest {
         Map<String, String> uwbResult = DataParser.parseUwbData("invalid_format");
         assertTrue(uwbResult.isEmpty());
     }
+
+    @Test
+    public void testQuotedValueWithCommas() {
+        Map<String, String> result = DataParser.parsePrinterData(
+                "printer_status,printer_name=b state=\"Paused, waiting for user\",job_name='part, v2.gcode',completion=5");
+
+        assertEquals("b", result.get("printer_name"));
+        assertEquals("Paused, waiting for user", result.get("state"));
+        assertEquals("part, v2.gcode", result.get("job_name"));
+        assertEquals("5", result.get("completion"));
+        assertEquals(4, result.size());
+    }
+
+    @Test
+    public void testTokenizeBytesMatchesString() {
+        Map<String, String> fromBytes = new HashMap<>();
+        byte[] payload = PRINTER_INPUT.getBytes(StandardCharsets.UTF_8);
+        new DataParser.Tokenizer().tokenize(payload, 0, payload.length, DataParser.PRINTER_PREFIX,
+                (key, value) -> fromBytes.put(key.toString(), value.toString()));
+
+        assertEquals(DataParser.parsePrinterData(PRINTER_INPUT), fromBytes);
+    }
+
+    @Test
+    public void testFieldSliceNumbers() {
+        double[] values = new double[3];
+        long[] timeLeft = new long[1];
+        new DataParser.Tokenizer().tokenize(PRINTER_INPUT, DataParser.PRINTER_PREFIX, (key, value) -> {
+            if (key.contentEquals("bed_temperature_current")) {
+                values[0] = value.parseDouble(0);
+            } else if (key.contentEquals("completion")) {
+                values[1] = value.parseDouble(0);
+            } else if (key.contentEquals("is_connected")) {
+                values[2] = value.parseDouble(-1);
+            } else if (key.contentEquals("print_time_left")) {
+                timeLeft[0] = value.parseLong(0);
+            }
+        });
+
+        assertEquals(23.12, values[0], 0);
+        assertEquals(27.394086629153374, values[1], 0);
+        assertEquals(-1, values[2], 0);
+        assertEquals(1593, timeLeft[0]);
+    }
+
+    @Test
+    public void testTraceFieldsAreTakenOutOfTheMessage() {
+        MessageTrace trace = new MessageTrace();
+        DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+        tokenizer.setTrace(trace);
+        Map<String, String> fields = new HashMap<>();
+        DataParser.FieldSink sink = (key, value) -> fields.put(key.toString(), value.toString());
+
+        tokenizer.tokenize(PRINTER_INPUT + ",trace_id=42,publish_us=1700000000123456", DataParser.PRINTER_PREFIX, sink);
+        assertEquals(DataParser.parsePrinterData(PRINTER_INPUT), fields);
+        assertEquals(42, trace.getTraceId());
+        assertEquals(1700000000123456L, trace.getPublishMicros());
+
+        // The next message starts without a trace
+        tokenizer.tokenize(PRINTER_INPUT, DataParser.PRINTER_PREFIX, sink);
+        assertFalse(trace.hasPublishTime());
+        assertEquals(MessageTrace.NONE, trace.getTraceId());
+
+        // Without a trace the fields are forwarded like any other
+        fields.clear();
+        new DataParser.Tokenizer().tokenize("printer_status,printer_name=a trace_id=7", DataParser.PRINTER_PREFIX, sink);
+        assertEquals("7", fields.get("trace_id"));
+    }
+
+    @Test
+    public void testStreamingParseAllocatesLessThanMapParse() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        long threadId = Thread.currentThread().getId();
+
+        byte[] payload = PRINTER_INPUT.getBytes(StandardCharsets.UTF_8);
+        DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+        long[] fieldCount = new long[1];
+        DataParser.FieldSink countingSink = (key, value) -> fieldCount[0] += key.length() + value.length();
+        int iterations = 20_000;
+
+        // Warm up both paths so JIT and class loading do not skew the numbers
+        for (int i = 0; i < iterations; i++) {
+            DataParser.parsePrinterData(PRINTER_INPUT);
+            tokenizer.tokenize(payload, 0, payload.length, DataParser.PRINTER_PREFIX, countingSink);
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            DataParser.parsePrinterData(PRINTER_INPUT);
+        }
+        long mapBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            tokenizer.tokenize(payload, 0, payload.length, DataParser.PRINTER_PREFIX, countingSink);
+        }
+        long streamingBytes = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(fieldCount[0] > 0);
+        assertTrue(streamingBytes * 20 < mapBytes);
+        // The tokenizer itself allocates nothing per message
+        assertTrue(streamingBytes / iterations < 8);
+    }
 }
@@ -0,0 +1,124 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GatewayDigestTest {
+    private static PrinterStatus printer(String line) {
+        return PrinterStatus.fromMap(DataParser.parsePrinterData(line));
+    }
+
+    @Test
+    public void testRoundTripOfTopicDeltaAndPosition() {
+        PrinterStatus before = printer("printer_status,printer_name=a bed_temperature_target=60.0," +
+                "tool_temperature_current=208.4,state=\"Printing\",print_time=10,is_connected=true,completion=12.5");
+        PrinterStatus after = printer("printer_status,printer_name=a bed_temperature_target=60.0," +
+                "tool_temperature_current=209.1,state=\"Printing\",print_time=11,is_connected=true,completion=12.5");
+
+        byte[] digest = new GatewayDigest.Encoder().begin()
+                .putPrinterTopic("sf/printer/a")
+                .putPrinterDelta(after, before)
+                .putPosition(0.25, 3.4, 0)
+                .toByteArray();
+
+        GatewayDigest.Reader reader = new GatewayDigest.Reader();
+        PrinterStatus.Builder printer = new PrinterStatus.Builder();
+        Position.Builder position = new Position.Builder();
+        reader.read(digest, printer, position);
+        assertEquals("sf/printer/a", reader.getPrinterTopic());
+        assertTrue(reader.hasPrinter());
+        assertTrue(reader.hasPosition());
+
+        PrinterStatus delta = printer.build();
+        assertEquals(209.1, delta.getToolTemperatureCurrent(), 1e-9);
+        assertEquals(11, delta.getPrintTime());
+        assertNull(delta.getState());
+        assertNull(delta.getConnected());
+        assertEquals(3.4, position.build().getY(), 1e-6);
+
+        // Merged into what the headset had, the delta gives the new state
+        assertEquals(after.toMap(), printer.mergeInto(before).toMap());
+    }
+
+    @Test
+    public void testFullStateWithoutPrevious() {
+        PrinterStatus status = printer("printer_status,printer_name=a tool_temperature_target=210.0," +
+                "state=\"Printing\",print_time_left=1200,is_connected=false,completion=42.125");
+        byte[] digest = new GatewayDigest.Encoder().begin().putPrinterDelta(status, null).toByteArray();
+
+        PrinterStatus.Builder printer = new PrinterStatus.Builder();
+        GatewayDigest.Reader reader = new GatewayDigest.Reader();
+        reader.read(digest, printer, new Position.Builder());
+        assertNull(reader.getPrinterTopic());
+        assertFalse(reader.hasPosition());
+        assertEquals(status.toMap(), printer.build().toMap());
+    }
+
+    @Test
+    public void testUnchangedStatusGivesEmptyDigest() {
+        PrinterStatus status = printer("printer_status,printer_name=a print_time=10");
+        GatewayDigest.Encoder encoder = new GatewayDigest.Encoder().begin()
+                .putPrinterDelta(status, printer("printer_status,printer_name=a print_time=10"));
+        assertTrue(encoder.isEmpty());
+        assertEquals(3, encoder.toByteArray().length);
+    }
+
+    @Test
+    public void testRejectsMalformedDigests() {
+        byte[] digest = new GatewayDigest.Encoder().begin().putPrinterTopic("sf/printer/a")
+                .putPosition(1, 2, 0).toByteArray();
+        byte[][] invalid = {
+                new byte[]{BinaryCodec.MARKER, BinaryCodec.TYPE_PRINTER, 0},
+                new byte[]{BinaryCodec.MARKER},
+                Arrays.copyOf(digest, digest.length - 3),
+        };
+        for (byte[] payload : invalid) {
+            try {
+                new GatewayDigest.Reader().read(payload, new PrinterStatus.Builder(), new Position.Builder());
+                fail("Accepted " + payload.length + " bytes");
+            } catch (IllegalArgumentException expected) {
+                // rejected
+            }
+        }
+    }
+
+    @Test
+    public void testIngestPipelineFollowsDigests() {
+        DataHolder holder = DataHolder.getInstance();
+        holder.clearAll();
+        List<String> assigned = new ArrayList<>();
+        IngestPipeline pipeline = new IngestPipeline(holder, new TagTracker(), null, new IngestPipeline.Listener() {
+            @Override
+            public void onRenderNeeded() {
+            }
+
+            @Override
+            public void onPrinterAssigned(String topic) {
+                assigned.add(topic);
+                holder.setActivePrinter(topic);
+            }
+        });
+        String digestTopic = GatewayDigest.topicFor(IngestPipeline.OWN_TAG);
+
+        PrinterStatus status = printer("printer_status,printer_name=c state=\"Printing\",print_time=10");
+        pipeline.onBinaryMessageReceived(digestTopic, new GatewayDigest.Encoder().begin()
+                .putPrinterTopic("sf/printer/c").putPrinterDelta(status, null).putPosition(6.5, 3.4, 0).toByteArray());
+        pipeline.onBinaryMessageReceived(digestTopic, new GatewayDigest.Encoder().begin()
+                .putPrinterDelta(printer("printer_status,printer_name=c state=\"Printing\",print_time=11"), status)
+                .toByteArray());
+
+        assertEquals(1, assigned.size());
+        assertEquals("sf/printer/c", assigned.get(0));
+        DataHolder.Snapshot snapshot = holder.getSnapshot();
+        assertEquals("Printing", snapshot.getPrinterStatus().getState());
+        assertEquals(11, snapshot.getPrinterStatus().getPrintTime());
+        assertEquals(6.5, snapshot.getPosition().getX(), 1e-6);
+        assertEquals(0, pipeline.getFailedMessages());
+        holder.clearAll();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class HudRendererTest {
+
+    private static String oneDecimal(double value) {
+        StringBuilder builder = new StringBuilder("x=");
+        HudRenderer.appendOneDecimal(builder, value);
+        return builder.toString();
+    }
+
+    @Test
+    public void testOneDecimalRoundsHalfUp() {
+        assertEquals("x=0.0", oneDecimal(0));
+        assertEquals("x=42.0", oneDecimal(42));
+        assertEquals("x=215.3", oneDecimal(215.34));
+        assertEquals("x=215.4", oneDecimal(215.35));
+        assertEquals("x=100.0", oneDecimal(99.96));
+        assertEquals("x=0.1", oneDecimal(0.05));
+    }
+
+    @Test
+    public void testOneDecimalNegativeValues() {
+        assertEquals("x=-3.2", oneDecimal(-3.24));
+        assertEquals("x=-0.5", oneDecimal(-0.5));
+        assertEquals("x=-0.1", oneDecimal(-0.05));
+        // Rounds to zero, so no minus sign
+        assertEquals("x=0.0", oneDecimal(-0.04));
+        assertEquals("x=0.0", oneDecimal(-0.0));
+    }
+
+    @Test
+    public void testOneDecimalMatchesFormat() {
+        for (int tenths = -2000; tenths <= 2000; tenths++) {
+            double value = tenths / 10.0;
+            assertEquals("x=" + String.format(Locale.US, "%.1f", value), oneDecimal(value));
+        }
+    }
+
+    private static String sparkline(double... values) {
+        StringBuilder builder = new StringBuilder();
+        HudRenderer.appendSparkline(builder, values);
+        return builder.toString();
+    }
+
+    @Test
+    public void testSparklineScalesBetweenMinimumAndMaximum() {
+        assertEquals("▁▂▃▄▅▆▇█", sparkline(0, 1, 2, 3, 4, 5, 6, 7));
+        assertEquals("█▁▅", sparkline(210, 200, 205.5));
+        assertEquals("▁▁██", sparkline(-1, -0.99, 0.99, 1));
+    }
+
+    @Test
+    public void testSparklineFlatRange() {
+        assertEquals("▁▁▁▁", sparkline(21.5, 21.5, 21.5, 21.5));
+        assertEquals("▁", sparkline(60));
+        assertEquals("", sparkline());
+    }
+
+    @Test
+    public void testSparklineNaNBucketsAreSpaces() {
+        assertEquals(" ▁ █ ", sparkline(Double.NaN, 20, Double.NaN, 30, Double.NaN));
+        // NaN buckets do not take part in the range
+        assertEquals("▁  ▁", sparkline(5, Double.NaN, Double.NaN, 5));
+        assertEquals("   ", sparkline(Double.NaN, Double.NaN, Double.NaN));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class IngestQueueTest {
+    private static final String UWB = "sf/UWB/uwb-a";
+    private static final String PRINTER = "sf/printer/a";
+
+    private final List<String> received = new ArrayList<>();
+
+    private IngestQueue createQueue(int capacity) {
+        return new IngestQueue(capacity, (topic, payload, arrivalNanos) ->
+                received.add(topic + ":" + new String(payload, StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testLatestPayloadPerTopicWins() {
+        IngestQueue queue = createQueue(8);
+        queue.offer(PRINTER, bytes("1"));
+        queue.offer(UWB, bytes("1"));
+        queue.offer(PRINTER, bytes("2"));
+        queue.offer(PRINTER, bytes("3"));
+
+        assertEquals(2, queue.getDepth());
+        while (queue.drainOne()) {
+            // drain
+        }
+        // The printer keeps its place in line but delivers its newest payload
+        assertEquals(List.of(PRINTER + ":3", UWB + ":1"), received);
+        assertEquals(2, queue.getConflated());
+        assertEquals(0, queue.getDropped());
+        assertEquals(2, queue.getProcessed());
+    }
+
+    @Test
+    public void testOldestTopicDroppedWhenFull() {
+        IngestQueue queue = createQueue(2);
+        queue.offer("t1", bytes("a"));
+        queue.offer("t2", bytes("b"));
+        queue.offer("t3", bytes("c"));
+
+        assertEquals(1, queue.getDropped());
+        assertEquals(2, queue.getMaxDepth());
+        while (queue.drainOne()) {
+            // drain
+        }
+        assertEquals(List.of("t2:b", "t3:c"), received);
+    }
+
+    @Test
+    public void testFloodDoesNotStarveOtherTopic() {
+        IngestQueue queue = createQueue(4);
+        // The UWB topic floods, one printer message arrives in between
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(UWB, bytes(Integer.toString(i)));
+            if (i == 500) {
+                queue.offer(PRINTER, bytes("status"));
+            }
+        }
+        queue.drainOne();
+        queue.drainOne();
+        assertEquals(List.of(UWB + ":999", PRINTER + ":status"), received);
+    }
+
+    @Test
+    public void testHighRatePublisherWithSlowWorker() throws InterruptedException {
+        // Stand-in for the broker: publishers push far faster than the worker processes
+        ConcurrentHashMap<String, String> latest = new ConcurrentHashMap<>();
+        AtomicLong processed = new AtomicLong();
+        IngestQueue queue = new IngestQueue(IngestQueue.DEFAULT_CAPACITY, (topic, payload, arrivalNanos) -> {
+            latest.put(topic, new String(payload, StandardCharsets.UTF_8));
+            processed.incrementAndGet();
+            long until = System.nanoTime() + 100_000; // 0.1 ms of parsing work
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        });
+        queue.start("test-ingest");
+
+        int messages = 20_000;
+        Thread uwbPublisher = new Thread(() -> {
+            for (int i = 0; i < messages; i++) {
+                queue.offer(UWB, bytes(Integer.toString(i)));
+            }
+        });
+        Thread printerPublisher = new Thread(() -> {
+            for (int i = 0; i < messages / 10; i++) {
+                queue.offer(PRINTER, bytes(Integer.toString(i)));
+            }
+        });
+        long start = System.nanoTime();
+        uwbPublisher.start();
+        printerPublisher.start();
+        uwbPublisher.join();
+        printerPublisher.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // The worker catches up with the newest state of both topics
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(5);
+        queue.stop();
+
+        assertTrue("publish rate " + messages / seconds, messages / seconds > 2000);
+        assertEquals(Integer.toString(messages - 1), latest.get(UWB));
+        assertEquals(Integer.toString(messages / 10 - 1), latest.get(PRINTER));
+        assertEquals(0, queue.getDropped());
+        assertEquals(queue.getOffered(), queue.getConflated() + queue.getProcessed());
+        assertTrue(processed.get() < queue.getOffered());
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    private static final long SLOT = 1_000_000_000L;
+
+    @Test
+    public void testBucketBoundsCoverValues() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 1000, 123_456, 10_000_000, Long.MAX_VALUE / 2};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue("value " + value, value <= LatencyHistogram.bucketUpperBound(index));
+            if (index > 0) {
+                assertTrue("value " + value, value > LatencyHistogram.bucketUpperBound(index - 1));
+            }
+        }
+        assertTrue(LatencyHistogram.bucketIndex(Long.MAX_VALUE) < LatencyHistogram.BUCKETS);
+    }
+
+    @Test
+    public void testPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram(6, SLOT);
+        // 1..1000 microseconds, uniformly
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L, 0);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(0);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertWithin(500_000, snapshot.getPercentile(50));
+        assertWithin(950_000, snapshot.getPercentile(95));
+        assertWithin(990_000, snapshot.getPercentile(99));
+        assertEquals(1_000_000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testOldSamplesLeaveTheWindow() {
+        LatencyHistogram histogram = new LatencyHistogram(3, SLOT);
+        histogram.record(5_000_000, 0);
+        histogram.record(1000, 2 * SLOT);
+        assertEquals(2, histogram.snapshot(2 * SLOT).getCount());
+
+        // Slot 0 falls out of the window, and is recycled when time wraps onto it
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(3 * SLOT);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        histogram.record(2000, 3 * SLOT);
+        assertEquals(2, histogram.snapshot(3 * SLOT).getCount());
+        assertEquals(3, histogram.getTotalCount());
+        assertEquals(0, histogram.snapshot(10 * SLOT).getCount());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, histogram.getTotalCount());
+        assertEquals(9_999, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public void testMetricsCsvHasOneRowPerStage() throws Exception {
+        LatencyMetrics metrics = new LatencyMetrics();
+        metrics.record(LatencyMetrics.Stage.PARSE, 20_000);
+        StringWriter writer = new StringWriter();
+        metrics.writeCsv(writer, 42);
+
+        String[] rows = writer.toString().split("\n");
+        assertEquals(LatencyMetrics.Stage.values().length, rows.length);
+        assertTrue(rows[LatencyMetrics.Stage.PARSE.ordinal()].startsWith("42,PARSE,1,"));
+        assertTrue(metrics.report().contains("PARSE"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.printerstatus_glass;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Minimal in-process MQTT 3.1.1 broker for tests: CONNECT, SUBSCRIBE (with + and #),
+ * UNSUBSCRIBE, PUBLISH at QoS 0/1 (delivered at QoS 0), PINGREQ and DISCONNECT.
+ * It can be stopped and restarted on the same port, drop its clients while staying
+ * up, or stall, to simulate broker restarts, Wi-Fi dropouts and an overloaded broker.
+ */
+public class LocalBroker {
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+    private volatile ServerSocket serverSocket;
+    private volatile boolean stalled;
+    private int port;
+
+    /**
+     * One connected client.
+     */
+    private final class Session {
+        final Socket socket;
+        final OutputStream out;
+        final Set<String> filters = ConcurrentHashMap.newKeySet();
+
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        synchronized void send(byte[] packet) {
+            try {
+                out.write(packet);
+                out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+            sessions.remove(this);
+        }
+    }
+
+    /**
+     * Starts listening, on a free port the first time and on the same port after a restart.
+     * @return This broker
+     * @throws IOException If the port cannot be bound
+     */
+    public synchronized LocalBroker start() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        port = socket.getLocalPort();
+        serverSocket = socket;
+        Thread acceptor = new Thread(() -> accept(socket), "broker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * Stops listening and drops all clients, like a killed broker.
+     */
+    public synchronized void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException ignored) {
+            // already closed
+        }
+        dropClients();
+    }
+
+    /**
+     * Drops all client connections while staying up, like a Wi-Fi dropout.
+     */
+    public void dropClients() {
+        for (Session session : sessions) {
+            session.close();
+        }
+    }
+
+    /**
+     * Stops or resumes delivering messages while connections, acks and keep-alives go on,
+     * like a broker too overloaded to forward anything.
+     * @param stalled True to stop delivering
+     */
+    public void setStalled(boolean stalled) {
+        this.stalled = stalled;
+    }
+
+    /**
+     * @return The broker URL for Paho
+     */
+    public String getUrl() {
+        return "tcp://127.0.0.1:" + port;
+    }
+
+    /**
+     * @return Number of connected clients
+     */
+    public int getClientCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return True if any connected client subscribed to exactly this filter
+     */
+    public boolean hasSubscription(String filter) {
+        for (Session session : sessions) {
+            if (session.filters.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits until a client subscribed to the filter.
+     * @param filter The topic filter
+     * @param timeoutMillis Maximum time to wait
+     * @return True if the subscription showed up in time
+     */
+    public boolean awaitSubscription(String filter, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!hasSubscription(filter)) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    /**
+     * Delivers a message to every client subscribed to a matching filter.
+     * @param topic The topic
+     * @param payload The payload
+     */
+    public void publish(String topic, byte[] payload) {
+        if (stalled) {
+            return;
+        }
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int remaining = 2 + topicBytes.length + payload.length;
+        byte[] packet = new byte[1 + remainingLengthSize(remaining) + remaining];
+        int pos = 0;
+        packet[pos++] = 0x30;
+        pos = writeRemainingLength(packet, pos, remaining);
+        packet[pos++] = (byte) (topicBytes.length >> 8);
+        packet[pos++] = (byte) topicBytes.length;
+        System.arraycopy(topicBytes, 0, packet, pos, topicBytes.length);
+        pos += topicBytes.length;
+        System.arraycopy(payload, 0, packet, pos, payload.length);
+
+        for (Session session : sessions) {
+            for (String filter : session.filters) {
+                if (matches(filter, topic)) {
+                    session.send(packet);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers a text message.
+     * @param topic The topic
+     * @param payload The payload text
+     */
+    public void publish(String topic, String payload) {
+        publish(topic, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void accept(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                client.setTcpNoDelay(true);
+                Session session = new Session(client);
+                sessions.add(session);
+                Thread reader = new Thread(() -> serve(session), "broker-session");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Session session) {
+        try {
+            DataInputStream in = new DataInputStream(session.socket.getInputStream());
+            while (true) {
+                int header = in.read();
+                if (header < 0) {
+                    break;
+                }
+                byte[] body = new byte[readRemainingLength(in)];
+                in.readFully(body);
+                if (!handle(session, header, body)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+        session.close();
+    }
+
+    /**
+     * Handles one packet.
+     * @return False if the session ends
+     */
+    private boolean handle(Session session, int header, byte[] body) {
+        switch (header >> 4) {
+            case 1: // CONNECT
+                session.send(new byte[]{0x20, 0x02, 0x00, 0x00});
+                return true;
+            case 3: { // PUBLISH
+                int qos = (header >> 1) & 3;
+                int topicLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+                String topic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+                int pos = 2 + topicLength;
+                if (qos > 0) {
+                    session.send(new byte[]{0x40, 0x02, body[pos], body[pos + 1]});
+                    pos += 2;
+                }
+                byte[] payload = new byte[body.length - pos];
+                System.arraycopy(body, pos, payload, 0, payload.length);
+                publish(topic, payload);
+                return true;
+            }
+            case 8: { // SUBSCRIBE
+                List<String> filters = readFilters(body, true);
+                byte[] ack = new byte[4 + filters.size()];
+                ack[0] = (byte) 0x90;
+                ack[1] = (byte) (2 + filters.size());
+                ack[2] = body[0];
+                ack[3] = body[1];
+                session.filters.addAll(filters);
+                session.send(ack);
+                return true;
+            }
+            case 10: // UNSUBSCRIBE
+                session.filters.removeAll(readFilters(body, false));
+                session.send(new byte[]{(byte) 0xB0, 0x02, body[0], body[1]});
+                return true;
+            case 12: // PINGREQ
+                session.send(new byte[]{(byte) 0xD0, 0x00});
+                return true;
+            case 14: // DISCONNECT
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static List<String> readFilters(byte[] body, boolean withQos) {
+        List<String> filters = new ArrayList<>();
+        int pos = 2; // packet identifier
+        while (pos < body.length) {
+            int length = ((body[pos] & 0xFF) << 8) | (body[pos + 1] & 0xFF);
+            filters.add(new String(body, pos + 2, length, StandardCharsets.UTF_8));
+            pos += 2 + length + (withQos ? 1 : 0);
+        }
+        return filters;
+    }
+
+    /**
+     * MQTT topic filter matching with single (+) and multi level (#) wildcards.
+     */
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static int readRemainingLength(InputStream in) throws IOException {
+        int value = 0;
+        int multiplier = 1;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit < 0) {
+                throw new EOFException();
+            }
+            value += (digit & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ((digit & 0x80) != 0);
+        return value;
+    }
+
+    private static int remainingLengthSize(int length) {
+        int size = 1;
+        while (length >= 128) {
+            length /= 128;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeRemainingLength(byte[] packet, int pos, int length) {
+        do {
+            int digit = length % 128;
+            length /= 128;
+            if (length > 0) {
+                digit |= 0x80;
+            }
+            packet[pos++] = (byte) digit;
+        } while (length > 0);
+        return pos;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MotionGateTest {
+    private static final String ZONE_A = "sf/printer/a";
+
+    /**
+     * Lets tag 0 rest in the middle of zone A until it is stationary.
+     * @return Time of the last fix
+     */
+    private static long settle(MotionGate gate, long start) {
+        long time = start;
+        for (; !gate.isStationary(0); time += 100) {
+            gate.onFullFix(0, 0.25, 3.4, ZONE_A, time);
+            assertTrue(time - start <= 1000);
+        }
+        return time;
+    }
+
+    @Test
+    public void testRestingTagBecomesStationary() {
+        MotionGate gate = new MotionGate(0.3, 500, 0.6, 10_000);
+        assertFalse(gate.isStationary(0));
+        long time = settle(gate, 0);
+        assertTrue(time >= 500);
+        assertEquals(1, gate.getSettled());
+
+        // Jitter stays on the light path
+        assertTrue(gate.onLightFix(0, 0.28, 3.37, time));
+        assertTrue(gate.onLightFix(0, Double.NaN, Double.NaN, time));
+        assertEquals(2, gate.getLightFixes());
+        assertTrue(gate.isStationary(0));
+        assertFalse(gate.isStationary(5));
+    }
+
+    @Test
+    public void testMotionNeedsTwoFixesInARow() {
+        MotionGate gate = new MotionGate(0.3, 500, 0.6, 10_000);
+        long time = settle(gate, 0);
+
+        // One outlier is ignored
+        assertTrue(gate.onLightFix(0, 0.9, 3.4, time + 100));
+        assertTrue(gate.onLightFix(0, 0.25, 3.4, time + 200));
+        assertTrue(gate.onLightFix(0, 0.9, 3.4, time + 300));
+        assertFalse(gate.onLightFix(0, 0.95, 3.4, time + 400));
+        assertFalse(gate.isStationary(0));
+
+        // Rests again only after a full settle time at the new spot
+        gate.onFullFix(0, 0.5, 3.4, ZONE_A, time + 400);
+        gate.onFullFix(0, 0.5, 3.4, ZONE_A, time + 800);
+        assertFalse(gate.isStationary(0));
+        gate.onFullFix(0, 0.5, 3.4, ZONE_A, time + 900);
+        assertTrue(gate.isStationary(0));
+        assertEquals(2, gate.getSettled());
+    }
+
+    @Test
+    public void testTagNearABorderStaysOnTheFullPath() {
+        MotionGate gate = new MotionGate(0.3, 500, 0.6, 10_000);
+        // Zone A ends at x = 1.5
+        for (long time = 0; time <= 3000; time += 100) {
+            gate.onFullFix(0, 1.2, 3.4, ZONE_A, time);
+        }
+        assertFalse(gate.isStationary(0));
+        assertEquals(0, gate.getSettled());
+        // Outside every zone is a zone of its own
+        for (long time = 0; time <= 1000; time += 100) {
+            gate.onFullFix(1, 3.5, 3.4, null, time);
+        }
+        assertTrue(gate.isStationary(1));
+    }
+
+    @Test
+    public void testRefreshAndPrinterStateChanges() {
+        MotionGate gate = new MotionGate(0.3, 500, 0.6, 2000);
+        long time = settle(gate, 0);
+
+        // Periodic full fix, stationary again right after it
+        assertTrue(gate.onLightFix(0, 0.25, 3.4, time + 1800));
+        assertFalse(gate.onLightFix(0, 0.25, 3.4, time + 1900));
+        gate.onFullFix(0, 0.25, 3.4, ZONE_A, time + 1900);
+        assertTrue(gate.isStationary(0));
+
+        // First report and repeated states do not wake anyone
+        gate.onPrinterState("sf/printer/b", "Printing", time + 2100);
+        gate.onPrinterState("sf/printer/b", "Printing", time + 3100);
+        gate.onPrinterState("sf/printer/b", null, time + 3200);
+        assertTrue(gate.isStationary(0));
+        assertEquals(0, gate.getWoken());
+        gate.onPrinterState("sf/printer/b", "Finished", time + 4100);
+        assertFalse(gate.isStationary(0));
+        assertEquals(1, gate.getWoken());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBorderMarginNotBelowMoveThreshold() {
+        new MotionGate(0.5, 500, 0.3, 10_000);
+    }
+
+    @Test
+    public void testCoordinatesStopTokenizingOnceXAndYAreRead() {
+        byte[] payload = "position,tagName=t positionX=1.5,positionY=2.5,positionZ=1.0,trace_id=7,publish_us=100"
+                .getBytes(StandardCharsets.UTF_8);
+        DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+        MessageTrace trace = new MessageTrace();
+        tokenizer.setTrace(trace);
+        Position.Coordinates coordinates = new Position.Coordinates();
+
+        tokenizer.tokenize(payload, 0, payload.length, DataParser.UWB_PREFIX, coordinates.reset());
+        assertEquals(1.5, coordinates.getX(), 0);
+        assertEquals(2.5, coordinates.getY(), 0);
+        // The fields after the coordinates were never reached
+        assertFalse(trace.hasPublishTime());
+
+        coordinates.setReadAll(true);
+        tokenizer.tokenize(payload, 0, payload.length, DataParser.UWB_PREFIX, coordinates.reset());
+        assertEquals(2.5, coordinates.getY(), 0);
+        assertTrue(trace.hasPublishTime());
+    }
+}
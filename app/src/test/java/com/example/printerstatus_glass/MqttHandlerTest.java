@@ -0,0 +1,148 @@
+package com.example.printerstatus_glass;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class MqttHandlerTest {
+    private static final String UWB = "sf/UWB/uwb-a";
+    private static final String PRINTER_A = "sf/printer/a";
+    private static final String PRINTER_B = "sf/printer/b";
+    private static final long TIMEOUT = 10_000;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ConcurrentHashMap<String, String> received = new ConcurrentHashMap<>();
+    private LocalBroker broker;
+    private MqttHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new LocalBroker().start();
+        handler = new MqttHandler(scheduler, 20, 200);
+        handler.setMessageCallback(received::put);
+    }
+
+    @After
+    public void tearDown() {
+        handler.disconnect();
+        broker.stop();
+        scheduler.shutdownNow();
+    }
+
+    private void awaitState(ConnectionSupervisor.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (handler.getSupervisor().getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(state, handler.getSupervisor().getState());
+    }
+
+    /**
+     * Waits until the supervisor noticed a dropout; a reconnect may already be under way.
+     */
+    private void awaitConnectionsLost(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (handler.getSupervisor().getConnectionsLost() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, handler.getSupervisor().getConnectionsLost());
+    }
+
+    /**
+     * Publishes until the handler received the payload; subscriptions become active asynchronously.
+     */
+    private void assertDelivered(String topic, String payload) throws InterruptedException {
+        assertTrue("not subscribed: " + topic, broker.awaitSubscription(topic, TIMEOUT));
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!payload.equals(received.get(topic)) && System.currentTimeMillis() < deadline) {
+            broker.publish(topic, payload);
+            Thread.sleep(10);
+        }
+        assertEquals(payload, received.get(topic));
+    }
+
+    @Test
+    public void testSubscriptionsBeforeConnectAreSent() throws InterruptedException {
+        handler.subscribe(new String[]{UWB, PRINTER_A});
+        handler.connect(broker.getUrl(), "glass-1");
+
+        awaitState(ConnectionSupervisor.State.CONNECTED);
+        assertDelivered(UWB, "positionX=1 positionY=2");
+        assertDelivered(PRINTER_A, "printer_name=a");
+    }
+
+    @Test
+    public void testBrokerRestartRestoresAllSubscriptions() throws Exception {
+        handler.subscribe(new String[]{UWB, PRINTER_A});
+        handler.connect(broker.getUrl(), "glass-1");
+        awaitState(ConnectionSupervisor.State.CONNECTED);
+        assertDelivered(PRINTER_A, "1");
+
+        // Kill the broker; the zone switch happens while it is down
+        broker.stop();
+        awaitState(ConnectionSupervisor.State.RECONNECTING);
+        handler.unsubscribe(PRINTER_A);
+        handler.subscribe(PRINTER_B);
+        Thread.sleep(300); // a few failed attempts against the dead port
+        broker.start();
+
+        awaitState(ConnectionSupervisor.State.CONNECTED);
+        assertDelivered(UWB, "2");
+        assertDelivered(PRINTER_B, "2");
+        assertFalse(broker.hasSubscription(PRINTER_A));
+        assertEquals(1, handler.getSupervisor().getConnectionsLost());
+        assertTrue(handler.getSupervisor().getLastRecoveryMillis() >= 300);
+    }
+
+    @Test
+    public void testRepeatedDropoutsWhileWalking() throws Exception {
+        handler.subscribe(new String[]{UWB, PRINTER_A});
+        handler.connect(broker.getUrl(), "glass-1");
+        awaitState(ConnectionSupervisor.State.CONNECTED);
+
+        for (int i = 0; i < 5; i++) {
+            broker.dropClients();
+            awaitConnectionsLost(i + 1);
+            awaitState(ConnectionSupervisor.State.CONNECTED);
+            assertDelivered(UWB, "drop " + i);
+        }
+        assertEquals(5, handler.getSupervisor().getConnectionsLost());
+        assertEquals(5, handler.getSupervisor().getRecoveryTimes().snapshot().getCount());
+    }
+
+    @Test
+    public void testBinaryPayloadsUseTheirOwnCallback() throws Exception {
+        ConcurrentHashMap<String, byte[]> binary = new ConcurrentHashMap<>();
+        handler.setMessageCallback(new MqttHandler.MessageCallback() {
+            @Override
+            public void onMessageReceived(String topic, String message) {
+                received.put(topic, message);
+            }
+
+            @Override
+            public void onBinaryMessageReceived(String topic, byte[] payload) {
+                binary.put(topic, payload);
+            }
+        });
+        handler.subscribe(PRINTER_A);
+        handler.connect(broker.getUrl(), "glass-1");
+        awaitState(ConnectionSupervisor.State.CONNECTED);
+        assertDelivered(PRINTER_A, "printer_name=a");
+
+        byte[] payload = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+                .putString(BinaryCodec.Field.PRINTER_NAME, "a").toByteArray();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!binary.containsKey(PRINTER_A) && System.currentTimeMillis() < deadline) {
+            broker.publish(PRINTER_A, payload);
+            Thread.sleep(10);
+        }
+        assertArrayEquals(payload, binary.get(PRINTER_A));
+        assertEquals("printer_name=a", received.get(PRINTER_A));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PositionFilterTest {
+    @Test
+    public void testPassThroughSettingsKeepFixes() {
+        PositionFilter filter = new PositionFilter(1, 1, 0);
+        assertTrue(Double.isNaN(filter.getX(0)));
+        filter.update(0, 1.0, 2.0, 1000);
+        filter.update(0, 1.5, 2.5, 1100);
+        assertEquals(1.5, filter.getX(0), 1e-12);
+        assertEquals(2.5, filter.getY(0), 1e-12);
+    }
+
+    @Test
+    public void testSmoothsJitterAndRejectsSingleOutliers() {
+        PositionFilter filter = new PositionFilter();
+        Random random = new Random(7);
+        double rawError = 0;
+        double filteredError = 0;
+        int fixes = 600;
+        for (int i = 0; i < fixes; i++) {
+            double fixY = 2.6 + random.nextGaussian() * 0.15;
+            filter.update(0, 0.5, fixY, i * 100L);
+            if (i >= 20) {
+                rawError += (fixY - 2.6) * (fixY - 2.6);
+                filteredError += (filter.getY(0) - 2.6) * (filter.getY(0) - 2.6);
+            }
+        }
+        assertTrue(filteredError * 4 < rawError);
+
+        // A single multipath jump of a metre barely moves the estimate
+        double before = filter.getY(0);
+        filter.update(0, 0.5, 3.6, fixes * 100L);
+        assertEquals(before, filter.getY(0), 0.2);
+    }
+
+    @Test
+    public void testFollowsAWalkAndRestartsAfterAGap() {
+        PositionFilter filter = new PositionFilter();
+        // Walking along X at 1 m/s
+        for (int i = 0; i <= 100; i++) {
+            filter.update(3, i * 0.1, 1.0, i * 100L);
+        }
+        assertEquals(10.0, filter.getX(3), 0.3);
+        assertEquals(1.0, filter.getVelocityX(3), 0.2);
+
+        // After a long gap the old track is forgotten
+        filter.update(3, -5.0, 4.0, 100 * 100L + PositionFilter.RESET_GAP_MILLIS + 1);
+        assertEquals(-5.0, filter.getX(3), 0);
+        assertEquals(4.0, filter.getY(3), 0);
+        assertEquals(0, filter.getVelocityX(3), 0);
+    }
+
+    @Test
+    public void testUpdatesDoNotAllocate() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        long threadId = Thread.currentThread().getId();
+        PositionFilter filter = new PositionFilter();
+        filter.ensureCapacity(500);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            filter.update(i % 500, (i % 70) * 0.1, 2.6, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("Allocated " + allocated + " bytes", allocated < 10_000);
+    }
+}
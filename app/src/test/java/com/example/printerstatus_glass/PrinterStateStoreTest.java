@@ -0,0 +1,53 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PrinterStateStoreTest {
+    @Test
+    public void testMergesPerPrinter() {
+        PrinterStateStore store = new PrinterStateStore(4);
+        store.update("sf/printer/a", Map.of("printer_name", "a", "job_name", "bracket.gcode"), 100);
+        store.update("sf/printer/b", Map.of("printer_name", "b"), 200);
+        store.update("sf/printer/a", Map.of("completion", "50"), 300);
+
+        PrinterStateStore.PrinterState a = store.get("sf/printer/a");
+        assertEquals("bracket.gcode", a.getData().get("job_name"));
+        assertEquals(50, a.getStatus().getCompletion(), 0);
+        assertEquals(300, a.getLastUpdateTime());
+
+        // Fields never leak between printers
+        assertNull(store.get("sf/printer/b").getData().get("job_name"));
+        assertEquals(200, store.get("sf/printer/b").getLastUpdateTime());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        PrinterStateStore store = new PrinterStateStore(2);
+        store.update("sf/printer/a", Map.of("printer_name", "a"), 1);
+        store.update("sf/printer/b", Map.of("printer_name", "b"), 2);
+        store.get("sf/printer/a"); // a is now more recent than b
+        store.update("sf/printer/c", Map.of("printer_name", "c"), 3);
+
+        assertEquals(2, store.size());
+        assertNotNull(store.get("sf/printer/a"));
+        assertNull(store.get("sf/printer/b"));
+        assertNotNull(store.get("sf/printer/c"));
+    }
+
+    @Test
+    public void testShrinkingCapacityEvicts() {
+        PrinterStateStore store = new PrinterStateStore(100);
+        for (int i = 0; i < 100; i++) {
+            store.update("sf/printer/" + i, Map.of("printer_name", "p" + i), i);
+        }
+        store.setCapacity(10);
+
+        assertEquals(10, store.size());
+        assertNull(store.get("sf/printer/89"));
+        assertNotNull(store.get("sf/printer/99"));
+    }
+}
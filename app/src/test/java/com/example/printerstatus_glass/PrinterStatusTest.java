@@ -0,0 +1,196 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PrinterStatusTest {
+    private static final String PRINTER_INPUT = DataParserTest.PRINTER_INPUT;
+
+    private static PrinterStatus parse(String input) {
+        PrinterStatus.Builder builder = new PrinterStatus.Builder();
+        new DataParser.Tokenizer().tokenize(input, DataParser.PRINTER_PREFIX, builder);
+        return builder.build();
+    }
+
+    @Test
+    public void testTokenizerFillsTypedFields() {
+        PrinterStatus status = parse(PRINTER_INPUT);
+
+        assertEquals("a", status.getPrinterName());
+        assertEquals(60.0, status.getBedTemperatureTarget(), 0);
+        assertEquals(23.12, status.getBedTemperatureCurrent(), 0);
+        assertEquals(170.0, status.getToolTemperatureTarget(), 0);
+        assertEquals(26.0, status.getToolTemperatureCurrent(), 0);
+        assertEquals("Connected and Operational", status.getState());
+        assertEquals(0, status.getPrintTime());
+        assertEquals(1593, status.getPrintTimeLeft());
+        assertEquals("spachtle-printables V7_90%_0.4n_0.2mm_PLA_MK3.5_27m.gcode", status.getJobName());
+        assertEquals(Boolean.TRUE, status.getConnected());
+        assertEquals("Printing", status.getDetailedState());
+        assertEquals(27.394086629153374, status.getCompletion(), 0);
+        assertTrue(status.getExtras().isEmpty());
+
+        // Same values as the Map-based parser, in text form
+        assertEquals(DataParser.parsePrinterData(PRINTER_INPUT).get("completion"), status.get("completion"));
+        assertEquals("True", status.get("is_connected"));
+    }
+
+    @Test
+    public void testFieldIndicesMatchTheirNames() {
+        PrinterStatus status = parse(PRINTER_INPUT);
+
+        // Every field of the sample is set, through the accessor of its kind only
+        for (int field = 0; field < PrinterStatus.FIELD_COUNT; field++) {
+            boolean text = PrinterStatus.isTextField(field);
+            assertEquals("field " + field, text, status.getText(field) != null);
+            assertEquals("field " + field, text, Double.isNaN(status.getNumber(field)));
+        }
+        assertEquals(PrinterStatus.FIELD_STATE, PrinterStatus.fieldIndex("state"));
+        assertEquals(PrinterStatus.FIELD_COMPLETION, PrinterStatus.fieldIndex("completion"));
+        assertEquals("a", status.getText(PrinterStatus.FIELD_PRINTER_NAME));
+        assertEquals("Connected and Operational", status.getText(PrinterStatus.FIELD_STATE));
+        assertEquals("Printing", status.getText(PrinterStatus.FIELD_DETAILED_STATE));
+        assertEquals(23.12, status.getNumber(PrinterStatus.FIELD_BED_TEMPERATURE_CURRENT), 0);
+        assertEquals(1593, status.getNumber(PrinterStatus.FIELD_PRINT_TIME_LEFT), 0);
+        assertEquals(1, status.getNumber(PrinterStatus.FIELD_IS_CONNECTED), 0);
+        assertEquals(-1, PrinterStatus.fieldIndex("nozzle"));
+    }
+
+    @Test
+    public void testUnknownAndInvalidFieldsGoToOverflow() {
+        PrinterStatus status = parse("printer_status,printer_name=b nozzle=0.4,completion=n/a,print_time_left=soon");
+
+        assertEquals("b", status.getPrinterName());
+        assertTrue(Double.isNaN(status.getCompletion()));
+        assertEquals(PrinterStatus.NO_VALUE, status.getPrintTimeLeft());
+        assertEquals("0.4", status.getExtras().get("nozzle"));
+        assertEquals("n/a", status.get("completion"));
+        assertEquals("soon", status.toMap().get("print_time_left"));
+        assertEquals(4, status.toMap().size());
+    }
+
+    @Test
+    public void testFractionalTimesKeepTheirText() {
+        PrinterStatus status = parse("printer_status,printer_name=c print_time=12.7,print_time_left=1593");
+
+        assertEquals(13, status.getPrintTime());
+        assertEquals("12.7", status.get("print_time"));
+        assertEquals("1593", status.get("print_time_left"));
+        assertEquals("12.7", status.getExtras().get("print_time"));
+        // Restoring the text form loses nothing
+        PrinterStatus restored = PrinterStatus.fromMap(status.toMap());
+        assertEquals(13, restored.getPrintTime());
+        assertEquals(status.toMap(), restored.toMap());
+
+        // A later whole value replaces the text
+        PrinterStatus.Builder update = new PrinterStatus.Builder();
+        new DataParser.Tokenizer().tokenize("printer_status,print_time=14", DataParser.PRINTER_PREFIX, update);
+        PrinterStatus merged = update.mergeInto(status);
+        assertEquals(14, merged.getPrintTime());
+        assertEquals("14", merged.get("print_time"));
+        assertFalse(merged.getExtras().containsKey("print_time"));
+    }
+
+    @Test
+    public void testMergeKeepsFieldsMissingFromTheUpdate() {
+        PrinterStatus base = parse(PRINTER_INPUT);
+        PrinterStatus.Builder update = new PrinterStatus.Builder();
+        new DataParser.Tokenizer().tokenize("printer_status,state=Paused,completion=30,fan=on", DataParser.PRINTER_PREFIX, update);
+        PrinterStatus merged = update.mergeInto(base);
+
+        assertEquals("Paused", merged.getState());
+        assertEquals(30, merged.getCompletion(), 0);
+        assertEquals(23.12, merged.getBedTemperatureCurrent(), 0);
+        assertEquals("a", merged.getPrinterName());
+        assertEquals("on", merged.getExtras().get("fan"));
+        // The base is unchanged and extras are shared until they change
+        assertEquals("Connected and Operational", base.getState());
+        assertSame(merged.getExtras(), update.reset().mergeInto(merged).getExtras());
+    }
+
+    @Test
+    public void testRepeatedTextIsShared() {
+        PrinterStatus.Builder builder = new PrinterStatus.Builder();
+        DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+        byte[] payload = PRINTER_INPUT.getBytes(StandardCharsets.UTF_8);
+        tokenizer.tokenize(payload, 0, payload.length, DataParser.PRINTER_PREFIX, builder);
+        PrinterStatus first = builder.build();
+        tokenizer.tokenize(payload, 0, payload.length, DataParser.PRINTER_PREFIX, builder.reset());
+        PrinterStatus second = builder.build();
+
+        assertSame(first.getJobName(), second.getJobName());
+        assertSame(first.getState(), second.getState());
+    }
+
+    @Test
+    public void testBinaryDecodesIntoTheSameRecord() {
+        byte[] binary = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+                .putAll(BinaryCodec.TYPE_PRINTER, DataParser.parsePrinterData(PRINTER_INPUT)).toByteArray();
+        PrinterStatus.Builder builder = new PrinterStatus.Builder();
+        BinaryCodec.decode(binary, 0, binary.length, builder);
+
+        assertEquals(parse(PRINTER_INPUT).toMap(), builder.build().toMap());
+    }
+
+    @Test
+    public void testPositionRecord() {
+        Position.Builder builder = new Position.Builder();
+        new DataParser.Tokenizer().tokenize("position,tagName=uwb-a positionX=5.02,positionY=2.86,positionZ=0",
+                DataParser.UWB_PREFIX, builder);
+        Position position = builder.build();
+        assertEquals(5.02, position.getX(), 0);
+        assertEquals(2.86, position.getY(), 0);
+        assertEquals("uwb-a", position.getTagName());
+        assertTrue(position.hasXY());
+
+        Position moved = builder.reset().put("positionX", "6.5").put("rssi", "-70").mergeInto(position);
+        assertEquals(6.5, moved.getX(), 0);
+        assertEquals(2.86, moved.getY(), 0);
+        assertEquals("-70", moved.get("rssi"));
+        assertFalse(Position.EMPTY.hasXY());
+    }
+
+    @Test
+    public void testTypedUpdateAllocatesFarLessThanMaps() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        long threadId = Thread.currentThread().getId();
+        byte[] payload = PRINTER_INPUT.getBytes(StandardCharsets.UTF_8);
+        int messages = 20_000;
+
+        // Before: parse into a new map, then copy-merge it into the previous map
+        Map<String, String> state = Collections.emptyMap();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < messages; i++) {
+            Map<String, String> merged = new HashMap<>(state);
+            merged.putAll(DataParser.parsePrinterData(new String(payload, StandardCharsets.UTF_8)));
+            state = Collections.unmodifiableMap(merged);
+        }
+        long mapBytes = (threads.getThreadAllocatedBytes(threadId) - before) / messages;
+
+        // After: tokenize the payload into a reused builder and merge into a new record
+        DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+        PrinterStatus.Builder builder = new PrinterStatus.Builder();
+        PrinterStatus status = PrinterStatus.EMPTY;
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < messages; i++) {
+            tokenizer.tokenize(payload, 0, payload.length, DataParser.PRINTER_PREFIX, builder.reset());
+            status = builder.mergeInto(status);
+        }
+        long typedBytes = (threads.getThreadAllocatedBytes(threadId) - before) / messages;
+
+        assertEquals("a", status.getPrinterName());
+        assertTrue(typedBytes * 4 < mapBytes);
+        // About the size of one merged record
+        assertTrue(typedBytes < 1024);
+    }
+}
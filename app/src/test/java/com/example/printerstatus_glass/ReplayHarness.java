@@ -0,0 +1,499 @@
+package com.example.printerstatus_glass;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recorded {@link TraceFile} through an in-process {@link LocalBroker} into the
+ * app's real ingest path (MqttHandler, IngestQueue, IngestPipeline, DataParser/BinaryCodec,
+ * DataHolder, TagTracker and PrinterTopicSelector) on a plain JVM, and reports end-to-end
+ * latency and throughput. Latency runs from the broker sending a message to the pipeline
+ * having stored it; messages replaced by a newer one of the same topic before they were
+ * processed count as conflated. Also reports the CPU time the ingest worker spent per minute
+ * of trace, in total and inside the pipeline (without the queue hand-off and the harness's
+ * own bookkeeping), and, with a {@link MotionGate}, how many UWB fixes took the full and the light path.
+ * Time thresholds of the tag tracker and the gate are divided by the speed, so they keep
+ * their meaning in trace time.
+ *
+ * Usage: {@code ReplayHarness <trace file | synthetic | stationary> [speed] [adaptive]}, where
+ * speed is 1 (real time), a factor such as 10, or "max", and "adaptive" turns the motion gate on.
+ */
+public class ReplayHarness {
+    public static final double MAX_SPEED = 0;
+    private static final String ALL_TOPICS = "#";
+    // The printer shown before the wearer enters a zone, like MainActivity's default
+    private static final String START_PRINTER = "sf/printer/a";
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Outcome of one replay.
+     */
+    public static final class Report {
+        long published;
+        long applied;
+        long conflated;
+        long dropped;
+        long failed;
+        int tags;
+        int topicsBehind;
+        double traceSeconds;
+        double wallSeconds;
+        LatencyHistogram.Snapshot latency;
+        boolean adaptive;
+        long cpuNanos;
+        long pipelineCpuNanos;
+        long renders;
+        long fullFixes;
+        long lightFixes;
+        long settled;
+        long woken;
+        String ownZone;
+
+        public long getPublished() {
+            return published;
+        }
+
+        public long getApplied() {
+            return applied;
+        }
+
+        public long getConflated() {
+            return conflated;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return Number of topics whose last published message was never applied
+         */
+        public int getTopicsBehind() {
+            return topicsBehind;
+        }
+
+        public int getTags() {
+            return tags;
+        }
+
+        public double getWallSeconds() {
+            return wallSeconds;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return CPU time of the ingest worker per minute of trace, in milliseconds
+         */
+        public double getCpuMillisPerMinute() {
+            return perMinute(cpuNanos);
+        }
+
+        /**
+         * @return CPU time the ingest worker spent in the pipeline per minute of trace, in milliseconds
+         */
+        public double getPipelineCpuMillisPerMinute() {
+            return perMinute(pipelineCpuNanos);
+        }
+
+        private double perMinute(long nanos) {
+            return traceSeconds > 0 ? nanos / 1e6 / (traceSeconds / 60) : 0;
+        }
+
+        /**
+         * @return Render requests of the pipeline
+         */
+        public long getRenders() {
+            return renders;
+        }
+
+        /**
+         * @return UWB fixes that took the full path; every fix without a motion gate
+         */
+        public long getFullFixes() {
+            return fullFixes;
+        }
+
+        /**
+         * @return UWB fixes of stationary tags that only had their coordinates read
+         */
+        public long getLightFixes() {
+            return lightFixes;
+        }
+
+        public long getSettled() {
+            return settled;
+        }
+
+        public long getWoken() {
+            return woken;
+        }
+
+        /**
+         * @return Zone of the wearer's tag at the end of the replay, or null
+         */
+        public String getOwnZone() {
+            return ownZone;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "Replayed %d messages (%.1f s of trace) in %.2f s: %.0f msg/s published, %.0f msg/s applied\n" +
+                            "Applied %d, conflated %d, dropped %d, failed %d, topics behind %d, UWB tags %d\n" +
+                            "End-to-end latency p50/p95/p99/max: %.2f/%.2f/%.2f/%.2f ms\n" +
+                            "Motion gate %s: ingest CPU %.1f ms (pipeline %.1f ms) per trace minute, UWB fixes full/light %d/%d, " +
+                            "settled %d, woken %d, renders %d, wearer in %s",
+                    published, traceSeconds, wallSeconds, published / wallSeconds, applied / wallSeconds,
+                    applied, conflated, dropped, failed, topicsBehind, tags,
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(95) / 1e6,
+                    latency.getPercentile(99) / 1e6, latency.getMax() / 1e6,
+                    adaptive ? "on" : "off", getCpuMillisPerMinute(), getPipelineCpuMillisPerMinute(), fullFixes, lightFixes,
+                    settled, woken, renders, ownZone);
+        }
+    }
+
+    /**
+     * A published message waiting to be processed.
+     */
+    private static final class Sent {
+        final byte[] payload;
+        final long nanos;
+
+        Sent(byte[] payload, long nanos) {
+            this.payload = payload;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Replays a trace into a fresh ingest path.
+     * @param trace The trace file
+     * @param speed Replay speed relative to the recording, or {@link #MAX_SPEED}
+     * @return The latency and throughput report
+     */
+    public static Report replay(File trace, double speed) throws IOException, InterruptedException {
+        return replay(trace, speed, false);
+    }
+
+    /**
+     * Replays a trace into a fresh ingest path.
+     * @param trace The trace file
+     * @param speed Replay speed relative to the recording, or {@link #MAX_SPEED}
+     * @param adaptive True to let a {@link MotionGate} take stationary tags off the full path
+     * @return The latency, throughput and CPU report
+     */
+    public static Report replay(File trace, double speed, boolean adaptive) throws IOException, InterruptedException {
+        Report report = new Report();
+        report.adaptive = adaptive;
+        LatencyHistogram latency = new LatencyHistogram(1, TimeUnit.DAYS.toNanos(1));
+        Map<String, ConcurrentLinkedQueue<Sent>> inFlight = new ConcurrentHashMap<>();
+        Map<String, Sent> lastPublished = new HashMap<>();
+        Map<String, Sent> lastApplied = new ConcurrentHashMap<>();
+        AtomicLong applied = new AtomicLong();
+        AtomicLong conflated = new AtomicLong();
+        AtomicLong renders = new AtomicLong();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        // Ingest worker, its CPU time when it took the first message and its CPU time inside the pipeline
+        long[] worker = {-1, 0, 0};
+
+        // The app's message path, with every processed message matched to its send time
+        double scale = speed > 0 ? speed : 1;
+        TagTracker tagTracker = new TagTracker(new PositionFilter(),
+                (long) (TagTracker.DEFAULT_DWELL_MILLIS / scale), TagTracker.DEFAULT_HYSTERESIS_METRES);
+        // The HUD follows the wearer's zone like MainActivity, so only the shown printer requests renders
+        DataHolder holder = DataHolder.getInstance();
+        holder.setActivePrinter(START_PRINTER);
+        tagTracker.addZoneListener(IngestPipeline.OWN_TAG, (tracker, tag, previousTopic, topic) -> {
+            if (topic != null) {
+                holder.setActivePrinter(topic);
+            }
+        });
+        IngestPipeline pipeline = new IngestPipeline(holder, tagTracker, null, renders::incrementAndGet);
+        MotionGate gate = null;
+        if (adaptive) {
+            gate = new MotionGate(MotionGate.DEFAULT_MOVE_METRES, (long) (MotionGate.DEFAULT_SETTLE_MILLIS / scale),
+                    MotionGate.DEFAULT_BORDER_METRES, (long) (MotionGate.DEFAULT_REFRESH_MILLIS / scale));
+            pipeline.setMotionGate(gate);
+        }
+        MqttHandler.MessageCallback measured = new MqttHandler.MessageCallback() {
+            @Override
+            public void onMessageArrived(String topic, byte[] payload, long arrivalNanos) {
+                // The pipeline's own entry point, so UWB text takes its path straight from the payload
+                long cpu = startCpuClock();
+                pipeline.onMessageArrived(topic, payload, arrivalNanos);
+                worker[2] += threads.getCurrentThreadCpuTime() - cpu;
+                matchSent(topic, payload);
+            }
+
+            @Override
+            public void onMessageReceived(String topic, String message) {
+                long cpu = startCpuClock();
+                pipeline.onMessageReceived(topic, message);
+                worker[2] += threads.getCurrentThreadCpuTime() - cpu;
+                matchSent(topic, message.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onBinaryMessageReceived(String topic, byte[] payload) {
+                long cpu = startCpuClock();
+                pipeline.onBinaryMessageReceived(topic, payload);
+                worker[2] += threads.getCurrentThreadCpuTime() - cpu;
+                matchSent(topic, payload);
+            }
+
+            /**
+             * @return CPU time of the ingest worker before it hands a message to the pipeline
+             */
+            private long startCpuClock() {
+                long cpu = threads.getCurrentThreadCpuTime();
+                if (worker[0] < 0) {
+                    worker[1] = cpu;
+                    worker[0] = Thread.currentThread().getId();
+                }
+                return cpu;
+            }
+
+            private void matchSent(String topic, byte[] payload) {
+                long now = System.nanoTime();
+                ConcurrentLinkedQueue<Sent> queue = inFlight.get(topic);
+                Sent sent;
+                while (queue != null && (sent = queue.poll()) != null) {
+                    if (Arrays.equals(sent.payload, payload)) {
+                        latency.record(now - sent.nanos, now);
+                        lastApplied.put(topic, sent);
+                        applied.incrementAndGet();
+                        return;
+                    }
+                    conflated.incrementAndGet();
+                }
+            }
+        };
+
+        LocalBroker broker = new LocalBroker().start();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        MqttHandler handler = new MqttHandler(scheduler);
+        handler.setMessageCallback(measured);
+        handler.subscribe(ALL_TOPICS);
+        handler.connect(broker.getUrl(), "replay");
+        try {
+            if (!broker.awaitSubscription(ALL_TOPICS, TIMEOUT_MILLIS)) {
+                throw new IOException("Ingest path did not subscribe");
+            }
+
+            // Publish at the recorded pace, scaled by the speed
+            long start = System.nanoTime();
+            try (TraceFile.Reader reader = new TraceFile.Reader(trace)) {
+                while (reader.next()) {
+                    if (speed > 0) {
+                        long due = start + (long) (reader.getTimeMicros() * 1000 / speed);
+                        for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    byte[] payload = reader.getPayload();
+                    Sent sent = new Sent(payload, System.nanoTime());
+                    lastPublished.put(reader.getTopic(), sent);
+                    inFlight.computeIfAbsent(reader.getTopic(), topic -> new ConcurrentLinkedQueue<>()).add(sent);
+                    broker.publish(reader.getTopic(), payload);
+                    report.published++;
+                    report.traceSeconds = reader.getTimeMicros() / 1e6;
+                }
+            }
+
+            // Wait until every message is processed or replaced, or nothing moves any more
+            long accounted = -1;
+            long lastProgress = System.currentTimeMillis();
+            while (applied.get() + conflated.get() < report.published
+                    && System.currentTimeMillis() - lastProgress < TIMEOUT_MILLIS) {
+                long now = applied.get() + conflated.get();
+                if (now != accounted) {
+                    accounted = now;
+                    lastProgress = System.currentTimeMillis();
+                }
+                Thread.sleep(1);
+            }
+            report.wallSeconds = (System.nanoTime() - start) / 1e9;
+            if (worker[0] >= 0) {
+                report.cpuNanos = threads.getThreadCpuTime(worker[0]) - worker[1];
+                report.pipelineCpuNanos = worker[2];
+            }
+        } finally {
+            handler.disconnect();
+            scheduler.shutdownNow();
+            broker.stop();
+        }
+
+        report.applied = applied.get();
+        report.conflated = conflated.get();
+        for (Map.Entry<String, Sent> last : lastPublished.entrySet()) {
+            if (lastApplied.get(last.getKey()) != last.getValue()) {
+                report.topicsBehind++;
+            }
+        }
+        report.dropped = handler.getIngestQueue().getDropped();
+        report.failed = pipeline.getFailedMessages();
+        report.tags = tagTracker.size();
+        report.latency = latency.snapshot();
+        report.renders = renders.get();
+        if (gate != null) {
+            report.fullFixes = gate.getFullFixes();
+            report.lightFixes = gate.getLightFixes();
+            report.settled = gate.getSettled();
+            report.woken = gate.getWoken();
+        } else {
+            report.fullFixes = tagTracker.getUpdates();
+        }
+        int own = tagTracker.indexOf(IngestPipeline.OWN_TAG);
+        report.ownZone = own >= 0 ? tagTracker.getZone(own) : null;
+        return report;
+    }
+
+    /**
+     * Writes a trace of printers reporting once per second and UWB tags walking through
+     * the zones at 10 Hz.
+     * @param file The trace file
+     * @param printers Number of printers
+     * @param tags Number of UWB tags, the first one being the wearer's
+     * @param seconds Length of the trace
+     * @param binary True for payloads in the binary format, false for the line protocol
+     * @return Number of messages written
+     */
+    public static long writeSyntheticTrace(File file, int printers, int tags, int seconds, boolean binary)
+            throws IOException {
+        BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+        try (TraceFile.Writer writer = new TraceFile.Writer(file)) {
+            for (int step = 0; step < seconds * 10; step++) {
+                long nanos = step * 100_000_000L;
+                if (step % 10 == 0) {
+                    writePrinters(writer, encoder, printers, step, "Printing", binary);
+                }
+                for (int t = 0; t < tags; t++) {
+                    writeFix(writer, encoder, t, (t * 0.37 + step * 0.02) % 7.5 - 0.5,
+                            1.2 + (t * 0.61 + step * 0.01) % 3.0, nanos, binary);
+                }
+            }
+            return writer.getRecords();
+        }
+    }
+
+    /**
+     * Writes a trace of UWB tags that mostly stand still: every tag rests near the middle of
+     * one of the three default zones with a few centimetres of jitter at 10 Hz, the wearer walks
+     * from zone A to zone C at 1 m/s after 40% of the trace, and printer b finishes its job
+     * after 70%. Printers report once per second.
+     * @param file The trace file
+     * @param printers Number of printers, at least 2
+     * @param tags Number of UWB tags, the first one being the wearer's
+     * @param seconds Length of the trace
+     * @param binary True for payloads in the binary format, false for the line protocol
+     * @return Number of messages written
+     */
+    public static long writeStationaryTrace(File file, int printers, int tags, int seconds, boolean binary)
+            throws IOException {
+        // Middle of zones A, B and C
+        double[][] spots = {{0.25, 3.4}, {0.25, 1.8}, {6.55, 3.4}};
+        double walkMetres = spots[2][0] - spots[0][0];
+        int walkStart = seconds * 4;
+        int finish = seconds * 7;
+        Random jitter = new Random(42);
+        BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+        try (TraceFile.Writer writer = new TraceFile.Writer(file)) {
+            for (int step = 0; step < seconds * 10; step++) {
+                long nanos = step * 100_000_000L;
+                if (step % 10 == 0) {
+                    writePrinters(writer, encoder, printers, step, step < finish ? "Printing" : "Finished", binary);
+                }
+                for (int t = 0; t < tags; t++) {
+                    double[] spot = spots[t % spots.length];
+                    double x = spot[0] + (t / spots.length % 3 - 1) * 0.1;
+                    double y = spot[1];
+                    if (t == 0) {
+                        x += Math.max(0, Math.min(walkMetres, (step - walkStart) * 0.1));
+                    }
+                    writeFix(writer, encoder, t, x + (jitter.nextDouble() - 0.5) * 0.06,
+                            y + (jitter.nextDouble() - 0.5) * 0.06, nanos, binary);
+                }
+            }
+            return writer.getRecords();
+        }
+    }
+
+    /**
+     * Writes one status message of every printer.
+     */
+    private static void writePrinters(TraceFile.Writer writer, BinaryCodec.Encoder encoder, int printers,
+                                      int step, String state, boolean binary) throws IOException {
+        for (int p = 0; p < printers; p++) {
+            String name = printers <= 26 ? String.valueOf((char) ('a' + p)) : "p" + p;
+            String line = String.format(Locale.US, "printer_status,printer_name=%s " +
+                            "bed_temperature_target=60.0,bed_temperature_current=%.2f," +
+                            "tool_temperature_target=170.0,tool_temperature_current=%.1f," +
+                            "state=\"%s\",print_time=%d,print_time_left=%d,completion=%.3f",
+                    name, 55 + step % 50 / 10.0, 160 + step % 100 / 10.0, p == 1 ? state : "Printing",
+                    step / 10, 1600 - step / 10, step / 10.0);
+            byte[] payload = binary
+                    ? encoder.begin(BinaryCodec.TYPE_PRINTER)
+                    .putAll(BinaryCodec.TYPE_PRINTER, DataParser.parsePrinterData(line)).toByteArray()
+                    : line.getBytes(StandardCharsets.UTF_8);
+            writer.record("sf/printer/" + name, payload, step * 100_000_000L);
+        }
+    }
+
+    /**
+     * Writes one position fix of a tag.
+     */
+    private static void writeFix(TraceFile.Writer writer, BinaryCodec.Encoder encoder, int tag,
+                                 double x, double y, long nanos, boolean binary) throws IOException {
+        String name = tag == 0 ? IngestPipeline.OWN_TAG : "tag-" + tag;
+        String line = String.format(Locale.US, "position,tagName=%s positionX=%.2f,positionY=%.2f,positionZ=0",
+                name, x, y);
+        byte[] payload = binary
+                ? encoder.begin(BinaryCodec.TYPE_UWB)
+                .putAll(BinaryCodec.TYPE_UWB, DataParser.parseUwbData(line)).toByteArray()
+                : line.getBytes(StandardCharsets.UTF_8);
+        writer.record(IngestPipeline.UWB_TOPIC_PREFIX + name, payload, nanos + tag * 1000L);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayHarness <trace file | synthetic | stationary> [1 | <factor> | max] [adaptive]");
+            return;
+        }
+        File trace;
+        if (args[0].equals("synthetic") || args[0].equals("stationary")) {
+            trace = File.createTempFile(args[0], ".trace");
+            trace.deleteOnExit();
+            if (args[0].equals("synthetic")) {
+                writeSyntheticTrace(trace, 3, 200, 60, false);
+            } else {
+                writeStationaryTrace(trace, 3, 200, 60, false);
+            }
+        } else {
+            trace = new File(args[0]);
+        }
+        double speed = args.length < 2 || args[1].equals("max") ? MAX_SPEED : Double.parseDouble(args[1]);
+        System.out.println(replay(trace, speed, args.length > 2 && args[2].equals("adaptive")));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ReplayHarnessTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplaysAtMaxSpeedThroughTheIngestPath() throws Exception {
+        File trace = folder.newFile("load.trace");
+        long messages = ReplayHarness.writeSyntheticTrace(trace, 3, 100, 20, false);
+
+        ReplayHarness.Report report = ReplayHarness.replay(trace, ReplayHarness.MAX_SPEED);
+
+        assertEquals(messages, report.getPublished());
+        assertEquals(messages, report.getApplied() + report.getConflated());
+        assertEquals(0, report.getDropped());
+        assertEquals(0, report.getFailed());
+        assertEquals(100, report.getTags());
+        assertNotNull(DataHolder.getInstance().getPrinterState("sf/printer/c"));
+    }
+
+    @Test
+    public void testReplaysBinaryTrafficAtTheRecordedPaceTimesN() throws Exception {
+        File trace = folder.newFile("paced.trace");
+        long messages = ReplayHarness.writeSyntheticTrace(trace, 3, 20, 10, true);
+
+        // Ten seconds of traffic at 10x take about one second
+        ReplayHarness.Report report = ReplayHarness.replay(trace, 10);
+
+        assertEquals(messages, report.getPublished());
+        assertEquals(messages, report.getApplied() + report.getConflated());
+        assertEquals(0, report.getDropped());
+        assertEquals(0, report.getFailed());
+        // Conflation only ever replaces a message with a newer one, so every topic ends current
+        assertEquals(0, report.getTopicsBehind());
+        assertTrue(report.getWallSeconds() >= 0.9);
+        assertTrue(report.getWallSeconds() < 5);
+        assertTrue(report.getLatency().getPercentile(50) < 50_000_000L);
+    }
+
+    @Test
+    public void testMotionGateTakesStationaryTagsOffTheFullPath() throws Exception {
+        File trace = folder.newFile("stationary.trace");
+        ReplayHarness.writeStationaryTrace(trace, 3, 100, 30, false);
+        // Both paths compiled before either run is measured
+        File warmUp = folder.newFile("warm-up.trace");
+        ReplayHarness.writeStationaryTrace(warmUp, 3, 100, 10, false);
+        ReplayHarness.replay(warmUp, 10, true);
+
+        // The same 30 s of traffic at 10x, first with every fix in full
+        ReplayHarness.Report full = ReplayHarness.replay(trace, 10, false);
+        ReplayHarness.Report adaptive = ReplayHarness.replay(trace, 10, true);
+
+        assertEquals(0, full.getFailed());
+        assertEquals(0, adaptive.getFailed());
+        assertEquals(0, full.getLightFixes());
+        long fixes = adaptive.getFullFixes() + adaptive.getLightFixes();
+        assertTrue(fixes > 0.95 * full.getFullFixes());
+        // Most fixes are of tags at rest
+        assertTrue(adaptive.getLightFixes() > 0.6 * fixes);
+        assertTrue(adaptive.getSettled() >= 100);
+        assertTrue(adaptive.getWoken() >= 1);
+        assertTrue(adaptive.getRenders() < full.getRenders());
+        // Light fixes are tokenized from the payload up to their coordinates only
+        assertTrue(adaptive.getPipelineCpuMillisPerMinute() < full.getPipelineCpuMillisPerMinute());
+        // The wearer's walk from A to C is still followed
+        assertEquals("sf/printer/c", full.getOwnZone());
+        assertEquals("sf/printer/c", adaptive.getOwnZone());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StateSnapshotFileTest {
+    private static final String PRINTER_A = "sf/printer/a";
+    private static final String PRINTER_B = "sf/printer/b";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DataHolder holder = DataHolder.getInstance();
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        holder.clearAll();
+        file = new File(folder.getRoot(), "state.snapshot");
+    }
+
+    /**
+     * Saves a session with two printers and a position, then clears the holder like a fresh process.
+     */
+    private void saveSession() throws IOException {
+        holder.setActivePrinter(PRINTER_B);
+        holder.updatePrinterData(PRINTER_B, Map.of("printer_name", "b", "completion", "12.5"));
+        holder.setActivePrinter(PRINTER_A);
+        holder.updatePrinterData(PRINTER_A, Map.of("printer_name", "a", "state", "Printing", "job_name", "Bracket ü"));
+        holder.updateUwbData(Map.of("positionX", "1.5", "positionY", "2.0"));
+        StateSnapshotFile.save(file, holder);
+
+        holder.clearAll();
+        holder.setActivePrinter(null);
+    }
+
+    @Test
+    public void testRoundTripRestoresStateAsStale() throws IOException {
+        saveSession();
+        long savedUwbTime = System.currentTimeMillis();
+
+        assertTrue(StateSnapshotFile.load(file, holder));
+
+        DataHolder.Snapshot snapshot = holder.getSnapshot();
+        assertEquals(PRINTER_A, snapshot.getActivePrinterTopic());
+        assertEquals("Printing", snapshot.getPrinterData().get("state"));
+        assertEquals("Bracket ü", snapshot.getPrinterData().get("job_name"));
+        assertTrue(snapshot.isPrinterRestored());
+        assertTrue(snapshot.getPrinterUpdateTime() > 0);
+        assertEquals("1.5", snapshot.getUwbData().get("positionX"));
+        assertTrue(snapshot.isUwbRestored());
+        assertTrue(snapshot.getUwbUpdateTime() <= savedUwbTime);
+
+        PrinterStateStore.PrinterState b = holder.getPrinterState(PRINTER_B);
+        assertEquals("12.5", b.getData().get("completion"));
+        assertTrue(b.isRestored());
+    }
+
+    @Test
+    public void testLiveDataReplacesRestoredState() throws IOException {
+        saveSession();
+        assertTrue(StateSnapshotFile.load(file, holder));
+
+        holder.updatePrinterData(PRINTER_A, Map.of("state", "Paused"));
+        holder.updateUwbData(Map.of("positionX", "3.0"));
+
+        DataHolder.Snapshot snapshot = holder.getSnapshot();
+        assertFalse(snapshot.isPrinterRestored());
+        assertFalse(snapshot.isUwbRestored());
+        // Restored fields the live message omits are not passed off as live
+        assertEquals("Paused", snapshot.getPrinterData().get("state"));
+        assertNull(snapshot.getPrinterData().get("printer_name"));
+        assertEquals("3.0", snapshot.getUwbData().get("positionX"));
+        assertNull(snapshot.getUwbData().get("positionY"));
+
+        // From then on live messages merge as usual
+        holder.updatePrinterData(PRINTER_A, Map.of("printer_name", "a"));
+        assertEquals("Paused", holder.getSnapshot().getPrinterData().get("state"));
+    }
+
+    @Test
+    public void testLiveDataIsNotOverwrittenByLateRestore() throws IOException {
+        saveSession();
+        holder.setActivePrinter(PRINTER_A);
+        holder.updatePrinterData(PRINTER_A, Map.of("state", "Idle"));
+
+        assertTrue(StateSnapshotFile.load(file, holder));
+
+        DataHolder.Snapshot snapshot = holder.getSnapshot();
+        assertEquals("Idle", snapshot.getPrinterData().get("state"));
+        assertNull(snapshot.getPrinterData().get("printer_name"));
+        assertFalse(snapshot.isPrinterRestored());
+    }
+
+    @Test
+    public void testTruncatedOrMissingFileRestoresNothing() throws IOException {
+        assertFalse(StateSnapshotFile.load(file, holder));
+
+        saveSession();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(Arrays.copyOf(bytes, bytes.length - 10));
+        }
+
+        assertFalse(StateSnapshotFile.load(file, holder));
+        assertNull(holder.getSnapshot().getActivePrinterTopic());
+        assertNull(holder.getPrinterState(PRINTER_A));
+        assertTrue(holder.getSnapshot().getUwbData().isEmpty());
+    }
+}
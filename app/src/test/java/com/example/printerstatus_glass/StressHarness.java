@@ -0,0 +1,128 @@
+package com.example.printerstatus_glass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs many threads against shared state at once, in the spirit of jcstress: every thread
+ * is released by the same barrier, runs its role in a loop until the time is up, and is
+ * joined before the result is read, so the checks see everything the threads did. The
+ * first exception or failed assertion of any thread stops the run and is rethrown.
+ */
+public final class StressHarness {
+    private static final long JOIN_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * What one thread does, called in a loop.
+     */
+    public interface Role {
+        /**
+         * Performs one operation.
+         * @param thread Index of the thread among all threads of the run
+         * @param iteration Number of operations this thread has done before
+         * @throws Exception Ends the run and fails it
+         */
+        void run(int thread, long iteration) throws Exception;
+    }
+
+    /**
+     * Operations done by every thread of a run.
+     */
+    public static final class Result {
+        private final String[] names;
+        private final long[] operations;
+
+        Result(String[] names, long[] operations) {
+            this.names = names;
+            this.operations = operations;
+        }
+
+        /**
+         * @param name A role name
+         * @return Operations of all threads in that role
+         */
+        public long getOperations(String name) {
+            long total = 0;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    total += operations[i];
+                }
+            }
+            return total;
+        }
+    }
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Role> roles = new ArrayList<>();
+
+    /**
+     * Adds threads that all run the same role.
+     * @param name Name of the role in the result
+     * @param count Number of threads
+     * @param role The operation they run
+     * @return This harness
+     */
+    public StressHarness add(String name, int count, Role role) {
+        for (int i = 0; i < count; i++) {
+            names.add(name);
+            roles.add(role);
+        }
+        return this;
+    }
+
+    /**
+     * Runs all threads at once for a while and joins them.
+     * @param durationMillis How long the threads run
+     * @return The operations per thread
+     * @throws Exception The first failure of any thread
+     */
+    public Result run(long durationMillis) throws Exception {
+        int threads = roles.size();
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] operations = new long[threads];
+        Thread[] workers = new Thread[threads];
+        long[] deadline = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Role role = roles.get(t);
+            workers[t] = new Thread(() -> {
+                long iteration = 0;
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline[0] && failure.get() == null) {
+                        role.run(thread, iteration++);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+                operations[thread] = iteration;
+            }, "stress-" + names.get(t) + "-" + t);
+            workers[t].start();
+        }
+        deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        try {
+            // Publishes the deadline to the workers
+            start.await();
+        } catch (BrokenBarrierException e) {
+            failure.compareAndSet(null, e);
+        }
+        for (Thread worker : workers) {
+            worker.join(durationMillis + JOIN_TIMEOUT_MILLIS);
+            if (worker.isAlive()) {
+                throw new AssertionError(worker.getName() + " did not finish");
+            }
+        }
+        Throwable first = failure.get();
+        if (first instanceof Exception) {
+            throw (Exception) first;
+        } else if (first != null) {
+            throw (Error) first;
+        }
+        return new Result(names.toArray(new String[0]), operations);
+    }
+}
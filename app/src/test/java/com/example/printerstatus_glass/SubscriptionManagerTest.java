@@ -0,0 +1,91 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SubscriptionManagerTest {
+    private static final long GRACE = 1000;
+
+    private final List<List<String>> subscribeRequests = new ArrayList<>();
+    private final List<List<String>> unsubscribeRequests = new ArrayList<>();
+    private SubscriptionManager manager;
+
+    @Before
+    public void setUp() {
+        SubscriptionManager.Transport transport = new SubscriptionManager.Transport() {
+            @Override
+            public void subscribe(String[] topics) {
+                subscribeRequests.add(Arrays.asList(topics));
+            }
+
+            @Override
+            public void unsubscribe(String[] topics) {
+                unsubscribeRequests.add(Arrays.asList(topics));
+            }
+        };
+        manager = new SubscriptionManager(transport, null, 3, GRACE);
+    }
+
+    @Test
+    public void testBatchesSubscriptions() {
+        manager.acquire("sf/UWB/uwb-a");
+        manager.acquire("sf/printer/a");
+        manager.acquire("sf/printer/a");
+        manager.flush(System.currentTimeMillis());
+
+        assertEquals(1, subscribeRequests.size());
+        assertEquals(Arrays.asList("sf/UWB/uwb-a", "sf/printer/a"), subscribeRequests.get(0));
+    }
+
+    @Test
+    public void testUnsubscribesAfterGracePeriod() {
+        manager.acquire("sf/printer/a");
+        manager.flush(System.currentTimeMillis());
+        manager.release("sf/printer/a");
+
+        manager.flush(System.currentTimeMillis());
+        assertTrue(unsubscribeRequests.isEmpty());
+        assertTrue(manager.isActive("sf/printer/a"));
+
+        manager.flush(System.currentTimeMillis() + GRACE);
+        assertEquals(List.of(List.of("sf/printer/a")), unsubscribeRequests);
+        assertFalse(manager.isActive("sf/printer/a"));
+    }
+
+    @Test
+    public void testReacquireDuringGraceKeepsSubscription() {
+        manager.acquire("sf/printer/a");
+        manager.flush(System.currentTimeMillis());
+        manager.release("sf/printer/a");
+        manager.acquire("sf/printer/a");
+        manager.flush(System.currentTimeMillis() + GRACE);
+
+        assertEquals(1, subscribeRequests.size());
+        assertTrue(unsubscribeRequests.isEmpty());
+    }
+
+    @Test
+    public void testActiveSetIsBounded() {
+        // Walk past five printers; only three topics may stay subscribed
+        String previous = null;
+        for (String topic : List.of("sf/printer/a", "sf/printer/b", "sf/printer/c", "sf/printer/d", "sf/printer/e")) {
+            manager.acquire(topic);
+            if (previous != null) {
+                manager.release(previous);
+            }
+            manager.flush(System.currentTimeMillis());
+            previous = topic;
+        }
+
+        assertEquals(3, manager.getSubscribedTopics().size());
+        assertTrue(manager.getSubscribedTopics().contains("sf/printer/e"));
+        assertFalse(manager.getSubscribedTopics().contains("sf/printer/a"));
+        assertEquals(2, manager.getUnsubscribeCalls());
+    }
+}
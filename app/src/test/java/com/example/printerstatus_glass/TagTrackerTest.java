@@ -0,0 +1,209 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TagTrackerTest {
+    private static final String TOPIC_A = "sf/printer/a";
+
+    // Every fix mapped to its zone directly, as before filtering and hysteresis
+    private static TagTracker unfiltered() {
+        return new TagTracker(new PositionFilter(1, 1, 0), 0, 0);
+    }
+
+    @Test
+    public void testTagsGetStableIdsPastTheInitialCapacity() {
+        TagTracker tracker = new TagTracker();
+        for (int i = 0; i < 300; i++) {
+            assertEquals(i, tracker.register("tag-" + i));
+        }
+        assertEquals(300, tracker.size());
+        assertEquals(42, tracker.indexOf("tag-42"));
+        assertEquals(299, tracker.register("tag-299"));
+        assertEquals(-1, tracker.indexOf("unknown"));
+        assertEquals("tag-7", tracker.getName(7));
+        assertTrue(Double.isNaN(tracker.getX(7)));
+    }
+
+    @Test
+    public void testEachTagResolvesItsOwnZone() {
+        TagTracker tracker = unfiltered();
+        int a = tracker.update("uwb-a", 0.5, 3.0, 0, 1000);
+        int b = tracker.update("uwb-b", 0.5, 2.0, 0, 1000);
+        tracker.update("uwb-c", 0.6, 3.1, 0, 1000);
+
+        assertEquals("sf/printer/a", tracker.getZone(a));
+        assertEquals("sf/printer/b", tracker.getZone(b));
+        assertEquals(2, tracker.countInZone("sf/printer/a"));
+        assertEquals(1, tracker.countInZone("sf/printer/b"));
+
+        // Missing coordinates keep the previous value
+        tracker.update("uwb-a", 6.0, Double.NaN, Double.NaN, 2000);
+        assertEquals(3.0, tracker.getY(a), 0);
+        assertEquals("sf/printer/c", tracker.getZone(a));
+        assertEquals(1, tracker.countInZone("sf/printer/a"));
+        assertEquals(1, tracker.countInZone("sf/printer/c"));
+        assertEquals(2000, tracker.getUpdateTime(a));
+
+        tracker.update("uwb-b", 10.0, 10.0, 0, 3000);
+        assertNull(tracker.getZone(b));
+        assertEquals(0, tracker.countInZone("sf/printer/b"));
+    }
+
+    @Test
+    public void testUpdatesOnlyReachListenersOfTheirTag() {
+        TagTracker tracker = unfiltered();
+        AtomicInteger ownUpdates = new AtomicInteger();
+        List<String> ownZones = new ArrayList<>();
+        List<String> allZones = new ArrayList<>();
+        tracker.addListener("uwb-a", (t, tag) -> ownUpdates.incrementAndGet());
+        tracker.addZoneListener("uwb-a", (t, tag, previous, topic) -> ownZones.add(previous + ">" + topic));
+        tracker.addZoneListener((t, tag, previous, topic) -> allZones.add(t.getName(tag) + ":" + topic));
+
+        tracker.update("uwb-b", 0.5, 2.0, 0, 1000);
+        tracker.update("uwb-b", 0.6, 2.0, 0, 1100);
+        assertEquals(0, ownUpdates.get());
+        assertTrue(ownZones.isEmpty());
+
+        tracker.update("uwb-a", 0.5, 3.0, 0, 1200);
+        tracker.update("uwb-a", 0.6, 3.0, 0, 1300);
+        tracker.update("uwb-a", 6.0, 3.0, 0, 1400);
+        assertEquals(3, ownUpdates.get());
+        assertEquals(List.of("null>sf/printer/a", "sf/printer/a>sf/printer/c"), ownZones);
+        // Moving inside a zone is no zone change
+        assertEquals(List.of("uwb-b:sf/printer/b", "uwb-a:sf/printer/a", "uwb-a:sf/printer/c"), allZones);
+        assertEquals(3, tracker.getZoneChanges());
+        assertEquals(5, tracker.getUpdates());
+    }
+
+    @Test
+    public void testHundredsOfTagsAtTenHertzKeepUp() {
+        TagTracker tracker = new TagTracker();
+        AtomicInteger ownUpdates = new AtomicInteger();
+        tracker.addListener("tag-0", (t, tag) -> ownUpdates.incrementAndGet());
+        int tags = 500;
+        int seconds = 60;
+        String[] names = new String[tags];
+        for (int i = 0; i < tags; i++) {
+            names[i] = "tag-" + i;
+        }
+
+        // One simulated minute of every tag walking through the zones at 10 Hz
+        long start = System.nanoTime();
+        for (int step = 0; step < seconds * 10; step++) {
+            for (int i = 0; i < tags; i++) {
+                double x = (i + step * 0.01) % 7.0;
+                double y = 1.5 + (i % 3);
+                tracker.update(names[i], x, y, 0, step * 100L);
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        long updates = (long) tags * seconds * 10;
+        assertEquals(updates, tracker.getUpdates());
+        assertEquals(seconds * 10, ownUpdates.get());
+        int inZones = tracker.countInZone("sf/printer/a") + tracker.countInZone("sf/printer/b")
+                + tracker.countInZone("sf/printer/c");
+        assertTrue(inZones <= tags);
+        // A minute of traffic must be handled in a small fraction of a minute
+        assertTrue(elapsedSeconds < seconds / 10.0);
+    }
+
+    @Test
+    public void testHysteresisStopsFlappingOnAZoneBorder() {
+        // A wearer standing on the A/B border for a minute
+        double[][] trace = walk(new Random(1), new double[][]{{0.5, 2.6, 60}});
+        int[] raw = replay(unfiltered(), trace);
+        int[] filtered = replay(new TagTracker(), trace);
+
+        assertTrue(raw[0] > 20);
+        assertTrue(filtered[0] <= 2);
+        assertTrue(filtered[1] * 10 < raw[1]);
+    }
+
+    @Test
+    public void testHysteresisKeepsRealZoneChanges() {
+        // A to B, back to A, then over to C, standing a while at every printer
+        double[][] trace = walk(new Random(2), new double[][]{
+                {0.5, 3.4, 10}, {0.5, 1.8, 2}, {0.5, 1.8, 10}, {0.5, 3.4, 2}, {0.5, 3.4, 5},
+                {6.5, 3.4, 6}, {6.5, 3.4, 10}});
+        List<String> rawTopics = new ArrayList<>();
+        List<String> filteredTopics = new ArrayList<>();
+        int[] raw = replay(unfiltered(), trace, rawTopics);
+        int[] filtered = replay(new TagTracker(), trace, filteredTopics);
+
+        assertEquals(List.of("sf/printer/b", TOPIC_A, "sf/printer/c"), filteredTopics);
+        assertTrue(raw[0] >= filtered[0]);
+        assertTrue(raw[1] >= filtered[1]);
+    }
+
+    /**
+     * Builds a 10 Hz trace through waypoints, with UWB-like jitter and occasional multipath jumps.
+     * @param segments Target x, y and seconds to get there (or to stay, if already there)
+     * @return Fixes as {time, x, y}
+     */
+    private static double[][] walk(Random random, double[][] segments) {
+        List<double[]> fixes = new ArrayList<>();
+        double x = segments[0][0];
+        double y = segments[0][1];
+        long time = 0;
+        for (double[] segment : segments) {
+            int steps = (int) (segment[2] * 10);
+            double stepX = (segment[0] - x) / steps;
+            double stepY = (segment[1] - y) / steps;
+            for (int i = 0; i < steps; i++) {
+                x += stepX;
+                y += stepY;
+                double jitter = random.nextDouble() < 0.01 ? 1.0 : 0.15;
+                fixes.add(new double[]{time, x + random.nextGaussian() * jitter, y + random.nextGaussian() * jitter});
+                time += 100;
+            }
+        }
+        return fixes.toArray(new double[0][]);
+    }
+
+    private static int[] replay(TagTracker tracker, double[][] trace) {
+        return replay(tracker, trace, new ArrayList<>());
+    }
+
+    /**
+     * Replays a trace of the wearer's tag and follows it like the app does.
+     * Subscriptions are released without a grace period, so every switch costs a broker round trip.
+     * @return Topic switches and subscribe calls
+     */
+    private static int[] replay(TagTracker tracker, double[][] trace, List<String> topics) {
+        SubscriptionManager.Transport transport = new SubscriptionManager.Transport() {
+            @Override
+            public void subscribe(String[] subscribe) {
+            }
+
+            @Override
+            public void unsubscribe(String[] unsubscribe) {
+            }
+        };
+        SubscriptionManager subscriptions = new SubscriptionManager(transport, null, 8, 0);
+        String[] current = {TOPIC_A};
+        subscriptions.acquire(TOPIC_A);
+        subscriptions.flush(System.currentTimeMillis());
+        tracker.addZoneListener("uwb-a", (t, tag, previous, topic) -> {
+            if (topic != null && !topic.equals(current[0])) {
+                subscriptions.release(current[0]);
+                current[0] = topic;
+                subscriptions.acquire(topic);
+                topics.add(topic);
+            }
+        });
+
+        for (double[] fix : trace) {
+            tracker.update("uwb-a", fix[1], fix[2], 0, (long) fix[0]);
+            subscriptions.flush(System.currentTimeMillis());
+        }
+        return new int[]{topics.size(), (int) subscriptions.getSubscribeCalls() - 1};
+    }
+}
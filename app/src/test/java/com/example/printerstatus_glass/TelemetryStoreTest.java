@@ -0,0 +1,122 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TelemetryStoreTest {
+    private static final String PRINTER_A = "sf/printer/a";
+    private static final String PRINTER_B = "sf/printer/b";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testQueryDownsamplesIntoBuckets() throws IOException {
+        TelemetryStore store = new TelemetryStore(folder.newFile(), 4, 64);
+        // Tool heats up by 10 degrees per second over 4 seconds
+        for (int i = 0; i < 40; i++) {
+            store.append(PRINTER_A, 1000 + i * 100, 60, 20 + i, Double.NaN, Double.NaN);
+        }
+
+        double[] buckets = new double[4];
+        assertEquals(40, store.query(PRINTER_A, TelemetryStore.Field.TOOL_TEMPERATURE, 1000, 5000, buckets));
+        assertEquals(24.5, buckets[0], 1e-9);
+        assertEquals(54.5, buckets[3], 1e-9);
+
+        // Missing values and empty ranges become NaN
+        assertEquals(0, store.query(PRINTER_A, TelemetryStore.Field.COMPLETION, 1000, 5000, buckets));
+        assertTrue(Double.isNaN(buckets[0]));
+        assertEquals(10, store.query(PRINTER_A, TelemetryStore.Field.BED_TEMPERATURE, 0, 2000, buckets));
+        assertTrue(Double.isNaN(buckets[0]));
+        assertEquals(60, buckets[3], 1e-9);
+        store.close();
+    }
+
+    @Test
+    public void testRingKeepsOnlyNewestSamples() throws IOException {
+        File file = folder.newFile();
+        TelemetryStore store = new TelemetryStore(file, 2, 16);
+        long length = file.length();
+        for (int i = 0; i < 1000; i++) {
+            store.append(PRINTER_A, i, i, i, i, i);
+        }
+
+        assertEquals(16, store.size(PRINTER_A));
+        assertEquals(length, file.length());
+        double[] bucket = new double[1];
+        assertEquals(16, store.query(PRINTER_A, TelemetryStore.Field.COMPLETION, 0, 1000, bucket));
+        assertEquals((984 + 999) / 2.0, bucket[0], 1e-9);
+        store.close();
+    }
+
+    @Test
+    public void testHistorySurvivesReopen() throws IOException {
+        File file = folder.newFile();
+        TelemetryStore store = new TelemetryStore(file, 4, 32);
+        store.append(PRINTER_A, 1000, Map.of("bed_temperature_current", "55.5", "state", "Printing"));
+        store.append(PRINTER_A, 2000, Map.of("state", "Paused")); // no numeric field, ignored
+        store.close();
+
+        TelemetryStore reopened = new TelemetryStore(file, 4, 32);
+        assertEquals(1, reopened.size(PRINTER_A));
+        double[] bucket = new double[1];
+        reopened.query(PRINTER_A, TelemetryStore.Field.BED_TEMPERATURE, 0, 5000, bucket);
+        assertEquals(55.5, bucket[0], 1e-9);
+        reopened.close();
+
+        // A different geometry starts over instead of misreading the file
+        TelemetryStore resized = new TelemetryStore(file, 8, 32);
+        assertEquals(0, resized.size(PRINTER_A));
+        resized.close();
+    }
+
+    @Test
+    public void testLeastRecentlyUpdatedPrinterLosesItsSlot() throws IOException {
+        TelemetryStore store = new TelemetryStore(folder.newFile(), 2, 8);
+        store.append(PRINTER_A, 1000, 1, 1, 1, 1);
+        store.append(PRINTER_B, 2000, 2, 2, 2, 2);
+        store.append("sf/printer/c", 3000, 3, 3, 3, 3);
+
+        assertEquals(0, store.size(PRINTER_A));
+        assertEquals(1, store.size(PRINTER_B));
+        assertEquals(1, store.size("sf/printer/c"));
+        store.close();
+    }
+
+    @Test
+    public void testAppendAndQueryDoNotAllocate() throws IOException {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        long threadId = Thread.currentThread().getId();
+
+        TelemetryStore store = new TelemetryStore(folder.newFile(), 4, 1024);
+        double[] buckets = new double[32];
+        int iterations = 50_000;
+        for (int i = 0; i < iterations; i++) {
+            store.append(PRINTER_A, i, i, i, i, i);
+        }
+        store.query(PRINTER_A, TelemetryStore.Field.TOOL_TEMPERATURE, 0, iterations, buckets);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            store.append(PRINTER_A, iterations + i, i, i, i, i);
+        }
+        for (int i = 0; i < 100; i++) {
+            store.query(PRINTER_A, TelemetryStore.Field.TOOL_TEMPERATURE, 0, 2L * iterations, buckets);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        store.close();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TopicPrefetcherTest {
+    private SubscriptionManager manager;
+    private TopicPrefetcher prefetcher;
+
+    @Before
+    public void setUp() {
+        SubscriptionManager.Transport transport = new SubscriptionManager.Transport() {
+            @Override
+            public void subscribe(String[] topics) {}
+
+            @Override
+            public void unsubscribe(String[] topics) {}
+        };
+        manager = new SubscriptionManager(transport, null);
+        prefetcher = new TopicPrefetcher(manager);
+        PrinterTopicSelector.resetZones();
+    }
+
+    @Test
+    public void testPrefetchesZoneAhead() {
+        // Walk north through zone B at 1 m/s, 10 Hz fixes
+        long time = 0;
+        for (double y = 1.2; y < 2.0; y += 0.1, time += 100) {
+            prefetcher.onPosition(time, 0.5, y, "sf/printer/b");
+        }
+
+        assertEquals(1.0, prefetcher.getVelocityY(), 0.01);
+        assertEquals(0.0, prefetcher.getVelocityX(), 0.01);
+        assertTrue(manager.isActive("sf/printer/a"));
+        assertFalse(manager.isActive("sf/printer/c"));
+
+        // The printer published after the prefetch
+        prefetcher.onZoneEntered("sf/printer/a", time);
+        assertEquals(1.0, prefetcher.getHitRate(), 0);
+        assertEquals(1, prefetcher.getPrefetches());
+    }
+
+    @Test
+    public void testStateFromBeforeThePrefetchIsNoHit() {
+        long time = 0;
+        for (double y = 1.2; y < 2.0; y += 0.1, time += 100) {
+            prefetcher.onPosition(time, 0.5, y, "sf/printer/b");
+        }
+
+        // State left over from an earlier visit, not brought in by the prefetch
+        prefetcher.onZoneEntered("sf/printer/a", 1);
+        // Zone that was never predicted, with a lingering subscription
+        prefetcher.onZoneEntered("sf/printer/c", time);
+        assertEquals(0.0, prefetcher.getHitRate(), 0);
+        assertEquals(2, prefetcher.getZoneEntries());
+    }
+
+    @Test
+    public void testStandingStillPrefetchesNothing() {
+        for (long time = 0; time < 2000; time += 100) {
+            // Jitter of a few centimetres around one spot
+            prefetcher.onPosition(time, 0.5 + (time % 300 == 0 ? 0.03 : -0.03), 2.4, "sf/printer/b");
+        }
+        assertEquals(0, prefetcher.getPrefetches());
+    }
+
+    @Test
+    public void testStalePredictionIsReleasedAndCountedAsWasted() {
+        long time = 0;
+        for (double y = 1.2; y < 2.0; y += 0.1, time += 100) {
+            prefetcher.onPosition(time, 0.5, y, "sf/printer/b");
+        }
+        assertTrue(manager.isActive("sf/printer/a"));
+
+        // Wearer stops and turns around; prediction expires
+        for (long end = time + TopicPrefetcher.PREFETCH_TTL_MILLIS + 1000; time < end; time += 100) {
+            prefetcher.onPosition(time, 0.5, 1.9, "sf/printer/b");
+        }
+
+        assertEquals(1, prefetcher.getWastedPrefetches());
+        manager.flush(System.currentTimeMillis() + SubscriptionManager.DEFAULT_GRACE_MILLIS);
+        assertFalse(manager.isActive("sf/printer/a"));
+    }
+}
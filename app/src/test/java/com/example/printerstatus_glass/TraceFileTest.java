@@ -0,0 +1,79 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TraceFileTest {
+    private static final String UWB = "position,tagName=uwb-a positionX=5.02,positionY=2.86,positionZ=0";
+
+    @Test
+    public void testRoundTripKeepsTopicsPayloadsAndTiming() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] binary = {BinaryCodec.MARKER, 2, 0, (byte) 0xFF};
+        try (TraceFile.Writer writer = new TraceFile.Writer(bytes)) {
+            writer.record("sf/UWB/uwb-a", UWB.getBytes(StandardCharsets.UTF_8), 5_000_000_000L);
+            writer.record("sf/printer/a", binary, 5_000_250_000L);
+            writer.record("sf/UWB/uwb-a", new byte[0], 5_100_250_000L);
+            assertEquals(3, writer.getRecords());
+        }
+
+        try (TraceFile.Reader reader = new TraceFile.Reader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertTrue(reader.next());
+            assertEquals("sf/UWB/uwb-a", reader.getTopic());
+            assertEquals(UWB, new String(reader.getPayload(), StandardCharsets.UTF_8));
+            assertEquals(0, reader.getTimeMicros());
+            assertTrue(reader.next());
+            assertEquals("sf/printer/a", reader.getTopic());
+            assertArrayEquals(binary, reader.getPayload());
+            assertEquals(250, reader.getTimeMicros());
+            assertTrue(reader.next());
+            assertEquals("sf/UWB/uwb-a", reader.getTopic());
+            assertEquals(0, reader.getPayload().length);
+            assertEquals(100_250, reader.getTimeMicros());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void testRepeatedTopicsAreStoredOnce() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] payload = UWB.getBytes(StandardCharsets.UTF_8);
+        try (TraceFile.Writer writer = new TraceFile.Writer(bytes)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.record("sf/UWB/uwb-a", payload, i * 100_000_000L);
+            }
+        }
+        // Header, one topic, then delta (3 bytes), topic index, length and payload per record
+        assertTrue(bytes.size() < 5 + 20 + 1000 * (payload.length + 5));
+    }
+
+    @Test
+    public void testRejectsForeignAndTruncatedFiles() throws IOException {
+        try {
+            new TraceFile.Reader(new ByteArrayInputStream("not a trace".getBytes(StandardCharsets.UTF_8)));
+            fail("Foreign file accepted");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceFile.Writer writer = new TraceFile.Writer(bytes)) {
+            writer.record("sf/UWB/uwb-a", UWB.getBytes(StandardCharsets.UTF_8), 0);
+        }
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 10);
+        try (TraceFile.Reader reader = new TraceFile.Reader(new ByteArrayInputStream(truncated))) {
+            reader.next();
+            fail("Truncated record accepted");
+        } catch (EOFException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.printerstatus_glass;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Publish-to-render tracing end to end over a local broker: a simulated publisher whose
+ * clock runs a known skew ahead stamps its messages and answers clock pings; the headset
+ * side is the app's MqttHandler and IngestPipeline with a frame loop standing in for the HUD.
+ */
+public class TraceLatencyTest {
+    private static final String PRINTER = "sf/printer/a";
+    private static final String OTHER_PRINTER = "sf/printer/b"; // subscribed, e.g. lingering, but not shown
+    private static final long SKEW_MICROS = 2_500_000; // publisher clock 2.5 s ahead
+    private static final long SEND_DELAY_MILLIS = 20; // publisher stamps, then sends this much later
+    private static final long FRAME_MILLIS = 16;
+    private static final int MESSAGES = 40;
+    private static final long TIMEOUT = 10_000;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService frames = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+    private final LatencyMetrics metrics = new LatencyMetrics();
+    private final ClockSync clockSync = new ClockSync("glass-trace");
+    private final TraceRecorder recorder = new TraceRecorder(clockSync, metrics);
+    private final AtomicLong renderRequests = new AtomicLong();
+    private LocalBroker broker;
+    private MqttHandler handler;
+    private MqttClient publisher;
+
+    private static long publisherMicros() {
+        return ClockSync.nowMicros() + SKEW_MICROS;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DataHolder.getInstance().clearAll();
+        DataHolder.getInstance().setActivePrinter(PRINTER);
+        broker = new LocalBroker().start();
+
+        // The publisher also echoes clock pings, on its own skewed clock and off Paho's thread
+        publisher = new MqttClient(broker.getUrl(), "skewed-publisher", new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        publisher.connect(options);
+        publisher.subscribe(ClockSync.PING_WILDCARD, (topic, message) -> {
+            long received = publisherMicros();
+            responder.execute(() -> {
+                try {
+                    publisher.publish(ClockSync.pongTopicFor(topic),
+                            ClockSync.answer(message.getPayload(), received, publisherMicros()), 0, false);
+                } catch (MqttException e) {
+                    e.printStackTrace();
+                }
+            });
+        });
+
+        IngestPipeline pipeline = new IngestPipeline(DataHolder.getInstance(), new TagTracker(), null,
+                renderRequests::incrementAndGet);
+        pipeline.setTraceRecorder(recorder);
+        handler = new MqttHandler(scheduler, 20, 200);
+        handler.setMessageCallback(pipeline);
+        handler.subscribe(new String[]{PRINTER, OTHER_PRINTER, clockSync.getPongTopic()});
+        handler.connect(broker.getUrl(), "glass-trace");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        frames.shutdownNow();
+        responder.shutdownNow();
+        handler.disconnect();
+        publisher.disconnect();
+        publisher.close();
+        broker.stop();
+        scheduler.shutdownNow();
+        DataHolder.getInstance().clearAll();
+    }
+
+    /**
+     * Waits for the headset side to connect and subscribe, then syncs its clock with a few
+     * pings, like the app every few seconds.
+     * @return The deadline of the test, in System.currentTimeMillis()
+     */
+    private long connectAndSyncClock() throws Exception {
+        assertTrue(broker.awaitSubscription(clockSync.getPongTopic(), TIMEOUT));
+        assertTrue(broker.awaitSubscription(PRINTER, TIMEOUT));
+        assertTrue(broker.awaitSubscription(OTHER_PRINTER, TIMEOUT));
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!handler.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        while (clockSync.getSamples() < 4 && System.currentTimeMillis() < deadline) {
+            handler.publish(clockSync.getPingTopic(), clockSync.createPing(ClockSync.nowMicros()));
+            Thread.sleep(20);
+        }
+        return deadline;
+    }
+
+    @Test
+    public void testSkewIsRemovedFromPublishToRenderLatency() throws Exception {
+        long deadline = connectAndSyncClock();
+        long offset = clockSync.getOffsetMicros();
+        long errorBound = clockSync.getDelayMicros() / 2 + 1;
+        assertTrue(clockSync.getSamples() >= 4);
+        assertTrue("offset " + offset, Math.abs(offset - SKEW_MICROS) <= errorBound);
+        assertTrue(errorBound < 50_000);
+
+        // Traced messages, rendered by a frame loop
+        frames.scheduleAtFixedRate(() -> recorder.onRendered(System.nanoTime()),
+                FRAME_MILLIS, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < MESSAGES; i++) {
+            long stamp = publisherMicros();
+            Thread.sleep(SEND_DELAY_MILLIS);
+            publisher.publish(PRINTER, String.format(Locale.US,
+                    "printer_status,printer_name=a print_time=%d,trace_id=%d,publish_us=%d", i, i, stamp)
+                    .getBytes(), 0, false);
+        }
+        while (recorder.getTraced() < MESSAGES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(5 * FRAME_MILLIS);
+        assertEquals(MESSAGES, recorder.getTraced());
+        assertEquals(0, recorder.getUntimed());
+        assertEquals(MESSAGES - 1, DataHolder.getInstance().getPrinterState(PRINTER).getStatus().getPrintTime());
+
+        // Per message: never faster than the known send delay, nowhere near the 2.5 s skew
+        StringWriter csv = new StringWriter();
+        recorder.writeCsv(csv);
+        String[] rows = csv.toString().split("\n");
+        assertEquals(MESSAGES, rows.length);
+        long maxPublishToArrival = 0;
+        for (int i = 0; i < rows.length; i++) {
+            String[] columns = rows[i].split(",");
+            assertEquals(i, Long.parseLong(columns[0]));
+            long publishToArrival = Long.parseLong(columns[2]);
+            long arrivalToRender = Long.parseLong(columns[3]);
+            assertTrue(rows[i], publishToArrival >= SEND_DELAY_MILLIS * 1000 - errorBound);
+            assertTrue(rows[i], arrivalToRender >= 0 && arrivalToRender < 1_000_000);
+            maxPublishToArrival = Math.max(maxPublishToArrival, publishToArrival);
+        }
+        assertTrue(maxPublishToArrival < 1_000_000);
+
+        LatencyHistogram.Snapshot publishToArrival = metrics.getHistogram(LatencyMetrics.Stage.PUBLISH_TO_ARRIVAL).snapshot();
+        LatencyHistogram.Snapshot arrivalToRender = metrics.getHistogram(LatencyMetrics.Stage.ARRIVAL_TO_RENDER).snapshot();
+        LatencyHistogram.Snapshot publishToRender = metrics.getHistogram(LatencyMetrics.Stage.PUBLISH_TO_RENDER).snapshot();
+        assertEquals(MESSAGES, publishToArrival.getCount());
+        assertEquals(MESSAGES, arrivalToRender.getCount());
+        assertEquals(MESSAGES, publishToRender.getCount());
+        assertTrue(publishToRender.getPercentile(50) >= publishToArrival.getPercentile(50) / 1.125);
+        // Corrected for the skew, the percentiles stay within a second like every single row
+        assertTrue(publishToArrival.getPercentile(99) < 1_000_000_000L);
+        assertTrue(publishToRender.getPercentile(99) < 1_000_000_000L);
+    }
+
+    @Test
+    public void testPrintersNotOnScreenStayOutOfRenderStages() throws Exception {
+        long deadline = connectAndSyncClock();
+        assertTrue(clockSync.getSamples() >= 4);
+
+        // Traced messages on the shown printer and on another one, in turns
+        frames.scheduleAtFixedRate(() -> recorder.onRendered(System.nanoTime()),
+                FRAME_MILLIS, FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < MESSAGES; i++) {
+            Thread.sleep(SEND_DELAY_MILLIS);
+            publisher.publish(PRINTER, String.format(Locale.US,
+                    "printer_status,printer_name=a print_time=%d,trace_id=%d,publish_us=%d", i, i, publisherMicros())
+                    .getBytes(), 0, false);
+            publisher.publish(OTHER_PRINTER, String.format(Locale.US,
+                    "printer_status,printer_name=b print_time=%d,trace_id=%d,publish_us=%d", i, MESSAGES + i,
+                    publisherMicros()).getBytes(), 0, false);
+        }
+        while (recorder.getTraced() < 2 * MESSAGES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(5 * FRAME_MILLIS);
+        assertEquals(2 * MESSAGES, recorder.getTraced());
+        assertEquals(0, recorder.getUntimed());
+        assertEquals(MESSAGES - 1, DataHolder.getInstance().getPrinterState(OTHER_PRINTER).getStatus().getPrintTime());
+
+        // Only the shown printer's messages requested a render and waited for a frame
+        assertEquals(MESSAGES, renderRequests.get());
+        StringWriter csv = new StringWriter();
+        recorder.writeCsv(csv);
+        String[] rows = csv.toString().split("\n");
+        assertEquals(2 * MESSAGES, rows.length);
+        for (String row : rows) {
+            String[] columns = row.split(",");
+            long arrivalToRender = Long.parseLong(columns[3]);
+            if (Long.parseLong(columns[0]) < MESSAGES) {
+                assertTrue(row, arrivalToRender >= 0);
+            } else {
+                assertEquals(row, TraceRecorder.UNKNOWN, arrivalToRender);
+            }
+        }
+        assertEquals(2 * MESSAGES, metrics.getHistogram(LatencyMetrics.Stage.PUBLISH_TO_ARRIVAL).snapshot().getCount());
+        assertEquals(MESSAGES, metrics.getHistogram(LatencyMetrics.Stage.ARRIVAL_TO_RENDER).snapshot().getCount());
+        assertEquals(MESSAGES, metrics.getHistogram(LatencyMetrics.Stage.PUBLISH_TO_RENDER).snapshot().getCount());
+    }
+
+    @Test
+    public void testMessagesWaitForTheirFrame() throws IOException {
+        MessageTrace trace = new MessageTrace();
+        DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+        tokenizer.setTrace(trace);
+
+        // Before the first pong only arrival to render is known
+        tokenizer.tokenize("printer_status,printer_name=a trace_id=1,publish_us=1", DataParser.PRINTER_PREFIX, (k, v) -> { });
+        recorder.onMessage(trace, 1_000_000, true);
+        tokenizer.tokenize("printer_status,printer_name=b trace_id=2,publish_us=2", DataParser.PRINTER_PREFIX, (k, v) -> { });
+        recorder.onMessage(trace, 2_000_000, false);
+        tokenizer.tokenize("printer_status,printer_name=c", DataParser.PRINTER_PREFIX, (k, v) -> { });
+        recorder.onMessage(trace, 3_000_000, true); // untraced: ignored
+
+        StringWriter csv = new StringWriter();
+        recorder.writeCsv(csv);
+        assertEquals("", csv.toString()); // the first one still waits for a frame
+
+        recorder.onRendered(5_000_000);
+        recorder.writeCsv(csv);
+        assertEquals("1,1,-1,4000\n2,2,-1,-1\n", csv.toString());
+        assertEquals(2, recorder.getTraced());
+        assertEquals(2, recorder.getUntimed());
+        assertEquals(1, metrics.getHistogram(LatencyMetrics.Stage.ARRIVAL_TO_RENDER).snapshot(5_000_000).getCount());
+        assertEquals(0, metrics.getHistogram(LatencyMetrics.Stage.PUBLISH_TO_RENDER).snapshot(5_000_000).getCount());
+    }
+}
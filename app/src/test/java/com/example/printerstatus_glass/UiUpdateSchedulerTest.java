@@ -0,0 +1,108 @@
+package com.example.printerstatus_glass;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class UiUpdateSchedulerTest {
+    private static final long FRAME_NANOS = 16_666_667L; // 60 Hz display
+
+    private final List<UiUpdateScheduler.FrameListener> posted = new ArrayList<>();
+    private int renders;
+
+    /**
+     * Runs the frame callbacks posted so far, like one Choreographer frame.
+     */
+    private void runFrame(long frameTimeNanos) {
+        List<UiUpdateScheduler.FrameListener> frame;
+        synchronized (posted) {
+            frame = new ArrayList<>(posted);
+            posted.clear();
+        }
+        for (UiUpdateScheduler.FrameListener listener : frame) {
+            listener.doFrame(frameTimeNanos);
+        }
+    }
+
+    private UiUpdateScheduler createScheduler(double maxRateHz) {
+        return new UiUpdateScheduler(listener -> {
+            synchronized (posted) {
+                posted.add(listener);
+            }
+        }, () -> renders++, maxRateHz);
+    }
+
+    @Test
+    public void testBurstIsCoalescedIntoOneRender() {
+        UiUpdateScheduler scheduler = createScheduler(0);
+        for (int i = 0; i < 100; i++) {
+            scheduler.requestRender();
+        }
+        assertEquals(1, posted.size());
+
+        runFrame(FRAME_NANOS);
+        assertEquals(1, renders);
+        assertEquals(100, scheduler.getRequests());
+        assertEquals(99, scheduler.getCoalesced());
+
+        // Nothing new requested: next frame does not render
+        runFrame(2 * FRAME_NANOS);
+        assertEquals(1, renders);
+    }
+
+    @Test
+    public void testRequestAfterRenderGetsNextFrame() {
+        UiUpdateScheduler scheduler = createScheduler(0);
+        scheduler.requestRender();
+        runFrame(FRAME_NANOS);
+        scheduler.requestRender();
+        runFrame(2 * FRAME_NANOS);
+        assertEquals(2, renders);
+    }
+
+    @Test
+    public void testMaxRateSkipsFrames() {
+        UiUpdateScheduler scheduler = createScheduler(20); // one render per 50 ms
+        long frameTime = 0;
+        for (int frame = 1; frame <= 60; frame++) {
+            scheduler.requestRender();
+            frameTime += FRAME_NANOS;
+            runFrame(frameTime);
+        }
+        // One second of 60 Hz frames with a request every frame
+        assertEquals(20, renders, 1);
+    }
+
+    @Test
+    public void testConcurrentRequestsNeverLoseAnUpdate() throws InterruptedException {
+        UiUpdateScheduler scheduler = createScheduler(0);
+        int threads = 4;
+        int perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    scheduler.requestRender();
+                }
+                done.countDown();
+            }).start();
+        }
+
+        long frameTime = 0;
+        while (done.getCount() > 0) {
+            runFrame(frameTime += FRAME_NANOS);
+        }
+        done.await();
+        runFrame(frameTime + FRAME_NANOS);
+
+        assertEquals(threads * perThread, scheduler.getRequests());
+        assertTrue(renders <= threads * perThread);
+        // After the last request a render must have happened
+        assertTrue(posted.isEmpty());
+        assertEquals(scheduler.getRequests() - renders, scheduler.getCoalesced());
+    }
+}
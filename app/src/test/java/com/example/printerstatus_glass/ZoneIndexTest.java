@@ -0,0 +1,97 @@
+package com.example.printerstatus_glass;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ZoneIndexTest {
+    private static final String CONFIG =
+            "# test layout\n" +
+            "rect sf/printer/a 0 [-1,1.5] (2.6,4.2]\n" +
+            "rect sf/printer/b 0 [-1,1.5] [1,2.6]\n" +
+            "rect sf/printer/c 0 [5.8,7.3] (2.6,4.2]\n" +
+            "poly sf/printer/d 0 8,1 10,1 10,3 8,3\n" +
+            "rect sf/printer/hall -1 [-5,20] [-5,20]\n";
+
+    @After
+    public void tearDown() {
+        PrinterTopicSelector.resetZones();
+    }
+
+    @Test
+    public void testParsedConfigKeepsBoundaries() throws IOException {
+        ZoneIndex index = ZoneIndex.parse(new StringReader(CONFIG));
+
+        assertEquals(5, index.size());
+        assertEquals("sf/printer/b", index.findTopic(1, 2.6));
+        assertEquals("sf/printer/a", index.findTopic(1, 2.61));
+        assertEquals("sf/printer/c", index.findTopic(6.0, 3.0));
+        assertEquals("sf/printer/d", index.findTopic(9.0, 2.0));
+        assertEquals("sf/printer/hall", index.findTopic(6.0, 2.6));
+        assertNull(index.findTopic(30, 30));
+    }
+
+    @Test
+    public void testPriorityWinsOverDeclarationOrder() throws IOException {
+        ZoneIndex index = ZoneIndex.parse(new StringReader(
+                "rect sf/printer/low 0 [0,2] [0,2]\n" +
+                "rect sf/printer/high 5 [1,3] [1,3]\n"));
+
+        assertEquals("sf/printer/high", index.findTopic(1.5, 1.5));
+        assertEquals("sf/printer/low", index.findTopic(0.5, 0.5));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidConfigIsRejected() throws IOException {
+        ZoneIndex.parse(new StringReader("rect sf/printer/a 0 -1,1.5 2.6,4.2\n"));
+    }
+
+    @Test
+    public void testManyZonesMatchLinearScan() {
+        // 100 x 100 machine grid, 1.5 m x 1 m footprint with 0.5 m aisles
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j++) {
+                zones.add(Zone.rectangle("sf/printer/" + i + "-" + j, 0, i * 2.0, j * 1.5, i * 2.0 + 1.5, j * 1.5 + 1.0));
+            }
+        }
+        ZoneIndex index = new ZoneIndex(zones);
+
+        Random random = new Random(7);
+        for (int n = 0; n < 10_000; n++) {
+            double x = random.nextDouble() * 210 - 5;
+            double y = random.nextDouble() * 160 - 5;
+            String expected = null;
+            for (Zone zone : zones) {
+                if (zone.contains(x, y)) {
+                    expected = zone.getTopic();
+                    break;
+                }
+            }
+            assertEquals(expected, index.findTopic(x, y));
+        }
+    }
+
+    @Test
+    public void testReloadSwapsLayout() throws IOException {
+        assertEquals("sf/printer/a", PrinterTopicSelector.selectPrinterTopic(0.5, 3.0));
+
+        PrinterTopicSelector.loadZones(new StringReader("rect sf/printer/x 0 [0,1] [2,4]\n"));
+        assertEquals("sf/printer/x", PrinterTopicSelector.selectPrinterTopic(0.5, 3.0));
+
+        try {
+            PrinterTopicSelector.loadZones(new StringReader("circle sf/printer/y 0 1\n"));
+            fail("Invalid config must be rejected");
+        } catch (IOException expected) {
+            // Previous layout stays active
+        }
+        assertEquals("sf/printer/x", PrinterTopicSelector.selectPrinterTopic(0.5, 3.0));
+    }
+}
@@ -0,0 +1,37 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Benchmarks run on a plain JVM, so only the Android-free classes of the app are compiled here
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            exclude(
+                "**/MainActivity.java",
+                "**/HudRenderer.java",
+                "**/MqttHandler.java",
+                "**/IngestPipeline.java",
+                "**/BrokerConnection.java"
+            )
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    benchmarkMode.set(listOf("thrpt"))
+    timeUnit.set("s")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Allocation rate (gc.alloc.rate.norm) is reported next to throughput for every benchmark
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,60 @@
+package com.example.printerstatus_glass.benchmark;
+
+import com.example.printerstatus_glass.AlertEngine;
+import com.example.printerstatus_glass.AlertRules;
+import com.example.printerstatus_glass.PrinterStatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Locale;
+
+/**
+ * Cost of checking one printer update against a growing rule set, when the update changes
+ * the tool temperature only. The extra rules read other fields, as most rules of a large
+ * set do for any single message.
+ */
+@State(Scope.Thread)
+public class AlertEngineBenchmark {
+    private static final String TOPIC = "sf/printer/a";
+    private static final int UPDATES = 64; // power of two for cheap wrap-around
+
+    @Param({"10", "100", "500"})
+    public int ruleCount;
+
+    private AlertEngine engine;
+    private final PrinterStatus[] updates = new PrinterStatus[UPDATES];
+    private long time;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] fields = {"bed_temperature_target", "bed_temperature_current", "print_time", "completion"};
+        StringBuilder config = new StringBuilder(
+                "tool_off_target deviation tool_temperature_current tool_temperature_target > 10 for 30\n" +
+                "tool_heating_fast rate tool_temperature_current > 5 window 10\n");
+        for (int i = 2; i < ruleCount; i++) {
+            config.append(String.format(Locale.US, "r%d value %s > %d\n", i, fields[i % fields.length], 100_000 + i));
+        }
+        engine = new AlertEngine(alert -> { });
+        engine.setRules(AlertRules.parse(new StringReader(config.toString())));
+
+        PrinterStatus.Builder builder = new PrinterStatus.Builder();
+        PrinterStatus status = builder.put("tool_temperature_target", "210").put("bed_temperature_target", "60")
+                .put("bed_temperature_current", "59.5").put("print_time", "100").put("completion", "12.5").build();
+        for (int i = 0; i < UPDATES; i++) {
+            status = builder.reset().put("tool_temperature_current", String.valueOf(205 + i % 9)).mergeInto(status);
+            updates[i] = status;
+        }
+    }
+
+    @Benchmark
+    public void onPrinterUpdate() {
+        time += 100;
+        engine.onPrinterUpdate(TOPIC, updates[(int) (time / 100) & (UPDATES - 1)], time);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.printerstatus_glass.benchmark;
+
+import com.example.printerstatus_glass.BinaryCodec;
+import com.example.printerstatus_glass.DataParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decode cost of the binary encoding of {@link Payloads}; compare with {@link DataParserBenchmark}.
+ */
+@State(Scope.Thread)
+public class BinaryCodecBenchmark {
+    private final byte[] printerBytes = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_PRINTER)
+            .putAll(BinaryCodec.TYPE_PRINTER, DataParser.parsePrinterData(Payloads.PRINTER)).toByteArray();
+    private final byte[] uwbBytes = new BinaryCodec.Encoder().begin(BinaryCodec.TYPE_UWB)
+            .putAll(BinaryCodec.TYPE_UWB, DataParser.parseUwbData(Payloads.UWB)).toByteArray();
+    private final BlackholeVisitor visitor = new BlackholeVisitor();
+
+    /**
+     * Forwards every field to the blackhole so decoding cannot be optimized away.
+     */
+    private static final class BlackholeVisitor implements BinaryCodec.Visitor {
+        Blackhole blackhole;
+
+        @Override
+        public void onString(BinaryCodec.Field field, byte[] buffer, int offset, int length) {
+            blackhole.consume(length);
+        }
+
+        @Override
+        public void onNumber(BinaryCodec.Field field, double value) {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void onInteger(BinaryCodec.Field field, long value) {
+            blackhole.consume(value);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> decodePrinterToMap() {
+        Map<String, String> data = new HashMap<>();
+        BinaryCodec.decodeToMap(printerBytes, data);
+        return data;
+    }
+
+    @Benchmark
+    public Map<String, String> decodeUwbToMap() {
+        Map<String, String> data = new HashMap<>();
+        BinaryCodec.decodeToMap(uwbBytes, data);
+        return data;
+    }
+
+    @Benchmark
+    public int visitPrinterBytes(Blackhole blackhole) {
+        visitor.blackhole = blackhole;
+        return BinaryCodec.decode(printerBytes, 0, printerBytes.length, visitor);
+    }
+
+    @Benchmark
+    public int visitUwbBytes(Blackhole blackhole) {
+        visitor.blackhole = blackhole;
+        return BinaryCodec.decode(uwbBytes, 0, uwbBytes.length, visitor);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.printerstatus_glass.benchmark;
+
+import com.example.printerstatus_glass.DataHolder;
+import com.example.printerstatus_glass.DataParser;
+import com.example.printerstatus_glass.Position;
+import com.example.printerstatus_glass.PrinterStatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Contended update/get throughput of the shared DataHolder.
+ * Each group pairs writers (the MQTT thread) with readers (UI renders) at a different ratio.
+ * The writers1 to writers8 groups keep two snapshot readers and double the position writers,
+ * for throughput versus writer count when comparing locking strategies.
+ */
+@State(Scope.Group)
+public class DataHolderBenchmark {
+    private static final String TOPIC = "sf/printer/a";
+
+    // Parsed once; writers only merge, like the ingest worker after parsing
+    private final PrinterStatus.Builder printerUpdate = new PrinterStatus.Builder()
+            .putAll(DataParser.parsePrinterData(Payloads.PRINTER));
+    private final Position.Builder uwbUpdate = new Position.Builder()
+            .putAll(DataParser.parseUwbData(Payloads.UWB));
+    private DataHolder holder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        holder = DataHolder.getInstance();
+        holder.clearAll();
+        holder.setActivePrinter(TOPIC);
+        holder.updatePrinterStatus(TOPIC, printerUpdate);
+        holder.updatePosition(uwbUpdate);
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public void singleWriter() {
+        holder.updatePrinterStatus(TOPIC, printerUpdate);
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public PrinterStatus singleReader() {
+        return holder.getSnapshot().getPrinterStatus();
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public void readHeavyWriter() {
+        holder.updatePosition(uwbUpdate);
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(4)
+    public Position readHeavyReader() {
+        return holder.getSnapshot().getPosition();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public void contendedWriter() {
+        holder.updatePrinterStatus(TOPIC, printerUpdate);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public PrinterStatus contendedReader() {
+        return holder.getSnapshot().getPrinterStatus();
+    }
+
+    @Benchmark
+    @Group("writers1")
+    @GroupThreads(1)
+    public void writers1Writer() {
+        holder.updatePosition(uwbUpdate);
+    }
+
+    @Benchmark
+    @Group("writers1")
+    @GroupThreads(2)
+    public DataHolder.Snapshot writers1Reader() {
+        return holder.getSnapshot();
+    }
+
+    @Benchmark
+    @Group("writers2")
+    @GroupThreads(2)
+    public void writers2Writer() {
+        holder.updatePosition(uwbUpdate);
+    }
+
+    @Benchmark
+    @Group("writers2")
+    @GroupThreads(2)
+    public DataHolder.Snapshot writers2Reader() {
+        return holder.getSnapshot();
+    }
+
+    @Benchmark
+    @Group("writers4")
+    @GroupThreads(4)
+    public void writers4Writer() {
+        holder.updatePosition(uwbUpdate);
+    }
+
+    @Benchmark
+    @Group("writers4")
+    @GroupThreads(2)
+    public DataHolder.Snapshot writers4Reader() {
+        return holder.getSnapshot();
+    }
+
+    @Benchmark
+    @Group("writers8")
+    @GroupThreads(8)
+    public void writers8Writer() {
+        holder.updatePosition(uwbUpdate);
+    }
+
+    @Benchmark
+    @Group("writers8")
+    @GroupThreads(2)
+    public DataHolder.Snapshot writers8Reader() {
+        return holder.getSnapshot();
+    }
+}
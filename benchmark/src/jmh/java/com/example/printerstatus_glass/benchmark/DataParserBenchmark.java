@@ -0,0 +1,77 @@
+package com.example.printerstatus_glass.benchmark;
+
+import com.example.printerstatus_glass.DataParser;
+import com.example.printerstatus_glass.FieldSlice;
+import com.example.printerstatus_glass.MessageTrace;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Throughput and allocation of the Map-based parser API versus the streaming tokenizer,
+ * and the cost of taking the tracing fields out while tokenizing.
+ */
+@State(Scope.Thread)
+public class DataParserBenchmark {
+    private final byte[] printerBytes = Payloads.PRINTER.getBytes(StandardCharsets.UTF_8);
+    private final byte[] uwbBytes = Payloads.UWB.getBytes(StandardCharsets.UTF_8);
+    private final byte[] tracedPrinterBytes = (Payloads.PRINTER + ",trace_id=123456,publish_us=1700000000123456")
+            .getBytes(StandardCharsets.UTF_8);
+    private final DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+    private final DataParser.Tokenizer tracingTokenizer = new DataParser.Tokenizer();
+    private final MessageTrace trace = new MessageTrace();
+    private final BlackholeSink sink = new BlackholeSink();
+
+    /**
+     * Forwards every field to the blackhole so the tokenizer cannot be optimized away.
+     */
+    private static final class BlackholeSink implements DataParser.FieldSink {
+        Blackhole blackhole;
+
+        @Override
+        public void onField(FieldSlice key, FieldSlice value) {
+            blackhole.consume(key.length());
+            blackhole.consume(value.length());
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        tracingTokenizer.setTrace(trace);
+    }
+
+    @Benchmark
+    public Map<String, String> parsePrinterData() {
+        return DataParser.parsePrinterData(Payloads.PRINTER);
+    }
+
+    @Benchmark
+    public Map<String, String> parseUwbData() {
+        return DataParser.parseUwbData(Payloads.UWB);
+    }
+
+    @Benchmark
+    public void tokenizePrinterBytes(Blackhole blackhole) {
+        sink.blackhole = blackhole;
+        tokenizer.tokenize(printerBytes, 0, printerBytes.length, DataParser.PRINTER_PREFIX, sink);
+    }
+
+    @Benchmark
+    public long tokenizeTracedPrinterBytes(Blackhole blackhole) {
+        sink.blackhole = blackhole;
+        tracingTokenizer.tokenize(tracedPrinterBytes, 0, tracedPrinterBytes.length, DataParser.PRINTER_PREFIX, sink);
+        return trace.getPublishMicros();
+    }
+
+    @Benchmark
+    public void tokenizeUwbBytes(Blackhole blackhole) {
+        sink.blackhole = blackhole;
+        tokenizer.tokenize(uwbBytes, 0, uwbBytes.length, DataParser.UWB_PREFIX, sink);
+    }
+}
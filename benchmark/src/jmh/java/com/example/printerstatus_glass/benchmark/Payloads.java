@@ -0,0 +1,11 @@
+package com.example.printerstatus_glass.benchmark;
+
+/**
+ * Realistic message payloads shared by the benchmarks (same shape as in DataParserTest).
+ */
+final class Payloads {
+    static final String PRINTER = "printer_status,printer_name=a bed_temperature_target=60.0,bed_temperature_current=23.12,tool_temperature_target=170.0,tool_temperature_current=26.0,state=\"Connected and Operational\",print_time=0,print_time_left=1593,job_name=\"spachtle-printables V7_90%_0.4n_0.2mm_PLA_MK3.5_27m.gcode\",is_connected=True,detailed_state=\"Printing\",completion=27.394086629153374";
+    static final String UWB = "position,tagName=uwb-a positionX=5.02,positionY=2.86,positionZ=0";
+
+    private Payloads() {}
+}
@@ -0,0 +1,38 @@
+package com.example.printerstatus_glass.benchmark;
+
+import com.example.printerstatus_glass.PrinterTopicSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Zone lookup throughput over a dense set of random positions covering the shop floor.
+ */
+@State(Scope.Thread)
+public class PrinterTopicSelectorBenchmark {
+    private static final int POSITIONS = 4096; // power of two for cheap wrap-around
+
+    private final double[] xs = new double[POSITIONS];
+    private final double[] ys = new double[POSITIONS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Fixed seed keeps runs comparable; area is slightly larger than all zones
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = -2 + random.nextDouble() * 10;
+            ys[i] = random.nextDouble() * 5;
+        }
+    }
+
+    @Benchmark
+    public String selectPrinterTopic() {
+        int i = next++ & (POSITIONS - 1);
+        return PrinterTopicSelector.selectPrinterTopic(xs[i], ys[i]);
+    }
+}
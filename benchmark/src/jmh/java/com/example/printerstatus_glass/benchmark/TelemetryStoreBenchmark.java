@@ -0,0 +1,57 @@
+package com.example.printerstatus_glass.benchmark;
+
+import com.example.printerstatus_glass.TelemetryStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Append and sparkline query cost of the memory-mapped telemetry history.
+ * Queries read a full ring of the given capacity and downsample it to 20 buckets, like the HUD trend line.
+ */
+@State(Scope.Thread)
+public class TelemetryStoreBenchmark {
+    private static final String TOPIC = "sf/printer/a";
+
+    @Param({"1024", "4096"})
+    public int capacity;
+
+    private File file;
+    private TelemetryStore store;
+    private final double[] buckets = new double[20];
+    private long time;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("telemetry", ".bin");
+        store = new TelemetryStore(file, TelemetryStore.DEFAULT_SLOTS, capacity);
+        for (int i = 0; i < capacity; i++) {
+            store.append(TOPIC, time++, 60, 200 + i % 10, i * 0.01, capacity - i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void append() {
+        long t = time++;
+        store.append(TOPIC, t, 60, 210.5, 42.0, 1200);
+    }
+
+    @Benchmark
+    public double[] querySparkline() {
+        store.query(TOPIC, TelemetryStore.Field.TOOL_TEMPERATURE, time - capacity, time, buckets);
+        return buckets;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.printerstatus_glass.benchmark;
+
+import com.example.printerstatus_glass.PrinterTopicSelector;
+import com.example.printerstatus_glass.Zone;
+import com.example.printerstatus_glass.ZoneIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Zone lookup cost as the layout grows from the three demo printers to a large plant.
+ * Layouts above three zones are square grids of 1.5 m x 1 m machines with 0.5 m aisles.
+ */
+@State(Scope.Thread)
+public class ZoneIndexBenchmark {
+    private static final int POSITIONS = 4096; // power of two for cheap wrap-around
+
+    @Param({"3", "100", "10000"})
+    public int zoneCount;
+
+    private ZoneIndex index;
+    private final double[] xs = new double[POSITIONS];
+    private final double[] ys = new double[POSITIONS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        double width;
+        double height;
+        if (zoneCount == 3) {
+            index = PrinterTopicSelector.getZoneIndex();
+            width = 10;
+            height = 5;
+        } else {
+            int side = (int) Math.ceil(Math.sqrt(zoneCount));
+            List<Zone> zones = new ArrayList<>();
+            for (int i = 0; i < zoneCount; i++) {
+                double x = (i % side) * 2.0;
+                double y = (i / side) * 1.5;
+                zones.add(Zone.rectangle("sf/printer/" + i, 0, x, y, x + 1.5, y + 1.0));
+            }
+            index = new ZoneIndex(zones);
+            width = side * 2.0;
+            height = side * 1.5;
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = random.nextDouble() * width;
+            ys[i] = random.nextDouble() * height;
+        }
+    }
+
+    @Benchmark
+    public String findTopic() {
+        int i = next++ & (POSITIONS - 1);
+        return index.findTopic(xs[i], ys[i]);
+    }
+}
@@ -0,0 +1,41 @@
+plugins {
+    java
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The gateway runs on a plain JVM with the app's Android-free parsing, state and zone classes
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            exclude(
+                "**/MainActivity.java",
+                "**/HudRenderer.java",
+                "**/MqttHandler.java",
+                "**/IngestPipeline.java",
+                "**/BrokerConnection.java"
+            )
+        }
+    }
+    test {
+        java {
+            // The in-process broker of the app's tests drives the load test
+            srcDir("../app/src/test/java")
+            include("**/gateway/**", "**/LocalBroker.java")
+        }
+    }
+}
+
+dependencies {
+    implementation(files("../app/libs/org.eclipse.paho.client.mqttv3-1.2.5.jar"))
+    testImplementation(libs.junit)
+}
+
+application {
+    mainClass.set("com.example.printerstatus_glass.gateway.GatewayServer")
+}
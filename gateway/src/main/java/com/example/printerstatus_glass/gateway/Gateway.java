@@ -0,0 +1,269 @@
+package com.example.printerstatus_glass.gateway;
+
+import com.example.printerstatus_glass.BinaryCodec;
+import com.example.printerstatus_glass.DataParser;
+import com.example.printerstatus_glass.GatewayDigest;
+import com.example.printerstatus_glass.Position;
+import com.example.printerstatus_glass.PrinterStateStore;
+import com.example.printerstatus_glass.PrinterStatus;
+import com.example.printerstatus_glass.TagTracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fan-in core of the gateway: keeps the authoritative state of every printer and the zone
+ * of every UWB tag, and turns them into one condensed {@link GatewayDigest} stream per
+ * wearer. Digests are rate limited per wearer and carry only what changed since the
+ * previous digest to that wearer, plus a full keyframe every few seconds so headsets
+ * that (re)connect catch up.
+ * Uses the app's parsers and records, and resolves zones like the headsets do
+ * ({@link TagTracker} with smoothing and hysteresis on the zone layout of
+ * {@link com.example.printerstatus_glass.PrinterTopicSelector}).
+ * {@link #onMessage} runs on a single ingest thread; {@link #flush} and
+ * {@link #addWearer} may be called from any thread.
+ */
+public class Gateway {
+    // The raw topics the headsets use (see IngestPipeline, which needs Android and is not built here)
+    public static final String PRINTER_WILDCARD = "sf/printer/+";
+    public static final String UWB_TOPIC_PREFIX = "sf/UWB/";
+    public static final String UWB_WILDCARD = UWB_TOPIC_PREFIX + "+";
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 200;
+    public static final long KEYFRAME_MILLIS = 5000;
+    // Smaller moves of a wearer are not worth a digest
+    static final double POSITION_RESOLUTION_METRES = 0.05;
+    private static final int MAX_PRINTERS = 4096;
+
+    /**
+     * Sends digests to the broker.
+     */
+    public interface Publisher {
+        /**
+         * @param topic The digest topic of a wearer
+         * @param payload The encoded digest
+         */
+        void publish(String topic, byte[] payload);
+    }
+
+    /**
+     * What a wearer's headset was sent last.
+     */
+    private static final class Wearer {
+        final String tagName;
+        final String digestTopic;
+        String printerTopic;
+        PrinterStatus printerStatus;
+        double x = Double.NaN;
+        double y = Double.NaN;
+        long lastSentMillis = Long.MIN_VALUE / 2;
+        long lastKeyframeMillis = Long.MIN_VALUE / 2;
+
+        Wearer(String tagName) {
+            this.tagName = tagName;
+            this.digestTopic = GatewayDigest.topicFor(tagName);
+        }
+    }
+
+    private final Publisher publisher;
+    private final long minIntervalMillis;
+    private final PrinterStateStore printers = new PrinterStateStore(MAX_PRINTERS);
+    private final TagTracker tagTracker;
+
+    // Ingest thread only
+    private final DataParser.Tokenizer tokenizer = new DataParser.Tokenizer();
+    private final PrinterStatus.Builder printerUpdate = new PrinterStatus.Builder();
+    private final Position.Builder positionUpdate = new Position.Builder();
+    private final Map<String, String> tagNames = new HashMap<>();
+    private volatile long ingested;
+    private volatile long ingestedBytes;
+    private volatile long failed;
+
+    // Guarded by this
+    private final List<Wearer> wearers = new ArrayList<>();
+    private final GatewayDigest.Encoder encoder = new GatewayDigest.Encoder();
+    private long digests;
+    private long digestBytes;
+
+    /**
+     * Creates a gateway that resolves zones like the headsets.
+     * @param publisher Sends the digests
+     * @param minIntervalMillis Minimum time between two digests to the same wearer
+     */
+    public Gateway(Publisher publisher, long minIntervalMillis) {
+        this(publisher, minIntervalMillis, new TagTracker());
+    }
+
+    /**
+     * @param publisher Sends the digests
+     * @param minIntervalMillis Minimum time between two digests to the same wearer
+     * @param tagTracker Tracker of all UWB tags
+     */
+    public Gateway(Publisher publisher, long minIntervalMillis, TagTracker tagTracker) {
+        this.publisher = publisher;
+        this.minIntervalMillis = minIntervalMillis;
+        this.tagTracker = tagTracker;
+    }
+
+    /**
+     * Starts serving digests to the headset of a UWB tag.
+     * @param tagName The wearer's tag
+     */
+    public synchronized void addWearer(String tagName) {
+        for (Wearer wearer : wearers) {
+            if (wearer.tagName.equals(tagName)) {
+                return;
+            }
+        }
+        wearers.add(new Wearer(tagName));
+        tagTracker.register(tagName);
+    }
+
+    /**
+     * Stores a raw printer or UWB message, in the text or binary format.
+     * @param topic The MQTT topic
+     * @param payload The raw payload
+     * @param timeMillis Arrival time
+     */
+    public void onMessage(String topic, byte[] payload, long timeMillis) {
+        ingested++;
+        ingestedBytes += payload.length;
+        try {
+            if (topic.startsWith(UWB_TOPIC_PREFIX)) {
+                positionUpdate.reset();
+                if (BinaryCodec.isBinary(payload)) {
+                    BinaryCodec.decode(payload, 0, payload.length, positionUpdate);
+                } else {
+                    tokenizer.tokenize(payload, 0, payload.length, DataParser.UWB_PREFIX, positionUpdate);
+                }
+                String tagName = tagNames.get(topic);
+                if (tagName == null) {
+                    tagName = topic.substring(UWB_TOPIC_PREFIX.length());
+                    tagNames.put(topic, tagName);
+                }
+                tagTracker.update(tagName, positionUpdate.getX(), positionUpdate.getY(), positionUpdate.getZ(),
+                        timeMillis);
+            } else {
+                printerUpdate.reset();
+                if (BinaryCodec.isBinary(payload)) {
+                    BinaryCodec.decode(payload, 0, payload.length, printerUpdate);
+                } else {
+                    tokenizer.tokenize(payload, 0, payload.length, DataParser.PRINTER_PREFIX, printerUpdate);
+                }
+                printers.update(topic, printerUpdate, timeMillis);
+            }
+        } catch (RuntimeException e) {
+            failed++;
+            System.err.println("Gateway: message on " + topic + " not processed: " + e);
+        }
+    }
+
+    /**
+     * Publishes a digest to every wearer that is due and has something new.
+     * @param timeMillis Current time
+     * @return Number of digests published
+     */
+    public synchronized int flush(long timeMillis) {
+        int published = 0;
+        for (Wearer wearer : wearers) {
+            if (timeMillis - wearer.lastSentMillis < minIntervalMillis) {
+                continue;
+            }
+            int tag = tagTracker.indexOf(wearer.tagName);
+            if (tag < 0) {
+                continue;
+            }
+            boolean keyframe = timeMillis - wearer.lastKeyframeMillis >= KEYFRAME_MILLIS;
+            encoder.begin();
+
+            // Printer of the zone the wearer is in; outside all zones the last one stays
+            String zone = tagTracker.getZone(tag);
+            String printerTopic = zone != null ? zone : wearer.printerTopic;
+            PrinterStateStore.PrinterState printer = printerTopic != null ? printers.get(printerTopic) : null;
+            if (printer != null) {
+                boolean moved = !printerTopic.equals(wearer.printerTopic);
+                if (moved || keyframe) {
+                    encoder.putPrinterTopic(printerTopic);
+                }
+                PrinterStatus status = printer.getStatus();
+                encoder.putPrinterDelta(status, moved || keyframe ? null : wearer.printerStatus);
+                wearer.printerTopic = printerTopic;
+                wearer.printerStatus = status;
+            }
+
+            double x = tagTracker.getX(tag);
+            double y = tagTracker.getY(tag);
+            if (!Double.isNaN(x) && !Double.isNaN(y) && (keyframe || Double.isNaN(wearer.x)
+                    || Math.abs(x - wearer.x) >= POSITION_RESOLUTION_METRES
+                    || Math.abs(y - wearer.y) >= POSITION_RESOLUTION_METRES)) {
+                encoder.putPosition(x, y, tagTracker.getZ(tag));
+                wearer.x = x;
+                wearer.y = y;
+            }
+
+            if (encoder.isEmpty()) {
+                continue; // Nothing new for this wearer
+            }
+            byte[] digest = encoder.toByteArray();
+            publisher.publish(wearer.digestTopic, digest);
+            wearer.lastSentMillis = timeMillis;
+            if (keyframe) {
+                wearer.lastKeyframeMillis = timeMillis;
+            }
+            digests++;
+            digestBytes += digest.length;
+            published++;
+        }
+        return published;
+    }
+
+    /**
+     * @return The authoritative printer states
+     */
+    public PrinterStateStore getPrinters() {
+        return printers;
+    }
+
+    /**
+     * @return The tracker of all UWB tags
+     */
+    public TagTracker getTagTracker() {
+        return tagTracker;
+    }
+
+    /**
+     * @return Raw messages received
+     */
+    public long getIngested() {
+        return ingested;
+    }
+
+    /**
+     * @return Payload bytes of the raw messages received
+     */
+    public long getIngestedBytes() {
+        return ingestedBytes;
+    }
+
+    /**
+     * @return Raw messages that could not be parsed
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return Digests published
+     */
+    public synchronized long getDigests() {
+        return digests;
+    }
+
+    /**
+     * @return Payload bytes of the digests published
+     */
+    public synchronized long getDigestBytes() {
+        return digestBytes;
+    }
+}
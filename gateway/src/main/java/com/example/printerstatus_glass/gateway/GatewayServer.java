@@ -0,0 +1,219 @@
+package com.example.printerstatus_glass.gateway;
+
+import com.example.printerstatus_glass.ClockSync;
+import com.example.printerstatus_glass.IngestQueue;
+import com.example.printerstatus_glass.PrinterTopicSelector;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless gateway process: subscribes once to all printer and UWB topics, feeds them
+ * through an {@link IngestQueue} into a {@link Gateway}, and publishes the wearers'
+ * digests at QoS 0. Also answers the headsets' clock pings, so traced publish timestamps
+ * can be corrected for skew as long as the gateway host shares the publishers' clock (NTP).
+ *
+ * Usage: {@code GatewayServer <broker url> <wearer tag>[,<wearer tag>...] [zones.conf]}
+ */
+public class GatewayServer {
+    public static final String CLIENT_ID = "printer-gateway";
+    // How often wearers are checked for due digests; each wearer is still limited separately
+    private static final long FLUSH_MILLIS = 50;
+    private static final long STATS_SECONDS = 60;
+
+    private final Gateway gateway;
+    private final IngestQueue ingestQueue;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private MqttClient client;
+    private volatile long publishFailures;
+    private volatile long pongs;
+
+    /**
+     * @param minIntervalMillis Minimum time between two digests to the same wearer
+     */
+    public GatewayServer(long minIntervalMillis) {
+        gateway = new Gateway(this::publish, minIntervalMillis);
+        ingestQueue = new IngestQueue(IngestQueue.DEFAULT_CAPACITY,
+                (topic, payload, arrivalNanos) -> gateway.onMessage(topic, payload, System.currentTimeMillis()));
+    }
+
+    /**
+     * @return The gateway core, e.g. to add wearers
+     */
+    public Gateway getGateway() {
+        return gateway;
+    }
+
+    /**
+     * @return The queue between Paho and the gateway
+     */
+    public IngestQueue getIngestQueue() {
+        return ingestQueue;
+    }
+
+    /**
+     * Connects and starts serving digests; Paho reconnects and subscribes again after connection losses.
+     * @param brokerUrl The broker, e.g. tcp://host:1883
+     * @param clientId The MQTT client id
+     * @throws MqttException If the first connection fails
+     */
+    public synchronized void start(String brokerUrl, String clientId) throws MqttException {
+        client = new MqttClient(brokerUrl, clientId, new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        // Digests to dozens of headsets go out in bursts
+        options.setMaxInflight(1000);
+
+        client.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverUri) {
+                try {
+                    client.subscribe(new String[]{Gateway.PRINTER_WILDCARD, Gateway.UWB_WILDCARD, ClockSync.PING_WILDCARD});
+                } catch (MqttException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+                System.err.println("Gateway: connection lost: " + cause);
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                if (topic.startsWith(ClockSync.PING_TOPIC_PREFIX)) {
+                    // Stamped here, answered off Paho's thread: a blocking publish would wait on this thread
+                    long receiveMicros = ClockSync.nowMicros();
+                    scheduler.execute(() -> answerPing(topic, message.getPayload(), receiveMicros));
+                    return;
+                }
+                // Only hand the payload over; a newer message of the same topic replaces a waiting one
+                ingestQueue.offer(topic, message.getPayload());
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+
+        ingestQueue.start("gateway-ingest");
+        client.connect(options);
+        scheduler.scheduleAtFixedRate(() -> gateway.flush(System.currentTimeMillis()),
+                FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops publishing and disconnects.
+     */
+    public synchronized void stop() {
+        scheduler.shutdownNow();
+        ingestQueue.stop();
+        if (client != null) {
+            try {
+                if (client.isConnected()) {
+                    client.disconnect();
+                }
+                client.close();
+            } catch (MqttException e) {
+                e.printStackTrace();
+            }
+            client = null;
+        }
+    }
+
+    /**
+     * @return Digests and pongs that could not be handed to Paho
+     */
+    public long getPublishFailures() {
+        return publishFailures;
+    }
+
+    /**
+     * @return Clock pings answered
+     */
+    public long getPongs() {
+        return pongs;
+    }
+
+    /**
+     * @return One line of traffic statistics
+     */
+    public String report() {
+        return String.format(Locale.US,
+                "Ingested %d msgs (%d B, %d failed, %d conflated, %d dropped), printers %d, tags %d; " +
+                        "published %d digests (%d B, %d failed), %d clock pongs",
+                gateway.getIngested(), gateway.getIngestedBytes(), gateway.getFailed(),
+                ingestQueue.getConflated(), ingestQueue.getDropped(),
+                gateway.getPrinters().size(), gateway.getTagTracker().size(),
+                gateway.getDigests(), gateway.getDigestBytes(), publishFailures, pongs);
+    }
+
+    /**
+     * Echoes a clock ping, stamped with our receive and send time.
+     * @param topic The ping topic
+     * @param ping The ping payload
+     * @param receiveMicros When the ping arrived
+     */
+    private void answerPing(String topic, byte[] ping, long receiveMicros) {
+        String pongTopic = ClockSync.pongTopicFor(topic);
+        byte[] pong = ClockSync.answer(ping, receiveMicros, ClockSync.nowMicros());
+        if (pongTopic != null && pong != null) {
+            publish(pongTopic, pong);
+            pongs++;
+        }
+    }
+
+    private void publish(String topic, byte[] payload) {
+        MqttClient current = client;
+        try {
+            if (current != null && current.isConnected()) {
+                current.publish(topic, payload, 0, false);
+                return;
+            }
+        } catch (MqttException e) {
+            System.err.println("Gateway: message on " + topic + " not published: " + e);
+        }
+        publishFailures++;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: GatewayServer <broker url> <wearer tag>[,<wearer tag>...] [zones.conf]");
+            return;
+        }
+        if (args.length > 2) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(args[2]), StandardCharsets.UTF_8)) {
+                PrinterTopicSelector.loadZones(reader);
+            } catch (IOException e) {
+                System.err.println("Gateway: zone config not loaded, using the built-in layout: " + e);
+            }
+        }
+
+        GatewayServer server = new GatewayServer(Gateway.DEFAULT_MIN_INTERVAL_MILLIS);
+        for (String tag : args[1].split(",")) {
+            server.getGateway().addWearer(tag.trim());
+        }
+        server.start(args[0], CLIENT_ID);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        while (true) {
+            TimeUnit.SECONDS.sleep(STATS_SECONDS);
+            System.out.println(server.report());
+        }
+    }
+}
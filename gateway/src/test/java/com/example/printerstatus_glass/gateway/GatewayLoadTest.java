@@ -0,0 +1,216 @@
+package com.example.printerstatus_glass.gateway;
+
+import com.example.printerstatus_glass.ClockSync;
+import com.example.printerstatus_glass.GatewayDigest;
+import com.example.printerstatus_glass.LocalBroker;
+import com.example.printerstatus_glass.Position;
+import com.example.printerstatus_glass.PrinterStatus;
+import com.example.printerstatus_glass.PrinterTopicSelector;
+import com.example.printerstatus_glass.Zone;
+import com.example.printerstatus_glass.ZoneIndex;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hundreds of printers and dozens of headsets through an in-process broker: the gateway
+ * subscribes to the raw topics, every headset only to its digest topic.
+ */
+public class GatewayLoadTest {
+    private static final int PRINTERS = 300;
+    private static final int HEADSETS = 40;
+    private static final int SECONDS = 4;
+    private static final int GRID = 18; // 18 x 17 machines of 1.5 m x 1 m with 0.5 m aisles
+
+    private LocalBroker broker;
+    private GatewayServer server;
+    private final List<Headset> headsets = new ArrayList<>();
+
+    /**
+     * A headset that only follows its digest topic, like the app with USE_GATEWAY.
+     */
+    private static final class Headset {
+        final MqttClient client;
+        final GatewayDigest.Reader reader = new GatewayDigest.Reader();
+        final PrinterStatus.Builder printerUpdate = new PrinterStatus.Builder();
+        final Position.Builder positionUpdate = new Position.Builder();
+        String printerTopic;
+        PrinterStatus printer = PrinterStatus.EMPTY;
+        Position position = Position.EMPTY;
+        long digests;
+        long bytes;
+
+        Headset(String url, String tag) throws Exception {
+            client = new MqttClient(url, "headset-" + tag, new MemoryPersistence());
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setCleanSession(true);
+            client.connect(options);
+            client.subscribe(GatewayDigest.topicFor(tag), (topic, message) -> onDigest(message.getPayload()));
+        }
+
+        synchronized void onDigest(byte[] payload) {
+            digests++;
+            bytes += payload.length;
+            reader.read(payload, printerUpdate.reset(), positionUpdate.reset());
+            if (reader.getPrinterTopic() != null && !reader.getPrinterTopic().equals(printerTopic)) {
+                printerTopic = reader.getPrinterTopic();
+                printer = PrinterStatus.EMPTY;
+            }
+            if (reader.hasPrinter()) {
+                printer = printerUpdate.mergeInto(printer);
+            }
+            if (reader.hasPosition()) {
+                position = positionUpdate.mergeInto(position);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < PRINTERS; i++) {
+            double x = (i % GRID) * 2.0;
+            double y = (i / GRID) * 1.5;
+            zones.add(Zone.rectangle(printerTopic(i), 0, x, y, x + 1.5, y + 1.0));
+        }
+        PrinterTopicSelector.setZoneIndex(new ZoneIndex(zones));
+        broker = new LocalBroker().start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Headset headset : headsets) {
+            headset.client.disconnect();
+            headset.client.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+        broker.stop();
+        PrinterTopicSelector.resetZones();
+    }
+
+    private static String printerTopic(int printer) {
+        return "sf/printer/p" + printer;
+    }
+
+    /**
+     * @return The printer whose machine headset h stands at
+     */
+    private static int printerOf(int headset) {
+        return headset * 7 % PRINTERS;
+    }
+
+    @Test
+    public void testHeadsetsFollowTheirPrinterFromDigestsOnly() throws Exception {
+        server = new GatewayServer(Gateway.DEFAULT_MIN_INTERVAL_MILLIS);
+        for (int h = 0; h < HEADSETS; h++) {
+            server.getGateway().addWearer("glass-" + h);
+            headsets.add(new Headset(broker.getUrl(), "glass-" + h));
+        }
+        server.start(broker.getUrl(), GatewayServer.CLIENT_ID);
+        assertTrue(broker.awaitSubscription(Gateway.UWB_WILDCARD, 10_000));
+
+        // Printers report once per second, the wearers' tags at 10 Hz with a few cm of jitter
+        long rawPerHeadset = 0;
+        long start = System.currentTimeMillis();
+        for (int step = 0; step < SECONDS * 10; step++) {
+            if (step % 10 == 0) {
+                for (int p = 0; p < PRINTERS; p++) {
+                    String line = String.format(Locale.US, "printer_status,printer_name=p%d " +
+                                    "bed_temperature_target=60.0,bed_temperature_current=%.2f," +
+                                    "tool_temperature_target=210.0,tool_temperature_current=%.1f," +
+                                    "state=\"Printing\",job_name=\"part_%d.gcode\",print_time=%d," +
+                                    "print_time_left=%d,completion=%.3f",
+                            p, 59.5 + step % 3 / 10.0, 205.0 + (p + step) % 9, p, 600 + step / 10,
+                            3000 - step / 10, 20 + step / 100.0);
+                    broker.publish(printerTopic(p), line);
+                }
+                // A headset without the gateway takes its printer's messages and all UWB traffic
+                rawPerHeadset += 260;
+            }
+            for (int h = 0; h < HEADSETS; h++) {
+                int printer = printerOf(h);
+                double jitter = ((step * 31 + h * 17) % 7 - 3) / 100.0;
+                String line = String.format(Locale.US, "position,tagName=glass-%d positionX=%.3f,positionY=%.3f,positionZ=1.6",
+                        h, (printer % GRID) * 2.0 + 0.75 + jitter, (printer / GRID) * 1.5 + 0.5 - jitter);
+                broker.publish(Gateway.UWB_TOPIC_PREFIX + "glass-" + h, line);
+                rawPerHeadset += line.length();
+            }
+            long due = start + (step + 1) * 100L;
+            long wait = due - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+        }
+        // Last deltas are flushed within one interval
+        Thread.sleep(3 * Gateway.DEFAULT_MIN_INTERVAL_MILLIS);
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+
+        Gateway gateway = server.getGateway();
+        assertEquals(0, gateway.getFailed());
+        assertEquals(PRINTERS, gateway.getPrinters().size());
+        long digests = 0;
+        long digestBytes = 0;
+        for (int h = 0; h < HEADSETS; h++) {
+            Headset headset = headsets.get(h);
+            String expected = printerTopic(printerOf(h));
+            synchronized (headset) {
+                assertEquals(expected, headset.printerTopic);
+                PrinterStatus truth = gateway.getPrinters().get(expected).getStatus();
+                assertEquals(truth.getPrinterName(), headset.printer.getPrinterName());
+                assertEquals(truth.getJobName(), headset.printer.getJobName());
+                assertEquals(truth.getPrintTime(), headset.printer.getPrintTime());
+                assertEquals(truth.getToolTemperatureCurrent(), headset.printer.getToolTemperatureCurrent(), 1e-3);
+                assertEquals(truth.getCompletion(), headset.printer.getCompletion(), 1e-9);
+                assertTrue(headset.position.hasXY());
+
+                // Never more often than the per-wearer limit
+                assertTrue(headset.digests <= seconds * 1000 / Gateway.DEFAULT_MIN_INTERVAL_MILLIS + 1);
+                digests += headset.digests;
+                digestBytes += headset.bytes;
+            }
+        }
+
+        double bytesPerDigest = (double) digestBytes / digests;
+        assertTrue(bytesPerDigest < 64);
+        // A headset takes a small fraction of the traffic it would subscribe to without the gateway
+        assertTrue(digestBytes / HEADSETS * 50 < rawPerHeadset);
+    }
+
+    @Test
+    public void testAnswersClockPings() throws Exception {
+        server = new GatewayServer(Gateway.DEFAULT_MIN_INTERVAL_MILLIS);
+        server.start(broker.getUrl(), GatewayServer.CLIENT_ID);
+        assertTrue(broker.awaitSubscription(ClockSync.PING_WILDCARD, 10_000));
+
+        ClockSync sync = new ClockSync("glass-0");
+        MqttClient headset = new MqttClient(broker.getUrl(), "headset-clock", new MemoryPersistence());
+        headset.connect();
+        try {
+            headset.subscribe(sync.getPongTopic(), (topic, message) -> sync.onPong(message.getPayload(), ClockSync.nowMicros()));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (sync.getSamples() < 3 && System.currentTimeMillis() < deadline) {
+                broker.publish(sync.getPingTopic(), sync.createPing(ClockSync.nowMicros()));
+                Thread.sleep(20);
+            }
+        } finally {
+            headset.disconnect();
+            headset.close();
+        }
+        // Same host, same clock
+        assertTrue(sync.getSamples() >= 3);
+        assertTrue(Math.abs(sync.getOffsetMicros()) <= sync.getDelayMicros() / 2 + 1);
+        assertTrue(server.getPongs() >= 3);
+    }
+}
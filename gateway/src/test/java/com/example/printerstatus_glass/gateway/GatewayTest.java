@@ -0,0 +1,165 @@
+package com.example.printerstatus_glass.gateway;
+
+import com.example.printerstatus_glass.GatewayDigest;
+import com.example.printerstatus_glass.Position;
+import com.example.printerstatus_glass.PositionFilter;
+import com.example.printerstatus_glass.PrinterStatus;
+import com.example.printerstatus_glass.TagTracker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GatewayTest {
+    private static final String WEARER = "uwb-a";
+    private static final String DIGEST_TOPIC = GatewayDigest.topicFor(WEARER);
+
+    private final List<byte[]> published = new ArrayList<>();
+    private Gateway gateway;
+
+    // What the headset decoded from the last digest
+    private final GatewayDigest.Reader reader = new GatewayDigest.Reader();
+    private final PrinterStatus.Builder printer = new PrinterStatus.Builder();
+    private final Position.Builder position = new Position.Builder();
+
+    @Before
+    public void setUp() {
+        // Fixes are taken as reported, smoothing and hysteresis are covered by TagTrackerTest
+        TagTracker unfiltered = new TagTracker(new PositionFilter(1, 1, 0), 0, 0);
+        gateway = new Gateway((topic, payload) -> {
+            assertEquals(DIGEST_TOPIC, topic);
+            published.add(payload);
+        }, Gateway.DEFAULT_MIN_INTERVAL_MILLIS, unfiltered);
+        gateway.addWearer(WEARER);
+    }
+
+    private void send(String topic, String payload, long timeMillis) {
+        gateway.onMessage(topic, payload.getBytes(StandardCharsets.UTF_8), timeMillis);
+    }
+
+    private void moveWearer(double x, double y, long timeMillis) {
+        send(Gateway.UWB_TOPIC_PREFIX + WEARER, "position,tagName=uwb-a positionX=" + x + ",positionY=" + y
+                + ",positionZ=0", timeMillis);
+    }
+
+    /**
+     * Decodes the last digest.
+     * @return The printer fields it carried
+     */
+    private PrinterStatus readLast() {
+        reader.read(published.get(published.size() - 1), printer.reset(), position.reset());
+        return printer.build();
+    }
+
+    @Test
+    public void testFirstDigestHasPrinterTopicFullStateAndPosition() {
+        send("sf/printer/a", "printer_status,printer_name=a bed_temperature_target=60.0,bed_temperature_current=59.5,"
+                + "tool_temperature_target=210.0,tool_temperature_current=208.4,state=\"Printing\",print_time=10", 0);
+        moveWearer(0.25, 3.4, 0);
+
+        assertEquals(1, gateway.flush(0));
+        PrinterStatus status = readLast();
+        assertEquals("sf/printer/a", reader.getPrinterTopic());
+        assertEquals("Printing", status.getState());
+        assertEquals(208.4, status.getToolTemperatureCurrent(), 1e-9);
+        assertEquals(10, status.getPrintTime());
+        assertTrue(reader.hasPosition());
+        assertEquals(3.4, position.build().getY(), 1e-6);
+    }
+
+    @Test
+    public void testLaterDigestsCarryOnlyChanges() {
+        send("sf/printer/a", "printer_status,printer_name=a bed_temperature_target=60.0,"
+                + "tool_temperature_current=208.4,state=\"Printing\",print_time=10", 0);
+        moveWearer(0.25, 3.4, 0);
+        gateway.flush(0);
+        int fullSize = published.get(0).length;
+
+        // Same values again: nothing to send
+        send("sf/printer/a", "printer_status,printer_name=a bed_temperature_target=60.0,"
+                + "tool_temperature_current=208.4,state=\"Printing\",print_time=10", 1000);
+        assertEquals(0, gateway.flush(1000));
+
+        send("sf/printer/a", "printer_status,printer_name=a bed_temperature_target=60.0,"
+                + "tool_temperature_current=209.1,state=\"Printing\",print_time=11", 2000);
+        assertEquals(1, gateway.flush(2000));
+        PrinterStatus delta = readLast();
+        assertNull(reader.getPrinterTopic());
+        assertFalse(reader.hasPosition());
+        assertEquals(209.1, delta.getToolTemperatureCurrent(), 1e-9);
+        assertEquals(11, delta.getPrintTime());
+        assertNull(delta.getState());
+        assertTrue(Double.isNaN(delta.getBedTemperatureTarget()));
+        assertTrue(published.get(1).length * 3 < fullSize);
+    }
+
+    @Test
+    public void testDigestsAreRateLimitedPerWearer() {
+        send("sf/printer/a", "printer_status,printer_name=a print_time=0", 0);
+        moveWearer(0.25, 3.4, 0);
+        assertEquals(1, gateway.flush(0));
+
+        send("sf/printer/a", "printer_status,printer_name=a print_time=1", 50);
+        assertEquals(0, gateway.flush(100));
+        assertEquals(0, gateway.flush(199));
+        assertEquals(1, gateway.flush(200));
+        assertEquals(1, readLast().getPrintTime());
+    }
+
+    @Test
+    public void testSmallMovesAreNotSent() {
+        moveWearer(0.25, 3.4, 0);
+        gateway.flush(0);
+        moveWearer(0.26, 3.41, 500);
+        assertEquals(0, gateway.flush(500));
+        moveWearer(0.40, 3.41, 1000);
+        assertEquals(1, gateway.flush(1000));
+        readLast();
+        assertTrue(reader.hasPosition());
+    }
+
+    @Test
+    public void testZoneChangeSendsNewPrinterInFull() {
+        send("sf/printer/a", "printer_status,printer_name=a state=\"Printing\",print_time=10", 0);
+        send("sf/printer/b", "printer_status,printer_name=b state=\"Operational\",print_time=0", 0);
+        moveWearer(0.25, 3.4, 0);
+        gateway.flush(0);
+
+        moveWearer(0.25, 1.8, 1000);
+        assertEquals(1, gateway.flush(1000));
+        PrinterStatus status = readLast();
+        assertEquals("sf/printer/b", reader.getPrinterTopic());
+        assertEquals("b", status.getPrinterName());
+        assertEquals("Operational", status.getState());
+        assertEquals(0, status.getPrintTime());
+    }
+
+    @Test
+    public void testKeyframeRepeatsFullState() {
+        send("sf/printer/a", "printer_status,printer_name=a state=\"Printing\",print_time=10", 0);
+        moveWearer(0.25, 3.4, 0);
+        gateway.flush(0);
+        assertEquals(0, gateway.flush(Gateway.KEYFRAME_MILLIS - 1));
+
+        assertEquals(1, gateway.flush(Gateway.KEYFRAME_MILLIS));
+        PrinterStatus status = readLast();
+        assertEquals("sf/printer/a", reader.getPrinterTopic());
+        assertEquals("Printing", status.getState());
+        assertTrue(reader.hasPosition());
+    }
+
+    @Test
+    public void testUnknownWearerAndBadMessages() {
+        send("sf/printer/a", "printer_status,printer_name=a print_time=10", 0);
+        assertEquals(0, gateway.flush(0)); // wearer not seen yet
+
+        gateway.onMessage("sf/printer/a", new byte[]{(byte) 0xB1, 9}, 0);
+        assertEquals(1, gateway.getFailed());
+        assertEquals(2, gateway.getIngested());
+    }
+}
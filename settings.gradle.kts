@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "PrinterStatus_Glass"
 include(":app")
+include(":benchmark")
+include(":gateway")
  
\ No newline at end of file